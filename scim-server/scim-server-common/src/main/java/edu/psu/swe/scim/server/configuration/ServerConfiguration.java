@@ -49,6 +49,9 @@ public class ServerConfiguration {
   static final int BULK_MAXIMUM_PAYLOAD_SIZE = 1024;
   
   static final int FILTER_MAXIMUM_RESULTS = 100;
+  static final int FILTER_MAXIMUM_DEPTH = 16;
+  static final int FILTER_MAXIMUM_TERMS = 64;
+  static final int FILTER_MAXIMUM_COST = 256;
 
   String id = "spc";
   
@@ -65,6 +68,12 @@ public class ServerConfiguration {
   boolean supportsFilter = false;
   int filterMaxResults = FILTER_MAXIMUM_RESULTS;
   
+  // Limits on the FilterCostEstimator's estimates, filters over them are
+  // rejected before the provider is called. 0 disables a limit.
+  int filterMaxDepth = FILTER_MAXIMUM_DEPTH;
+  int filterMaxTerms = FILTER_MAXIMUM_TERMS;
+  int filterMaxCost = FILTER_MAXIMUM_COST;
+  
   @Setter(AccessLevel.NONE)
   boolean supportsPatch = true;
   
@@ -21,6 +21,8 @@ package edu.psu.swe.scim.server.exception;
 
 import javax.ws.rs.core.Response.Status;
 
+import edu.psu.swe.scim.spec.protocol.ErrorMessageType;
+
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
@@ -31,16 +33,35 @@ public class UnableToUpdateResourceException extends Exception {
   private static final long serialVersionUID = -3872700870424005641L;
 
   private Status status;
+
+  /**
+   * The scimType of the error response, null if there is none.
+   */
+  private ErrorMessageType scimType;
   
   public UnableToUpdateResourceException(Status status, String what) {
     super(what);
     
     this.status = status;
   }
+
+  public UnableToUpdateResourceException(Status status, ErrorMessageType scimType, String what) {
+    super(what);
+
+    this.status = status;
+    this.scimType = scimType;
+  }
   
   public UnableToUpdateResourceException(Status status, String what, Throwable why) {
     super(what, why);
     
     this.status = status;
   }
+
+  public UnableToUpdateResourceException(Status status, ErrorMessageType scimType, String what, Throwable why) {
+    super(what, why);
+
+    this.status = status;
+    this.scimType = scimType;
+  }
 }
@@ -0,0 +1,559 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.filter;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.xml.bind.annotation.XmlEnumValue;
+
+import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.annotation.ScimResourceType;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeComparisonExpression;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeInExpression;
+import edu.psu.swe.scim.spec.protocol.filter.AttributePresentExpression;
+import edu.psu.swe.scim.spec.protocol.filter.CompareOperator;
+import edu.psu.swe.scim.spec.protocol.filter.FilterExpression;
+import edu.psu.swe.scim.spec.protocol.filter.FilterParseException;
+import edu.psu.swe.scim.spec.protocol.filter.GroupExpression;
+import edu.psu.swe.scim.spec.protocol.filter.LogicalExpression;
+import edu.psu.swe.scim.spec.protocol.filter.LogicalOperator;
+import edu.psu.swe.scim.spec.protocol.filter.ValuePathExpression;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.schema.Schema;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
+
+/**
+ * Compiles a parsed {@link Filter} into a {@link Predicate} that can be
+ * evaluated against in-memory resources.
+ * 
+ * All attribute lookups, field handles and comparison values are resolved
+ * once at compile time, so evaluating the returned predicate does no schema
+ * lookups or string parsing. The predicates are immutable and may be shared
+ * between threads.
+ * 
+ * Multi-valued attributes match when any of their values match, with the
+ * exception of <code>ne</code> which matches when none of the values are
+ * equal to the compare value.
+ */
+@Named
+public class FilterCompiler {
+
+  private static final String VALUE_SUB_ATTRIBUTE = "value";
+
+  private static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+  private static final Map<Enum<?>, String> ENUM_VALUES = new ConcurrentHashMap<>();
+
+  private final Registry registry;
+
+  @Inject
+  public FilterCompiler(Registry registry) {
+    this.registry = registry;
+  }
+
+  public <T extends ScimResource> Predicate<T> compile(Filter filter, Class<T> resourceClass) throws FilterParseException, AttributeDoesNotExistException {
+    ScimResourceType scimResourceType = resourceClass.getAnnotation(ScimResourceType.class);
+    if (scimResourceType == null) {
+      throw new IllegalArgumentException(resourceClass.getName() + " is not annotated with @ScimResourceType");
+    }
+    Schema schema = registry.getSchema(scimResourceType.schema());
+    if (schema == null) {
+      throw new IllegalArgumentException("No schema registered for " + scimResourceType.schema());
+    }
+    return compile(filter.getExpression(), schema);
+  }
+
+  public <T extends ScimResource> Predicate<T> compile(FilterExpression expression, Schema schema) throws FilterParseException, AttributeDoesNotExistException {
+    Predicate<Object> predicate = compileExpression(expression, schema, null);
+    return resource -> predicate.test(resource);
+  }
+
+  /**
+   * Compiles the filter of a value path, e.g. the <code>type eq "work"</code>
+   * of <code>emails[type eq "work"]</code>, into a predicate that is evaluated
+   * against a single value of the multi-valued <code>attribute</code>. The
+   * values of a simple multi-valued attribute are referenced as
+   * <code>value</code>.
+   */
+  public Predicate<Object> compileValueFilter(FilterExpression expression, Schema schema, Attribute attribute) throws FilterParseException, AttributeDoesNotExistException {
+    return compileExpression(expression, schema, attribute);
+  }
+
+  private Predicate<Object> compileExpression(FilterExpression expression, Schema schema, Attribute scope) throws FilterParseException, AttributeDoesNotExistException {
+    if (expression instanceof LogicalExpression) {
+      LogicalExpression logicalExpression = (LogicalExpression) expression;
+      Predicate<Object> left = compileExpression(logicalExpression.getLeft(), schema, scope);
+      Predicate<Object> right = compileExpression(logicalExpression.getRight(), schema, scope);
+      return logicalExpression.getOperator() == LogicalOperator.AND ? left.and(right) : left.or(right);
+    } else if (expression instanceof AttributeInExpression) {
+      return compileIn((AttributeInExpression) expression, schema, scope);
+    } else if (expression instanceof GroupExpression) {
+      GroupExpression groupExpression = (GroupExpression) expression;
+      Predicate<Object> predicate = compileExpression(groupExpression.getFilterExpression(), schema, scope);
+      return groupExpression.isNot() ? predicate.negate() : predicate;
+    } else if (expression instanceof AttributePresentExpression) {
+      AttributeReference attributeReference = ((AttributePresentExpression) expression).getAttributePath();
+      ValueResolver resolver = resolve(attributeReference, schema, scope, false).resolver;
+      return source -> resolver.anyMatch(source, FilterCompiler::isPresent);
+    } else if (expression instanceof AttributeComparisonExpression) {
+      return compileComparison((AttributeComparisonExpression) expression, schema, scope);
+    } else if (expression instanceof ValuePathExpression) {
+      ValuePathExpression valuePathExpression = (ValuePathExpression) expression;
+      AttributeReference attributePath = valuePathExpression.getAttributePath();
+      ResolvedAttribute parent = resolve(new AttributeReference(attributePath.getUrn(), attributePath.getAttributeName(), null), schema, scope, false);
+      if (valuePathExpression.getAttributeExpression() == null) {
+        return source -> parent.resolver.anyMatch(source, FilterCompiler::isPresent);
+      }
+      Predicate<Object> elementPredicate = compileExpression(valuePathExpression.getAttributeExpression(), schema, parent.attribute);
+      return source -> parent.resolver.anyMatch(source, elementPredicate);
+    }
+    throw new FilterParseException("Unsupported filter expression: " + (expression == null ? null : expression.getClass().getName()));
+  }
+
+  private Predicate<Object> compileComparison(AttributeComparisonExpression expression, Schema schema, Attribute scope) throws FilterParseException, AttributeDoesNotExistException {
+    ResolvedAttribute target = resolve(expression.getAttributePath(), schema, scope, true);
+    ValueResolver resolver = target.resolver;
+    CompareOperator operation = expression.getOperation();
+    Object compareValue = expression.getCompareValue();
+
+    if (compareValue == null) {
+      if (operation == CompareOperator.EQ) {
+        return source -> !resolver.anyMatch(source, FilterCompiler::isPresent);
+      } else if (operation == CompareOperator.NE) {
+        return source -> resolver.anyMatch(source, FilterCompiler::isPresent);
+      }
+      throw new FilterParseException("Operator " + operation + " can not be used with a null compare value");
+    }
+
+    if (operation == CompareOperator.NE) {
+      Predicate<Object> equals = valueTest(target.attribute, CompareOperator.EQ, compareValue);
+      return source -> !resolver.anyMatch(source, equals);
+    }
+    Predicate<Object> test = valueTest(target.attribute, operation, compareValue);
+    return source -> resolver.anyMatch(source, test);
+  }
+
+  /**
+   * String attributes are tested with a single set lookup, other types fall
+   * back to the equivalent disjunction.
+   */
+  private Predicate<Object> compileIn(AttributeInExpression expression, Schema schema, Attribute scope) throws FilterParseException, AttributeDoesNotExistException {
+    ResolvedAttribute target = resolve(expression.getAttributePath(), schema, scope, true);
+    Attribute attribute = target.attribute;
+    boolean string = attribute.getType() == Schema.Attribute.Type.STRING || attribute.getType() == Schema.Attribute.Type.REFERENCE || (attribute.getType() == Schema.Attribute.Type.COMPLEX && isEnum(attribute.getField()));
+    if (!string || !expression.getCompareValues().stream().allMatch(String.class::isInstance)) {
+      return compileExpression(expression.getFilterExpression(), schema, scope);
+    }
+
+    boolean caseExact = attribute.isCaseExact();
+    Set<String> expected = new HashSet<>();
+    for (Object compareValue : expression.getCompareValues()) {
+      expected.add(caseExact ? (String) compareValue : ((String) compareValue).toLowerCase(Locale.ROOT));
+    }
+    ValueResolver resolver = target.resolver;
+    return source -> resolver.anyMatch(source, value -> expected.contains(toComparableString(value, caseExact)));
+  }
+
+  /**
+   * Resolves an attribute reference to the chain of fields that have to be
+   * read to reach its values. When <code>scope</code> is set the reference is
+   * relative to an element of that multi-valued attribute (the inside of a
+   * value path).
+   */
+  private ResolvedAttribute resolve(AttributeReference attributeReference, Schema schema, Attribute scope, boolean comparison) throws FilterParseException, AttributeDoesNotExistException {
+    List<Attribute> chain = new ArrayList<>();
+    String extensionUrn = null;
+
+    if (scope != null) {
+      String name = attributeReference.getSubAttributeName() != null ? attributeReference.getSubAttributeName() : attributeReference.getAttributeName();
+      if (VALUE_SUB_ATTRIBUTE.equalsIgnoreCase(name) && (scope.getType() != Schema.Attribute.Type.COMPLEX || isEnum(scope.getField()))) {
+        // the values of a simple multi-valued attribute are compared directly
+        return new ResolvedAttribute(scope, TERMINAL);
+      }
+      chain.add(findSubAttribute(scope, name, attributeReference));
+    } else {
+      String urn = attributeReference.getUrn();
+      Schema container = schema;
+      if (urn != null && !urn.equalsIgnoreCase(schema.getId())) {
+        container = registry.getSchema(urn);
+        if (container == null) {
+          throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+        }
+        extensionUrn = container.getId();
+      }
+      Attribute attribute = container.getAttribute(attributeReference.getAttributeName());
+      if (attribute == null) {
+        throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+      }
+      chain.add(attribute);
+      if (attributeReference.getSubAttributeName() != null) {
+        chain.add(findSubAttribute(attribute, attributeReference.getSubAttributeName(), attributeReference));
+      }
+    }
+
+    Attribute last = chain.get(chain.size() - 1);
+    if (comparison && last.getType() == Schema.Attribute.Type.COMPLEX && !isEnum(last.getField())) {
+      // Comparing a complex attribute compares its "value" sub-attribute
+      Attribute value = last.getAttribute(VALUE_SUB_ATTRIBUTE);
+      if (value == null) {
+        throw new FilterParseException("Complex attribute " + attributeReference.getFullyQualifiedAttributeName() + " can not be compared directly");
+      }
+      chain.add(value);
+      last = value;
+    }
+
+    ValueResolver resolver = TERMINAL;
+    for (int i = chain.size() - 1; i >= 0; i--) {
+      Field field = chain.get(i).getField();
+      if (field == null) {
+        throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName() + " is not bound to a java field");
+      }
+      field.setAccessible(true);
+      resolver = new FieldResolver(field, resolver);
+    }
+    if (extensionUrn != null) {
+      resolver = new ExtensionResolver(extensionUrn, resolver);
+    }
+    return new ResolvedAttribute(last, resolver);
+  }
+
+  /**
+   * Looks up a sub-attribute in the schema, falling back to the java field of
+   * the parent's type for attributes that are not described by the schema
+   * (for example the sub-attributes of meta).
+   */
+  private static Attribute findSubAttribute(Attribute parent, String name, AttributeReference attributeReference) throws AttributeDoesNotExistException {
+    Attribute attribute = parent.getAttribute(name);
+    if (attribute != null) {
+      return attribute;
+    }
+    if (parent.getField() != null) {
+      Class<?> parentType = elementType(parent.getField());
+      for (Class<?> c = parentType; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (field.getName().equalsIgnoreCase(name) && !field.isSynthetic()) {
+            Attribute synthetic = new Attribute();
+            synthetic.setName(field.getName());
+            synthetic.setField(field);
+            synthetic.setType(inferType(elementType(field)));
+            synthetic.setMultiValued(Collection.class.isAssignableFrom(field.getType()));
+            return synthetic;
+          }
+        }
+      }
+    }
+    throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+  }
+
+  private static Class<?> elementType(Field field) {
+    Class<?> type = field.getType();
+    if (Collection.class.isAssignableFrom(type)) {
+      Type genericType = field.getGenericType();
+      if (genericType instanceof ParameterizedType) {
+        Type argument = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+        if (argument instanceof Class) {
+          return (Class<?>) argument;
+        }
+      }
+      return Object.class;
+    } else if (type.isArray() && type != byte[].class) {
+      return type.getComponentType();
+    }
+    return type;
+  }
+
+  private static Schema.Attribute.Type inferType(Class<?> type) {
+    if (type == String.class || type == char[].class || type == Character[].class || type.isEnum()) {
+      return Schema.Attribute.Type.STRING;
+    } else if (type == Boolean.class || type == boolean.class) {
+      return Schema.Attribute.Type.BOOLEAN;
+    } else if (type == Integer.class || type == int.class || type == Long.class || type == long.class || type == Short.class || type == short.class) {
+      return Schema.Attribute.Type.INTEGER;
+    } else if (Number.class.isAssignableFrom(type) || type == double.class || type == float.class) {
+      return Schema.Attribute.Type.DECIMAL;
+    } else if (Temporal.class.isAssignableFrom(type) || Date.class.isAssignableFrom(type)) {
+      return Schema.Attribute.Type.DATE_TIME;
+    } else if (type == byte[].class) {
+      return Schema.Attribute.Type.BINARY;
+    }
+    return Schema.Attribute.Type.COMPLEX;
+  }
+
+  private static boolean isEnum(Field field) {
+    return field != null && elementType(field).isEnum();
+  }
+
+  private static Predicate<Object> valueTest(Attribute attribute, CompareOperator operation, Object compareValue) throws FilterParseException {
+    Schema.Attribute.Type type = attribute.getType();
+    if (type == Schema.Attribute.Type.COMPLEX && isEnum(attribute.getField())) {
+      type = Schema.Attribute.Type.STRING;
+    }
+
+    switch (type) {
+    case STRING:
+    case REFERENCE:
+      return stringTest(attribute, operation, compareValue);
+    case INTEGER:
+    case DECIMAL:
+      if (!(compareValue instanceof Number)) {
+        throw new FilterParseException("Attribute " + attribute.getName() + " must be compared to a number");
+      }
+      double number = ((Number) compareValue).doubleValue();
+      return orderedTest(attribute, operation, value -> value instanceof Number ? Double.compare(((Number) value).doubleValue(), number) : INCOMPARABLE);
+    case DATE_TIME:
+      if (!(compareValue instanceof String)) {
+        throw new FilterParseException("Attribute " + attribute.getName() + " must be compared to a date time string");
+      }
+      Instant instant = toInstant(compareValue);
+      if (instant == null) {
+        throw new FilterParseException("Invalid date time compare value: " + compareValue);
+      }
+      return orderedTest(attribute, operation, value -> {
+        Instant actual = toInstant(value);
+        return actual != null ? actual.compareTo(instant) : INCOMPARABLE;
+      });
+    case BOOLEAN:
+      if (!(compareValue instanceof Boolean)) {
+        throw new FilterParseException("Attribute " + attribute.getName() + " must be compared to true or false");
+      }
+      checkEqualityOnly(attribute, operation);
+      return compareValue::equals;
+    case BINARY:
+      checkEqualityOnly(attribute, operation);
+      String encoded = compareValue.toString();
+      return value -> encoded.equals(value instanceof byte[] ? Base64.getEncoder().encodeToString((byte[]) value) : value.toString());
+    default:
+      throw new FilterParseException("Attribute " + attribute.getName() + " of type " + type + " can not be used in a comparison");
+    }
+  }
+
+  private static Predicate<Object> stringTest(Attribute attribute, CompareOperator operation, Object compareValue) throws FilterParseException {
+    if (!(compareValue instanceof String)) {
+      throw new FilterParseException("Attribute " + attribute.getName() + " must be compared to a string");
+    }
+    boolean caseExact = attribute.isCaseExact();
+    String expected = caseExact ? (String) compareValue : ((String) compareValue).toLowerCase(Locale.ROOT);
+
+    switch (operation) {
+    case CO:
+      return value -> toComparableString(value, caseExact).contains(expected);
+    case SW:
+      return value -> toComparableString(value, caseExact).startsWith(expected);
+    case EW:
+      return value -> toComparableString(value, caseExact).endsWith(expected);
+    default:
+      return orderedTest(attribute, operation, value -> toComparableString(value, caseExact).compareTo(expected));
+    }
+  }
+
+  private static Predicate<Object> orderedTest(Attribute attribute, CompareOperator operation, ToIntFunction<Object> comparison) throws FilterParseException {
+    switch (operation) {
+    case EQ:
+    case NE:
+      return value -> comparison.applyAsInt(value) == 0;
+    case GT:
+      return value -> {
+        int result = comparison.applyAsInt(value);
+        return result != INCOMPARABLE && result > 0;
+      };
+    case GE:
+      return value -> {
+        int result = comparison.applyAsInt(value);
+        return result != INCOMPARABLE && result >= 0;
+      };
+    case LT:
+      return value -> {
+        int result = comparison.applyAsInt(value);
+        return result != INCOMPARABLE && result < 0;
+      };
+    case LE:
+      return value -> {
+        int result = comparison.applyAsInt(value);
+        return result != INCOMPARABLE && result <= 0;
+      };
+    default:
+      throw new FilterParseException("Operator " + operation + " is not supported for attribute " + attribute.getName() + " of type " + attribute.getType());
+    }
+  }
+
+  private static void checkEqualityOnly(Attribute attribute, CompareOperator operation) throws FilterParseException {
+    if (operation != CompareOperator.EQ && operation != CompareOperator.NE) {
+      throw new FilterParseException("Operator " + operation + " is not supported for attribute " + attribute.getName() + " of type " + attribute.getType());
+    }
+  }
+
+  private static String toComparableString(Object value, boolean caseExact) {
+    String string = value instanceof Enum ? enumValue((Enum<?>) value) : value.toString();
+    return caseExact ? string : string.toLowerCase(Locale.ROOT);
+  }
+
+  private static String enumValue(Enum<?> value) {
+    return ENUM_VALUES.computeIfAbsent(value, e -> {
+      try {
+        XmlEnumValue xmlEnumValue = e.getDeclaringClass().getField(e.name()).getAnnotation(XmlEnumValue.class);
+        return xmlEnumValue != null ? xmlEnumValue.value() : e.name();
+      } catch (NoSuchFieldException ex) {
+        return e.name();
+      }
+    });
+  }
+
+  /**
+   * Date times without an offset are treated as UTC, which is how the server
+   * stores meta.created and meta.lastModified.
+   */
+  private static Instant toInstant(Object value) {
+    if (value instanceof Instant) {
+      return (Instant) value;
+    } else if (value instanceof LocalDateTime) {
+      return ((LocalDateTime) value).toInstant(ZoneOffset.UTC);
+    } else if (value instanceof OffsetDateTime) {
+      return ((OffsetDateTime) value).toInstant();
+    } else if (value instanceof ZonedDateTime) {
+      return ((ZonedDateTime) value).toInstant();
+    } else if (value instanceof LocalDate) {
+      return ((LocalDate) value).atStartOfDay().toInstant(ZoneOffset.UTC);
+    } else if (value instanceof Date) {
+      return ((Date) value).toInstant();
+    } else if (value instanceof String) {
+      return FilterValues.parseDateTime((String) value);
+    }
+    return null;
+  }
+
+  private static boolean isPresent(Object value) {
+    if (value instanceof String) {
+      return !((String) value).isEmpty();
+    }
+    return value != null;
+  }
+
+  private static final class ResolvedAttribute {
+    final Attribute attribute;
+    final ValueResolver resolver;
+
+    ResolvedAttribute(Attribute attribute, ValueResolver resolver) {
+      this.attribute = attribute;
+      this.resolver = resolver;
+    }
+  }
+
+  /**
+   * Walks from a source object to the values of an attribute, stopping as soon
+   * as one of them satisfies the test.
+   */
+  private interface ValueResolver {
+    boolean anyMatch(Object source, Predicate<Object> test);
+  }
+
+  private static final ValueResolver TERMINAL = (source, test) -> test.test(source);
+
+  private static final class ExtensionResolver implements ValueResolver {
+    private final String urn;
+    private final ValueResolver next;
+
+    ExtensionResolver(String urn, ValueResolver next) {
+      this.urn = urn;
+      this.next = next;
+    }
+
+    @Override
+    public boolean anyMatch(Object source, Predicate<Object> test) {
+      if (!(source instanceof ScimResource)) {
+        return false;
+      }
+      Object extension = ((ScimResource) source).getExtension(urn);
+      return extension != null && next.anyMatch(extension, test);
+    }
+  }
+
+  private static final class FieldResolver implements ValueResolver {
+    private final Field field;
+    private final ValueResolver next;
+
+    FieldResolver(Field field, ValueResolver next) {
+      this.field = field;
+      this.next = next;
+    }
+
+    @Override
+    public boolean anyMatch(Object source, Predicate<Object> test) {
+      if (source == null || !field.getDeclaringClass().isInstance(source)) {
+        return false;
+      }
+      Object value;
+      try {
+        value = field.get(source);
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Unable to read " + field, e);
+      }
+      if (value == null) {
+        return false;
+      }
+      if (value instanceof Collection) {
+        for (Object element : (Collection<?>) value) {
+          if (element != null && next.anyMatch(element, test)) {
+            return true;
+          }
+        }
+        return false;
+      }
+      if (value.getClass().isArray() && !(value instanceof byte[])) {
+        int length = Array.getLength(value);
+        for (int i = 0; i < length; i++) {
+          Object element = Array.get(value, i);
+          if (element != null && next.anyMatch(element, test)) {
+            return true;
+          }
+        }
+        return false;
+      }
+      return next.anyMatch(value, test);
+    }
+  }
+}
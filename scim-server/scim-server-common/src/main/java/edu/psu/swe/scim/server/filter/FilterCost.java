@@ -0,0 +1,57 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.filter;
+
+import lombok.Value;
+
+/**
+ * The estimated complexity of a filter as computed by the
+ * {@link FilterCostEstimator}.
+ */
+@Value
+public class FilterCost {
+
+  /**
+   * The deepest nesting of groups and value paths.
+   */
+  int depth;
+
+  /**
+   * The number of comparison and presence terms.
+   */
+  int terms;
+
+  /**
+   * The number of <code>co</code>, <code>sw</code> and <code>ew</code> terms.
+   */
+  int substringTerms;
+
+  int valuePaths;
+
+  int extensionTerms;
+
+  /**
+   * The estimated relative evaluation cost per resource, a single equality
+   * test costs 1.
+   */
+  int cost;
+
+}
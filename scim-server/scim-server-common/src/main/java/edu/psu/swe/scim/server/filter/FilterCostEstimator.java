@@ -0,0 +1,193 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.filter;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.annotation.ScimResourceType;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeComparisonExpression;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeInExpression;
+import edu.psu.swe.scim.spec.protocol.filter.AttributePresentExpression;
+import edu.psu.swe.scim.spec.protocol.filter.CompareOperator;
+import edu.psu.swe.scim.spec.protocol.filter.FilterExpression;
+import edu.psu.swe.scim.spec.protocol.filter.GroupExpression;
+import edu.psu.swe.scim.spec.protocol.filter.LogicalExpression;
+import edu.psu.swe.scim.spec.protocol.filter.ValuePathExpression;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.schema.Schema;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
+
+/**
+ * Estimates how expensive a filter is to evaluate so that the server can
+ * reject filters over the limits of the
+ * {@link edu.psu.swe.scim.server.configuration.ServerConfiguration} before a
+ * provider spends time on them.
+ * 
+ * The cost of a term is multiplied by {@value #SUBSTRING_FACTOR} for
+ * <code>co</code> and <code>ew</code>, by {@value #PREFIX_FACTOR} for
+ * <code>sw</code>, and by {@value #FAN_OUT_FACTOR} when it has to be
+ * evaluated against every value of a multi-valued attribute (including the
+ * inside of a value path). Extension attributes add
+ * {@value #EXTENSION_COST}.
+ * 
+ * @see edu.psu.swe.scim.server.configuration.ServerConfiguration
+ */
+@Named
+public class FilterCostEstimator {
+
+  static final int TERM_COST = 1;
+  static final int PREFIX_FACTOR = 2;
+  static final int SUBSTRING_FACTOR = 4;
+  static final int FAN_OUT_FACTOR = 4;
+  static final int EXTENSION_COST = 1;
+
+  private final Registry registry;
+
+  @Inject
+  public FilterCostEstimator(Registry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Estimates the cost of the filter using the schema of the resource class,
+   * which may be null if it isn't known.
+   */
+  public <T extends ScimResource> FilterCost estimate(Filter filter, Class<T> resourceClass) {
+    Schema schema = null;
+    ScimResourceType scimResourceType = resourceClass != null ? resourceClass.getAnnotation(ScimResourceType.class) : null;
+    if (scimResourceType != null && registry != null) {
+      schema = registry.getSchema(scimResourceType.schema());
+    }
+    return estimate(filter != null ? filter.getExpression() : null, schema);
+  }
+
+  /**
+   * @param schema the base schema of the filtered resource type, without it
+   *          multi-valued attributes are only recognized inside value paths
+   */
+  public FilterCost estimate(FilterExpression expression, Schema schema) {
+    Estimate estimate = new Estimate(schema);
+    if (expression != null) {
+      estimate.depth = 1;
+      estimate.cost = estimate.visit(expression, 1, false);
+    }
+    return new FilterCost(estimate.depth, estimate.terms, estimate.substringTerms, estimate.valuePaths, estimate.extensionTerms, estimate.cost);
+  }
+
+  private static class Estimate {
+
+    private final Schema schema;
+
+    int depth;
+    int terms;
+    int substringTerms;
+    int valuePaths;
+    int extensionTerms;
+    int cost;
+
+    Estimate(Schema schema) {
+      this.schema = schema;
+    }
+
+    /**
+     * @return the cost of the expression
+     */
+    int visit(FilterExpression expression, int level, boolean inValuePath) {
+      depth = Math.max(depth, level);
+
+      if (expression instanceof LogicalExpression) {
+        LogicalExpression logicalExpression = (LogicalExpression) expression;
+        return add(visit(logicalExpression.getLeft(), level, inValuePath), visit(logicalExpression.getRight(), level, inValuePath));
+      } else if (expression instanceof AttributeInExpression) {
+        // evaluated as a single set lookup
+        AttributeInExpression inExpression = (AttributeInExpression) expression;
+        terms += inExpression.getCompareValues().size();
+        return termCost(inExpression.getAttributePath(), CompareOperator.EQ, inValuePath);
+      } else if (expression instanceof GroupExpression) {
+        return visit(((GroupExpression) expression).getFilterExpression(), level + 1, inValuePath);
+      } else if (expression instanceof AttributePresentExpression) {
+        terms++;
+        return termCost(((AttributePresentExpression) expression).getAttributePath(), null, inValuePath);
+      } else if (expression instanceof AttributeComparisonExpression) {
+        AttributeComparisonExpression comparison = (AttributeComparisonExpression) expression;
+        terms++;
+        return termCost(comparison.getAttributePath(), comparison.getOperation(), inValuePath);
+      } else if (expression instanceof ValuePathExpression) {
+        ValuePathExpression valuePathExpression = (ValuePathExpression) expression;
+        valuePaths++;
+        FilterExpression attributeExpression = valuePathExpression.getAttributeExpression();
+        if (attributeExpression == null) {
+          terms++;
+          return TERM_COST;
+        }
+        return multiply(visit(attributeExpression, level + 1, true), FAN_OUT_FACTOR);
+      }
+      terms++;
+      return TERM_COST;
+    }
+
+    private int termCost(AttributeReference attributePath, CompareOperator operation, boolean inValuePath) {
+      int termCost = TERM_COST;
+      if (operation == CompareOperator.CO || operation == CompareOperator.EW) {
+        substringTerms++;
+        termCost *= SUBSTRING_FACTOR;
+      } else if (operation == CompareOperator.SW) {
+        substringTerms++;
+        termCost *= PREFIX_FACTOR;
+      }
+      // the fan-out of value path terms is accounted for by the value path
+      if (!inValuePath && isMultiValued(attributePath)) {
+        termCost *= FAN_OUT_FACTOR;
+      }
+      if (!inValuePath && isExtension(attributePath)) {
+        extensionTerms++;
+        termCost += EXTENSION_COST;
+      }
+      return termCost;
+    }
+
+    private boolean isExtension(AttributeReference attributePath) {
+      return attributePath.getUrn() != null && (schema == null || !attributePath.getUrn().equalsIgnoreCase(schema.getId()));
+    }
+
+    private boolean isMultiValued(AttributeReference attributePath) {
+      if (schema == null || isExtension(attributePath)) {
+        return false;
+      }
+      Attribute attribute = schema.getAttribute(attributePath.getAttributeName());
+      return attribute != null && attribute.isMultiValued();
+    }
+
+    private static int add(int a, int b) {
+      long sum = (long) a + b;
+      return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+    }
+
+    private static int multiply(int a, int b) {
+      long product = (long) a * b;
+      return product > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) product;
+    }
+  }
+}
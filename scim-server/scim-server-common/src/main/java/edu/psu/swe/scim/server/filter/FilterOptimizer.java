@@ -0,0 +1,322 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.filter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.annotation.ScimResourceType;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeComparisonExpression;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeInExpression;
+import edu.psu.swe.scim.spec.protocol.filter.AttributePresentExpression;
+import edu.psu.swe.scim.spec.protocol.filter.CompareOperator;
+import edu.psu.swe.scim.spec.protocol.filter.FilterExpression;
+import edu.psu.swe.scim.spec.protocol.filter.GroupExpression;
+import edu.psu.swe.scim.spec.protocol.filter.LogicalExpression;
+import edu.psu.swe.scim.spec.protocol.filter.LogicalOperator;
+import edu.psu.swe.scim.spec.protocol.filter.ValuePathExpression;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.schema.Schema;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Uniqueness;
+
+/**
+ * Rewrites a parsed filter into an equivalent one that is cheaper to
+ * evaluate:
+ * 
+ * <ul>
+ * <li>redundant groups and double negations are removed and NOT is pushed
+ * down to the comparisons (De Morgan), where <code>not (x eq v)</code>
+ * becomes <code>x ne v</code> and <code>not (x pr)</code> becomes
+ * <code>x eq null</code></li>
+ * <li>AND and OR chains are flattened and duplicate terms removed</li>
+ * <li><code>x eq a or x eq b</code> is folded into an
+ * {@link AttributeInExpression}</li>
+ * <li>the terms of an AND are ordered by estimated cost so that equality on
+ * unique attributes runs first and substring matches on multi-valued
+ * attributes run last</li>
+ * </ul>
+ * 
+ * The rewrites follow the semantics of the {@link FilterCompiler}, where
+ * <code>ne</code> matches absent values and multi-valued attributes, so the
+ * server only passes optimized filters to providers that return true from
+ * {@link edu.psu.swe.scim.server.provider.Provider#isOptimizedFilterSupported()}.
+ * The returned tree may share leaf nodes with the original one.
+ */
+@Named
+public class FilterOptimizer {
+
+  private static final int UNIQUE_EQUALITY_COST = 0;
+  private static final int EQUALITY_COST = 1;
+  private static final int PRESENCE_COST = 2;
+  private static final int ORDERING_COST = 3;
+  private static final int PREFIX_COST = 4;
+  private static final int SUBSTRING_COST = 5;
+  private static final int MULTI_VALUED_COST = 3;
+  private static final int EXTENSION_COST = 1;
+  private static final int VALUE_PATH_COST = 3;
+
+  private final Registry registry;
+
+  @Inject
+  public FilterOptimizer(Registry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Optimizes the filter using the schema of the resource class for the cost
+   * estimates, the class may be null if it isn't known.
+   */
+  public <T extends ScimResource> Filter optimize(Filter filter, Class<T> resourceClass) {
+    if (filter == null || filter.getExpression() == null) {
+      return filter;
+    }
+    Schema schema = null;
+    ScimResourceType scimResourceType = resourceClass != null ? resourceClass.getAnnotation(ScimResourceType.class) : null;
+    if (scimResourceType != null && registry != null) {
+      schema = registry.getSchema(scimResourceType.schema());
+    }
+    return new Filter(optimize(filter.getExpression(), schema));
+  }
+
+  /**
+   * @param schema the base schema of the filtered resource type, without it
+   *          the cost estimates can't take uniqueness and multi-valued
+   *          attributes into account
+   */
+  public FilterExpression optimize(FilterExpression expression, Schema schema) {
+    if (expression == null) {
+      return null;
+    }
+    return normalize(expression, false, schema);
+  }
+
+  private FilterExpression normalize(FilterExpression expression, boolean negated, Schema schema) {
+    if (expression instanceof LogicalExpression) {
+      LogicalExpression logicalExpression = (LogicalExpression) expression;
+      LogicalOperator operator = negated ? flip(logicalExpression.getOperator()) : logicalExpression.getOperator();
+
+      Set<FilterExpression> terms = new LinkedHashSet<>();
+      addTerms(terms, normalize(logicalExpression.getLeft(), negated, schema), operator);
+      addTerms(terms, normalize(logicalExpression.getRight(), negated, schema), operator);
+
+      List<FilterExpression> termList = new ArrayList<>(terms);
+      if (operator == LogicalOperator.OR) {
+        termList = foldEqualities(termList);
+      } else {
+        // List.sort is stable so terms of equal cost keep their order
+        termList.sort(Comparator.comparingInt(term -> cost(term, schema)));
+      }
+      return join(termList, operator);
+    } else if (expression instanceof AttributeInExpression) {
+      return negated ? new GroupExpression(true, expression) : expression;
+    } else if (expression instanceof GroupExpression) {
+      GroupExpression groupExpression = (GroupExpression) expression;
+      return normalize(groupExpression.getFilterExpression(), negated != groupExpression.isNot(), schema);
+    } else if (expression instanceof AttributePresentExpression) {
+      AttributeReference attributePath = ((AttributePresentExpression) expression).getAttributePath();
+      return negated ? new AttributeComparisonExpression(attributePath, CompareOperator.EQ, null) : expression;
+    } else if (expression instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparison = (AttributeComparisonExpression) expression;
+      if (!negated) {
+        return expression;
+      } else if (comparison.getOperation() == CompareOperator.EQ) {
+        return new AttributeComparisonExpression(comparison.getAttributePath(), CompareOperator.NE, comparison.getCompareValue());
+      } else if (comparison.getOperation() == CompareOperator.NE) {
+        return new AttributeComparisonExpression(comparison.getAttributePath(), CompareOperator.EQ, comparison.getCompareValue());
+      }
+      // not (x gt v) also matches resources without x, so it can't become x le v
+      return new GroupExpression(true, expression);
+    } else if (expression instanceof ValuePathExpression) {
+      ValuePathExpression valuePathExpression = (ValuePathExpression) expression;
+      FilterExpression attributeExpression = valuePathExpression.getAttributeExpression();
+      ValuePathExpression optimized = attributeExpression == null ? valuePathExpression : new ValuePathExpression(valuePathExpression.getAttributePath(), normalize(attributeExpression, false, schema));
+      return negated ? new GroupExpression(true, optimized) : optimized;
+    }
+    return negated ? new GroupExpression(true, expression) : expression;
+  }
+
+  private static LogicalOperator flip(LogicalOperator operator) {
+    return operator == LogicalOperator.AND ? LogicalOperator.OR : LogicalOperator.AND;
+  }
+
+  /**
+   * Adds the expression to the terms, or its terms if it's a chain of the
+   * same operator.
+   */
+  private static void addTerms(Set<FilterExpression> terms, FilterExpression expression, LogicalOperator operator) {
+    if (expression instanceof LogicalExpression && ((LogicalExpression) expression).getOperator() == operator) {
+      LogicalExpression logicalExpression = (LogicalExpression) expression;
+      addTerms(terms, logicalExpression.getLeft(), operator);
+      addTerms(terms, logicalExpression.getRight(), operator);
+    } else {
+      terms.add(expression);
+    }
+  }
+
+  private static FilterExpression join(List<FilterExpression> terms, LogicalOperator operator) {
+    FilterExpression joined = terms.get(0);
+    for (int i = 1; i < terms.size(); i++) {
+      joined = new LogicalExpression(joined, operator, terms.get(i));
+    }
+    return joined;
+  }
+
+  /**
+   * Replaces equality comparisons of the same attribute with one
+   * {@link AttributeInExpression} at the position of the first one.
+   */
+  private static List<FilterExpression> foldEqualities(List<FilterExpression> terms) {
+    Map<String, List<Object>> valuesByAttribute = new LinkedHashMap<>();
+    Map<String, AttributeReference> attributes = new LinkedHashMap<>();
+    for (FilterExpression term : terms) {
+      AttributeReference attributePath = equalityPath(term);
+      if (attributePath != null) {
+        String key = attributePath.getFullyQualifiedAttributeName().toLowerCase(Locale.ROOT);
+        attributes.putIfAbsent(key, attributePath);
+        List<Object> values = valuesByAttribute.computeIfAbsent(key, k -> new ArrayList<>());
+        for (Object value : equalityValues(term)) {
+          if (!values.contains(value)) {
+            values.add(value);
+          }
+        }
+      }
+    }
+
+    List<FilterExpression> folded = new ArrayList<>(terms.size());
+    for (FilterExpression term : terms) {
+      AttributeReference attributePath = equalityPath(term);
+      if (attributePath == null) {
+        folded.add(term);
+        continue;
+      }
+      String key = attributePath.getFullyQualifiedAttributeName().toLowerCase(Locale.ROOT);
+      List<Object> values = valuesByAttribute.remove(key);
+      if (values == null) {
+        // already folded into an earlier term
+        continue;
+      }
+      if (values.size() == 1 && term instanceof AttributeComparisonExpression) {
+        folded.add(term);
+      } else {
+        folded.add(new AttributeInExpression(attributes.get(key), values));
+      }
+    }
+    return folded;
+  }
+
+  private static AttributeReference equalityPath(FilterExpression term) {
+    if (term instanceof AttributeInExpression) {
+      return ((AttributeInExpression) term).getAttributePath();
+    } else if (term instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparison = (AttributeComparisonExpression) term;
+      if (comparison.getOperation() == CompareOperator.EQ && comparison.getCompareValue() != null) {
+        return comparison.getAttributePath();
+      }
+    }
+    return null;
+  }
+
+  private static List<Object> equalityValues(FilterExpression term) {
+    if (term instanceof AttributeInExpression) {
+      return ((AttributeInExpression) term).getCompareValues();
+    }
+    List<Object> values = new ArrayList<>(1);
+    values.add(((AttributeComparisonExpression) term).getCompareValue());
+    return values;
+  }
+
+  /**
+   * Estimates the relative cost of evaluating a term, the lower the cost the
+   * earlier it's evaluated in an AND.
+   */
+  private static int cost(FilterExpression expression, Schema schema) {
+    if (expression instanceof LogicalExpression) {
+      LogicalExpression logicalExpression = (LogicalExpression) expression;
+      return 1 + Math.max(cost(logicalExpression.getLeft(), schema), cost(logicalExpression.getRight(), schema));
+    } else if (expression instanceof AttributeInExpression) {
+      return attributeCost(((AttributeInExpression) expression).getAttributePath(), schema, true);
+    } else if (expression instanceof GroupExpression) {
+      return cost(((GroupExpression) expression).getFilterExpression(), schema);
+    } else if (expression instanceof AttributePresentExpression) {
+      return PRESENCE_COST + attributeCost(((AttributePresentExpression) expression).getAttributePath(), schema, false) - EQUALITY_COST;
+    } else if (expression instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparison = (AttributeComparisonExpression) expression;
+      int base = attributeCost(comparison.getAttributePath(), schema, comparison.getOperation() == CompareOperator.EQ) - EQUALITY_COST;
+      if (comparison.getCompareValue() == null) {
+        return base + PRESENCE_COST;
+      }
+      switch (comparison.getOperation()) {
+      case EQ:
+        return base + EQUALITY_COST;
+      case SW:
+        return base + PREFIX_COST;
+      case CO:
+      case EW:
+        return base + SUBSTRING_COST;
+      default:
+        return base + ORDERING_COST;
+      }
+    } else if (expression instanceof ValuePathExpression) {
+      FilterExpression attributeExpression = ((ValuePathExpression) expression).getAttributeExpression();
+      return VALUE_PATH_COST + MULTI_VALUED_COST + (attributeExpression != null ? cost(attributeExpression, schema) : PRESENCE_COST);
+    }
+    return SUBSTRING_COST + MULTI_VALUED_COST;
+  }
+
+  /**
+   * @return the cost of an equality test on the attribute, which is lowest
+   *         for unique attributes and higher for multi-valued and extension
+   *         attributes
+   */
+  private static int attributeCost(AttributeReference attributePath, Schema schema, boolean equality) {
+    if (schema == null) {
+      return EQUALITY_COST;
+    }
+    if (attributePath.getUrn() != null && !attributePath.getUrn().equalsIgnoreCase(schema.getId())) {
+      return EQUALITY_COST + EXTENSION_COST;
+    }
+    Attribute attribute = schema.getAttribute(attributePath.getAttributeName());
+    if (attribute == null) {
+      return EQUALITY_COST;
+    }
+    int cost = attribute.isMultiValued() ? EQUALITY_COST + MULTI_VALUED_COST : EQUALITY_COST;
+    if (attributePath.getSubAttributeName() != null && attribute.getAttribute(attributePath.getSubAttributeName()) != null) {
+      attribute = attribute.getAttribute(attributePath.getSubAttributeName());
+    }
+    if (equality && cost == EQUALITY_COST && attribute.getUniqueness() != null && attribute.getUniqueness() != Uniqueness.NONE) {
+      return UNIQUE_EQUALITY_COST;
+    }
+    return cost;
+  }
+}
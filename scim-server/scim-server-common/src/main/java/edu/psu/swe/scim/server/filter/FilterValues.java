@@ -0,0 +1,85 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.filter;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Conversions of filter compare values shared by the FilterCompiler and the
+ * translators that turn filters into database queries, so that every
+ * evaluation of a filter reads its values the same way.
+ */
+public final class FilterValues {
+
+  /**
+   * The escape character used in LIKE patterns built by
+   * {@link #escapeLike(String)}.
+   */
+  public static final char LIKE_ESCAPE = '\\';
+
+  private FilterValues() {
+  }
+
+  /**
+   * Escapes the LIKE wildcards in a value so it only matches itself inside a
+   * pattern, to be used with <code>ESCAPE '\'</code>.
+   */
+  public static String escapeLike(String value) {
+    StringBuilder sb = new StringBuilder(value.length() + 8);
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+        sb.append(LIKE_ESCAPE);
+      }
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Parses a date time compare value, date times without an offset and plain
+   * dates are taken to be UTC.
+   * 
+   * @return the instant, or null if the value isn't a date time
+   */
+  public static Instant parseDateTime(String value) {
+    try {
+      return OffsetDateTime.parse(value).toInstant();
+    } catch (DateTimeParseException e) {
+      // try the formats without an offset
+    }
+    try {
+      return LocalDateTime.parse(value).toInstant(ZoneOffset.UTC);
+    } catch (DateTimeParseException e) {
+      // try a plain date
+    }
+    try {
+      return LocalDate.parse(value).atStartOfDay().toInstant(ZoneOffset.UTC);
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.provider;
+
+import java.io.UnsupportedEncodingException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.ws.rs.core.EntityTag;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import edu.psu.swe.scim.server.provider.annotations.ScimEtagStrategy;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+
+/**
+ * Computes the entity tags of the resources of a provider, which are
+ * compared with the If-Match and If-None-Match headers of requests and
+ * returned as <code>meta.version</code>.
+ * 
+ * A provider chooses its strategy with the {@link ScimEtagStrategy}
+ * annotation, or supplies its own versions by implementing this interface.
+ * Without either the tag is a hash of the resource's content.
+ */
+public interface EtagStrategy {
+
+  /**
+   * @param resource the resource as returned by the provider
+   * @return the entity tag of the resource, weak tags never match the
+   *         If-Match header of an update
+   */
+  EntityTag generateEtag(ScimResource resource) throws JsonProcessingException, NoSuchAlgorithmException, UnsupportedEncodingException;
+}
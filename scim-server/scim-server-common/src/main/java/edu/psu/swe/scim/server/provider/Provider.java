@@ -20,7 +20,9 @@
 package edu.psu.swe.scim.server.provider;
 
 import java.util.List;
+import java.util.stream.Stream;
 
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
@@ -29,6 +31,7 @@ import edu.psu.swe.scim.server.exception.UnableToDeleteResourceException;
 import edu.psu.swe.scim.server.exception.UnableToRetrieveExtensionsException;
 import edu.psu.swe.scim.server.exception.UnableToRetrieveResourceException;
 import edu.psu.swe.scim.server.exception.UnableToUpdateResourceException;
+import edu.psu.swe.scim.server.provider.extensions.ScimRequestContext;
 import edu.psu.swe.scim.server.rest.BaseResourceTypeResourceImpl;
 import edu.psu.swe.scim.spec.protocol.filter.FilterResponse;
 import edu.psu.swe.scim.spec.protocol.search.Filter;
@@ -77,7 +80,48 @@ public interface Provider<T extends ScimResource> {
    *         retrieved.
    */
   T get(String id) throws UnableToRetrieveResourceException;
+
+  /**
+   * Retrieves the ScimResource associated with the provided identifier for a
+   * request that may only display some of its attributes.  A provider MAY
+   * leave out attributes for which
+   * {@link ScimRequestContext#isReturned(edu.psu.swe.scim.spec.schema.Schema.Attribute)}
+   * is false, like a large multi-valued attribute, the server removes them
+   * from the response anyway.  The entity tag of a resource must not depend
+   * on the attributes requested, so this is only called for a projected
+   * request if {@link #getVersion(String)} returns the tag, otherwise the
+   * full resource is loaded with {@link #get(String)}.
+   * 
+   * By default the context is ignored and {@link #get(String)} is called.
+   * 
+   * @param id The identifier of the target ScimResource.
+   * @param requestContext The attributes the request displays.
+   * @return The requested ScimResource.
+   * @throws UnableToRetrieveResourceException When the ScimResource cannot be
+   *         retrieved.
+   */
+  default T get(String id, ScimRequestContext requestContext) throws UnableToRetrieveResourceException {
+    return get(id);
+  }
   
+  /**
+   * Optionally returns the current entity tag of the ScimResource with the
+   * provided identifier without loading it, like a row version counter, so
+   * that conditional requests (If-Match, If-None-Match) can be answered
+   * cheaply.  The tag MUST be the one the provider's
+   * {@link EtagStrategy} computes for the loaded resource.
+   * 
+   * @param id The identifier of the target ScimResource.
+   * @return The entity tag of the resource, or null (the default) if the
+   *         provider doesn't know it without loading the resource or the
+   *         resource doesn't exist.
+   * @throws UnableToRetrieveResourceException When the version cannot be
+   *         retrieved, the server then loads the resource instead.
+   */
+  default EntityTag getVersion(String id) throws UnableToRetrieveResourceException {
+    return null;
+  }
+
   /**
    * Finds and retrieves all ScimResource objects known to the persistence
    * layer that match the criteria specified by the passed Filter.  The results
@@ -88,18 +132,105 @@ public interface Provider<T extends ScimResource> {
    * @param filter The filter that determines the ScimResources that will be
    *        part of the ResultList
    * @param pageRequest For paged requests, this object specifies the start
-   *        index and number of ScimResources that should be returned.
+   *        index and number of ScimResources that should be returned.  The
+   *        server normalizes it: the start index is at least 1 and the count
+   *        is at most the server's filterMaxResults.
    * @param sortRequest Specifies which fields the returned ScimResources
    *        should be sorted by and whether the sort order is ascending or
    *        descending.
    * @return A list of the ScimResources that pass the filter criteria,
    *         truncated to match the requested "page" and sorted according
-   *         to the provided requirements.
+   *         to the provided requirements, with the total number of matching
+   *         ScimResources.  A provider that returns all matches instead of
+   *         the page is paged by the server, if there are more matches than
+   *         the server's filterMaxResults the request fails with tooMany.
    * @throws UnableToRetrieveResourceException If one or more ScimResouces
    *         cannot be retrieved.
    */
   FilterResponse<T> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws UnableToRetrieveResourceException;
+
+  /**
+   * Variant of {@link #find(Filter, PageRequest, SortRequest)} for a request
+   * that may only display some attributes of the resources, see
+   * {@link #get(String, ScimRequestContext)}.  Attributes that are left out
+   * must not be needed to evaluate the filter or the sort.
+   * 
+   * By default the context is ignored and
+   * {@link #find(Filter, PageRequest, SortRequest)} is called.
+   */
+  default FilterResponse<T> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest, ScimRequestContext requestContext) throws UnableToRetrieveResourceException {
+    return find(filter, pageRequest, sortRequest);
+  }
+
+  /**
+   * Whether the filters passed to <code>find</code> and
+   * <code>findStream</code> may be rewritten by the server's
+   * {@link edu.psu.swe.scim.server.filter.FilterOptimizer}.  The rewrites
+   * push NOT down to the comparisons and fold equalities into an
+   * {@link edu.psu.swe.scim.spec.protocol.filter.AttributeInExpression},
+   * which is only equivalent under the semantics of the
+   * {@link edu.psu.swe.scim.server.filter.FilterCompiler}: <code>ne</code>
+   * matches a resource if none of the attribute's values are equal,
+   * including when the attribute is absent.  Providers that evaluate filters
+   * with the FilterCompiler may return true.
+   *
+   * @return false (the default) to receive the filter as the client sent it
+   */
+  default boolean isOptimizedFilterSupported() {
+    return false;
+  }
+
+  /**
+   * Optional variant of {@link #find(Filter, PageRequest, SortRequest)} whose
+   * resources are produced while the response is written, so a large page
+   * doesn't have to be held in memory.  The stream MUST hold only the
+   * requested page, the server doesn't page it.
+   * 
+   * @param filter The filter that determines the ScimResources that will be
+   *        part of the ResultList
+   * @param pageRequest The normalized page request, see
+   *        {@link #find(Filter, PageRequest, SortRequest)}.
+   * @param sortRequest Specifies which fields the returned ScimResources
+   *        should be sorted by and whether the sort order is ascending or
+   *        descending.
+   * @return The resources of the requested page with the total number of
+   *         matching ScimResources, or null (the default) if the provider
+   *         doesn't stream and <code>find</code> should be called instead.
+   * @throws UnableToRetrieveResourceException If the ScimResources cannot be
+   *         retrieved.
+   */
+  default StreamingFilterResponse<T> findStream(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws UnableToRetrieveResourceException {
+    return null;
+  }
+
+  /**
+   * Variant of {@link #findStream(Filter, PageRequest, SortRequest)} for a
+   * request that may only display some attributes of the resources, see
+   * {@link #find(Filter, PageRequest, SortRequest, ScimRequestContext)}.
+   * 
+   * By default the context is ignored and
+   * {@link #findStream(Filter, PageRequest, SortRequest)} is called.
+   */
+  default StreamingFilterResponse<T> findStream(Filter filter, PageRequest pageRequest, SortRequest sortRequest, ScimRequestContext requestContext) throws UnableToRetrieveResourceException {
+    return findStream(filter, pageRequest, sortRequest);
+  }
   
+  /**
+   * The resources already stored when the provider is registered.  The
+   * server adds their unique values to its
+   * {@link edu.psu.swe.scim.server.schema.UniquenessIndex}, which otherwise
+   * only knows the values written since it started.  The stream is closed
+   * once it has been read.
+   * 
+   * @return The stored resources, or null (the default) if the provider
+   *         enforces the uniqueness of its existing data itself.
+   * @throws UnableToRetrieveResourceException If the ScimResources cannot be
+   *         retrieved.
+   */
+  default Stream<T> getStoredResources() throws UnableToRetrieveResourceException {
+    return null;
+  }
+
   /**
    * Deletes the ScimResource with the provided identifier (if it exists).
    * This interface makes no distinction between hard and soft deletes but
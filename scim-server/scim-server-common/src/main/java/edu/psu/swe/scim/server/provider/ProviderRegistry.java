@@ -30,6 +30,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
@@ -41,8 +42,11 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 
 import edu.psu.swe.scim.common.ScimUtils;
 import edu.psu.swe.scim.server.exception.InvalidProviderException;
+import edu.psu.swe.scim.server.exception.ScimServerException;
 import edu.psu.swe.scim.server.exception.UnableToRetrieveExtensionsException;
+import edu.psu.swe.scim.server.exception.UnableToRetrieveResourceException;
 import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.server.schema.UniquenessIndex;
 import edu.psu.swe.scim.spec.annotation.ScimAttribute;
 import edu.psu.swe.scim.spec.annotation.ScimExtensionType;
 import edu.psu.swe.scim.spec.annotation.ScimResourceIdReference;
@@ -57,6 +61,7 @@ import edu.psu.swe.scim.spec.schema.Schema;
 import edu.psu.swe.scim.spec.schema.Schema.Attribute;
 import edu.psu.swe.scim.spec.schema.Schema.Attribute.AddAction;
 import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;
+import edu.psu.swe.scim.spec.schema.SchemaFactory;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 
@@ -89,6 +94,9 @@ public class ProviderRegistry {
 
   @Inject
   ScimExtensionRegistry scimExtensionRegistry;
+
+  @Inject
+  UniquenessIndex uniquenessIndex;
   
   public ProviderRegistry() {}
   
@@ -128,6 +136,27 @@ public class ProviderRegistry {
 
     registry.addResourceType(resourceType);
     providerMap.put(clazz, providerInstance);
+    registry.scimResourceClassRegistered(clazz);
+    addStoredUniqueValues(clazz, provider);
+  }
+
+  private <T extends ScimResource> void addStoredUniqueValues(Class<T> clazz, Provider<T> provider) {
+    if (uniquenessIndex == null) {
+      return;
+    }
+    try (Stream<T> storedResources = provider.getStoredResources()) {
+      if (storedResources != null) {
+        storedResources.forEach(resource -> {
+          try {
+            uniquenessIndex.add(resource);
+          } catch (ScimServerException e) {
+            log.warn("Stored " + clazz.getSimpleName() + " " + resource.getId() + " has a non unique value: " + e.getMessage());
+          }
+        });
+      }
+    } catch (UnableToRetrieveResourceException | RuntimeException e) {
+      log.error("Unable to add the unique values of the stored " + clazz.getSimpleName() + " resources", e);
+    }
   }
 
   @SuppressWarnings("unchecked")
@@ -182,6 +211,12 @@ public class ProviderRegistry {
   }
 
   public static Schema generateBaseSchema(Class<?> clazz) throws InvalidProviderException {
+    if (clazz.getAnnotation(ScimResourceType.class) != null) {
+      Schema schema = createGeneratedSchema(clazz);
+      if (schema != null) {
+        return schema;
+      }
+    }
     List<Field> fieldList = ScimUtils.getFieldsUpTo(clazz, BaseResource.class);
 
     return generateSchema(clazz, fieldList);
@@ -189,9 +224,41 @@ public class ProviderRegistry {
   
   public static Schema generateExtensionSchema(Class<?> clazz) throws InvalidProviderException {
     log.debug("----> In generateExtensionSchema");
+
+    // A factory generated for a class that is also a resource type was built
+    // from the resource's fields
+    if (clazz.getAnnotation(ScimResourceType.class) == null) {
+      Schema schema = createGeneratedSchema(clazz);
+      if (schema != null) {
+        return schema;
+      }
+    }
     
     return generateSchema(clazz, ScimUtils.getFieldsUpTo(clazz, Object.class));
   }
+
+  /**
+   * Builds the schema of <code>clazz</code> with the {@link SchemaFactory}
+   * generated for it at compile time, if there is one.
+   * 
+   * @return the schema or null if the class has to be scanned by reflection
+   */
+  static Schema createGeneratedSchema(Class<?> clazz) {
+    Class<?> factoryClass;
+    try {
+      factoryClass = Class.forName(clazz.getName() + SchemaFactory.CLASS_NAME_SUFFIX, true, clazz.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+
+    try {
+      SchemaFactory schemaFactory = (SchemaFactory) factoryClass.newInstance();
+      return schemaFactory.createSchema();
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      log.warn("Unable to use the generated schema factory {}, scanning {} instead", factoryClass.getName(), clazz.getName(), e);
+      return null;
+    }
+  }
   
   public static Schema generateSchema(Class<?> clazz, List<Field> fieldList) throws InvalidProviderException {
 
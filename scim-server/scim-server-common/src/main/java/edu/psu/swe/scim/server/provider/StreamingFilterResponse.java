@@ -0,0 +1,59 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.provider;
+
+import java.util.stream.Stream;
+
+import lombok.Getter;
+
+/**
+ * A page of the resources matching a filter that are produced while the
+ * response is written, see {@link Provider#findStream}.
+ * 
+ * The server closes the response, and with it the stream, once the
+ * resources are written, so a provider can release a cursor or connection
+ * with {@link Stream#onClose(Runnable)}.
+ *
+ * @param <T> the resource type
+ */
+public class StreamingFilterResponse<T> implements AutoCloseable {
+
+  @Getter
+  private final Stream<T> resources;
+
+  @Getter
+  private final int totalResults;
+
+  /**
+   * @param resources the resources of the requested page
+   * @param totalResults the number of resources matching the filter across
+   *        all pages
+   */
+  public StreamingFilterResponse(Stream<T> resources, int totalResults) {
+    this.resources = resources;
+    this.totalResults = totalResults;
+  }
+
+  @Override
+  public void close() {
+    resources.close();
+  }
+}
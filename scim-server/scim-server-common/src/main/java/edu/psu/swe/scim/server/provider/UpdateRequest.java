@@ -60,7 +60,9 @@ import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
 import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
 import com.flipkart.zjsonpatch.JsonDiff;
 
+import edu.psu.swe.scim.server.exception.UnableToUpdateResourceException;
 import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.server.utility.ResourcePatcher;
 import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
 import edu.psu.swe.scim.spec.protocol.data.PatchOperation;
 import edu.psu.swe.scim.spec.protocol.data.PatchOperation.Type;
@@ -79,8 +81,8 @@ import edu.psu.swe.scim.spec.schema.Schema.Attribute;
 
 @Named
 @Slf4j
-@EqualsAndHashCode
-@ToString
+@EqualsAndHashCode(doNotUseGetters = true)
+@ToString(doNotUseGetters = true)
 public class UpdateRequest<T extends ScimResource> {
   
   private static final String OPERATION = "op";
@@ -125,7 +127,30 @@ public class UpdateRequest<T extends ScimResource> {
     initialized = true;
   }
 
+  /**
+   * @return the resource as it should be stored after the update; for a
+   *         PATCH the operations are applied to a copy of the original
+   * @throws IllegalStateException if a patch operation can not be applied to
+   *         the original, {@link #applyPatch()} reports why
+   */
   public T getResource() {
+    try {
+      return applyPatch();
+    } catch (UnableToUpdateResourceException e) {
+      throw new IllegalStateException("Error applying the patch operations", e);
+    }
+  }
+
+  /**
+   * Applies the patch operations to a copy of the original unless the
+   * resource is already known; {@link #getResource()} returns the same
+   * resource afterwards.
+   * 
+   * @return the resource as it should be stored after the update
+   * @throws UnableToUpdateResourceException if a patch operation can not be
+   *         applied to the original
+   */
+  public T applyPatch() throws UnableToUpdateResourceException {
     if (!initialized) {
       throw new IllegalStateException("UpdateRequest was not initialized");
     }
@@ -134,7 +159,8 @@ public class UpdateRequest<T extends ScimResource> {
       return resource;
     }
 
-    return applyPatchOperations();
+    resource = applyPatchOperations();
+    return resource;
   }
 
   public List<PatchOperation> getPatchOperations() {
@@ -194,8 +220,8 @@ public class UpdateRequest<T extends ScimResource> {
     return set1;
   }
 
-  private T applyPatchOperations() {
-    throw new java.lang.UnsupportedOperationException("PATCH operations are not implemented at this time.");
+  private T applyPatchOperations() throws UnableToUpdateResourceException {
+    return new ResourcePatcher(registry).apply(original, patchOperations);
   }
   
   /**
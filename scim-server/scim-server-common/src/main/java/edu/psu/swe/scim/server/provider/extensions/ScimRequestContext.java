@@ -21,7 +21,9 @@ package edu.psu.swe.scim.server.provider.extensions;
 
 import java.util.Set;
 
+import edu.psu.swe.scim.server.utility.ResourceProjection;
 import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 
@@ -31,5 +33,23 @@ public class ScimRequestContext {
 
   private Set<AttributeReference> attributeReferences;
   private Set<AttributeReference> excludedAttributeReferences;
-  
+
+  /**
+   * The attributes and excludedAttributes resolved against the schemas, null
+   * if they were not resolved.
+   */
+  private ResourceProjection projection;
+
+  public ScimRequestContext(Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) {
+    this(attributeReferences, excludedAttributeReferences, null);
+  }
+
+  /**
+   * @return false if the attribute is not displayed in the response, so a
+   *         provider doesn't have to load it. The sub-attributes of an
+   *         attribute that is not displayed are not displayed either.
+   */
+  public boolean isReturned(Attribute attribute) {
+    return projection == null || projection.isReturned(attribute);
+  }
 }
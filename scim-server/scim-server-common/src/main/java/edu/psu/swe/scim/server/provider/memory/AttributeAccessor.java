@@ -0,0 +1,179 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.provider.memory;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.schema.Schema;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;
+
+/**
+ * Reads the values of an attribute or sub-attribute of a resource through the
+ * java fields bound to its schema, resolved once.
+ */
+final class AttributeAccessor {
+
+  private final String extensionUrn;
+
+  private final Field field;
+
+  private final Field subField;
+
+  private final Type type;
+
+  private final boolean caseExact;
+
+  private AttributeAccessor(String extensionUrn, Field field, Field subField, Type type, boolean caseExact) {
+    this.extensionUrn = extensionUrn;
+    this.field = field;
+    this.subField = subField;
+    this.type = type;
+    this.caseExact = caseExact;
+    field.setAccessible(true);
+    if (subField != null) {
+      subField.setAccessible(true);
+    }
+  }
+
+  static AttributeAccessor of(AttributeReference attributeReference, Schema schema, Registry registry) throws AttributeDoesNotExistException {
+    String extensionUrn = null;
+    Schema container = schema;
+    String urn = attributeReference.getUrn();
+    if (urn != null && !urn.equalsIgnoreCase(schema.getId())) {
+      container = registry.getSchema(urn);
+      if (container == null) {
+        throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+      }
+      extensionUrn = container.getId();
+    }
+
+    Attribute attribute = container.getAttribute(attributeReference.getAttributeName());
+    if (attribute == null || attribute.getField() == null) {
+      throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+    }
+    if (attributeReference.getSubAttributeName() == null) {
+      return new AttributeAccessor(extensionUrn, attribute.getField(), null, attribute.getType(), attribute.isCaseExact());
+    }
+
+    Attribute subAttribute = attribute.getAttribute(attributeReference.getSubAttributeName());
+    if (subAttribute != null && subAttribute.getField() != null) {
+      return new AttributeAccessor(extensionUrn, attribute.getField(), subAttribute.getField(), subAttribute.getType(), subAttribute.isCaseExact());
+    }
+    // sub-attributes the schema doesn't describe, like those of meta
+    Field subField = findField(attribute, attributeReference.getSubAttributeName());
+    if (subField == null) {
+      throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+    }
+    return new AttributeAccessor(extensionUrn, attribute.getField(), subField, subField.getType() == String.class ? Type.STRING : Type.COMPLEX, false);
+  }
+
+  private static Field findField(Attribute attribute, String name) {
+    if (Collection.class.isAssignableFrom(attribute.getField().getType())) {
+      return null;
+    }
+    for (Class<?> c = attribute.getField().getType(); c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        if (field.getName().equalsIgnoreCase(name) && !field.isSynthetic()) {
+          return field;
+        }
+      }
+    }
+    return null;
+  }
+
+  Type getType() {
+    return type;
+  }
+
+  boolean isCaseExact() {
+    return caseExact;
+  }
+
+  boolean isString() {
+    return type == Type.STRING || type == Type.REFERENCE;
+  }
+
+  /**
+   * @return the non-null values of the attribute, multi-valued attributes are
+   *         flattened
+   */
+  List<Object> values(ScimResource resource) {
+    Object container = extensionUrn != null ? resource.getExtension(extensionUrn) : resource;
+    if (container == null) {
+      return Collections.emptyList();
+    }
+    List<Object> values = new ArrayList<>(1);
+    addValues(values, read(field, container), subField);
+    return values;
+  }
+
+  /**
+   * @return the first value, null if there is none
+   */
+  Object firstValue(ScimResource resource) {
+    List<Object> values = values(resource);
+    return values.isEmpty() ? null : values.get(0);
+  }
+
+  /**
+   * @return the value as it's stored in an index, strings that aren't
+   *         caseExact in lower case
+   */
+  Object indexKey(Object value) {
+    if (value instanceof String && !caseExact) {
+      return ((String) value).toLowerCase(Locale.ROOT);
+    }
+    return value instanceof Enum ? ((Enum<?>) value).name() : value;
+  }
+
+  private static void addValues(List<Object> values, Object value, Field subField) {
+    if (value == null) {
+      return;
+    }
+    if (value instanceof Collection) {
+      for (Object element : (Collection<?>) value) {
+        addValues(values, element, subField);
+      }
+    } else if (subField != null) {
+      addValues(values, read(subField, value), null);
+    } else {
+      values.add(value);
+    }
+  }
+
+  private static Object read(Field field, Object source) {
+    try {
+      return field.get(source);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Unable to read " + field, e);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.provider.memory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import edu.psu.swe.scim.spec.resources.ScimResource;
+
+/**
+ * A hash index from the normalized values of one attribute to the ids of the
+ * resources having them, plus the set of ids that have any value (for
+ * <code>pr</code>).
+ * 
+ * Each key is updated atomically, the index as a whole is kept consistent
+ * with the primary storage by the {@link InMemoryProvider}'s write locks.
+ */
+final class AttributeIndex {
+
+  private final AttributeAccessor accessor;
+
+  private final ConcurrentMap<Object, Set<String>> ids = new ConcurrentHashMap<>();
+
+  private final Set<String> presentIds = ConcurrentHashMap.newKeySet();
+
+  AttributeIndex(AttributeAccessor accessor) {
+    this.accessor = accessor;
+  }
+
+  AttributeAccessor getAccessor() {
+    return accessor;
+  }
+
+  void add(String id, ScimResource resource) {
+    List<Object> values = accessor.values(resource);
+    for (Object value : values) {
+      ids.compute(accessor.indexKey(value), (key, keyIds) -> {
+        Set<String> result = keyIds != null ? keyIds : ConcurrentHashMap.newKeySet();
+        result.add(id);
+        return result;
+      });
+    }
+    if (!values.isEmpty()) {
+      presentIds.add(id);
+    }
+  }
+
+  void remove(String id, ScimResource resource) {
+    for (Object value : accessor.values(resource)) {
+      ids.computeIfPresent(accessor.indexKey(value), (key, keyIds) -> {
+        keyIds.remove(id);
+        return keyIds.isEmpty() ? null : keyIds;
+      });
+    }
+    presentIds.remove(id);
+  }
+
+  /**
+   * Removes the entries of the previous version of a resource that the
+   * current version, already added, doesn't have.
+   */
+  void removeStale(String id, ScimResource previous, ScimResource current) {
+    Set<Object> currentKeys = new HashSet<>();
+    List<Object> currentValues = accessor.values(current);
+    for (Object value : currentValues) {
+      currentKeys.add(accessor.indexKey(value));
+    }
+    for (Object value : accessor.values(previous)) {
+      Object key = accessor.indexKey(value);
+      if (!currentKeys.contains(key)) {
+        ids.computeIfPresent(key, (k, keyIds) -> {
+          keyIds.remove(id);
+          return keyIds.isEmpty() ? null : keyIds;
+        });
+      }
+    }
+    if (currentValues.isEmpty()) {
+      presentIds.remove(id);
+    }
+  }
+
+  /**
+   * @return a snapshot of the ids of the resources with the value
+   */
+  Set<String> lookup(Object value) {
+    Set<String> keyIds = ids.get(accessor.indexKey(value));
+    return keyIds != null ? new HashSet<>(keyIds) : Collections.emptySet();
+  }
+
+  /**
+   * @return a snapshot of the ids of the resources with any value
+   */
+  Set<String> present() {
+    return new HashSet<>(presentIds);
+  }
+
+  void clear() {
+    ids.clear();
+    presentIds.clear();
+  }
+}
@@ -0,0 +1,480 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.provider.memory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
+import edu.psu.swe.scim.server.exception.UnableToCreateResourceException;
+import edu.psu.swe.scim.server.exception.UnableToDeleteResourceException;
+import edu.psu.swe.scim.server.exception.UnableToRetrieveExtensionsException;
+import edu.psu.swe.scim.server.exception.UnableToRetrieveResourceException;
+import edu.psu.swe.scim.server.exception.UnableToUpdateResourceException;
+import edu.psu.swe.scim.server.filter.FilterCompiler;
+import edu.psu.swe.scim.server.provider.Provider;
+import edu.psu.swe.scim.server.provider.UpdateRequest;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.annotation.ScimResourceType;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeComparisonExpression;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeInExpression;
+import edu.psu.swe.scim.spec.protocol.filter.AttributePresentExpression;
+import edu.psu.swe.scim.spec.protocol.filter.CompareOperator;
+import edu.psu.swe.scim.spec.protocol.filter.FilterExpression;
+import edu.psu.swe.scim.spec.protocol.filter.FilterParseException;
+import edu.psu.swe.scim.spec.protocol.filter.FilterResponse;
+import edu.psu.swe.scim.spec.protocol.filter.GroupExpression;
+import edu.psu.swe.scim.spec.protocol.filter.LogicalExpression;
+import edu.psu.swe.scim.spec.protocol.filter.LogicalOperator;
+import edu.psu.swe.scim.spec.protocol.filter.ValuePathExpression;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.protocol.search.PageRequest;
+import edu.psu.swe.scim.spec.protocol.search.SortRequest;
+import edu.psu.swe.scim.spec.resources.ScimExtension;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.schema.Meta;
+import edu.psu.swe.scim.spec.schema.Schema;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Uniqueness;
+
+/**
+ * A concurrent in-memory {@link Provider}, usable as a cache tier in front
+ * of a slower store or as a test double.
+ * 
+ * Resources are held in a {@link ConcurrentHashMap} keyed by id. Writes to
+ * the same id are serialized by one of a fixed number of striped locks, so
+ * writes to different resources proceed in parallel. Hash indexes are kept
+ * for attributes with a uniqueness of server or global (like
+ * <code>userName</code>) and for any attributes named when building the
+ * provider (like <code>externalId</code> or <code>emails.value</code>).
+ * 
+ * <code>find</code> plans each filter: equality, <code>pr</code> and
+ * folded IN terms on indexed attributes (and on <code>id</code>) produce a
+ * candidate set, AND uses the smallest candidate set of its terms and OR the
+ * union when all of its terms are indexed. Candidates are always checked
+ * with the compiled filter, anything that can't be planned is a scan with
+ * the compiled filter.
+ * 
+ * Resources are stored and returned by reference, callers must not modify a
+ * resource after handing it to or receiving it from the provider.
+ *
+ * @param <T> the resource type
+ */
+public class InMemoryProvider<T extends ScimResource> implements Provider<T> {
+
+  public static final int DEFAULT_LOCK_STRIPES = 64;
+
+  private final Class<T> resourceClass;
+
+  private final Schema schema;
+
+  private final FilterCompiler filterCompiler;
+
+  private final List<Class<? extends ScimExtension>> extensions;
+
+  private final ConcurrentHashMap<String, T> resources = new ConcurrentHashMap<>();
+
+  private final Map<String, AttributeIndex> indexes;
+
+  private final Registry registry;
+
+  private final Lock[] locks;
+
+  private InMemoryProvider(Builder<T> builder) throws AttributeDoesNotExistException {
+    this.resourceClass = builder.resourceClass;
+    this.registry = builder.registry;
+    this.schema = builder.schema;
+    this.filterCompiler = new FilterCompiler(builder.registry);
+    this.extensions = Collections.unmodifiableList(new ArrayList<>(builder.extensions));
+
+    Map<String, AttributeIndex> indexMap = new LinkedHashMap<>();
+    for (AttributeReference attributeReference : builder.indexedAttributes) {
+      AttributeAccessor accessor = AttributeAccessor.of(attributeReference, schema, registry);
+      if (!accessor.isString()) {
+        throw new IllegalArgumentException("Only string attributes can be indexed, " + attributeReference.getFullyQualifiedAttributeName() + " is " + accessor.getType());
+      }
+      indexMap.put(indexName(attributeReference), new AttributeIndex(accessor));
+    }
+    this.indexes = Collections.unmodifiableMap(indexMap);
+
+    this.locks = new Lock[builder.lockStripes];
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Starts building a provider for a resource class annotated with
+   * {@link ScimResourceType} whose schema is in the registry.
+   */
+  public static <T extends ScimResource> Builder<T> builder(Class<T> resourceClass, Registry registry) {
+    return new Builder<>(resourceClass, registry);
+  }
+
+  public Class<T> getResourceClass() {
+    return resourceClass;
+  }
+
+  /**
+   * @return the number of resources held
+   */
+  public int size() {
+    return resources.size();
+  }
+
+  /**
+   * Removes all resources.
+   */
+  public void clear() {
+    for (Lock lock : locks) {
+      lock.lock();
+    }
+    try {
+      resources.clear();
+      indexes.values().forEach(AttributeIndex::clear);
+    } finally {
+      for (Lock lock : locks) {
+        lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public T create(T resource) throws UnableToCreateResourceException {
+    String id = resource.getId();
+    if (id == null) {
+      id = UUID.randomUUID().toString();
+      resource.setId(id);
+    }
+    LocalDateTime now = LocalDateTime.now();
+    Meta meta = resource.getMeta() != null ? resource.getMeta() : new Meta();
+    meta.setResourceType(resource.getResourceType());
+    meta.setCreated(now);
+    meta.setLastModified(now);
+    resource.setMeta(meta);
+
+    Lock lock = lockFor(id);
+    lock.lock();
+    try {
+      if (resources.containsKey(id)) {
+        throw new UnableToCreateResourceException(Status.CONFLICT, "A resource with the id " + id + " already exists");
+      }
+      // indexes first so that a reader finding the resource in the primary
+      // storage also finds it through the indexes
+      indexAdd(id, resource);
+      resources.put(id, resource);
+    } finally {
+      lock.unlock();
+    }
+    return resource;
+  }
+
+  @Override
+  public T update(UpdateRequest<T> updateRequest) throws UnableToUpdateResourceException {
+    String id = updateRequest.getId();
+    T resource = updateRequest.getResource();
+    resource.setId(id);
+
+    Lock lock = lockFor(id);
+    lock.lock();
+    try {
+      T existing = resources.get(id);
+      if (existing == null) {
+        throw new UnableToUpdateResourceException(Status.NOT_FOUND, "Resource " + id + " not found");
+      }
+      Meta meta = resource.getMeta() != null ? resource.getMeta() : new Meta();
+      meta.setResourceType(resource.getResourceType());
+      meta.setCreated(existing.getMeta() != null ? existing.getMeta().getCreated() : null);
+      meta.setLastModified(LocalDateTime.now());
+      resource.setMeta(meta);
+
+      indexAdd(id, resource);
+      resources.put(id, resource);
+      indexRemoveStale(id, existing, resource);
+    } finally {
+      lock.unlock();
+    }
+    return resource;
+  }
+
+  @Override
+  public T get(String id) throws UnableToRetrieveResourceException {
+    return id != null ? resources.get(id) : null;
+  }
+
+  @Override
+  public void delete(String id) throws UnableToDeleteResourceException {
+    Lock lock = lockFor(id);
+    lock.lock();
+    try {
+      T existing = resources.remove(id);
+      if (existing == null) {
+        throw new UnableToDeleteResourceException(Status.NOT_FOUND, "Resource " + id + " not found");
+      }
+      indexRemove(id, existing);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean isOptimizedFilterSupported() {
+    // filters are evaluated by the FilterCompiler and planned over IN terms
+    return true;
+  }
+
+  @Override
+  public FilterResponse<T> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws UnableToRetrieveResourceException {
+    FilterExpression expression = filter != null ? filter.getExpression() : null;
+
+    Predicate<T> predicate;
+    try {
+      predicate = expression != null ? filterCompiler.compile(expression, schema) : resource -> true;
+    } catch (FilterParseException | AttributeDoesNotExistException e) {
+      throw new UnableToRetrieveResourceException(Status.BAD_REQUEST, e.getMessage(), e);
+    }
+
+    List<T> matches = new ArrayList<>();
+    Set<String> candidates = expression != null ? candidates(expression) : null;
+    if (candidates != null) {
+      for (String id : candidates) {
+        T resource = resources.get(id);
+        if (resource != null && predicate.test(resource)) {
+          matches.add(resource);
+        }
+      }
+    } else {
+      for (T resource : resources.values()) {
+        if (predicate.test(resource)) {
+          matches.add(resource);
+        }
+      }
+    }
+
+    if (sortRequest != null && sortRequest.getSortBy() != null) {
+      matches.sort(ResourceOrdering.comparator(sortRequest, schema, registry));
+    }
+
+    int totalResults = matches.size();
+    return new FilterResponse<>(ResourceOrdering.page(matches, pageRequest), pageRequest, totalResults);
+  }
+
+  @Override
+  public List<Class<? extends ScimExtension>> getExtensionList() throws UnableToRetrieveExtensionsException {
+    return extensions;
+  }
+
+  /**
+   * Plans the filter against the indexes.
+   * 
+   * @return the ids of a superset of the matching resources, or null if the
+   *         filter has to be evaluated against all resources
+   */
+  Set<String> candidates(FilterExpression expression) {
+    if (expression instanceof LogicalExpression) {
+      LogicalExpression logicalExpression = (LogicalExpression) expression;
+      Set<String> left = candidates(logicalExpression.getLeft());
+      if (logicalExpression.getOperator() == LogicalOperator.AND) {
+        Set<String> right = candidates(logicalExpression.getRight());
+        if (left == null || right == null) {
+          return left != null ? left : right;
+        }
+        return left.size() <= right.size() ? left : right;
+      }
+      if (left == null) {
+        return null;
+      }
+      Set<String> right = candidates(logicalExpression.getRight());
+      if (right == null) {
+        return null;
+      }
+      Set<String> union = new HashSet<>(left);
+      union.addAll(right);
+      return union;
+    } else if (expression instanceof AttributeInExpression) {
+      AttributeInExpression inExpression = (AttributeInExpression) expression;
+      Set<String> union = new HashSet<>();
+      for (Object compareValue : inExpression.getCompareValues()) {
+        Set<String> ids = lookup(inExpression.getAttributePath(), compareValue);
+        if (ids == null) {
+          return null;
+        }
+        union.addAll(ids);
+      }
+      return union;
+    } else if (expression instanceof GroupExpression) {
+      GroupExpression groupExpression = (GroupExpression) expression;
+      return groupExpression.isNot() ? null : candidates(groupExpression.getFilterExpression());
+    } else if (expression instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparison = (AttributeComparisonExpression) expression;
+      if (comparison.getOperation() != CompareOperator.EQ) {
+        return null;
+      }
+      if (comparison.getCompareValue() == null) {
+        return null;
+      }
+      return lookup(comparison.getAttributePath(), comparison.getCompareValue());
+    } else if (expression instanceof AttributePresentExpression) {
+      AttributeIndex index = indexes.get(indexName(((AttributePresentExpression) expression).getAttributePath()));
+      return index != null ? index.present() : null;
+    } else if (expression instanceof ValuePathExpression) {
+      // the attributes inside a value path are qualified with the parent, so
+      // they match the indexes of its sub-attributes
+      FilterExpression attributeExpression = ((ValuePathExpression) expression).getAttributeExpression();
+      return attributeExpression != null ? candidates(attributeExpression) : null;
+    }
+    return null;
+  }
+
+  private Set<String> lookup(AttributeReference attributeReference, Object compareValue) {
+    if (!(compareValue instanceof String)) {
+      return null;
+    }
+    if (attributeReference.getSubAttributeName() == null && "id".equalsIgnoreCase(attributeReference.getAttributeName()) && isBaseSchema(attributeReference)) {
+      return resources.containsKey(compareValue) ? Collections.singleton((String) compareValue) : Collections.emptySet();
+    }
+    AttributeIndex index = indexes.get(indexName(attributeReference));
+    return index != null ? index.lookup(compareValue) : null;
+  }
+
+  private boolean isBaseSchema(AttributeReference attributeReference) {
+    return attributeReference.getUrn() == null || attributeReference.getUrn().equalsIgnoreCase(schema.getId());
+  }
+
+  private String indexName(AttributeReference attributeReference) {
+    String urn = attributeReference.getUrn() != null ? attributeReference.getUrn() : schema.getId();
+    return (urn + ":" + attributeReference.getFullAttributeName()).toLowerCase(Locale.ROOT);
+  }
+
+  private void indexAdd(String id, T resource) {
+    for (AttributeIndex index : indexes.values()) {
+      index.add(id, resource);
+    }
+  }
+
+  private void indexRemove(String id, T resource) {
+    for (AttributeIndex index : indexes.values()) {
+      index.remove(id, resource);
+    }
+  }
+
+  /**
+   * Removes the index entries of the previous version that the current
+   * version doesn't have.
+   */
+  private void indexRemoveStale(String id, T previous, T current) {
+    for (AttributeIndex index : indexes.values()) {
+      index.removeStale(id, previous, current);
+    }
+  }
+
+  private Lock lockFor(String id) {
+    return locks[(id.hashCode() & 0x7fffffff) % locks.length];
+  }
+
+  public static class Builder<T extends ScimResource> {
+
+    private final Class<T> resourceClass;
+
+    private final Registry registry;
+
+    private final Schema schema;
+
+    private final List<Class<? extends ScimExtension>> extensions = new ArrayList<>();
+
+    private final Set<AttributeReference> indexedAttributes = new LinkedHashSet<>();
+
+    private int lockStripes = DEFAULT_LOCK_STRIPES;
+
+    private Builder(Class<T> resourceClass, Registry registry) {
+      ScimResourceType scimResourceType = resourceClass.getAnnotation(ScimResourceType.class);
+      if (scimResourceType == null) {
+        throw new IllegalArgumentException(resourceClass.getName() + " is not annotated with @ScimResourceType");
+      }
+      Schema resourceSchema = registry.getSchema(scimResourceType.schema());
+      if (resourceSchema == null) {
+        throw new IllegalArgumentException("No schema registered for " + scimResourceType.schema());
+      }
+      this.resourceClass = resourceClass;
+      this.registry = registry;
+      this.schema = resourceSchema;
+
+      for (Attribute attribute : resourceSchema.getAttributes()) {
+        if (attribute.getUniqueness() == Uniqueness.SERVER || attribute.getUniqueness() == Uniqueness.GLOBAL) {
+          indexedAttributes.add(new AttributeReference(resourceSchema.getId(), attribute.getName(), null));
+        }
+      }
+    }
+
+    public Builder<T> extension(Class<? extends ScimExtension> extension) {
+      extensions.add(extension);
+      return this;
+    }
+
+    /**
+     * Adds a hash index on a string attribute or sub-attribute, for example
+     * <code>externalId</code> or <code>emails.value</code>.
+     */
+    public Builder<T> index(String attributePath) {
+      AttributeReference attributeReference = new AttributeReference(attributePath);
+      if (attributeReference.getUrn() == null) {
+        attributeReference.setUrn(schema.getId());
+      }
+      indexedAttributes.add(attributeReference);
+      return this;
+    }
+
+    /**
+     * Sets the number of locks writes are striped over.
+     */
+    public Builder<T> lockStripes(int lockStripes) {
+      if (lockStripes < 1) {
+        throw new IllegalArgumentException("lockStripes must be positive");
+      }
+      this.lockStripes = lockStripes;
+      return this;
+    }
+
+    /**
+     * @throws AttributeDoesNotExistException if an indexed attribute isn't in
+     *         the schema
+     */
+    public InMemoryProvider<T> build() throws AttributeDoesNotExistException {
+      return new InMemoryProvider<>(this);
+    }
+  }
+}
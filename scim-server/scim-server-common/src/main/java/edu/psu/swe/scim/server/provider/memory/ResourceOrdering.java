@@ -0,0 +1,100 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.provider.memory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
+import edu.psu.swe.scim.server.exception.UnableToRetrieveResourceException;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.protocol.search.PageRequest;
+import edu.psu.swe.scim.spec.protocol.search.SortOrder;
+import edu.psu.swe.scim.spec.protocol.search.SortRequest;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.schema.Schema;
+
+/**
+ * Sorting and paging of resources held in memory, for providers that
+ * evaluate <code>find</code> themselves.
+ */
+public final class ResourceOrdering {
+
+  private ResourceOrdering() {
+  }
+
+  /**
+   * Orders resources by the first value of the sort attribute, compared
+   * ignoring case unless the attribute is case exact. Resources without a
+   * value sort last in either order, ties are broken by id.
+   * 
+   * @throws UnableToRetrieveResourceException a 400 if the sort attribute
+   *         isn't in the schema
+   */
+  public static <T extends ScimResource> Comparator<T> comparator(SortRequest sortRequest, Schema schema, Registry registry) throws UnableToRetrieveResourceException {
+    AttributeAccessor accessor;
+    try {
+      accessor = AttributeAccessor.of(sortRequest.getSortBy(), schema, registry);
+    } catch (AttributeDoesNotExistException e) {
+      throw new UnableToRetrieveResourceException(Status.BAD_REQUEST, "Unable to sort by " + sortRequest.getSortBy().getFullyQualifiedAttributeName(), e);
+    }
+
+    Comparator<Object> valueComparator = ResourceOrdering::compareValues;
+    if (sortRequest.getSortOrder() == SortOrder.DESCENDING) {
+      valueComparator = valueComparator.reversed();
+    }
+    Comparator<T> comparator = Comparator.comparing(resource -> sortKey(accessor, resource), Comparator.nullsLast(valueComparator));
+    return comparator.thenComparing(ScimResource::getId, Comparator.nullsLast(Comparator.naturalOrder()));
+  }
+
+  /**
+   * @return the page of the resources selected by the 1-based start index and
+   *         count of the request, all of them if the request is null
+   */
+  public static <T> List<T> page(List<T> resources, PageRequest pageRequest) {
+    if (pageRequest == null) {
+      return resources;
+    }
+    int from = pageRequest.getStartIndex() != null ? Math.max(pageRequest.getStartIndex(), 1) - 1 : 0;
+    int count = pageRequest.getCount() != null ? Math.max(pageRequest.getCount(), 0) : Integer.MAX_VALUE;
+    if (from >= resources.size()) {
+      return new ArrayList<>();
+    }
+    int to = (int) Math.min((long) from + count, resources.size());
+    return new ArrayList<>(resources.subList(from, to));
+  }
+
+  private static Object sortKey(AttributeAccessor accessor, ScimResource resource) {
+    Object value = accessor.firstValue(resource);
+    return value != null ? accessor.indexKey(value) : null;
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static int compareValues(Object a, Object b) {
+    if (a instanceof Comparable && a.getClass().isInstance(b)) {
+      return ((Comparable) a).compareTo(b);
+    }
+    return a.toString().compareTo(b.toString());
+  }
+}
@@ -21,9 +21,12 @@ package edu.psu.swe.scim.server.rest;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.net.URI;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
@@ -35,34 +38,48 @@ import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.Response.Status.Family;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Providers;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
+import edu.psu.swe.scim.server.configuration.ServerConfiguration;
 import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
 import edu.psu.swe.scim.server.exception.ScimServerException;
 import edu.psu.swe.scim.server.exception.UnableToCreateResourceException;
 import edu.psu.swe.scim.server.exception.UnableToDeleteResourceException;
 import edu.psu.swe.scim.server.exception.UnableToRetrieveResourceException;
 import edu.psu.swe.scim.server.exception.UnableToUpdateResourceException;
+import edu.psu.swe.scim.server.filter.FilterCost;
+import edu.psu.swe.scim.server.filter.FilterCostEstimator;
+import edu.psu.swe.scim.server.filter.FilterOptimizer;
 import edu.psu.swe.scim.server.provider.Provider;
+import edu.psu.swe.scim.server.provider.StreamingFilterResponse;
 import edu.psu.swe.scim.server.provider.UpdateRequest;
 import edu.psu.swe.scim.server.provider.annotations.ScimProcessingExtension;
 import edu.psu.swe.scim.server.provider.extensions.AttributeFilterExtension;
 import edu.psu.swe.scim.server.provider.extensions.ProcessingExtension;
 import edu.psu.swe.scim.server.provider.extensions.ScimRequestContext;
 import edu.psu.swe.scim.server.provider.extensions.exceptions.ClientFilterException;
+import edu.psu.swe.scim.server.schema.UniquenessIndex;
 import edu.psu.swe.scim.server.utility.AttributeUtil;
 import edu.psu.swe.scim.server.utility.EndpointUtil;
 import edu.psu.swe.scim.server.utility.EtagGenerator;
+import edu.psu.swe.scim.server.utility.ProjectingSerializerModifier;
+import edu.psu.swe.scim.server.utility.ResourceProjection;
 import edu.psu.swe.scim.spec.adapter.FilterWrapper;
 import edu.psu.swe.scim.spec.protocol.BaseResourceTypeResource;
 import edu.psu.swe.scim.spec.protocol.ErrorMessageType;
@@ -94,17 +111,32 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
   @Context
   HttpServletRequest servletRequest;
 
+  @Context
+  Providers providers;
+
+  @Inject
+  AttributeUtil attributeUtil;
+
+  @Inject
+  EndpointUtil endpointUtil;
+
   @Inject
-  private AttributeUtil attributeUtil;
+  EtagGenerator etagGenerator;
 
   @Inject
-  private EndpointUtil endpointUtil;
+  Instance<UpdateRequest<T>> updateRequestInstance;
 
   @Inject
-  private EtagGenerator etagGenerator;
+  FilterOptimizer filterOptimizer;
 
   @Inject
-  private Instance<UpdateRequest<T>> updateRequestInstance;
+  private FilterCostEstimator filterCostEstimator;
+
+  @Inject
+  private ServerConfiguration serverConfiguration;
+
+  @Inject
+  UniquenessIndex uniquenessIndex;
 
   public abstract Provider<T> getProvider();
 
@@ -126,10 +158,45 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     try {
       Provider<T> provider = getProviderInternal();
 
+      Set<AttributeReference> attributeReferences = Optional.ofNullable(attributes)
+                                                            .map(wrapper -> wrapper.getAttributeReferences())
+                                                            .orElse(Collections.emptySet());
+      Set<AttributeReference> excludedAttributeReferences = Optional.ofNullable(excludedAttributes)
+                                                                    .map(wrapper -> wrapper.getAttributeReferences())
+                                                                    .orElse(Collections.emptySet());
+
+      if (!attributeReferences.isEmpty() && !excludedAttributeReferences.isEmpty()) {
+        return createAmbiguousAttributeParametersResponse();
+      }
+
+      ResourceProjection projection;
+      try {
+        projection = attributeUtil.getProjection(attributeReferences, excludedAttributeReferences);
+      } catch (AttributeDoesNotExistException e) {
+        return createAttriubteProcessingErrorResponse(e);
+      }
+
+      // 304 for a matching If-None-Match, 412 for a failing If-Match
+      ResponseBuilder versionPreconditionsResponse = evaluateVersionPreconditions(provider, id);
+      if (versionPreconditionsResponse != null) {
+        return versionPreconditionsResponse.build();
+      }
+
+      // the tag of a partially loaded resource would depend on the requested
+      // attributes, so it is only loaded partially if the provider knows the tag
+      EntityTag etag = null;
+      if (!attributeReferences.isEmpty() || !excludedAttributeReferences.isEmpty()) {
+        etag = getVersion(provider, id);
+      }
+
       endpointUtil.process(uriInfo);
       T resource = null;
       try {
-        resource = provider.get(id);
+        if (etag != null) {
+          resource = provider.get(id, new ScimRequestContext(attributeReferences, excludedAttributeReferences, projection));
+        } else {
+          resource = provider.get(id);
+        }
       } catch (UnableToRetrieveResourceException e2) {
         if (e2.getStatus()
               .getFamily()
@@ -142,43 +209,23 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
         return provider.handleException(e);
       }
 
-      if (resource != null) {
-        EntityTag backingETag = null;
+      if (resource == null) {
+        return createNotFoundResponse(id);
+      }
+
+      if (etag == null) {
         try {
-          backingETag = etagGenerator.generateEtag(resource);
+          etag = etagGenerator.generateEtag(provider, resource);
         } catch (JsonProcessingException | NoSuchAlgorithmException | UnsupportedEncodingException e1) {
           return createETagErrorResponse();
         }
-
-        ResponseBuilder evaluatePreconditionsResponse = request.evaluatePreconditions(backingETag);
-
-        if (evaluatePreconditionsResponse != null) {
-          return Response.status(Status.NOT_MODIFIED)
-                         .build();
-        }
       }
 
-      Set<AttributeReference> attributeReferences = Optional.ofNullable(attributes)
-                                                            .map(wrapper -> wrapper.getAttributeReferences())
-                                                            .orElse(Collections.emptySet());
-      Set<AttributeReference> excludedAttributeReferences = Optional.ofNullable(excludedAttributes)
-                                                                    .map(wrapper -> wrapper.getAttributeReferences())
-                                                                    .orElse(Collections.emptySet());
-
-      if (!attributeReferences.isEmpty() && !excludedAttributeReferences.isEmpty()) {
-        return createAmbiguousAttributeParametersResponse();
-      }
-
-      if (resource == null) {
-        return createNotFoundResponse(id);
-      }
-
-      EntityTag etag = null;
+      ResponseBuilder evaluatePreconditionsResponse = request.evaluatePreconditions(etag);
 
-      try {
-        etag = etagGenerator.generateEtag(resource);
-      } catch (JsonProcessingException | NoSuchAlgorithmException | UnsupportedEncodingException e) {
-        return createETagErrorResponse();
+      if (evaluatePreconditionsResponse != null) {
+        return evaluatePreconditionsResponse.tag(etag)
+                                            .build();
       }
 
       // Process Attributes
@@ -190,14 +237,20 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
       }
 
       try {
-        if (!excludedAttributeReferences.isEmpty()) {
-          resource = attributeUtil.setExcludedAttributesForDisplay(resource, excludedAttributeReferences);
+        // the resource may be shared by the provider, it is never changed
+        resource = etagGenerator.withVersion(resource, etag);
+        Object entity;
+        ObjectWriter projectingWriter = getProjectingWriter(projection);
+        if (projectingWriter != null) {
+          entity = new ProjectedEntity(projectingWriter, resource);
+        } else if (!excludedAttributeReferences.isEmpty()) {
+          entity = attributeUtil.setExcludedAttributesForDisplay(resource, excludedAttributeReferences);
         } else {
-          resource = attributeUtil.setAttributesForDisplay(resource, attributeReferences);
+          entity = attributeUtil.setAttributesForDisplay(resource, attributeReferences);
         }
 
         return Response.ok()
-                       .entity(resource)
+                       .entity(entity)
                        .location(buildLocationTag(resource))
                        .tag(etag)
                        .build();
@@ -255,9 +308,11 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
       }
 
       endpointUtil.process(uriInfo);
+      UniquenessIndex.Reservation reservation = reserveUniqueValues(resource, null);
       T created;
       try {
         created = provider.create(resource);
+        commitUniqueValues(reservation, created.getId());
       } catch (UnableToCreateResourceException e1) {
         Status status = e1.getStatus();
         ErrorResponse er = new ErrorResponse(status, "Error");
@@ -280,11 +335,13 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
         log.error("Uncaught provider exception", e);
 
         return provider.handleException(e);
+      } finally {
+        releaseUniqueValues(reservation);
       }
 
       EntityTag etag = null;
       try {
-        etag = etagGenerator.generateEtag(created);
+        etag = etagGenerator.generateEtag(provider, created);
       } catch (JsonProcessingException | NoSuchAlgorithmException | UnsupportedEncodingException e) {
         log.error("Failed to generate etag for newly created entity " + e.getMessage());
       }
@@ -298,6 +355,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
       }
 
       try {
+        created = etagGenerator.withVersion(created, etag);
         if (!excludedAttributeReferences.isEmpty()) {
           created = attributeUtil.setExcludedAttributesForDisplay(created, excludedAttributeReferences);
         } else {
@@ -350,15 +408,41 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
       }
 
       Filter filter = request.getFilter();
-      PageRequest pageRequest = request.getPageRequest();
+      ErrorResponse filterError = checkFilterCost(filter);
+      if (filterError != null) {
+        return filterError.toResponse();
+      }
+      filter = optimizeFilter(provider, filter);
+      int maxResults = serverConfiguration != null ? serverConfiguration.getFilterMaxResults() : 0;
+      PageRequest pageRequest = Paging.normalize(request.getPageRequest(), maxResults);
       SortRequest sortRequest = request.getSortRequest();
 
+      // the resources may be shared by the provider, when the object mapper
+      // can skip attributes while writing they are never changed
+      ResourceProjection projection;
+      try {
+        projection = attributeUtil.getProjection(attributeReferences, excludedAttributeReferences);
+      } catch (AttributeDoesNotExistException e) {
+        return createAttriubteProcessingErrorResponse(e);
+      }
+      ObjectWriter projectingWriter = getProjectingWriter(projection);
+      ScimRequestContext requestContext = new ScimRequestContext(attributeReferences, excludedAttributeReferences, projection);
+
+      // meta.version is the tag of the full resource, the provider may only
+      // load some attributes if it isn't displayed
+      boolean versionReturned = isVersionReturned(attributeReferences);
+      ScimRequestContext findContext = versionReturned ? new ScimRequestContext(Collections.emptySet(), Collections.emptySet()) : requestContext;
+
       ListResponse<T> listResponse = new ListResponse<>();
 
       endpointUtil.process(uriInfo);
       FilterResponse<T> filterResp = null;
+      StreamingFilterResponse<T> streamingResp = null;
       try {
-        filterResp = provider.find(filter, pageRequest, sortRequest);
+        streamingResp = provider.findStream(filter, pageRequest, sortRequest, findContext);
+        if (streamingResp == null) {
+          filterResp = provider.find(filter, pageRequest, sortRequest, findContext);
+        }
       } catch (UnableToRetrieveResourceException e1) {
         log.info("Caught an UnableToRetrieveResourceException " + e1.getMessage() + " : " + e1.getStatus()
                                                                                               .toString());
@@ -369,30 +453,49 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
         return provider.handleException(e);
       }
 
-      // If no resources are found, we should still return a ListResponse with
-      // the totalResults set to 0;
-      // (https://tools.ietf.org/html/rfc7644#section-3.4.2)
-      if (filterResp == null || filterResp.getResources() == null || filterResp.getResources()
-                                                                               .isEmpty()) {
-        listResponse.setTotalResults(0);
-      } else {
-        log.info("Find returned " + filterResp.getResources()
-                                              .size());
-        listResponse.setItemsPerPage(filterResp.getResources()
-                                               .size());
-        listResponse.setStartIndex(1);
-        listResponse.setTotalResults(filterResp.getResources()
-                                               .size());
+      if (streamingResp != null) {
+        StreamingListResponse<T> entity;
+        if (projectingWriter != null) {
+          entity = new StreamingListResponse<>(projectingWriter, streamingResp, pageRequest.getStartIndex(), resource -> processAttributeExtensions(provider, withVersion(provider, resource, versionReturned), attributeReferences, excludedAttributeReferences));
+        } else {
+          entity = new StreamingListResponse<>(getObjectMapper().writer(), streamingResp, pageRequest.getStartIndex(), resource -> projectForDisplay(provider, withVersion(provider, resource, versionReturned), attributeReferences, excludedAttributeReferences));
+        }
+        return Response.ok()
+                       .entity(entity)
+                       .build();
+      }
+
+      Collection<T> found = filterResp != null && filterResp.getResources() != null ? filterResp.getResources() : Collections.emptyList();
+      int totalResults = Math.max(filterResp != null ? filterResp.getTotalResults() : 0, found.size());
+
+      if (Paging.isUnpaged(found, totalResults, pageRequest)) {
+        // the provider returned every match, page them here unless there are
+        // more than the server is willing to process
+        if (maxResults > 0 && found.size() > maxResults) {
+          return createFilterErrorResponse(ErrorMessageType.TOO_MANY, "The filter matches " + found.size() + " resources, the maximum is " + maxResults).toResponse();
+        }
+        found = Paging.page(found, pageRequest);
+      }
+
+      // (https://tools.ietf.org/html/rfc7644#section-3.4.2.4)
+      listResponse.setTotalResults(totalResults);
+      listResponse.setStartIndex(pageRequest.getStartIndex());
+      listResponse.setItemsPerPage(found.size());
+
+      if (!found.isEmpty()) {
+        log.info("Find returned " + found.size() + " of " + totalResults);
 
         List<T> results = new ArrayList<>();
 
-        for (T resource : filterResp.getResources()) {
+        for (T resource : found) {
           EntityTag etag = null;
 
-          try {
-            etag = etagGenerator.generateEtag(resource);
-          } catch (JsonProcessingException | NoSuchAlgorithmException | UnsupportedEncodingException e) {
-            return createETagErrorResponse();
+          if (versionReturned) {
+            try {
+              etag = etagGenerator.generateEtag(provider, resource);
+            } catch (JsonProcessingException | NoSuchAlgorithmException | UnsupportedEncodingException e) {
+              return createETagErrorResponse();
+            }
           }
 
           // Process Attributes
@@ -405,10 +508,13 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
           }
 
           try {
-            if (!excludedAttributeReferences.isEmpty()) {
-              resource = attributeUtil.setExcludedAttributesForDisplay(resource, excludedAttributeReferences);
-            } else {
-              resource = attributeUtil.setAttributesForDisplay(resource, attributeReferences);
+            resource = etagGenerator.withVersion(resource, etag);
+            if (projectingWriter == null) {
+              if (!excludedAttributeReferences.isEmpty()) {
+                resource = attributeUtil.setExcludedAttributesForDisplay(resource, excludedAttributeReferences);
+              } else {
+                resource = attributeUtil.setAttributesForDisplay(resource, attributeReferences);
+              }
             }
 
             results.add(resource);
@@ -421,7 +527,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
       }
 
       return Response.ok()
-                     .entity(listResponse)
+                     .entity(projectingWriter != null ? new ProjectedEntity(projectingWriter, listResponse) : listResponse)
                      .build();
     } catch (ScimServerException sse) {
       LOG.error("Error Processing SCIM Request", sse);
@@ -446,6 +552,11 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
         return createAmbiguousAttributeParametersResponse();
       }
 
+      ResponseBuilder versionPreconditionsResponse = evaluateVersionPreconditions(provider, id);
+      if (versionPreconditionsResponse != null) {
+        return createPreconditionFailedResponse(id, versionPreconditionsResponse);
+      }
+
       endpointUtil.process(uriInfo);
       T stored;
       try {
@@ -465,7 +576,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
 
       EntityTag backingETag = null;
       try {
-        backingETag = etagGenerator.generateEtag(stored);
+        backingETag = etagGenerator.generateEtag(provider, stored);
       } catch (JsonProcessingException | NoSuchAlgorithmException | UnsupportedEncodingException e1) {
         return createETagErrorResponse();
       }
@@ -476,17 +587,28 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
         return createPreconditionFailedResponse(id, evaluatePreconditionsResponse);
       }
 
+      UniquenessIndex.Reservation reservation = reserveUniqueValues(resource, id);
       T updated;
       try {
         UpdateRequest<T> updateRequest = updateRequestInstance.get();
         updateRequest.initWithResource(id, stored, resource);
         updated = provider.update(updateRequest);
+        commitUniqueValues(reservation, id);
       } catch (UnableToUpdateResourceException e1) {
-        return createGenericExceptionResponse(e1, e1.getStatus());
+        return createUpdateExceptionResponse(e1);
       } catch (Exception e1) {
         log.error("Uncaught provider exception", e1);
 
         return provider.handleException(e1);
+      } finally {
+        releaseUniqueValues(reservation);
+      }
+
+      EntityTag etag = null;
+      try {
+        etag = etagGenerator.generateEtag(provider, updated);
+      } catch (JsonProcessingException | NoSuchAlgorithmException | UnsupportedEncodingException e) {
+        log.error("Failed to generate etag for newly created entity " + e.getMessage());
       }
 
       // Process Attributes
@@ -498,6 +620,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
       }
 
       try {
+        updated = etagGenerator.withVersion(updated, etag);
         if (!excludedAttributeReferences.isEmpty()) {
           updated = attributeUtil.setExcludedAttributesForDisplay(updated, excludedAttributeReferences);
         } else {
@@ -507,13 +630,6 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
         log.error("Failed to handle attribute processing in update " + e.getMessage());
       }
 
-      EntityTag etag = null;
-      try {
-        etag = etagGenerator.generateEtag(updated);
-      } catch (JsonProcessingException | NoSuchAlgorithmException | UnsupportedEncodingException e) {
-        log.error("Failed to generate etag for newly created entity " + e.getMessage());
-      }
-
       // TODO - Is this correct or should we support roll back semantics
       if (etag == null) {
         return Response.ok(updated)
@@ -548,6 +664,11 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
         return createAmbiguousAttributeParametersResponse();
       }
 
+      ResponseBuilder versionPreconditionsResponse = evaluateVersionPreconditions(provider, id);
+      if (versionPreconditionsResponse != null) {
+        return createPreconditionFailedResponse(id, versionPreconditionsResponse);
+      }
+
       endpointUtil.process(uriInfo);
       T stored;
       try {
@@ -567,7 +688,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
 
       EntityTag backingETag = null;
       try {
-        backingETag = etagGenerator.generateEtag(stored);
+        backingETag = etagGenerator.generateEtag(provider, stored);
       } catch (JsonProcessingException | NoSuchAlgorithmException | UnsupportedEncodingException e1) {
         return createETagErrorResponse();
       }
@@ -578,19 +699,37 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
         return createPreconditionFailedResponse(id, evaluatePreconditionsResponse);
       }
 
+      UpdateRequest<T> updateRequest = updateRequestInstance.get();
+      updateRequest.initWithPatch(id, stored, patchRequest.getPatchOperationList());
+      T patched;
+      try {
+        patched = updateRequest.applyPatch();
+      } catch (UnableToUpdateResourceException e1) {
+        return createUpdateExceptionResponse(e1);
+      }
+
+      UniquenessIndex.Reservation reservation = reserveUniqueValues(patched, id);
       T updated;
       try {
-        UpdateRequest<T> updateRequest = updateRequestInstance.get();
-        updateRequest.initWithPatch(id, stored, patchRequest.getPatchOperationList());
         updated = provider.update(updateRequest);
+        commitUniqueValues(reservation, id);
       } catch (UnableToUpdateResourceException e1) {
-        return createGenericExceptionResponse(e1, e1.getStatus());
+        return createUpdateExceptionResponse(e1);
       } catch (UnsupportedOperationException e2) {
         return createGenericExceptionResponse(e2, Status.NOT_IMPLEMENTED);
       } catch (Exception e1) {
         log.error("Uncaught provider exception", e1);
 
         return provider.handleException(e1);
+      } finally {
+        releaseUniqueValues(reservation);
+      }
+
+      EntityTag etag = null;
+      try {
+        etag = etagGenerator.generateEtag(provider, updated);
+      } catch (JsonProcessingException | NoSuchAlgorithmException | UnsupportedEncodingException e) {
+        log.error("Failed to generate etag for newly created entity " + e.getMessage());
       }
 
       // Process Attributes
@@ -602,6 +741,7 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
       }
 
       try {
+        updated = etagGenerator.withVersion(updated, etag);
         if (!excludedAttributeReferences.isEmpty()) {
           updated = attributeUtil.setExcludedAttributesForDisplay(updated, excludedAttributeReferences);
         } else {
@@ -611,13 +751,6 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
         log.error("Failed to handle attribute processing in update " + e.getMessage());
       }
 
-      EntityTag etag = null;
-      try {
-        etag = etagGenerator.generateEtag(updated);
-      } catch (JsonProcessingException | NoSuchAlgorithmException | UnsupportedEncodingException e) {
-        log.error("Failed to generate etag for newly created entity " + e.getMessage());
-      }
-
       // TODO - Is this correct or should we support roll back semantics
       if (etag == null) {
         return Response.ok(updated)
@@ -649,6 +782,9 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
                            .build();
 
         provider.delete(id);
+        if (uniquenessIndex != null) {
+          uniquenessIndex.remove(getResourceClass(), id);
+        }
         return response;
       } catch (UnableToDeleteResourceException e) {
         Status status = e.getStatus();
@@ -691,6 +827,190 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     return resource;
   }
 
+  /**
+   * Applies the attribute filter extensions and the requested attributes to
+   * a resource written by a streaming response.
+   */
+  private T projectForDisplay(Provider<T> provider, T resource, Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) throws IOException {
+    try {
+      T projected = processFilterAttributeExtensions(provider, resource, attributeReferences, excludedAttributeReferences);
+      if (!excludedAttributeReferences.isEmpty()) {
+        return attributeUtil.setExcludedAttributesForDisplay(projected, excludedAttributeReferences);
+      }
+      return attributeUtil.setAttributesForDisplay(projected, attributeReferences);
+    } catch (ClientFilterException | IllegalArgumentException | IllegalAccessException | AttributeDoesNotExistException e) {
+      log.error("Unable to process the attributes of resource " + resource.getId() + ", the response is incomplete", e);
+      throw new IOException("Unable to process the attributes of resource " + resource.getId(), e);
+    }
+  }
+
+  /**
+   * Evaluates the request's preconditions against the version the provider
+   * reports for the resource, so a request that fails them doesn't load the
+   * resource.
+   * 
+   * @return the response of the failed precondition tagged with the
+   *         version, null if the request has no preconditions, they hold or
+   *         the provider doesn't report versions
+   */
+  private ResponseBuilder evaluateVersionPreconditions(Provider<T> provider, String id) {
+    if (servletRequest == null || (servletRequest.getHeader(HttpHeaders.IF_MATCH) == null && servletRequest.getHeader(HttpHeaders.IF_NONE_MATCH) == null)) {
+      return null;
+    }
+    EntityTag version = getVersion(provider, id);
+    if (version == null) {
+      return null;
+    }
+    ResponseBuilder evaluatePreconditionsResponse = request.evaluatePreconditions(version);
+    return evaluatePreconditionsResponse != null ? evaluatePreconditionsResponse.tag(version) : null;
+  }
+
+  /**
+   * @return true unless only some attributes are requested and meta isn't one
+   *         of them
+   */
+  private static boolean isVersionReturned(Set<AttributeReference> attributeReferences) {
+    return attributeReferences.isEmpty() || attributeReferences.stream()
+                                                               .anyMatch(reference -> "meta".equalsIgnoreCase(reference.getAttributeName()));
+  }
+
+  /**
+   * @return the tag the provider knows without loading the resource, or null
+   *         if the resource has to be loaded to compute it
+   */
+  private EntityTag getVersion(Provider<T> provider, String id) {
+    try {
+      return provider.getVersion(id);
+    } catch (Exception e) {
+      log.warn("Unable to retrieve the version of resource " + id + ", loading it instead", e);
+      return null;
+    }
+  }
+
+  /**
+   * Applies the attribute filter extensions to a resource written by a
+   * streaming response whose writer skips the attributes not requested.
+   */
+  /**
+   * @return a copy of the resource with meta.version set to its entity tag,
+   *         the resource itself if the version isn't displayed
+   */
+  private T withVersion(Provider<T> provider, T resource, boolean versionReturned) throws IOException {
+    if (!versionReturned) {
+      return resource;
+    }
+    try {
+      return etagGenerator.withVersion(resource, etagGenerator.generateEtag(provider, resource));
+    } catch (NoSuchAlgorithmException e) {
+      log.error("Unable to generate the entity tag of resource " + resource.getId() + ", the response is incomplete", e);
+      throw new IOException("Unable to generate the entity tag of resource " + resource.getId(), e);
+    }
+  }
+
+  private T processAttributeExtensions(Provider<T> provider, T resource, Set<AttributeReference> attributeReferences, Set<AttributeReference> excludedAttributeReferences) throws IOException {
+    try {
+      return processFilterAttributeExtensions(provider, resource, attributeReferences, excludedAttributeReferences);
+    } catch (ClientFilterException e) {
+      log.error("Unable to process the attributes of resource " + resource.getId() + ", the response is incomplete", e);
+      throw new IOException("Unable to process the attributes of resource " + resource.getId(), e);
+    }
+  }
+
+  /**
+   * @return a writer that skips the attributes that are not displayed, null
+   *         if the object mapper can't and the resources have to be copied
+   *         and changed instead
+   */
+  private ObjectWriter getProjectingWriter(ResourceProjection projection) {
+    ObjectMapper objectMapper = getObjectMapper();
+    if (!ProjectingSerializerModifier.isRegistered(objectMapper)) {
+      return null;
+    }
+    return ProjectingSerializerModifier.withProjection(objectMapper.writer(), projection);
+  }
+
+  private ObjectMapper getObjectMapper() {
+    ContextResolver<ObjectMapper> resolver = providers != null ? providers.getContextResolver(ObjectMapper.class, MediaType.WILDCARD_TYPE) : null;
+    ObjectMapper objectMapper = resolver != null ? resolver.getContext(ObjectMapper.class) : null;
+    return objectMapper != null ? objectMapper : new ObjectMapperContextResolver().getContext(ObjectMapper.class);
+  }
+
+  /**
+   * @return an error if the filter is over the limits of the server
+   *         configuration, null if it may be passed to the provider
+   */
+  private ErrorResponse checkFilterCost(Filter filter) {
+    if (filter == null || filterCostEstimator == null || serverConfiguration == null) {
+      return null;
+    }
+    FilterCost filterCost = filterCostEstimator.estimate(filter, getResourceClass());
+
+    if (isOverLimit(filterCost.getDepth(), serverConfiguration.getFilterMaxDepth())) {
+      return createFilterErrorResponse(ErrorMessageType.INVALID_FILTER, "The filter is nested " + filterCost.getDepth() + " levels deep, the maximum is " + serverConfiguration.getFilterMaxDepth());
+    }
+    if (isOverLimit(filterCost.getTerms(), serverConfiguration.getFilterMaxTerms())) {
+      return createFilterErrorResponse(ErrorMessageType.INVALID_FILTER, "The filter has " + filterCost.getTerms() + " terms, the maximum is " + serverConfiguration.getFilterMaxTerms());
+    }
+    if (isOverLimit(filterCost.getCost(), serverConfiguration.getFilterMaxCost())) {
+      log.info("Rejecting filter with cost {}: {}", filterCost, filter.getFilter());
+      return createFilterErrorResponse(ErrorMessageType.TOO_MANY, "The filter is too expensive to evaluate, its estimated cost is " + filterCost.getCost() + " and the maximum is " + serverConfiguration.getFilterMaxCost());
+    }
+    return null;
+  }
+
+  /**
+   * @return the reservation of the unique values of the resource, null if
+   *         there is no uniqueness index
+   * @throws ScimServerException a 409 if a unique value is already in use
+   */
+  private UniquenessIndex.Reservation reserveUniqueValues(T resource, String id) throws ScimServerException {
+    return uniquenessIndex != null ? uniquenessIndex.reserve(resource, id) : null;
+  }
+
+  private static void commitUniqueValues(UniquenessIndex.Reservation reservation, String id) {
+    if (reservation != null) {
+      reservation.commit(id);
+    }
+  }
+
+  private static void releaseUniqueValues(UniquenessIndex.Reservation reservation) {
+    if (reservation != null) {
+      reservation.release();
+    }
+  }
+
+  private static boolean isOverLimit(int value, int limit) {
+    return limit > 0 && value > limit;
+  }
+
+  /**
+   * @return the optimized filter if the provider evaluates filters with the
+   *         semantics the optimizer relies on, otherwise the filter as it was
+   *         sent
+   */
+  Filter optimizeFilter(Provider<T> provider, Filter filter) {
+    if (filterOptimizer == null || !provider.isOptimizedFilterSupported()) {
+      return filter;
+    }
+    return filterOptimizer.optimize(filter, getResourceClass());
+  }
+
+  /**
+   * @return the resource class this endpoint is declared for, null if it
+   *         can't be determined from the class hierarchy
+   */
+  @SuppressWarnings("unchecked")
+  Class<T> getResourceClass() {
+    for (Class<?> c = getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+      Type type = c.getGenericSuperclass();
+      if (type instanceof ParameterizedType && ((ParameterizedType) type).getRawType() == BaseResourceTypeResourceImpl.class) {
+        Type argument = ((ParameterizedType) type).getActualTypeArguments()[0];
+        return argument instanceof Class ? (Class<T>) argument : null;
+      }
+    }
+    return null;
+  }
+
   private URI buildLocationTag(T resource) {
     String id = resource.getId();
     if (id == null) {
@@ -712,11 +1032,23 @@ public abstract class BaseResourceTypeResourceImpl<T extends ScimResource> imple
     return er.toResponse();
   }
 
+  private Response createUpdateExceptionResponse(UnableToUpdateResourceException e) {
+    ErrorResponse er = new ErrorResponse(e.getStatus() != null ? e.getStatus() : Status.INTERNAL_SERVER_ERROR, e.getMessage());
+    er.setScimType(e.getScimType());
+    return er.toResponse();
+  }
+
   private Response createAmbiguousAttributeParametersResponse() {
     ErrorResponse er = new ErrorResponse(Status.BAD_REQUEST, "Cannot include both attributes and excluded attributes in a single request");
     return er.toResponse();
   }
 
+  private ErrorResponse createFilterErrorResponse(ErrorMessageType errorMessageType, String detail) {
+    ErrorResponse er = new ErrorResponse(Status.BAD_REQUEST, detail);
+    er.setScimType(errorMessageType);
+    return er;
+  }
+
   private Response createNotFoundResponse(String id) {
     ErrorResponse er = new ErrorResponse(Status.NOT_FOUND, "Resource " + id + " not found");
     return er.toResponse();
@@ -37,6 +37,7 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
 
+import edu.psu.swe.scim.server.exception.ScimServerException;
 import edu.psu.swe.scim.server.exception.UnableToCreateResourceException;
 import edu.psu.swe.scim.server.exception.UnableToDeleteResourceException;
 import edu.psu.swe.scim.server.exception.UnableToRetrieveResourceException;
@@ -45,6 +46,7 @@ import edu.psu.swe.scim.server.provider.Provider;
 import edu.psu.swe.scim.server.provider.ProviderRegistry;
 import edu.psu.swe.scim.server.provider.UpdateRequest;
 import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.server.schema.UniquenessIndex;
 import edu.psu.swe.scim.spec.protocol.BulkResource;
 import edu.psu.swe.scim.spec.protocol.data.BulkOperation;
 import edu.psu.swe.scim.spec.protocol.data.BulkOperation.Method;
@@ -105,6 +107,9 @@ public class BulkResourceImpl implements BulkResource {
   @Inject
   Instance<UpdateRequest<ScimResource>> updateRequestInstance;
 
+  @Inject
+  UniquenessIndex uniquenessIndex;
+
   @Override
   public Response doBulk(BulkRequest request, UriInfo uriInfo) {
     BulkResponse response;
@@ -246,6 +251,18 @@ public class BulkResourceImpl implements BulkResource {
 
           createAndSetErrorResponse(operationResult, status, detail);
 
+          if (operationResult.getBulkId() != null) {
+            String bulkIdKey = "bulkId:" + operationResult.getBulkId();
+
+            this.cleanup(bulkIdKey, transitiveReverseDependencies, bulkIdKeyToOperationResult);
+          }
+        } catch (ScimServerException scimServerException) {
+          log.error("Failed to do bulk operation", scimServerException);
+
+          errorCount += errorCountIncrement;
+          operationResult.setResponse(scimServerException.getErrorResponse());
+          operationResult.setStatus(new StatusWrapper(scimServerException.getErrorResponse().getStatus()));
+
           if (operationResult.getBulkId() != null) {
             String bulkIdKey = "bulkId:" + operationResult.getBulkId();
 
@@ -295,7 +312,21 @@ public class BulkResourceImpl implements BulkResource {
 
         UpdateRequest<ScimResource> updateRequest = updateRequestInstance.get();
         updateRequest.initWithResource(scimResourceId, original, scimResource);
-        provider.update(updateRequest);
+        UniquenessIndex.Reservation reservation = reserveUniqueValues(scimResource, scimResourceId);
+        try {
+          provider.update(updateRequest);
+          commitUniqueValues(reservation, scimResourceId);
+        } finally {
+          releaseUniqueValues(reservation);
+        }
+      } catch (ScimServerException scimServerException) {
+        log.error("Failed to update Scim Resource with resolved bulkIds", scimServerException);
+
+        bulkOperationResult.setData(null);
+        bulkOperationResult.setLocation(null);
+        bulkOperationResult.setResponse(scimServerException.getErrorResponse());
+        bulkOperationResult.setStatus(new StatusWrapper(scimServerException.getErrorResponse().getStatus()));
+        this.cleanup(bulkIdKey, transitiveReverseDependencies, bulkIdKeyToOperationResult);
       } catch (UnresolvableOperationException unresolvableOperationException) {
         log.error("Could not complete final resolution pass, unresolvable bulkId", unresolvableOperationException);
 
@@ -352,6 +383,7 @@ public class BulkResourceImpl implements BulkResource {
 
     try {
       provider.delete(scimResource.getId());
+      removeUniqueValues(scimResourceClass, scimResource.getId());
     } catch (UnableToDeleteResourceException unableToDeleteResourceException) {
       log.error("Could not delete ScimResource after failure: {}", scimResource);
     }
@@ -370,6 +402,7 @@ public class BulkResourceImpl implements BulkResource {
           dependentOperationResult.setLocation(null);
           createAndSetErrorResponse(dependentOperationResult, Status.CONFLICT, String.format(OPERATION_DEPENDS_ON_FAILED_OPERATION, bulkId, dependentBulkIdKey));
           dependentResourceProvider.delete(dependentResourceId);
+          removeUniqueValues(dependentResourceClass, dependentResourceId);
         } catch (UnableToDeleteResourceException unableToDeleteResourceException) {
           log.error("Could not delete depenedent ScimResource after failing to update dependee", unableToDeleteResourceException);
         }
@@ -389,8 +422,9 @@ public class BulkResourceImpl implements BulkResource {
    * @throws UnableToDeleteResourceException
    * @throws UnableToUpdateResourceException
    * @throws UnresolvableOperationException
+   * @throws ScimServerException if a unique value is already in use
    */
-  private void handleBulkOperationMethod(List<IWishJavaHadTuples> unresolveds, BulkOperation operationResult, Map<String, BulkOperation> bulkIdKeyToOperationResult, UriInfo uriInfo) throws UnableToCreateResourceException, UnableToDeleteResourceException, UnableToUpdateResourceException, UnresolvableOperationException {
+  private void handleBulkOperationMethod(List<IWishJavaHadTuples> unresolveds, BulkOperation operationResult, Map<String, BulkOperation> bulkIdKeyToOperationResult, UriInfo uriInfo) throws UnableToCreateResourceException, UnableToDeleteResourceException, UnableToUpdateResourceException, UnresolvableOperationException, ScimServerException {
     ScimResource scimResource = operationResult.getData();
     Method bulkOperationMethod = operationResult.getMethod();
     String bulkId = operationResult.getBulkId();
@@ -416,7 +450,14 @@ public class BulkResourceImpl implements BulkResource {
 
       log.debug("Creating {}", scimResource);
 
-      ScimResource newScimResource = provider.create(scimResource);
+      ScimResource newScimResource;
+      UniquenessIndex.Reservation reservation = reserveUniqueValues(scimResource, null);
+      try {
+        newScimResource = provider.create(scimResource);
+        commitUniqueValues(reservation, newScimResource.getId());
+      } finally {
+        releaseUniqueValues(reservation);
+      }
       String bulkOperationPath = operationResult.getPath();
       String newResourceId = newScimResource.getId();
       String newResourceUri = uriInfo.getBaseUriBuilder()
@@ -447,6 +488,7 @@ public class BulkResourceImpl implements BulkResource {
                                                  + 1);
 
       provider.delete(scimResourceId);
+      removeUniqueValues(scimResourceClass, scimResourceId);
       operationResult.setStatus(StatusWrapper.wrap(Status.NO_CONTENT));
     }
       break;
@@ -466,7 +508,13 @@ public class BulkResourceImpl implements BulkResource {
         UpdateRequest<ScimResource> updateRequest = updateRequestInstance.get();
         updateRequest.initWithResource(id, original, scimResource);
         
-        provider.update(updateRequest);
+        UniquenessIndex.Reservation reservation = reserveUniqueValues(scimResource, id);
+        try {
+          provider.update(updateRequest);
+          commitUniqueValues(reservation, id);
+        } finally {
+          releaseUniqueValues(reservation);
+        }
         operationResult.setStatus(StatusWrapper.wrap(Status.OK));
       } catch (UnableToRetrieveResourceException e) {
         operationResult.setStatus(StatusWrapper.wrap(Status.NOT_FOUND));
@@ -485,6 +533,33 @@ public class BulkResourceImpl implements BulkResource {
     }
   }
 
+  /**
+   * @return the reservation of the unique values of the resource, null if
+   *         there is no uniqueness index
+   * @throws ScimServerException a 409 if a unique value is already in use
+   */
+  private UniquenessIndex.Reservation reserveUniqueValues(ScimResource scimResource, String id) throws ScimServerException {
+    return uniquenessIndex != null ? uniquenessIndex.reserve(scimResource, id) : null;
+  }
+
+  private static void commitUniqueValues(UniquenessIndex.Reservation reservation, String id) {
+    if (reservation != null) {
+      reservation.commit(id);
+    }
+  }
+
+  private static void releaseUniqueValues(UniquenessIndex.Reservation reservation) {
+    if (reservation != null) {
+      reservation.release();
+    }
+  }
+
+  private void removeUniqueValues(Class<ScimResource> scimResourceClass, String id) {
+    if (uniquenessIndex != null) {
+      uniquenessIndex.remove(scimResourceClass, id);
+    }
+  }
+
   private static void createAndSetErrorResponse(BulkOperation operationResult, Status status, String detail) {
     ErrorResponse error = new ErrorResponse(status, detail);
     operationResult.setResponse(error);
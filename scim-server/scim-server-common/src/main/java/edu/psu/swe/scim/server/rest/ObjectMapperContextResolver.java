@@ -35,6 +35,9 @@ import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
 import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
 
 import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.server.utility.ProjectingSerializerModifier;
+import edu.psu.swe.scim.spec.extension.ScimExtensionRegistry;
+import edu.psu.swe.scim.spec.resources.ScimExtension;
 import edu.psu.swe.scim.spec.resources.ScimResource;
 
 @Provider
@@ -49,6 +52,11 @@ public class ObjectMapperContextResolver extends edu.psu.swe.commons.jaxrs.serve
   public ObjectMapperContextResolver() {
     super();
     objectMapper = super.getContext(null);
+
+    // skips the attributes of a request's projection while writing
+    SimpleModule projectionModule = new SimpleModule();
+    projectionModule.setSerializerModifier(new ProjectingSerializerModifier());
+    objectMapper.registerModule(projectionModule);
   }
   
   //Not call through container context and therefore must manually call postConstruct method
@@ -61,8 +69,34 @@ public class ObjectMapperContextResolver extends edu.psu.swe.commons.jaxrs.serve
   @PostConstruct
   protected void postConstruct() {
     SimpleModule module = new SimpleModule();
-    module.addDeserializer(ScimResource.class, new ScimResourceDeserializer(this.registry, this.objectMapper));
+    ScimResourceDeserializer scimResourceDeserializer = new ScimResourceDeserializer(this.registry, this.objectMapper);
+    module.addDeserializer(ScimResource.class, scimResourceDeserializer);
     this.objectMapper.registerModule(module);
+
+    // providers are usually registered after the resolver is created
+    if (this.registry != null) {
+      this.registry.addScimResourceClassListener(scimResourceClass -> prepare(scimResourceDeserializer, scimResourceClass));
+    }
+  }
+
+  /**
+   * Builds the serializers and deserializers of a registered resource and
+   * its extensions now, instead of introspecting their classes while the
+   * first request that uses them waits.
+   */
+  private void prepare(ScimResourceDeserializer scimResourceDeserializer, Class<? extends ScimResource> scimResourceClass) {
+    // TODO - Register streaming codecs generated by scim-spec-processor from
+    // the @ScimAttribute metadata here instead of warming up the reflective
+    // Jackson ones, with a test comparing their output to Jackson's
+    ScimExtensionRegistry scimExtensionRegistry = ScimExtensionRegistry.getInstance();
+
+    scimResourceDeserializer.getReader(scimResourceClass);
+    objectMapper.writerFor(scimResourceClass);
+
+    for (Class<? extends ScimExtension> extensionClass : scimExtensionRegistry.getExtensionClasses(scimResourceClass)) {
+      scimExtensionRegistry.getExtensionReader(extensionClass);
+      objectMapper.writerFor(extensionClass);
+    }
   }
 
   @Override
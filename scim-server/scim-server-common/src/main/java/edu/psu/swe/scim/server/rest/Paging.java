@@ -0,0 +1,93 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.rest;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import edu.psu.swe.scim.spec.protocol.search.PageRequest;
+
+/**
+ * The paging rules of RFC 7644 section 3.4.2.4
+ * (https://tools.ietf.org/html/rfc7644#section-3.4.2.4).
+ */
+final class Paging {
+
+  private Paging() {
+  }
+
+  /**
+   * Normalizes a page request: a missing or non-positive start index is 1, a
+   * negative count is 0, a missing count or one over the maximum is the
+   * maximum.
+   * 
+   * @param maxResults the most resources returned per page, 0 for no limit
+   */
+  static PageRequest normalize(PageRequest pageRequest, int maxResults) {
+    Integer startIndex = pageRequest != null ? pageRequest.getStartIndex() : null;
+    Integer count = pageRequest != null ? pageRequest.getCount() : null;
+
+    PageRequest normalized = new PageRequest();
+    normalized.setStartIndex(startIndex == null || startIndex < 1 ? 1 : startIndex);
+    if (count != null && count < 0) {
+      count = 0;
+    }
+    if (maxResults > 0 && (count == null || count > maxResults)) {
+      count = maxResults;
+    }
+    normalized.setCount(count);
+    return normalized;
+  }
+
+  /**
+   * @param totalResults the number of resources matching the filter
+   * @return true if the provider returned all the matching resources rather
+   *         than the page: they are more than the page asked for, or a page
+   *         after the first holds every match
+   */
+  static boolean isUnpaged(Collection<?> resources, int totalResults, PageRequest pageRequest) {
+    if (pageRequest.getCount() != null && resources.size() > pageRequest.getCount()) {
+      return true;
+    }
+    return pageRequest.getStartIndex() > 1 && !resources.isEmpty() && resources.size() == totalResults;
+  }
+
+  /**
+   * @return the page of all the matching resources selected by a normalized
+   *         page request
+   */
+  static <T> List<T> page(Collection<T> resources, PageRequest pageRequest) {
+    List<T> page = new ArrayList<>();
+    int from = pageRequest.getStartIndex() - 1;
+    int count = pageRequest.getCount() != null ? pageRequest.getCount() : Integer.MAX_VALUE;
+    int index = 0;
+    for (T resource : resources) {
+      if (page.size() >= count) {
+        break;
+      }
+      if (index++ >= from) {
+        page.add(resource);
+      }
+    }
+    return page;
+  }
+}
@@ -0,0 +1,57 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import edu.psu.swe.scim.server.utility.ProjectingSerializerModifier;
+
+/**
+ * A response entity written by a writer carrying the request's
+ * {@link edu.psu.swe.scim.server.utility.ResourceProjection}, the entity
+ * itself is written as is and is never changed.
+ * 
+ * @see ProjectingSerializerModifier
+ */
+class ProjectedEntity implements StreamingOutput {
+
+  private final ObjectWriter objectWriter;
+
+  private final Object entity;
+
+  ProjectedEntity(ObjectWriter objectWriter, Object entity) {
+    this.objectWriter = objectWriter;
+    this.entity = entity;
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException, WebApplicationException {
+    // the container owns the output stream
+    objectWriter.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(output, entity);
+  }
+}
@@ -20,24 +20,41 @@
 package edu.psu.swe.scim.server.rest;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.core.JsonLocation;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 import edu.psu.swe.scim.server.schema.Registry;
 import edu.psu.swe.scim.spec.resources.ScimResource;
 
+/**
+ * Binds a {@link ScimResource} to the concrete class registered for one of
+ * the URNs in its <code>schemas</code> attribute.
+ * 
+ * The body is parsed once. Fields that come before <code>schemas</code> are
+ * buffered as tokens; as soon as the schemas have been read the concrete class
+ * is bound from the buffered tokens followed by the rest of the original
+ * parser, so the remainder of the resource is never buffered or re-rendered.
+ */
 public class ScimResourceDeserializer extends JsonDeserializer<ScimResource> {
+  private static final String SCHEMAS = "schemas";
+
   private final Registry registry;
   private final ObjectMapper objectMapper;
+  private final Map<Class<? extends ScimResource>, ObjectReader> readers = new ConcurrentHashMap<>();
 
   public ScimResourceDeserializer(Registry registry, ObjectMapper objectMapper) {
     this.registry = registry;
@@ -46,25 +63,81 @@ public class ScimResourceDeserializer extends JsonDeserializer<ScimResource> {
 
   @Override
   public ScimResource deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException, JsonProcessingException {
-    ScimResource scimResource;
     JsonLocation location = jsonParser.getCurrentLocation();
-    TreeNode node = jsonParser.getCodec().readTree(jsonParser);
-    ArrayNode schemas = (ArrayNode) node.get("schemas");
-    Class<? extends ScimResource> scimResourceClass = null;
+    JsonToken token = jsonParser.getCurrentToken();
+    if (token == JsonToken.START_OBJECT) {
+      token = jsonParser.nextToken();
+    }
+
+    TokenBuffer buffer = new TokenBuffer(jsonParser, deserializationContext);
+    buffer.writeStartObject();
+
+    for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+      String fieldName = jsonParser.getCurrentName();
+      buffer.writeFieldName(fieldName);
+      jsonParser.nextToken();
+
+      if (SCHEMAS.equals(fieldName)) {
+        List<String> schemas = readSchemas(jsonParser, buffer, location);
+        Class<? extends ScimResource> scimResourceClass = findScimResourceClass(schemas);
 
-    for (JsonNode schemaUrnNode : schemas) {
-      String schemaUrn = schemaUrnNode.textValue();
-      scimResourceClass = registry.findScimResourceClass(schemaUrn);
+        if (scimResourceClass == null) {
+          throw new JsonParseException("Could not find a valid schema in: " + schemas + ", valid schemas are: " + registry.getAllSchemaUrns(), location);
+        }
+
+        // The original parser is left on the end of the schemas array, the
+        // sequence continues with the field after it once the buffer is used up
+        JsonParser resourceParser = JsonParserSequence.createFlattened(false, buffer.asParser(jsonParser), jsonParser);
+        return getReader(scimResourceClass).readValue(resourceParser);
+      }
+      buffer.copyCurrentStructure(jsonParser);
+    }
+
+    throw new JsonParseException("Could not find a valid schema in: [], valid schemas are: " + registry.getAllSchemaUrns(), location);
+  }
+
+  /**
+   * Returns the reader binding <code>scimResourceClass</code>. Creating the
+   * reader builds the class's deserializer, so calling this ahead of the
+   * first request takes that cost out of the request.
+   */
+  public ObjectReader getReader(Class<? extends ScimResource> scimResourceClass) {
+    return readers.computeIfAbsent(scimResourceClass, objectMapper::readerFor);
+  }
+
+  private Class<? extends ScimResource> findScimResourceClass(List<String> schemas) {
+    for (String schemaUrn : schemas) {
+      Class<? extends ScimResource> scimResourceClass = registry.findScimResourceClass(schemaUrn);
 
       if (scimResourceClass != null) {
-        break;
+        return scimResourceClass;
       }
     }
-    if (scimResourceClass == null) {
-      throw new JsonParseException("Could not find a valid schema in: " + schemas + ", valid schemas are: " + registry.getAllSchemaUrns(), location);
+    return null;
+  }
+
+  /**
+   * Reads the schema URNs the parser is positioned on while copying them to
+   * <code>buffer</code>, leaving the parser on the closing bracket.
+   */
+  private static List<String> readSchemas(JsonParser jsonParser, TokenBuffer buffer, JsonLocation location) throws IOException {
+    if (jsonParser.getCurrentToken() != JsonToken.START_ARRAY) {
+      throw new JsonParseException("The schemas attribute must be an array of schema URNs", location);
+    }
+    buffer.copyCurrentEvent(jsonParser);
+
+    List<String> schemas = new ArrayList<>();
+    for (JsonToken token = jsonParser.nextToken(); token != JsonToken.END_ARRAY; token = jsonParser.nextToken()) {
+      if (token == null) {
+        throw new JsonParseException("Unexpected end of input in the schemas attribute", location);
+      }
+      if (token == JsonToken.VALUE_STRING) {
+        schemas.add(jsonParser.getText());
+      }
+      buffer.copyCurrentStructure(jsonParser);
     }
-    scimResource = objectMapper.readValue(node.toString(), scimResourceClass);
+    buffer.copyCurrentEvent(jsonParser);
 
-    return scimResource;
+    return schemas;
   }
 }
@@ -97,6 +97,7 @@ public class ServiceProviderConfigResourceImpl implements ServiceProviderConfigR
     
     try {
       EntityTag etag = etagGenerator.generateEtag(serviceProviderConfiguration);
+      meta.setVersion(etag.getValue());
       return Response.ok(serviceProviderConfiguration).tag(etag).build();
     } catch (JsonProcessingException | NoSuchAlgorithmException | UnsupportedEncodingException e) {
       return createETagErrorResponse();
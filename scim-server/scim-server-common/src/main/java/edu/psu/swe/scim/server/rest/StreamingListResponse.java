@@ -0,0 +1,101 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import edu.psu.swe.scim.server.provider.StreamingFilterResponse;
+import edu.psu.swe.scim.spec.protocol.data.ListResponse;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+
+/**
+ * Writes a {@link ListResponse} one resource at a time as the provider's
+ * stream produces them, so only the resource being written is held in
+ * memory. <code>itemsPerPage</code> is written after the resources since the
+ * size of the page is only known once the stream is exhausted.
+ * 
+ * A failure while writing can no longer change the status of the response,
+ * it is logged by the caller's projection or the container and the response
+ * is cut short.
+ *
+ * @param <T> the resource type
+ */
+class StreamingListResponse<T extends ScimResource> implements StreamingOutput {
+
+  /**
+   * Prepares a resource for display, like the projection of the requested
+   * attributes.
+   */
+  interface Projection<T> {
+    T apply(T resource) throws IOException;
+  }
+
+  private final ObjectWriter objectWriter;
+
+  private final StreamingFilterResponse<T> filterResponse;
+
+  private final int startIndex;
+
+  private final Projection<T> projection;
+
+  StreamingListResponse(ObjectWriter objectWriter, StreamingFilterResponse<T> filterResponse, int startIndex, Projection<T> projection) {
+    this.objectWriter = objectWriter;
+    this.filterResponse = filterResponse;
+    this.startIndex = startIndex;
+    this.projection = projection;
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException, WebApplicationException {
+    try (StreamingFilterResponse<T> response = filterResponse;
+         JsonGenerator generator = objectWriter.getFactory().createGenerator(output, JsonEncoding.UTF8)) {
+      // the container owns the output stream
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      generator.writeStartObject();
+      generator.writeArrayFieldStart("schemas");
+      generator.writeString(ListResponse.SCHEMA_URI);
+      generator.writeEndArray();
+      generator.writeNumberField("totalResults", response.getTotalResults());
+      generator.writeNumberField("startIndex", startIndex);
+
+      int itemsPerPage = 0;
+      generator.writeArrayFieldStart("Resources");
+      Iterator<T> resources = response.getResources().iterator();
+      while (resources.hasNext()) {
+        objectWriter.writeValue(generator, projection.apply(resources.next()));
+        itemsPerPage++;
+      }
+      generator.writeEndArray();
+
+      generator.writeNumberField("itemsPerPage", itemsPerPage);
+      generator.writeEndObject();
+    }
+  }
+}
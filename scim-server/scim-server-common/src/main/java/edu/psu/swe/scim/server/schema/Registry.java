@@ -22,8 +22,11 @@ package edu.psu.swe.scim.server.schema;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
@@ -48,6 +51,8 @@ public class Registry {
   private Map<String, Class<? extends ScimResource>> endpointToScimResourceClass = new HashMap<>();
 
   private Map<String, ResourceType> resourceTypeMap = new HashMap<>();
+
+  private List<Consumer<Class<? extends ScimResource>>> scimResourceClassListeners = new CopyOnWriteArrayList<>();
   
   private ObjectMapper objectMapper;
 
@@ -103,6 +108,30 @@ public class Registry {
     return scimResourceClass;
   }
 
+  public Collection<Class<? extends ScimResource>> getAllScimResourceClasses() {
+    return Collections.unmodifiableCollection(schemaUrnToScimResourceClass.values());
+  }
+
+  /**
+   * Calls the listener with every resource class registered so far and then
+   * with each class whose registration completes, see
+   * {@link #scimResourceClassRegistered(Class)}.
+   */
+  public void addScimResourceClassListener(Consumer<Class<? extends ScimResource>> listener) {
+    scimResourceClassListeners.add(listener);
+    getAllScimResourceClasses().forEach(listener);
+  }
+
+  /**
+   * Tells the listeners that a resource class and its extensions are
+   * registered.
+   */
+  public void scimResourceClassRegistered(Class<? extends ScimResource> scimResourceClass) {
+    for (Consumer<Class<? extends ScimResource>> listener : scimResourceClassListeners) {
+      listener.accept(scimResourceClass);
+    }
+  }
+
   public <T extends ScimResource> Class<T> findScimResourceClass(String schemaUrn) {
     @SuppressWarnings("unchecked")
     Class<T> scimResourceClass = (Class<T>) schemaUrnToScimResourceClass.get(schemaUrn);
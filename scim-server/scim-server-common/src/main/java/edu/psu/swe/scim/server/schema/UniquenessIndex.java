@@ -0,0 +1,314 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.schema;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.ws.rs.core.Response.Status;
+
+import edu.psu.swe.scim.server.exception.ScimServerException;
+import edu.psu.swe.scim.spec.annotation.ScimResourceType;
+import edu.psu.swe.scim.spec.protocol.ErrorMessageType;
+import edu.psu.swe.scim.spec.resources.ScimExtension;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.schema.Schema;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Uniqueness;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Enforces the uniqueness declared by the schemas in the {@link Registry}
+ * for the values written through the server.
+ * 
+ * Before a resource is handed to a provider its unique values are reserved,
+ * a value is owned by at most one resource (or pending reservation) at a
+ * time so a second concurrent write of the same value fails immediately.
+ * After the provider succeeds the reservation is committed to the id of the
+ * resource, which also frees the values the resource no longer has. If the
+ * provider fails the reservation is released.
+ * 
+ * Attributes with a uniqueness of server are unique within their resource
+ * type's schema, attributes with a uniqueness of global across all schemas.
+ * String values of attributes that aren't case exact are compared ignoring
+ * case. Only top level attributes of the resource and its extensions are
+ * considered.
+ * 
+ * Values are held in a {@link ConcurrentHashMap}, each value is claimed or
+ * freed atomically under the lock of its own bin, so writes of different
+ * values never wait for each other.
+ * 
+ * The index only knows about values written through the server since it
+ * started and the values of the resources a provider returns from
+ * {@link edu.psu.swe.scim.server.provider.Provider#getStoredResources()}
+ * when it is registered. Providers that return null there must keep
+ * enforcing the uniqueness of their existing data themselves.
+ */
+@Slf4j
+@Named
+@ApplicationScoped
+public class UniquenessIndex {
+
+  private final Registry registry;
+
+  private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, Set<Key>> ownedKeys = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, List<Attribute>> uniqueAttributes = new ConcurrentHashMap<>();
+
+  @Inject
+  public UniquenessIndex(Registry registry) {
+    this.registry = registry;
+  }
+
+  UniquenessIndex() {
+    // CDI
+    this(null);
+  }
+
+  /**
+   * Reserves the unique values of a resource.
+   * 
+   * @param resource the resource about to be written
+   * @param id the id of the resource being replaced, null for a new resource
+   * @return the reservation to commit or release once the provider has
+   *         written the resource
+   * @throws ScimServerException a 409 with the scim type
+   *         <code>uniqueness</code> if a value is in use by another resource
+   *         or reserved by another write
+   */
+  public Reservation reserve(ScimResource resource, String id) throws ScimServerException {
+    String owner = id != null ? owner(resource.getBaseUrn(), id) : null;
+    Reservation reservation = new Reservation(this, resource.getBaseUrn());
+
+    for (Map.Entry<Key, String> keyEntry : keys(resource).entrySet()) {
+      Key key = keyEntry.getKey();
+      reservation.keys.add(key);
+      Entry reserved = new Entry();
+      Entry current = entries.putIfAbsent(key, reserved);
+      if (current == null) {
+        reservation.reserved.put(key, reserved);
+      } else if (owner == null || !owner.equals(current.owner)) {
+        reservation.release();
+        throw new ScimServerException(Status.CONFLICT, ErrorMessageType.UNIQUENESS, "The value of " + keyEntry.getValue() + " is already in use");
+      }
+    }
+    return reservation;
+  }
+
+  /**
+   * Adds the unique values of a stored resource.
+   * 
+   * @throws ScimServerException if a value is in use by another resource
+   */
+  public void add(ScimResource resource) throws ScimServerException {
+    Reservation reservation = reserve(resource, resource.getId());
+    try {
+      reservation.commit(resource.getId());
+    } finally {
+      reservation.release();
+    }
+  }
+
+  /**
+   * Frees the unique values of a deleted resource.
+   */
+  public void remove(Class<? extends ScimResource> resourceClass, String id) {
+    ScimResourceType scimResourceType = resourceClass != null ? resourceClass.getAnnotation(ScimResourceType.class) : null;
+    if (scimResourceType != null && id != null) {
+      String owner = owner(scimResourceType.schema(), id);
+      Set<Key> keys = ownedKeys.remove(owner);
+      if (keys != null) {
+        removeOwned(keys, owner);
+      }
+    }
+  }
+
+  /**
+   * @return the number of values held, reserved or committed
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  private void commit(Reservation reservation, String id) {
+    String owner = owner(reservation.schemaUrn, id);
+    for (Entry entry : reservation.reserved.values()) {
+      entry.owner = owner;
+    }
+    Set<Key> keys = Collections.unmodifiableSet(new HashSet<>(reservation.keys));
+    Set<Key> previousKeys = ownedKeys.put(owner, keys);
+    if (previousKeys != null) {
+      removeOwned(previousKeys.stream()
+                              .filter(key -> !keys.contains(key))
+                              .collect(Collectors.toList()), owner);
+    }
+    reservation.reserved.clear();
+  }
+
+  private void release(Reservation reservation) {
+    for (Map.Entry<Key, Entry> reserved : reservation.reserved.entrySet()) {
+      entries.remove(reserved.getKey(), reserved.getValue());
+    }
+    reservation.reserved.clear();
+  }
+
+  private void removeOwned(Collection<Key> keys, String owner) {
+    for (Key key : keys) {
+      entries.computeIfPresent(key, (k, entry) -> owner.equals(entry.owner) ? null : entry);
+    }
+  }
+
+  /**
+   * @return the keys of the unique values of the resource, each with the
+   *         name of its attribute for error messages
+   */
+  private Map<Key, String> keys(ScimResource resource) {
+    Map<Key, String> keys = new LinkedHashMap<>();
+    addKeys(keys, resource.getBaseUrn(), resource.getBaseUrn(), resource);
+    for (Map.Entry<String, ScimExtension> extension : resource.getExtensions().entrySet()) {
+      addKeys(keys, resource.getBaseUrn(), extension.getKey(), extension.getValue());
+    }
+    return keys;
+  }
+
+  private void addKeys(Map<Key, String> keys, String resourceUrn, String schemaUrn, Object source) {
+    if (source == null) {
+      return;
+    }
+    for (Attribute attribute : uniqueAttributes(schemaUrn)) {
+      Object value = read(attribute.getField(), source);
+      Collection<?> values = value instanceof Collection ? (Collection<?>) value : Collections.singletonList(value);
+      String scope = attribute.getUniqueness() == Uniqueness.GLOBAL ? null : resourceUrn.toLowerCase(Locale.ROOT);
+      String attributeName = (schemaUrn + ":" + attribute.getName()).toLowerCase(Locale.ROOT);
+      for (Object v : values) {
+        if (v != null) {
+          keys.put(new Key(scope, attributeName, normalize(attribute, v)), attribute.getName());
+        }
+      }
+    }
+  }
+
+  private List<Attribute> uniqueAttributes(String schemaUrn) {
+    return uniqueAttributes.computeIfAbsent(schemaUrn, urn -> {
+      Schema schema = registry != null ? registry.getSchema(urn) : null;
+      if (schema == null) {
+        return Collections.emptyList();
+      }
+      List<Attribute> attributes = new ArrayList<>();
+      for (Attribute attribute : schema.getAttributes()) {
+        Uniqueness uniqueness = attribute.getUniqueness();
+        if ((uniqueness == Uniqueness.SERVER || uniqueness == Uniqueness.GLOBAL) && attribute.getField() != null) {
+          attribute.getField().setAccessible(true);
+          attributes.add(attribute);
+        }
+      }
+      return attributes;
+    });
+  }
+
+  private static Object normalize(Attribute attribute, Object value) {
+    if (value instanceof String && !attribute.isCaseExact()) {
+      return ((String) value).toLowerCase(Locale.ROOT);
+    }
+    return value;
+  }
+
+  private static Object read(Field field, Object source) {
+    try {
+      return field.get(source);
+    } catch (IllegalArgumentException | IllegalAccessException e) {
+      log.warn("Unable to read unique attribute " + field.getName(), e);
+      return null;
+    }
+  }
+
+  private static String owner(String schemaUrn, String id) {
+    return schemaUrn.toLowerCase(Locale.ROOT) + "#" + id;
+  }
+
+  @Value
+  private static class Key {
+    String scope;
+    String attribute;
+    Object value;
+  }
+
+  /**
+   * A value in the index, owned by the id of a resource once its reservation
+   * is committed.
+   */
+  private static class Entry {
+    volatile String owner;
+  }
+
+  /**
+   * The unique values of one write, held until the write completes.
+   */
+  public static class Reservation {
+
+    private final UniquenessIndex index;
+
+    private final String schemaUrn;
+
+    private final Set<Key> keys = new HashSet<>();
+
+    private final Map<Key, Entry> reserved = new ConcurrentHashMap<>();
+
+    private Reservation(UniquenessIndex index, String schemaUrn) {
+      this.index = index;
+      this.schemaUrn = schemaUrn;
+    }
+
+    /**
+     * Makes the reserved values the values of the written resource and frees
+     * the values it had before. Does nothing if the id is null.
+     */
+    public void commit(String id) {
+      if (id != null) {
+        index.commit(this, id);
+      }
+    }
+
+    /**
+     * Frees the values still reserved, does nothing after a commit.
+     */
+    public void release() {
+      index.release(this);
+    }
+  }
+}
@@ -19,19 +19,13 @@
 
 package edu.psu.swe.scim.server.utility;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.lang.reflect.Field;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Locale;
 import java.util.Set;
-import java.util.function.Function;
+import java.util.function.Predicate;
 
 import javax.annotation.PostConstruct;
 import javax.ejb.Stateless;
@@ -53,7 +47,6 @@ import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
 import edu.psu.swe.scim.server.rest.ScimResourceDeserializer;
 import edu.psu.swe.scim.server.schema.Registry;
 import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
-import edu.psu.swe.scim.spec.resources.ScimExtension;
 import edu.psu.swe.scim.spec.resources.ScimGroup;
 import edu.psu.swe.scim.spec.resources.ScimResource;
 import edu.psu.swe.scim.spec.resources.ScimUser;
@@ -62,6 +55,7 @@ import edu.psu.swe.scim.spec.schema.Schema;
 import edu.psu.swe.scim.spec.schema.Schema.Attribute;
 import edu.psu.swe.scim.spec.schema.Schema.Attribute.Returned;
 import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
 @Stateless
@@ -71,10 +65,20 @@ public class AttributeUtil {
   @Inject
   Registry registry;
 
+  @Inject
+  ProjectionCache projectionCache;
+
   ObjectMapper objectMapper;
 
+  ResourceCopier resourceCopier;
+
   @PostConstruct
   public void init() { // TODO move this to a CDI producer
+    resourceCopier = new ResourceCopier(registry);
+    if (projectionCache == null) {
+      projectionCache = new ProjectionCache();
+    }
+
     objectMapper = new ObjectMapper();
 
     JaxbAnnotationModule jaxbAnnotationModule = new JaxbAnnotationModule();
@@ -94,186 +98,100 @@ public class AttributeUtil {
   }
 
   public <T extends ScimResource> T keepAlwaysAttributesForDisplay(T resource) throws IllegalArgumentException, IllegalAccessException, AttributeDoesNotExistException, IOException {
-    return setAttributesForDisplayInternal(resource, Returned.DEFAULT, Returned.REQUEST, Returned.NEVER);
+    return project(resource, getProjection(ProjectionMode.ALWAYS, Collections.emptySet()));
   }
   
   public <T extends ScimResource> T setAttributesForDisplay(T resource) throws IllegalArgumentException, IllegalAccessException, AttributeDoesNotExistException, IOException {
-    return setAttributesForDisplayInternal(resource, Returned.REQUEST, Returned.NEVER);
-  }
-  
-  private <T extends ScimResource> T setAttributesForDisplayInternal(T resource, Returned ... removeAttributesOfTypes) throws IllegalArgumentException, IllegalAccessException, AttributeDoesNotExistException, IOException {
-    T copy = cloneScimResource(resource);
-    String resourceType = copy.getResourceType();
-    Schema schema = registry.getBaseSchemaOfResourceType(resourceType);
-
-    // return always and default, exclude never and requested
-    for (Returned removeAttributesOfType : removeAttributesOfTypes) {
-      removeAttributesOfType(copy, schema, removeAttributesOfType);
-    }
-
-    for (Entry<String, ScimExtension> extensionEntry : copy.getExtensions().entrySet()) {
-      String extensionUrn = extensionEntry.getKey();
-      ScimExtension scimExtension = extensionEntry.getValue();
-
-      Schema extensionSchema = registry.getSchema(extensionUrn);
-
-      for (Returned removeAttributesOfType : removeAttributesOfTypes) {
-        removeAttributesOfType(scimExtension, extensionSchema, removeAttributesOfType);
-      }
-    }
-    return copy;
+    return project(resource, getProjection(ProjectionMode.DEFAULT, Collections.emptySet()));
   }
 
   public <T extends ScimResource> T setAttributesForDisplay(T resource, Set<AttributeReference> attributes) throws IllegalArgumentException, IllegalAccessException, AttributeDoesNotExistException, IOException {
     if (attributes.isEmpty()) {
       return setAttributesForDisplay(resource);
-    } else {
-      T copy = cloneScimResource(resource);
-      
-      String resourceType = copy.getResourceType();
-      Schema schema = registry.getBaseSchemaOfResourceType(resourceType);
-
-      // return always and specified attributes, exclude never
-      Set<Attribute> attributesToKeep = resolveAttributeReferences(attributes, true);
-      removeAttributesOfType(copy, schema, Returned.DEFAULT, attributesToKeep);
-      removeAttributesOfType(copy, schema, Returned.REQUEST, attributesToKeep);
-      removeAttributesOfType(copy, schema, Returned.NEVER);
-
-      for (Entry<String, ScimExtension> extensionEntry : copy.getExtensions().entrySet()) {
-        String extensionUrn = extensionEntry.getKey();
-        ScimExtension scimExtension = extensionEntry.getValue();
-
-        Schema extensionSchema = registry.getSchema(extensionUrn);
-
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.DEFAULT, attributesToKeep);
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.REQUEST, attributesToKeep);
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.NEVER);
-      }
-      return copy;
     }
+    return project(resource, getProjection(ProjectionMode.INCLUDE, attributes));
   }
 
   public <T extends ScimResource> T setExcludedAttributesForDisplay(T resource, Set<AttributeReference> excludedAttributes) throws IllegalArgumentException, IllegalAccessException, AttributeDoesNotExistException, IOException {
-
     if (excludedAttributes.isEmpty()) {
       return setAttributesForDisplay(resource);
-    } else {
-      T copy = cloneScimResource(resource);
-
-      String resourceType = copy.getResourceType();
-      Schema schema = registry.getBaseSchemaOfResourceType(resourceType);
+    }
+    return project(resource, getProjection(ProjectionMode.EXCLUDE, excludedAttributes));
+  }
 
-      // return always and default, exclude never and specified attributes
-      Set<Attribute> attributesToRemove = resolveAttributeReferences(excludedAttributes, false);
-      removeAttributesOfType(copy, schema, Returned.REQUEST);
-      removeAttributesOfType(copy, schema, Returned.NEVER);
-      removeAttributes(copy, schema, attributesToRemove);
+  /**
+   * Returns the projection for the attributes and excludedAttributes
+   * parameters of a request, for writing resources without copying them. At
+   * most one of the sets may be non-empty.
+   */
+  public ResourceProjection getProjection(Set<AttributeReference> attributes, Set<AttributeReference> excludedAttributes) throws AttributeDoesNotExistException {
+    if (!excludedAttributes.isEmpty()) {
+      return getProjection(ProjectionMode.EXCLUDE, excludedAttributes);
+    } else if (!attributes.isEmpty()) {
+      return getProjection(ProjectionMode.INCLUDE, attributes);
+    }
+    return getProjection(ProjectionMode.DEFAULT, Collections.emptySet());
+  }
 
-      for (Entry<String, ScimExtension> extensionEntry : copy.getExtensions().entrySet()) {
-        String extensionUrn = extensionEntry.getKey();
-        ScimExtension scimExtension = extensionEntry.getValue();
+  int getProjectionCacheSize() {
+    return projectionCache.size();
+  }
 
-        Schema extensionSchema = registry.getSchema(extensionUrn);
+  private <T extends ScimResource> T project(T resource, ResourceProjection projection) throws IllegalAccessException, IOException {
+    T copy = cloneScimResource(resource);
+    projection.apply(copy);
+    return copy;
+  }
 
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.REQUEST);
-        removeAttributesOfType(scimExtension, extensionSchema, Returned.NEVER);
-        removeAttributes(scimExtension, extensionSchema, attributesToRemove);
-      }
-      return copy;
+  private ResourceProjection getProjection(ProjectionMode mode, Set<AttributeReference> attributeReferences) throws AttributeDoesNotExistException {
+    Set<String> attributeNames = new HashSet<>();
+    for (AttributeReference attributeReference : attributeReferences) {
+      attributeNames.add(attributeReference.getFullyQualifiedAttributeName().toLowerCase(Locale.ROOT));
     }
-  }
+    // a projection compiles the plan of each resource type it's applied to,
+    // so the same key serves every resource type
+    ProjectionKey key = new ProjectionKey(mode, attributeNames);
 
-  @SuppressWarnings("unchecked")
-  private <T extends ScimResource> T cloneScimResource(T original) throws IOException {
-    ByteArrayOutputStream boas = new ByteArrayOutputStream();
-    ObjectOutputStream oos = new ObjectOutputStream(boas);
-    oos.writeObject(original);
-
-    ByteArrayInputStream bais = new ByteArrayInputStream(boas.toByteArray());
-    ObjectInputStream ois = new ObjectInputStream(bais);
-    T copy = null;
-    try {
-      copy = (T) ois.readObject();
-    } catch (ClassNotFoundException e) {
-      // Should never happen
-      log.error("", e);
+    ResourceProjection projection = projectionCache.get(key);
+    if (projection == null) {
+      projection = projectionCache.putIfAbsent(key, new ResourceProjection(registry, toPredicate(mode, attributeReferences)));
     }
-    return copy;
+    return projection;
   }
 
-  private void removeAttributesOfType(Object object, AttributeContainer attributeContainer, Returned returned) throws IllegalArgumentException, IllegalAccessException {
-    Function<Attribute, Boolean> function = (attribute) -> returned == attribute.getReturned();
-    processAttributes(object, attributeContainer, function);
+  private Predicate<Attribute> toPredicate(ProjectionMode mode, Set<AttributeReference> attributeReferences) throws AttributeDoesNotExistException {
+    switch (mode) {
+    case ALWAYS:
+      return attribute -> attribute.getReturned() == Returned.DEFAULT || attribute.getReturned() == Returned.REQUEST || attribute.getReturned() == Returned.NEVER;
+    case INCLUDE: {
+      // return always and specified attributes, exclude never
+      Set<Attribute> attributesToKeep = resolveAttributeReferences(attributeReferences, true);
+      return attribute -> attribute.getReturned() == Returned.NEVER
+          || ((attribute.getReturned() == Returned.DEFAULT || attribute.getReturned() == Returned.REQUEST) && !attributesToKeep.contains(attribute));
+    }
+    case EXCLUDE: {
+      // return always and default, exclude never and specified attributes
+      Set<Attribute> attributesToRemove = resolveAttributeReferences(attributeReferences, false);
+      return attribute -> attribute.getReturned() == Returned.REQUEST || attribute.getReturned() == Returned.NEVER || attributesToRemove.contains(attribute);
+    }
+    default:
+      // return always and default, exclude never and requested
+      return attribute -> attribute.getReturned() == Returned.REQUEST || attribute.getReturned() == Returned.NEVER;
+    }
   }
 
-  private void removeAttributesOfType(Object object, AttributeContainer attributeContainer, Returned returned, Set<Attribute> attributesToKeep) throws IllegalArgumentException, IllegalAccessException {
-    Function<Attribute, Boolean> function = (attribute) -> !attributesToKeep.contains(attribute) && returned == attribute.getReturned();
-    processAttributes(object, attributeContainer, function);
+  private <T extends ScimResource> T cloneScimResource(T original) throws IOException {
+    return resourceCopier.copy(original);
   }
 
-  private void removeAttributes(Object object, AttributeContainer attributeContainer, Set<Attribute> attributesToRemove) throws IllegalArgumentException, IllegalAccessException {
-    Function<Attribute, Boolean> function = (attribute) -> attributesToRemove.contains(attribute);
-    processAttributes(object, attributeContainer, function);
+  private enum ProjectionMode {
+    ALWAYS, DEFAULT, INCLUDE, EXCLUDE
   }
 
-  private void processAttributes(Object object, AttributeContainer attributeContainer, Function<Attribute, Boolean> function) throws IllegalArgumentException, IllegalAccessException {
-    if (attributeContainer != null && object != null) {
-      for (Attribute attribute : attributeContainer.getAttributes()) {
-        Field field = attribute.getField();
-        if (function.apply(attribute)) {
-          field.setAccessible(true);
-          if (!field.getType().isPrimitive()) {
-            Object obj = field.get(object);
-            if (obj == null) {
-              continue;
-            }
-            
-            log.info("field to be set to null = " + field.getType().getName());
-            field.set(object, null);
-          }
-        } else if (!attribute.isMultiValued() && attribute.getType() == Type.COMPLEX) {
-          String name = field.getName();
-          log.debug("### Processing single value complex field " + name);
-          field.setAccessible(true);
-          Object subObject = field.get(object);
-
-          if (subObject == null) {
-            continue;
-          }
-          
-          Attribute subAttribute = attributeContainer.getAttribute(name);
-          log.debug("### container type = " + attributeContainer.getClass().getName());
-          if (subAttribute == null) {
-            log.debug("#### subattribute == null");
-          }
-          processAttributes(subObject, subAttribute, function);
-        } else if (attribute.isMultiValued() && attribute.getType() == Type.COMPLEX) {
-          String name = field.getName();
-          log.debug("### Processing multi-valued complex field " + name);
-          field.setAccessible(true);
-          Object subObject = field.get(object);
-
-          if (subObject == null) {
-            continue;
-          }
-
-          if (Collection.class.isAssignableFrom(subObject.getClass())) {
-            Collection<?> collection = (Collection<?>) subObject;
-            for (Object o : collection) {
-              Attribute subAttribute = attributeContainer.getAttribute(name);
-              processAttributes(o, subAttribute, function);
-            }
-          } else if (field.getType().isArray()) {
-            Object[] array = (Object[]) subObject;
-
-            for (Object o : array) {
-              Attribute subAttribute = attributeContainer.getAttribute(name);
-              processAttributes(o, subAttribute, function);
-            }
-          }
-        }
-      }
-    }
+  @Value
+  private static class ProjectionKey {
+    ProjectionMode mode;
+    Set<String> attributeNames;
   }
 
   public Set<AttributeReference> getAttributeReferences(String s) {
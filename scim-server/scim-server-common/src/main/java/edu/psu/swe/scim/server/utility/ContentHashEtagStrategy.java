@@ -0,0 +1,129 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package edu.psu.swe.scim.server.utility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+
+import javax.ws.rs.core.EntityTag;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+
+import edu.psu.swe.scim.server.provider.EtagStrategy;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+
+/**
+ * The default {@link EtagStrategy}, the SHA-256 digest of a resource's JSON
+ * without its meta attribute.
+ * 
+ * The JSON is written straight into the digest by a writer shared by every
+ * call. Tags aren't remembered: a provider may change a resource without
+ * changing its <code>meta.lastModified</code>, so only the content tells
+ * whether the tag is still valid. Providers that know a resource's version
+ * without hashing it can implement {@link EtagStrategy} or
+ * {@link edu.psu.swe.scim.server.provider.Provider#getVersion(String)}.
+ */
+public class ContentHashEtagStrategy implements EtagStrategy {
+
+  private static final ObjectWriter WRITER = createWriter();
+
+  @Override
+  public EntityTag generateEtag(ScimResource resource) throws JsonProcessingException, NoSuchAlgorithmException, UnsupportedEncodingException {
+    return hash(resource);
+  }
+
+  private static EntityTag hash(ScimResource resource) throws JsonProcessingException, NoSuchAlgorithmException {
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    try {
+      WRITER.writeValue(new DigestingOutputStream(digest), resource);
+    } catch (JsonProcessingException e) {
+      throw e;
+    } catch (IOException e) {
+      // the digest doesn't do I/O
+      throw JsonMappingException.fromUnexpectedIOE(e);
+    }
+    return new EntityTag(Base64.getEncoder().encodeToString(digest.digest()));
+  }
+
+  private static ObjectWriter createWriter() {
+    ObjectMapper objectMapper = new ObjectMapper();
+    JaxbAnnotationModule jaxbAnnotationModule = new JaxbAnnotationModule();
+    objectMapper.registerModule(jaxbAnnotationModule);
+
+    AnnotationIntrospector jaxbAnnotationIntrospector = new JaxbAnnotationIntrospector(objectMapper.getTypeFactory());
+    objectMapper.setAnnotationIntrospector(jaxbAnnotationIntrospector);
+
+    objectMapper.setSerializationInclusion(Include.NON_NULL);
+    objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // meta changes with every tag, it is left out rather than removed from
+    // the resource while it is written
+    SimpleModule module = new SimpleModule();
+    module.setSerializerModifier(new BeanSerializerModifier() {
+      @Override
+      public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc, List<BeanPropertyWriter> beanProperties) {
+        if (ScimResource.class.isAssignableFrom(beanDesc.getBeanClass())) {
+          beanProperties.removeIf(writer -> "meta".equals(writer.getName()));
+        }
+        return beanProperties;
+      }
+    });
+    objectMapper.registerModule(module);
+
+    return objectMapper.writer();
+  }
+
+  private static class DigestingOutputStream extends OutputStream {
+
+    private final MessageDigest digest;
+
+    DigestingOutputStream(MessageDigest digest) {
+      this.digest = digest;
+    }
+
+    @Override
+    public void write(int b) {
+      digest.update((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      digest.update(b, off, len);
+    }
+  }
+}
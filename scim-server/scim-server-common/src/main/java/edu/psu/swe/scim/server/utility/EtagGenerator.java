@@ -17,64 +17,102 @@
 * under the License.
 */
 
+
 package edu.psu.swe.scim.server.utility;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.ejb.Stateless;
 import javax.ws.rs.core.EntityTag;
 
-import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.AnnotationIntrospector;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
-import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
 
+import edu.psu.swe.scim.server.provider.EtagStrategy;
+import edu.psu.swe.scim.server.provider.annotations.ScimEtagStrategy;
 import edu.psu.swe.scim.spec.resources.ScimResource;
 import edu.psu.swe.scim.spec.schema.Meta;
 
+/**
+ * Computes entity tags with the {@link EtagStrategy} of the provider serving
+ * a resource.
+ * 
+ * Resources returned by a provider may be shared with other requests, like
+ * the ones held by a caching provider, so computing a tag never changes the
+ * resource. The tag is set as <code>meta.version</code> of the resource
+ * written in the response with {@link #withVersion(ScimResource, EntityTag)}.
+ */
 @Stateless
 public class EtagGenerator {
 
-  public EntityTag generateEtag(ScimResource resource) throws JsonProcessingException, NoSuchAlgorithmException, UnsupportedEncodingException {
-
-    ObjectMapper objectMapper = new ObjectMapper();
-    JaxbAnnotationModule jaxbAnnotationModule = new JaxbAnnotationModule();
-    objectMapper.registerModule(jaxbAnnotationModule);
+  private static final EtagStrategy CONTENT_HASH = new ContentHashEtagStrategy();
 
-    AnnotationIntrospector jaxbAnnotationIntrospector = new JaxbAnnotationIntrospector(objectMapper.getTypeFactory());
-    objectMapper.setAnnotationIntrospector(jaxbAnnotationIntrospector);
+  private static final ConcurrentMap<Class<?>, EtagStrategy> STRATEGIES = new ConcurrentHashMap<>();
 
-    objectMapper.setSerializationInclusion(Include.NON_NULL);
-    objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+  /**
+   * Computes the content hash tag of a resource not served by a provider.
+   */
+  public EntityTag generateEtag(ScimResource resource) throws JsonProcessingException, NoSuchAlgorithmException, UnsupportedEncodingException {
+    return generateEtag(resource, CONTENT_HASH);
+  }
 
-    Meta meta = resource.getMeta();
+  /**
+   * Computes the tag of a resource with the strategy of the provider that
+   * serves it.
+   */
+  public EntityTag generateEtag(Object provider, ScimResource resource) throws JsonProcessingException, NoSuchAlgorithmException, UnsupportedEncodingException {
+    return generateEtag(resource, getStrategy(provider));
+  }
 
-    if (meta == null) {
-      meta = new Meta();
+  /**
+   * @return the provider itself if it supplies its own tags, the strategy
+   *         chosen with {@link ScimEtagStrategy} or the content hash
+   */
+  public EtagStrategy getStrategy(Object provider) {
+    if (provider instanceof EtagStrategy) {
+      return (EtagStrategy) provider;
     }
+    if (provider == null) {
+      return CONTENT_HASH;
+    }
+    return STRATEGIES.computeIfAbsent(provider.getClass(), EtagGenerator::createStrategy);
+  }
 
-    resource.setMeta(null);
-    String writeValueAsString = objectMapper.writeValueAsString(resource);
-
-    EntityTag etag = hash(writeValueAsString);
-    meta.setVersion(etag.getValue());
+  /**
+   * @return the resource to write in a response, with <code>meta.version</code>
+   *         set to the tag; the resource itself if it already has that
+   *         version or there is no tag, otherwise a shallow copy with a copy
+   *         of its meta so the resource isn't changed
+   */
+  public <T extends ScimResource> T withVersion(T resource, EntityTag etag) throws IOException {
+    Meta meta = resource.getMeta();
+    if (etag == null || (meta != null && etag.getValue().equals(meta.getVersion()))) {
+      return resource;
+    }
+    Meta versionedMeta = meta != null ? ShallowCopier.copy(meta) : new Meta();
+    versionedMeta.setVersion(etag.getValue());
 
-    resource.setMeta(meta);
+    T versioned = ShallowCopier.copy(resource);
+    versioned.setMeta(versionedMeta);
+    return versioned;
+  }
 
-    return etag;
+  private static EntityTag generateEtag(ScimResource resource, EtagStrategy strategy) throws JsonProcessingException, NoSuchAlgorithmException, UnsupportedEncodingException {
+    return strategy.generateEtag(resource);
   }
-  
-  private static EntityTag hash(String input) throws NoSuchAlgorithmException, UnsupportedEncodingException {
-    MessageDigest digest = MessageDigest.getInstance("SHA-256");
-    digest.update(input.getBytes("UTF-8"));
-    byte[] hash = digest.digest();
-    return new EntityTag(Base64.getEncoder().encodeToString(hash));
+
+  private static EtagStrategy createStrategy(Class<?> providerClass) {
+    ScimEtagStrategy annotation = providerClass.getAnnotation(ScimEtagStrategy.class);
+    if (annotation == null || annotation.value() == ContentHashEtagStrategy.class) {
+      return CONTENT_HASH;
+    }
+    try {
+      return annotation.value().newInstance();
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new IllegalStateException("Unable to create the entity tag strategy of " + providerClass.getName(), e);
+    }
   }
-  
 }
@@ -0,0 +1,48 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.utility;
+
+import java.io.UnsupportedEncodingException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.ws.rs.core.EntityTag;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import edu.psu.swe.scim.server.provider.EtagStrategy;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+
+/**
+ * Uses the <code>meta.version</code> set by the provider, like a row version
+ * counter, as the strong entity tag. Resources without a version are hashed.
+ */
+public class MetaVersionEtagStrategy implements EtagStrategy {
+
+  private final EtagStrategy fallback = new ContentHashEtagStrategy();
+
+  @Override
+  public EntityTag generateEtag(ScimResource resource) throws JsonProcessingException, NoSuchAlgorithmException, UnsupportedEncodingException {
+    if (resource.getMeta() != null && resource.getMeta().getVersion() != null) {
+      return new EntityTag(resource.getMeta().getVersion());
+    }
+    return fallback.generateEtag(resource);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.utility;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.BasicSerializerFactory;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+
+/**
+ * Skips the attributes a {@link ResourceProjection} removes while resources
+ * are written, so that the resources don't have to be copied and changed
+ * first.
+ * 
+ * The projection is passed as an attribute of the writer, see
+ * {@link #withProjection(ObjectWriter, ResourceProjection)}. Writers without
+ * a projection write every property.
+ */
+public class ProjectingSerializerModifier extends BeanSerializerModifier {
+
+  private static final Object PLANS = new Object();
+
+  @Override
+  public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription beanDesc, List<BeanPropertyWriter> beanProperties) {
+    for (int i = 0; i < beanProperties.size(); i++) {
+      BeanPropertyWriter writer = beanProperties.get(i);
+      Field field = findField(writer);
+      if (field != null) {
+        beanProperties.set(i, new ProjectingPropertyWriter(writer, field));
+      }
+    }
+    return beanProperties;
+  }
+
+  public static ObjectWriter withProjection(ObjectWriter writer, ResourceProjection projection) {
+    return writer.withAttribute(ResourceProjection.class, projection);
+  }
+
+  /**
+   * @return true if the mapper has this modifier, if it doesn't a projection
+   *         passed to its writers is ignored
+   */
+  public static boolean isRegistered(ObjectMapper objectMapper) {
+    if (!(objectMapper.getSerializerFactory() instanceof BasicSerializerFactory)) {
+      return false;
+    }
+    for (BeanSerializerModifier modifier : ((BasicSerializerFactory) objectMapper.getSerializerFactory()).getFactoryConfig().serializerModifiers()) {
+      if (modifier instanceof ProjectingSerializerModifier) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Field findField(BeanPropertyWriter writer) {
+    Member member = writer.getMember() != null ? writer.getMember().getMember() : null;
+    if (member instanceof Field) {
+      return (Field) member;
+    }
+    if (member == null) {
+      return null;
+    }
+    // a getter, the schema describes the field behind it
+    for (Class<?> c = member.getDeclaringClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+      try {
+        return c.getDeclaredField(writer.getName());
+      } catch (NoSuchFieldException e) {
+        // keep looking in the superclass
+      }
+    }
+    return null;
+  }
+
+  private static class ProjectingPropertyWriter extends BeanPropertyWriter {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Field field;
+
+    ProjectingPropertyWriter(BeanPropertyWriter base, Field field) {
+      super(base);
+      this.field = field;
+    }
+
+    @Override
+    public void serializeAsField(Object bean, JsonGenerator gen, SerializerProvider prov) throws Exception {
+      ResourceProjection projection = (ResourceProjection) prov.getAttribute(ResourceProjection.class);
+      if (projection == null) {
+        super.serializeAsField(bean, gen, prov);
+        return;
+      }
+
+      // the plans of the complex attributes being written, innermost first
+      @SuppressWarnings("unchecked")
+      Deque<ProjectionPlan> plans = (Deque<ProjectionPlan>) prov.getAttribute(PLANS);
+      if (plans == null) {
+        plans = new ArrayDeque<>();
+        prov.setAttribute(PLANS, plans);
+      }
+
+      ProjectionPlan plan = projection.getPlan(bean, plans.isEmpty() ? ProjectionPlan.EMPTY : plans.peek());
+      if (plan.removes(field)) {
+        return;
+      }
+      plans.push(plan.getNested(field));
+      try {
+        super.serializeAsField(bean, gen, prov);
+      } finally {
+        plans.pop();
+      }
+    }
+  }
+}
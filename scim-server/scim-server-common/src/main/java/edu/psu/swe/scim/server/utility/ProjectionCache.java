@@ -0,0 +1,71 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.utility;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Named;
+
+/**
+ * The projections compiled by {@link AttributeUtil}. AttributeUtil is a
+ * pooled stateless bean, the projections are held here so that every
+ * instance of the pool shares them and each request shape is compiled once
+ * per application.
+ * 
+ * Projections are looked up without locking. At most
+ * {@link #MAXIMUM_PROJECTIONS} are kept, the projections of request shapes
+ * seen after that are compiled for each request instead of evicting the
+ * shapes already cached.
+ */
+@Named
+@ApplicationScoped
+public class ProjectionCache {
+
+  /**
+   * The number of distinct attributes / excludedAttributes requests whose
+   * compiled projection is kept.
+   */
+  static final int MAXIMUM_PROJECTIONS = 256;
+
+  private final ConcurrentMap<Object, ResourceProjection> projections = new ConcurrentHashMap<>();
+
+  ResourceProjection get(Object key) {
+    return projections.get(key);
+  }
+
+  /**
+   * @return the projection cached for the key, which is the given one unless
+   *         another request cached one first
+   */
+  ResourceProjection putIfAbsent(Object key, ResourceProjection projection) {
+    if (projections.size() >= MAXIMUM_PROJECTIONS) {
+      return projection;
+    }
+    ResourceProjection cached = projections.putIfAbsent(key, projection);
+    return cached != null ? cached : projection;
+  }
+
+  int size() {
+    return projections.size();
+  }
+}
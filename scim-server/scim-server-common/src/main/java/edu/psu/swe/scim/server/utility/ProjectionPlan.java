@@ -0,0 +1,182 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.utility;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import edu.psu.swe.scim.spec.schema.AttributeContainer;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;
+
+/**
+ * The attributes to remove from objects described by one schema or complex
+ * attribute, compiled into method handles so that applying the plan to a
+ * resource is a single pass without schema lookups or reflection checks. The
+ * same plan tells the {@link ProjectingSerializerModifier} which fields to
+ * skip.
+ * 
+ * Complex attributes that are kept are descended into only when their plan
+ * removes something.
+ */
+final class ProjectionPlan {
+
+  static final ProjectionPlan EMPTY = new ProjectionPlan(new MethodHandle[0], new MethodHandle[0], new ProjectionPlan[0], new boolean[0], Collections.emptySet(), Collections.emptyMap());
+
+  private static final MethodType CLEAR_TYPE = MethodType.methodType(void.class, Object.class);
+
+  private static final MethodType GET_TYPE = MethodType.methodType(Object.class, Object.class);
+
+  private final MethodHandle[] clearers;
+
+  private final MethodHandle[] getters;
+
+  private final ProjectionPlan[] nested;
+
+  private final boolean[] multiValued;
+
+  private final Set<Field> removedFields;
+
+  private final Map<Field, ProjectionPlan> nestedByField;
+
+  private ProjectionPlan(MethodHandle[] clearers, MethodHandle[] getters, ProjectionPlan[] nested, boolean[] multiValued, Set<Field> removedFields, Map<Field, ProjectionPlan> nestedByField) {
+    this.clearers = clearers;
+    this.getters = getters;
+    this.nested = nested;
+    this.multiValued = multiValued;
+    this.removedFields = removedFields;
+    this.nestedByField = nestedByField;
+  }
+
+  /**
+   * @param container the schema or complex attribute describing the objects
+   *          the plan will be applied to, may be null
+   * @param remove chooses the attributes to set to null, attributes that are
+   *          not chosen are kept and their sub-attributes are tested in turn
+   */
+  static ProjectionPlan compile(AttributeContainer container, Predicate<Attribute> remove) throws IllegalAccessException {
+    if (container == null || container.getAttributes() == null) {
+      return EMPTY;
+    }
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    List<MethodHandle> clearers = new ArrayList<>();
+    List<MethodHandle> getters = new ArrayList<>();
+    List<ProjectionPlan> nested = new ArrayList<>();
+    List<Boolean> multiValued = new ArrayList<>();
+    Set<Field> removedFields = new HashSet<>();
+    Map<Field, ProjectionPlan> nestedByField = new HashMap<>();
+
+    for (Attribute attribute : container.getAttributes()) {
+      Field field = attribute.getField();
+      if (field == null) {
+        continue;
+      }
+      if (remove.test(attribute)) {
+        if (!field.getType().isPrimitive()) {
+          field.setAccessible(true);
+          MethodHandle setter = lookup.unreflectSetter(field);
+          removedFields.add(field);
+          clearers.add(MethodHandles.insertArguments(setter.asType(MethodType.methodType(void.class, Object.class, Object.class)), 1, (Object) null).asType(CLEAR_TYPE));
+        }
+      } else if (attribute.getType() == Type.COMPLEX && attribute.getSubAttributes() != null) {
+        ProjectionPlan plan = compile(attribute, remove);
+        if (!plan.isEmpty()) {
+          field.setAccessible(true);
+          getters.add(lookup.unreflectGetter(field).asType(GET_TYPE));
+          nested.add(plan);
+          multiValued.add(attribute.isMultiValued());
+          nestedByField.put(field, plan);
+        }
+      }
+    }
+
+    if (clearers.isEmpty() && getters.isEmpty()) {
+      return EMPTY;
+    }
+    boolean[] multiValuedArray = new boolean[multiValued.size()];
+    for (int i = 0; i < multiValuedArray.length; i++) {
+      multiValuedArray[i] = multiValued.get(i);
+    }
+    return new ProjectionPlan(clearers.toArray(new MethodHandle[clearers.size()]), getters.toArray(new MethodHandle[getters.size()]), nested.toArray(new ProjectionPlan[nested.size()]), multiValuedArray, removedFields, nestedByField);
+  }
+
+  /**
+   * @return true if the field is set to null by the plan
+   */
+  boolean removes(Field field) {
+    return removedFields.contains(field);
+  }
+
+  /**
+   * @return the plan for the object or objects held by the field
+   */
+  ProjectionPlan getNested(Field field) {
+    ProjectionPlan plan = nestedByField.get(field);
+    return plan != null ? plan : EMPTY;
+  }
+
+  boolean isEmpty() {
+    return clearers.length == 0 && getters.length == 0;
+  }
+
+  void apply(Object object) {
+    if (object == null) {
+      return;
+    }
+    try {
+      for (MethodHandle clearer : clearers) {
+        clearer.invokeExact(object);
+      }
+      for (int i = 0; i < getters.length; i++) {
+        Object value = (Object) getters[i].invokeExact(object);
+        if (value == null) {
+          continue;
+        }
+        if (!multiValued[i]) {
+          nested[i].apply(value);
+        } else if (value instanceof Collection) {
+          for (Object element : (Collection<?>) value) {
+            nested[i].apply(element);
+          }
+        } else if (value instanceof Object[]) {
+          for (Object element : (Object[]) value) {
+            nested[i].apply(element);
+          }
+        }
+      }
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException("Unable to remove attributes from " + object.getClass().getName(), t);
+    }
+  }
+}
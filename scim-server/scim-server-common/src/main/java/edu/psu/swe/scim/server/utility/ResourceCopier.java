@@ -0,0 +1,277 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.resources.ScimExtension;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.schema.AttributeContainer;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Copies resources before {@link AttributeUtil} removes attributes from them
+ * for display.
+ * 
+ * Removing attributes sets fields of the resource, of its extensions and of
+ * the objects of its complex attributes to null, so those objects are copied
+ * and everything else (strings, dates, multi-valued simple attributes,
+ * fields not in the schema) is shared with the original. The fields to copy
+ * are worked out once per class and schema from the {@link Registry}.
+ * 
+ * A class without a no-argument constructor is copied with Java
+ * serialization.
+ */
+@Slf4j
+public class ResourceCopier {
+
+  static final Field EXTENSIONS_FIELD = extensionsField();
+
+  private final Registry registry;
+
+  private final ConcurrentMap<PlanKey, CopyPlan> plans = new ConcurrentHashMap<>();
+
+  public ResourceCopier(Registry registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * @return a copy of the resource whose attributes can be removed without
+   *         changing the original
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends ScimResource> T copy(T resource) throws IOException {
+    if (resource == null) {
+      return null;
+    }
+    return (T) copy(resource, registry.getSchema(resource.getBaseUrn()));
+  }
+
+  private Object copy(Object object, AttributeContainer container) throws IOException {
+    if (isValue(object.getClass())) {
+      return object;
+    }
+    if (container == null) {
+      return copyBySerialization(object);
+    }
+    CopyPlan plan = plans.computeIfAbsent(new PlanKey(object.getClass(), container), k -> new CopyPlan(k.clazz, k.container));
+    return plan.copyOf(object);
+  }
+
+  private Object copyComplexValues(Object values, Attribute attribute) throws IOException {
+    if (values instanceof List) {
+      List<Object> copy = new ArrayList<>(((List<?>) values).size());
+      for (Object value : (List<?>) values) {
+        copy.add(value != null ? copy(value, attribute) : null);
+      }
+      return copy;
+    } else if (values instanceof Collection) {
+      @SuppressWarnings("unchecked")
+      Collection<Object> copy = (Collection<Object>) newInstance(values.getClass());
+      if (copy == null) {
+        return copyBySerialization(values);
+      }
+      for (Object value : (Collection<?>) values) {
+        copy.add(value != null ? copy(value, attribute) : null);
+      }
+      return copy;
+    } else if (values.getClass().isArray()) {
+      int length = Array.getLength(values);
+      Object copy = Array.newInstance(values.getClass().getComponentType(), length);
+      for (int i = 0; i < length; i++) {
+        Object value = Array.get(values, i);
+        Array.set(copy, i, value != null ? copy(value, attribute) : null);
+      }
+      return copy;
+    }
+    return copy(values, attribute);
+  }
+
+  private Map<String, ScimExtension> copyExtensions(Map<String, ScimExtension> extensions) throws IOException {
+    Map<String, ScimExtension> copy = new HashMap<>();
+    for (Map.Entry<String, ScimExtension> entry : extensions.entrySet()) {
+      ScimExtension extension = entry.getValue();
+      copy.put(entry.getKey(), extension != null ? (ScimExtension) copy(extension, registry.getSchema(entry.getKey())) : null);
+    }
+    return copy;
+  }
+
+  /**
+   * JDK types and enums have no schema attributes, so nothing is ever removed
+   * from them.
+   */
+  private static boolean isValue(Class<?> clazz) {
+    return clazz.isEnum() || clazz.getName().startsWith("java.");
+  }
+
+  private static Object newInstance(Class<?> clazz) {
+    try {
+      Constructor<?> constructor = clazz.getDeclaredConstructor();
+      constructor.setAccessible(true);
+      return constructor.newInstance();
+    } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  static Object copyBySerialization(Object object) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(object);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return in.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Unable to copy " + object.getClass().getName(), e);
+    }
+  }
+
+  private static Field extensionsField() {
+    try {
+      Field field = ScimResource.class.getDeclaredField("extensions");
+      field.setAccessible(true);
+      return field;
+    } catch (NoSuchFieldException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * How to copy one class described by one schema or complex attribute:
+   * which fields are shared and which hold objects that are copied as well.
+   */
+  private final class CopyPlan {
+
+    private final Constructor<?> constructor;
+
+    private final Field[] fields;
+
+    private final Attribute[] complexAttributes;
+
+    CopyPlan(Class<?> clazz, AttributeContainer container) {
+      Map<Field, Attribute> attributesByField = new HashMap<>();
+      for (Attribute attribute : container.getAttributes()) {
+        if (attribute.getField() != null && attribute.getType() == Type.COMPLEX && attribute.getSubAttributes() != null && !attribute.getSubAttributes().isEmpty()) {
+          attributesByField.put(attribute.getField(), attribute);
+        }
+      }
+
+      List<Field> fieldList = new ArrayList<>();
+      List<Attribute> attributeList = new ArrayList<>();
+      for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          field.setAccessible(true);
+          fieldList.add(field);
+          attributeList.add(attributesByField.get(field));
+        }
+      }
+
+      Constructor<?> noArgumentConstructor;
+      try {
+        noArgumentConstructor = clazz.getDeclaredConstructor();
+        noArgumentConstructor.setAccessible(true);
+      } catch (NoSuchMethodException e) {
+        log.debug("{} has no no-argument constructor, it is copied with serialization", clazz.getName());
+        noArgumentConstructor = null;
+      }
+      this.constructor = noArgumentConstructor;
+      this.fields = fieldList.toArray(new Field[fieldList.size()]);
+      this.complexAttributes = attributeList.toArray(new Attribute[attributeList.size()]);
+    }
+
+    @SuppressWarnings("unchecked")
+    Object copyOf(Object original) throws IOException {
+      if (constructor == null) {
+        return copyBySerialization(original);
+      }
+      try {
+        Object copy = constructor.newInstance();
+        for (int i = 0; i < fields.length; i++) {
+          Field field = fields[i];
+          Object value = field.get(original);
+          if (value != null) {
+            if (complexAttributes[i] != null) {
+              value = complexAttributes[i].isMultiValued() ? copyComplexValues(value, complexAttributes[i]) : copy(value, complexAttributes[i]);
+            } else if (field.equals(EXTENSIONS_FIELD)) {
+              value = copyExtensions((Map<String, ScimExtension>) value);
+            }
+          }
+          field.set(copy, value);
+        }
+        return copy;
+      } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+        throw new IOException("Unable to copy " + original.getClass().getName(), e);
+      }
+    }
+  }
+
+  /**
+   * Schemas and attributes are compared by identity, their equals and
+   * hashCode walk every sub-attribute.
+   */
+  private static final class PlanKey {
+
+    private final Class<?> clazz;
+
+    private final AttributeContainer container;
+
+    PlanKey(Class<?> clazz, AttributeContainer container) {
+      this.clazz = clazz;
+      this.container = container;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof PlanKey)) {
+        return false;
+      }
+      PlanKey key = (PlanKey) other;
+      return clazz == key.clazz && container == key.container;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * clazz.hashCode() + System.identityHashCode(container);
+    }
+  }
+}
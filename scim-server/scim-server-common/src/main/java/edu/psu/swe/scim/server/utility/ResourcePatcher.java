@@ -0,0 +1,584 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.utility;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import javax.ws.rs.core.Response.Status;
+
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.AnnotationIntrospectorPair;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+
+import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
+import edu.psu.swe.scim.server.exception.UnableToUpdateResourceException;
+import edu.psu.swe.scim.server.filter.FilterCompiler;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.extension.ScimExtensionRegistry;
+import edu.psu.swe.scim.spec.protocol.ErrorMessageType;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.protocol.data.PatchOperation;
+import edu.psu.swe.scim.spec.protocol.filter.FilterExpression;
+import edu.psu.swe.scim.spec.protocol.filter.FilterParseException;
+import edu.psu.swe.scim.spec.protocol.filter.ValuePathExpression;
+import edu.psu.swe.scim.spec.resources.ScimExtension;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.schema.Schema;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Mutability;
+
+/**
+ * Applies the operations of a PATCH request, as described in <a
+ * href="https://tools.ietf.org/html/rfc7644#section-3.5.2">section 3.5.2</a>
+ * of RFC 7644, to a resource.
+ * 
+ * The resource passed in is left unchanged, providers still compare it with
+ * the result. Only the objects on the path of an operation are copied before
+ * they are changed: the resource itself, the complex values and extensions
+ * that are written to, and the list of a multi-valued attribute that gains,
+ * loses or replaces values (a copy of the references, not of the values).
+ * Everything else is shared with the original, so the cost of a patch grows
+ * with the size of the change rather than the size of the resource.
+ * 
+ * Paths are resolved against the schema attributes from the {@link Registry}
+ * and value filters are compiled with the {@link FilterCompiler}. Operations
+ * must respect the mutability of the attributes they change, and a value
+ * made primary makes the other values of its attribute non-primary.
+ */
+public class ResourcePatcher {
+
+  private static final ObjectMapper VALUE_MAPPER = createValueMapper();
+
+  private final Registry registry;
+
+  private final FilterCompiler filterCompiler;
+
+  public ResourcePatcher(Registry registry) {
+    this.registry = registry;
+    this.filterCompiler = new FilterCompiler(registry);
+  }
+
+  /**
+   * @return a copy of <code>resource</code> with the operations applied in
+   *         order
+   * @throws UnableToUpdateResourceException with a <code>400 Bad
+   *         Request</code> status if an operation has an invalid path or
+   *         value, or a filter that matches nothing where a match is required;
+   *         the scimType is <code>invalidPath</code>,
+   *         <code>invalidValue</code> or <code>noTarget</code> respectively,
+   *         and <code>mutability</code> if it changes a readOnly attribute or
+   *         an immutable attribute that has a value
+   */
+  public <T extends ScimResource> T apply(T resource, List<PatchOperation> patchOperations) throws UnableToUpdateResourceException {
+    Schema schema = registry.getSchema(resource.getBaseUrn());
+    if (schema == null) {
+      throw new IllegalStateException("No schema registered for " + resource.getBaseUrn());
+    }
+    Patch<T> patch = new Patch<>(resource, schema);
+    for (PatchOperation patchOperation : patchOperations) {
+      patch.apply(patchOperation);
+    }
+    return patch.resource;
+  }
+
+  private static ObjectMapper createValueMapper() {
+    ObjectMapper objectMapper = new ObjectMapper();
+    objectMapper.registerModule(new JaxbAnnotationModule());
+    objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    AnnotationIntrospector jaxbIntrospector = new JaxbAnnotationIntrospector(objectMapper.getTypeFactory());
+    AnnotationIntrospector jacksonIntrospector = new JacksonAnnotationIntrospector();
+    objectMapper.setAnnotationIntrospector(new AnnotationIntrospectorPair(jacksonIntrospector, jaxbIntrospector));
+    return objectMapper;
+  }
+
+  private static UnableToUpdateResourceException badRequest(ErrorMessageType scimType, String message) {
+    return new UnableToUpdateResourceException(Status.BAD_REQUEST, scimType, message);
+  }
+
+  /**
+   * Rejects changing a readOnly attribute, or an immutable attribute that
+   * already has a value.
+   */
+  private static void checkMutability(Attribute attribute, Object current) throws UnableToUpdateResourceException {
+    Mutability mutability = attribute.getMutability();
+    if (mutability == Mutability.READ_ONLY) {
+      throw new UnableToUpdateResourceException(Status.BAD_REQUEST, ErrorMessageType.MUTABILITY, "Attribute " + attribute.getName() + " is readOnly");
+    }
+    if (mutability == Mutability.IMMUTABLE && current != null && !(current instanceof Collection && ((Collection<?>) current).isEmpty())) {
+      throw new UnableToUpdateResourceException(Status.BAD_REQUEST, ErrorMessageType.MUTABILITY, "Attribute " + attribute.getName() + " is immutable and already has a value");
+    }
+  }
+
+  /**
+   * The state of one patch: the patched resource and the objects that have
+   * already been copied for it and can be changed directly.
+   */
+  private final class Patch<T extends ScimResource> {
+
+    private final T resource;
+
+    private final Schema schema;
+
+    private final Set<Object> copies = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    Patch(T original, Schema schema) throws UnableToUpdateResourceException {
+      this.schema = schema;
+      this.resource = writable(original);
+      // providers update meta on the returned resource
+      if (resource.getMeta() != null) {
+        resource.setMeta(writable(resource.getMeta()));
+      }
+      set(ResourceCopier.EXTENSIONS_FIELD, resource, new HashMap<>(original.getExtensions()));
+    }
+
+    void apply(PatchOperation patchOperation) throws UnableToUpdateResourceException {
+      PatchOperation.Type operation = patchOperation.getOperation();
+      if (operation == null) {
+        throw badRequest(ErrorMessageType.INVALID_SYNTAX, "A patch operation must have an op");
+      }
+
+      if (patchOperation.getPath() == null || patchOperation.getPath().getValuePathExpression() == null) {
+        applyWithoutPath(operation, patchOperation.getValue());
+        return;
+      }
+
+      ValuePathExpression valuePathExpression = patchOperation.getPath().getValuePathExpression();
+      AttributeReference attributeReference = valuePathExpression.getAttributePath();
+      String extensionUrn = findExtensionUrn(attributeReference);
+      if (extensionUrn != null) {
+        applyToExtension(operation, extensionUrn, patchOperation.getValue());
+      } else {
+        applyToAttribute(operation, attributeReference, valuePathExpression.getAttributeExpression(), patchOperation.getValue());
+      }
+    }
+
+    /**
+     * Without a path the value holds the attributes to add or replace, keyed
+     * by attribute name or extension URN.
+     */
+    private void applyWithoutPath(PatchOperation.Type operation, Object value) throws UnableToUpdateResourceException {
+      if (operation == PatchOperation.Type.REMOVE) {
+        throw badRequest(ErrorMessageType.NO_TARGET, "A remove operation must have a path");
+      }
+      if (!(value instanceof Map)) {
+        throw badRequest(ErrorMessageType.INVALID_VALUE, "The value of a patch operation without a path must be an object");
+      }
+
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        String name = String.valueOf(entry.getKey());
+        AttributeReference attributeReference = new AttributeReference(name);
+        String extensionUrn = registry.getSchema(name) != null ? name : findExtensionUrn(attributeReference);
+        if (extensionUrn != null) {
+          applyToExtension(operation, extensionUrn, entry.getValue());
+        } else {
+          applyToAttribute(operation, attributeReference, null, entry.getValue());
+        }
+      }
+    }
+
+    /**
+     * @return the URN of the extension if the reference is to a whole
+     *         extension rather than to one of its attributes
+     */
+    private String findExtensionUrn(AttributeReference attributeReference) {
+      String urn = attributeReference.getUrn();
+      String attributeName = attributeReference.getAttributeName();
+      if (attributeName == null) {
+        return urn;
+      }
+      if (urn != null && attributeReference.getSubAttributeName() == null && registry.getSchema(urn) == null) {
+        String extensionUrn = urn + ":" + attributeName;
+        if (registry.getSchema(extensionUrn) != null) {
+          return extensionUrn;
+        }
+      }
+      return null;
+    }
+
+    private void applyToExtension(PatchOperation.Type operation, String urn, Object value) throws UnableToUpdateResourceException {
+      if (operation == PatchOperation.Type.REMOVE) {
+        resource.removeExtension(urn);
+      } else if (value instanceof ScimExtension) {
+        resource.addExtension((ScimExtension) value);
+      } else if (value instanceof Map) {
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+          applyToAttribute(operation, new AttributeReference(urn, String.valueOf(entry.getKey())), null, entry.getValue());
+        }
+      } else {
+        throw badRequest(ErrorMessageType.INVALID_VALUE, "The value of extension " + urn + " must be an object");
+      }
+    }
+
+    private void applyToAttribute(PatchOperation.Type operation, AttributeReference attributeReference, FilterExpression filter, Object value) throws UnableToUpdateResourceException {
+      Schema container = schema;
+      String urn = attributeReference.getUrn();
+      boolean extension = urn != null && !urn.equalsIgnoreCase(schema.getId());
+      if (extension) {
+        container = registry.getSchema(urn);
+        if (container == null) {
+          throw badRequest(ErrorMessageType.INVALID_PATH, "Unknown schema in path: " + attributeReference.getFullyQualifiedAttributeName());
+        }
+      }
+
+      Attribute attribute = container.getAttribute(attributeReference.getAttributeName());
+      if (attribute == null || attribute.getField() == null) {
+        throw badRequest(ErrorMessageType.INVALID_PATH, "Unknown attribute in path: " + attributeReference.getFullyQualifiedAttributeName());
+      }
+      Object current = extension ? resource.getExtension(container.getId()) : resource;
+      checkMutability(attribute, current != null ? get(attribute.getField(), current) : null);
+
+      Attribute subAttribute = null;
+      if (attributeReference.getSubAttributeName() != null) {
+        subAttribute = attribute.getAttribute(attributeReference.getSubAttributeName());
+        if (subAttribute == null || subAttribute.getField() == null) {
+          throw badRequest(ErrorMessageType.INVALID_PATH, "Unknown attribute in path: " + attributeReference.getFullyQualifiedAttributeName());
+        }
+      }
+
+      Object holder;
+      if (extension) {
+        holder = writableExtension(container.getId(), operation == PatchOperation.Type.REMOVE);
+        if (holder == null) {
+          return;
+        }
+      } else {
+        holder = resource;
+      }
+
+      if (attribute.isMultiValued()) {
+        applyToMultiValued(operation, container, holder, attribute, filter, subAttribute, value);
+      } else if (filter != null) {
+        throw badRequest(ErrorMessageType.INVALID_PATH, "A value filter can only be applied to a multi-valued attribute: " + attributeReference.getFullyQualifiedAttributeName());
+      } else if (subAttribute != null) {
+        Object complex = get(attribute.getField(), holder);
+        if (complex == null && operation == PatchOperation.Type.REMOVE) {
+          return;
+        }
+        checkMutability(subAttribute, complex != null ? get(subAttribute.getField(), complex) : null);
+        complex = complex != null ? writable(complex) : newInstance(attribute.getField().getType());
+        set(attribute.getField(), holder, complex);
+        setValue(operation, complex, subAttribute, value);
+      } else {
+        setValue(operation, holder, attribute, value);
+      }
+    }
+
+    private void applyToMultiValued(PatchOperation.Type operation, Schema container, Object holder, Attribute attribute, FilterExpression filter, Attribute subAttribute, Object value) throws UnableToUpdateResourceException {
+      List<Object> values = getList(attribute.getField(), holder);
+      Set<Object> unchanged = Collections.newSetFromMap(new IdentityHashMap<>());
+      if (values != null) {
+        unchanged.addAll(values);
+      }
+
+      applyToValues(operation, container, holder, attribute, filter, subAttribute, value);
+      makeOthersNonPrimary(holder, attribute, unchanged);
+    }
+
+    private void applyToValues(PatchOperation.Type operation, Schema container, Object holder, Attribute attribute, FilterExpression filter, Attribute subAttribute, Object value) throws UnableToUpdateResourceException {
+      Field field = attribute.getField();
+      List<Object> values = getList(field, holder);
+
+      if (filter == null && subAttribute == null) {
+        if (operation == PatchOperation.Type.REMOVE) {
+          set(field, holder, null);
+        } else if (operation == PatchOperation.Type.REPLACE) {
+          List<Object> replacement = toElements(field, value);
+          copies.add(replacement);
+          set(field, holder, replacement);
+        } else {
+          addValues(holder, field, values, toElements(field, value));
+        }
+        return;
+      }
+
+      if (values == null || values.isEmpty()) {
+        if (operation == PatchOperation.Type.REPLACE && filter != null) {
+          throw badRequest(ErrorMessageType.NO_TARGET, "No values of " + attribute.getName() + " match the filter");
+        }
+        return;
+      }
+
+      Predicate<Object> matches = filter != null ? compileValueFilter(filter, container, attribute) : v -> true;
+      List<Object> writableValues = null;
+      boolean matched = false;
+      for (int i = values.size() - 1; i >= 0; i--) {
+        Object element = values.get(i);
+        if (element == null || !matches.test(element)) {
+          continue;
+        }
+        matched = true;
+        if (writableValues == null) {
+          writableValues = writableList(field, holder, values);
+        }
+
+        if (subAttribute != null) {
+          checkMutability(subAttribute, get(subAttribute.getField(), element));
+          Object copy = writable(element);
+          setValue(operation, copy, subAttribute, value);
+          writableValues.set(i, copy);
+        } else if (operation == PatchOperation.Type.REMOVE) {
+          writableValues.remove(i);
+        } else if (operation == PatchOperation.Type.ADD && value instanceof Map) {
+          Object copy = writable(element);
+          merge(copy, attribute, (Map<?, ?>) value);
+          writableValues.set(i, copy);
+        } else {
+          writableValues.set(i, convert(value, elementType(field)));
+        }
+      }
+
+      if (!matched && operation == PatchOperation.Type.REPLACE && filter != null) {
+        throw badRequest(ErrorMessageType.NO_TARGET, "No values of " + attribute.getName() + " match the filter");
+      }
+    }
+
+    /**
+     * Only one value of a multi-valued attribute can be primary. If the
+     * operation made a value primary, the values it didn't change are made
+     * non-primary, as section 3.5.2 of RFC 7644 requires; an operation can't
+     * make more than one value primary.
+     */
+    private void makeOthersNonPrimary(Object holder, Attribute attribute, Set<Object> unchanged) throws UnableToUpdateResourceException {
+      Attribute primary = attribute.getAttribute("primary");
+      List<Object> values = getList(attribute.getField(), holder);
+      if (primary == null || primary.getField() == null || values == null) {
+        return;
+      }
+
+      int changedPrimaries = 0;
+      for (Object element : values) {
+        if (element != null && !unchanged.contains(element) && isPrimary(primary, element)) {
+          changedPrimaries++;
+        }
+      }
+      if (changedPrimaries > 1) {
+        throw new UnableToUpdateResourceException(Status.BAD_REQUEST, ErrorMessageType.INVALID_VALUE, "Only one value of " + attribute.getName() + " can be primary");
+      }
+      if (changedPrimaries == 0) {
+        return;
+      }
+
+      List<Object> writableValues = null;
+      for (int i = 0; i < values.size(); i++) {
+        Object element = values.get(i);
+        if (element != null && unchanged.contains(element) && isPrimary(primary, element)) {
+          if (writableValues == null) {
+            writableValues = writableList(attribute.getField(), holder, values);
+          }
+          Object copy = writable(element);
+          set(primary.getField(), copy, false);
+          writableValues.set(i, copy);
+        }
+      }
+    }
+
+    private void addValues(Object holder, Field field, List<Object> values, List<Object> additions) throws UnableToUpdateResourceException {
+      if (additions.isEmpty()) {
+        return;
+      }
+      Set<Object> existing = values != null ? new HashSet<>(values) : new HashSet<>();
+      List<Object> writableValues = null;
+      for (Object addition : additions) {
+        if (existing.add(addition)) {
+          if (writableValues == null) {
+            writableValues = writableList(field, holder, values);
+          }
+          writableValues.add(addition);
+        }
+      }
+    }
+
+    /**
+     * Sets, merges or removes a single-valued attribute of
+     * <code>holder</code>, which has already been copied.
+     */
+    private void setValue(PatchOperation.Type operation, Object holder, Attribute attribute, Object value) throws UnableToUpdateResourceException {
+      Field field = attribute.getField();
+      if (operation == PatchOperation.Type.REMOVE) {
+        set(field, holder, null);
+      } else if (attribute.getType() == Attribute.Type.COMPLEX && value instanceof Map && !field.getType().isEnum()) {
+        // sub-attributes that are not in the value are left unchanged
+        Object complex = get(field, holder);
+        complex = complex != null ? writable(complex) : newInstance(field.getType());
+        merge(complex, attribute, (Map<?, ?>) value);
+        set(field, holder, complex);
+      } else {
+        set(field, holder, convert(value, field.getGenericType()));
+      }
+    }
+
+    private void merge(Object complex, Attribute attribute, Map<?, ?> value) throws UnableToUpdateResourceException {
+      for (Map.Entry<?, ?> entry : value.entrySet()) {
+        Attribute subAttribute = attribute.getAttribute(String.valueOf(entry.getKey()));
+        if (subAttribute == null || subAttribute.getField() == null) {
+          throw badRequest(ErrorMessageType.INVALID_VALUE, "Unknown sub-attribute " + entry.getKey() + " of " + attribute.getName());
+        }
+        Field field = subAttribute.getField();
+        checkMutability(subAttribute, get(field, complex));
+        set(field, complex, subAttribute.isMultiValued() ? toElements(field, entry.getValue()) : convert(entry.getValue(), field.getGenericType()));
+      }
+    }
+
+    private Predicate<Object> compileValueFilter(FilterExpression filter, Schema container, Attribute attribute) throws UnableToUpdateResourceException {
+      try {
+        return filterCompiler.compileValueFilter(filter, container, attribute);
+      } catch (FilterParseException | AttributeDoesNotExistException e) {
+        throw new UnableToUpdateResourceException(Status.BAD_REQUEST, ErrorMessageType.INVALID_FILTER, "Invalid value filter for " + attribute.getName() + ": " + e.getMessage(), e);
+      }
+    }
+
+    private ScimExtension writableExtension(String urn, boolean existingOnly) throws UnableToUpdateResourceException {
+      ScimExtension extension = resource.getExtension(urn);
+      if (extension == null) {
+        if (existingOnly) {
+          return null;
+        }
+        Class<? extends ScimExtension> extensionClass = ScimExtensionRegistry.getInstance().getExtensionClass(resource.getClass(), urn);
+        if (extensionClass == null) {
+          throw badRequest(ErrorMessageType.INVALID_PATH, "Extension " + urn + " is not registered for " + resource.getResourceType());
+        }
+        extension = newInstance(extensionClass);
+      } else {
+        extension = writable(extension);
+      }
+      resource.getExtensions().put(urn, extension);
+      return extension;
+    }
+
+    private List<Object> writableList(Field field, Object holder, List<Object> values) {
+      if (values != null && copies.contains(values)) {
+        return values;
+      }
+      List<Object> copy = values != null ? new ArrayList<>(values) : new ArrayList<>();
+      copies.add(copy);
+      set(field, holder, copy);
+      return copy;
+    }
+
+    private <V> V writable(V object) throws UnableToUpdateResourceException {
+      if (copies.contains(object)) {
+        return object;
+      }
+      V copy;
+      try {
+        copy = ShallowCopier.copy(object);
+      } catch (IOException e) {
+        throw new UnableToUpdateResourceException(Status.INTERNAL_SERVER_ERROR, e.getMessage(), e);
+      }
+      copies.add(copy);
+      return copy;
+    }
+
+    private <V> V newInstance(Class<V> clazz) throws UnableToUpdateResourceException {
+      V instance;
+      try {
+        instance = ShallowCopier.newInstance(clazz);
+      } catch (IOException e) {
+        throw new UnableToUpdateResourceException(Status.INTERNAL_SERVER_ERROR, e.getMessage(), e);
+      }
+      copies.add(instance);
+      return instance;
+    }
+  }
+
+  private static List<Object> toElements(Field field, Object value) throws UnableToUpdateResourceException {
+    java.lang.reflect.Type elementType = elementType(field);
+    List<Object> elements = new ArrayList<>();
+    if (value instanceof Collection) {
+      for (Object element : (Collection<?>) value) {
+        elements.add(convert(element, elementType));
+      }
+    } else if (value != null) {
+      elements.add(convert(value, elementType));
+    }
+    return elements;
+  }
+
+  private static boolean isPrimary(Attribute primary, Object element) {
+    return Boolean.TRUE.equals(get(primary.getField(), element));
+  }
+
+  private static java.lang.reflect.Type elementType(Field field) {
+    java.lang.reflect.Type genericType = field.getGenericType();
+    if (genericType instanceof ParameterizedType) {
+      return ((ParameterizedType) genericType).getActualTypeArguments()[0];
+    }
+    return Object.class;
+  }
+
+  /**
+   * Converts a value read from the request body (maps, lists, strings,
+   * numbers and booleans) to the type of the field it is written to.
+   */
+  private static Object convert(Object value, java.lang.reflect.Type type) throws UnableToUpdateResourceException {
+    if (value == null || (type instanceof Class && ((Class<?>) type).isInstance(value))) {
+      return value;
+    }
+    try {
+      return VALUE_MAPPER.convertValue(value, VALUE_MAPPER.getTypeFactory().constructType(type));
+    } catch (IllegalArgumentException e) {
+      throw new UnableToUpdateResourceException(Status.BAD_REQUEST, ErrorMessageType.INVALID_VALUE, "Invalid value " + value + ": " + e.getMessage(), e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Object> getList(Field field, Object holder) throws UnableToUpdateResourceException {
+    Object values = get(field, holder);
+    if (values != null && !(values instanceof List)) {
+      throw new IllegalStateException("Multi-valued attribute " + field.getName() + " is not a List");
+    }
+    return (List<Object>) values;
+  }
+
+  private static Object get(Field field, Object holder) {
+    try {
+      field.setAccessible(true);
+      return field.get(holder);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Unable to read " + field, e);
+    }
+  }
+
+  private static void set(Field field, Object holder, Object value) {
+    try {
+      field.setAccessible(true);
+      field.set(holder, value);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Unable to write " + field, e);
+    }
+  }
+}
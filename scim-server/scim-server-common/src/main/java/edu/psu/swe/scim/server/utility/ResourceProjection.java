@@ -0,0 +1,109 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.utility;
+
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.resources.ScimExtension;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
+
+/**
+ * The attributes to display for one attributes or excludedAttributes request,
+ * obtained from {@link AttributeUtil#getProjection(java.util.Set, java.util.Set)}.
+ * 
+ * A projection is either applied to a copy of a resource or handed to the
+ * {@link ProjectingSerializerModifier} so that the removed attributes are
+ * skipped while the resource is written. The plans for each resource type
+ * and extension are compiled the first time they are needed.
+ */
+public final class ResourceProjection {
+
+  private final Registry registry;
+
+  private final Predicate<Attribute> remove;
+
+  private final ConcurrentMap<String, ProjectionPlan> resourcePlans = new ConcurrentHashMap<>();
+
+  private final ConcurrentMap<String, ProjectionPlan> extensionPlans = new ConcurrentHashMap<>();
+
+  ResourceProjection(Registry registry, Predicate<Attribute> remove) {
+    this.registry = registry;
+    this.remove = remove;
+  }
+
+  /**
+   * Removes the attributes that are not displayed from the resource and its
+   * extensions.
+   */
+  public void apply(ScimResource resource) throws IllegalAccessException {
+    getResourcePlan(resource.getResourceType()).apply(resource);
+    for (Entry<String, ScimExtension> extensionEntry : resource.getExtensions().entrySet()) {
+      getExtensionPlan(extensionEntry.getKey()).apply(extensionEntry.getValue());
+    }
+  }
+
+  /**
+   * @return false if the attribute is removed from the resources written for
+   *         the request
+   */
+  public boolean isReturned(Attribute attribute) {
+    return !remove.test(attribute);
+  }
+
+  /**
+   * @return the plan for a resource or extension, or <code>current</code> for
+   *         any other object
+   */
+  ProjectionPlan getPlan(Object object, ProjectionPlan current) throws IllegalAccessException {
+    if (object instanceof ScimResource) {
+      return getResourcePlan(((ScimResource) object).getResourceType());
+    } else if (object instanceof ScimExtension) {
+      return getExtensionPlan(((ScimExtension) object).getUrn());
+    }
+    return current;
+  }
+
+  ProjectionPlan getResourcePlan(String resourceType) throws IllegalAccessException {
+    if (resourceType == null) {
+      return ProjectionPlan.EMPTY;
+    }
+    ProjectionPlan plan = resourcePlans.get(resourceType);
+    if (plan == null) {
+      plan = ProjectionPlan.compile(registry.getBaseSchemaOfResourceType(resourceType), remove);
+      resourcePlans.put(resourceType, plan);
+    }
+    return plan;
+  }
+
+  ProjectionPlan getExtensionPlan(String urn) throws IllegalAccessException {
+    ProjectionPlan plan = extensionPlans.get(urn);
+    if (plan == null) {
+      plan = ProjectionPlan.compile(registry.getSchema(urn), remove);
+      extensionPlans.put(urn, plan);
+    }
+    return plan;
+  }
+}
@@ -0,0 +1,116 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.utility;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copies the fields of one class, sharing the values they refer to. Used to
+ * change an object that may be shared, like a resource held by a caching
+ * provider, without copying everything it refers to.
+ * 
+ * The fields and the constructor are looked up once per class. A class
+ * without a no-argument constructor is copied with Java serialization.
+ */
+final class ShallowCopier {
+
+  private static final ConcurrentMap<Class<?>, ShallowCopier> COPIERS = new ConcurrentHashMap<>();
+
+  private final Class<?> clazz;
+
+  private final Constructor<?> constructor;
+
+  private final Field[] fields;
+
+  private ShallowCopier(Class<?> clazz) {
+    List<Field> fieldList = new ArrayList<>();
+    for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+      for (Field field : c.getDeclaredFields()) {
+        if (!Modifier.isStatic(field.getModifiers())) {
+          field.setAccessible(true);
+          fieldList.add(field);
+        }
+      }
+    }
+
+    Constructor<?> noArgumentConstructor;
+    try {
+      noArgumentConstructor = clazz.getDeclaredConstructor();
+      noArgumentConstructor.setAccessible(true);
+    } catch (NoSuchMethodException e) {
+      noArgumentConstructor = null;
+    }
+    this.clazz = clazz;
+    this.constructor = noArgumentConstructor;
+    this.fields = fieldList.toArray(new Field[fieldList.size()]);
+  }
+
+  /**
+   * @return a new object of the original's class whose fields refer to the
+   *         same values
+   */
+  @SuppressWarnings("unchecked")
+  static <V> V copy(V original) throws IOException {
+    return (V) COPIERS.computeIfAbsent(original.getClass(), ShallowCopier::new).copyOf(original);
+  }
+
+  /**
+   * @return a new object created with the no-argument constructor
+   */
+  static <V> V newInstance(Class<V> clazz) throws IOException {
+    return COPIERS.computeIfAbsent(clazz, ShallowCopier::new).newInstance();
+  }
+
+  @SuppressWarnings("unchecked")
+  private <V> V newInstance() throws IOException {
+    if (constructor == null) {
+      throw new IOException(clazz.getName() + " has no no-argument constructor");
+    }
+    try {
+      return (V) constructor.newInstance();
+    } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+      throw new IOException("Unable to create " + clazz.getName(), e);
+    }
+  }
+
+  private Object copyOf(Object original) throws IOException {
+    if (constructor == null) {
+      return ResourceCopier.copyBySerialization(original);
+    }
+    Object copy = newInstance();
+    try {
+      for (Field field : fields) {
+        field.set(copy, field.get(original));
+      }
+    } catch (IllegalAccessException e) {
+      throw new IOException("Unable to copy " + clazz.getName(), e);
+    }
+    return copy;
+  }
+}
@@ -0,0 +1,184 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import edu.psu.swe.scim.common.ScimUtils;
+import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension.Manager;
+import edu.psu.swe.scim.spec.protocol.filter.FilterParseException;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.resources.BaseResource;
+import edu.psu.swe.scim.spec.resources.Email;
+import edu.psu.swe.scim.spec.resources.Name;
+import edu.psu.swe.scim.spec.resources.ScimGroup;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+import edu.psu.swe.scim.spec.schema.Meta;
+import edu.psu.swe.scim.spec.schema.Schema;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+@RunWith(JUnitParamsRunner.class)
+public class FilterCompilerTest {
+
+  private static final String ENTERPRISE = EnterpriseExtension.URN + ":";
+
+  private FilterCompiler filterCompiler;
+
+  private Schema scimUserSchema;
+
+  private ScimUser user;
+
+  @Before
+  public void setup() throws Exception {
+    Registry registry = Mockito.mock(Registry.class);
+    scimUserSchema = ProviderRegistry.generateSchema(ScimUser.class, ScimUtils.getFieldsUpTo(ScimUser.class, BaseResource.class));
+    Schema scimEnterpriseUserSchema = ProviderRegistry.generateSchema(EnterpriseExtension.class, ScimUtils.getFieldsUpTo(EnterpriseExtension.class, Object.class));
+    Mockito.when(registry.getSchema(ScimUser.SCHEMA_URI)).thenReturn(scimUserSchema);
+    Mockito.when(registry.getSchema(EnterpriseExtension.URN)).thenReturn(scimEnterpriseUserSchema);
+
+    filterCompiler = new FilterCompiler(registry);
+
+    Name name = new Name();
+    name.setGivenName("Barbara");
+    name.setFamilyName("Jensen");
+
+    Email workEmail = new Email();
+    workEmail.setType("work");
+    workEmail.setValue("bjensen@example.com");
+
+    Email homeEmail = new Email();
+    homeEmail.setType("home");
+    homeEmail.setValue("babs@jensen.org");
+    homeEmail.setPrimary(true);
+
+    Meta meta = new Meta();
+    meta.setResourceType(ScimUser.RESOURCE_NAME);
+    meta.setLastModified(LocalDateTime.of(2011, 5, 13, 4, 42, 34));
+
+    Manager manager = new Manager();
+    manager.setValue("26118915-6090-4610-87e4-49d8ca9f808d");
+    EnterpriseExtension enterpriseExtension = new EnterpriseExtension();
+    enterpriseExtension.setEmployeeNumber("701984");
+    enterpriseExtension.setManager(manager);
+
+    user = new ScimUser();
+    user.setId("2819c223-7f76-453a-919d-413861904646");
+    user.setUserName("bjensen");
+    user.setName(name);
+    user.setEmails(Arrays.asList(workEmail, homeEmail));
+    user.setMeta(meta);
+    user.addExtension(enterpriseExtension);
+  }
+
+  @SuppressWarnings("unused")
+  private Object[] getFilters() {
+    return new Object[] {
+      new Object[] {"userName eq \"bjensen\"", true},
+      new Object[] {"userName eq \"BJensen\"", true},
+      new Object[] {"userName ne \"bjensen\"", false},
+      new Object[] {"userName gt \"a\" and userName lt \"c\"", true},
+      new Object[] {"userName pr", true},
+      new Object[] {"title pr", false},
+      new Object[] {"title eq null", true},
+      new Object[] {"name.givenName sw \"barb\"", true},
+      new Object[] {"name.familyName co \"ens\"", true},
+      new Object[] {"name.familyName ew \"smith\"", false},
+      new Object[] {"emails co \"example.com\"", true},
+      new Object[] {"emails.type eq \"home\"", true},
+      new Object[] {"emails.type ne \"work\"", false},
+      new Object[] {"emails.type ne \"other\"", true},
+      new Object[] {"emails[type eq \"work\" and value co \"@example.com\"]", true},
+      new Object[] {"emails[type eq \"home\" and value co \"@example.com\"]", false},
+      new Object[] {"emails[primary eq true and value ew \"jensen.org\"]", true},
+      new Object[] {"active eq true", true},
+      new Object[] {"active eq false", false},
+      new Object[] {"meta.resourceType eq \"User\"", true},
+      new Object[] {"meta.lastModified gt \"2011-05-13T04:42:34Z\"", false},
+      new Object[] {"meta.lastModified ge \"2011-05-13T04:42:34Z\"", true},
+      new Object[] {"meta.lastModified lt \"2011-05-13T06:42:34+01:00\"", true},
+      new Object[] {ENTERPRISE + "employeeNumber eq \"701984\"", true},
+      new Object[] {ENTERPRISE + "manager.value eq \"26118915-6090-4610-87e4-49d8ca9f808d\"", true},
+      new Object[] {ENTERPRISE + "costCenter pr", false},
+      new Object[] {"not(userName eq \"bjensen\")", false},
+      new Object[] {"userName eq \"jsmith\" or (title pr or emails[type eq \"work\"])", true},
+    };
+  }
+
+  @Test
+  @Parameters(method = "getFilters")
+  public void testCompiledFilter(String filter, boolean expected) throws Exception {
+    Predicate<ScimUser> predicate = filterCompiler.compile(new Filter(filter), ScimUser.class);
+
+    assertThat(predicate.test(user)).isEqualTo(expected);
+  }
+
+  @Test
+  public void testPredicateDoesNotMatchOtherResourceTypes() throws Exception {
+    Predicate<ScimGroup> predicate = filterCompiler.compile(new Filter("userName eq \"bjensen\"").getExpression(), scimUserSchema);
+
+    assertThat(predicate.test(new ScimGroup())).isFalse();
+  }
+
+  @Test
+  public void testValueFilter() throws Exception {
+    Predicate<Object> predicate = filterCompiler.compileValueFilter(new Filter("type eq \"work\" and primary eq false").getExpression(), scimUserSchema, scimUserSchema.getAttribute("emails"));
+
+    assertThat(predicate.test(user.getEmails().get(0))).isTrue();
+    assertThat(predicate.test(user.getEmails().get(1))).isFalse();
+  }
+
+  @SuppressWarnings("unused")
+  private String[] getInvalidFilters() {
+    return new String[] {
+      "active gt true",
+      "userName eq 5",
+      "name.givenName gt 5",
+      "meta.lastModified co \"2011\"",
+      "meta.lastModified gt \"yesterday\"",
+      "name eq \"Barbara\""
+    };
+  }
+
+  @Test(expected = FilterParseException.class)
+  @Parameters(method = "getInvalidFilters")
+  public void testInvalidComparisons(String filter) throws Exception {
+    filterCompiler.compile(new Filter(filter), ScimUser.class);
+  }
+
+  @Test(expected = AttributeDoesNotExistException.class)
+  public void testUnknownAttribute() throws Exception {
+    filterCompiler.compile(new Filter("shoeSize gt 10"), ScimUser.class);
+  }
+}
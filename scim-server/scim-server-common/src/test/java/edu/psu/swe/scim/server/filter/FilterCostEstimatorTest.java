@@ -0,0 +1,104 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import edu.psu.swe.scim.common.ScimUtils;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.resources.BaseResource;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+import edu.psu.swe.scim.spec.schema.Schema;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+@RunWith(JUnitParamsRunner.class)
+public class FilterCostEstimatorTest {
+
+  private static final String ENTERPRISE = EnterpriseExtension.URN + ":";
+
+  private FilterCostEstimator filterCostEstimator;
+
+  @Before
+  public void setup() throws Exception {
+    Registry registry = Mockito.mock(Registry.class);
+    Schema scimUserSchema = ProviderRegistry.generateSchema(ScimUser.class, ScimUtils.getFieldsUpTo(ScimUser.class, BaseResource.class));
+    Mockito.when(registry.getSchema(ScimUser.SCHEMA_URI)).thenReturn(scimUserSchema);
+
+    filterCostEstimator = new FilterCostEstimator(registry);
+  }
+
+  @SuppressWarnings("unused")
+  private Object[] getFilters() {
+    return new Object[] {
+      new Object[] {"userName eq \"bjensen\"", 1, 1, 1},
+      new Object[] {"userName eq \"a\" or userName eq \"b\" and title pr", 1, 3, 3},
+      new Object[] {"userName sw \"a\"", 1, 1, 2},
+      new Object[] {"userName co \"a\"", 1, 1, 4},
+      new Object[] {"emails.value eq \"a\"", 1, 1, 4},
+      new Object[] {"emails co \"a\"", 1, 1, 16},
+      new Object[] {ENTERPRISE + "employeeNumber eq \"1\"", 1, 1, 2},
+      new Object[] {"emails[type eq \"work\" and value co \"a\"]", 2, 2, 20},
+      new Object[] {"not (userName eq \"a\" and (title pr or (nickName pr)))", 4, 3, 3},
+    };
+  }
+
+  @Test
+  @Parameters(method = "getFilters")
+  public void testEstimate(String filter, int depth, int terms, int cost) throws Exception {
+    FilterCost filterCost = filterCostEstimator.estimate(new Filter(filter), ScimUser.class);
+
+    assertThat(filterCost.getDepth()).isEqualTo(depth);
+    assertThat(filterCost.getTerms()).isEqualTo(terms);
+    assertThat(filterCost.getCost()).isEqualTo(cost);
+  }
+
+  @Test
+  public void testCounts() throws Exception {
+    FilterCost filterCost = filterCostEstimator.estimate(new Filter("emails[value co \"a\"] or name.givenName ew \"b\" or " + ENTERPRISE + "costCenter pr"), ScimUser.class);
+
+    assertThat(filterCost.getSubstringTerms()).isEqualTo(2);
+    assertThat(filterCost.getValuePaths()).isEqualTo(1);
+    assertThat(filterCost.getExtensionTerms()).isEqualTo(1);
+  }
+
+  @Test
+  public void testNoFilter() throws Exception {
+    FilterCost filterCost = filterCostEstimator.estimate((Filter) null, ScimUser.class);
+
+    assertThat(filterCost).isEqualTo(new FilterCost(0, 0, 0, 0, 0, 0));
+  }
+
+  @Test
+  public void testWithoutSchema() throws Exception {
+    FilterCost filterCost = filterCostEstimator.estimate(new Filter("emails co \"a\""), null);
+
+    assertThat(filterCost.getCost()).isEqualTo(4);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import edu.psu.swe.scim.common.ScimUtils;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeInExpression;
+import edu.psu.swe.scim.spec.protocol.filter.FilterExpression;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.resources.BaseResource;
+import edu.psu.swe.scim.spec.resources.Email;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+import edu.psu.swe.scim.spec.schema.Schema;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+@RunWith(JUnitParamsRunner.class)
+public class FilterOptimizerTest {
+
+  private FilterOptimizer filterOptimizer;
+
+  private FilterCompiler filterCompiler;
+
+  private Schema scimUserSchema;
+
+  @Before
+  public void setup() throws Exception {
+    Registry registry = Mockito.mock(Registry.class);
+    scimUserSchema = ProviderRegistry.generateSchema(ScimUser.class, ScimUtils.getFieldsUpTo(ScimUser.class, BaseResource.class));
+    Schema scimEnterpriseUserSchema = ProviderRegistry.generateSchema(EnterpriseExtension.class, ScimUtils.getFieldsUpTo(EnterpriseExtension.class, Object.class));
+    Mockito.when(registry.getSchema(ScimUser.SCHEMA_URI)).thenReturn(scimUserSchema);
+    Mockito.when(registry.getSchema(EnterpriseExtension.URN)).thenReturn(scimEnterpriseUserSchema);
+
+    filterOptimizer = new FilterOptimizer(registry);
+    filterCompiler = new FilterCompiler(registry);
+  }
+
+  @SuppressWarnings("unused")
+  private Object[] getFilters() {
+    return new Object[] {
+      new Object[] {"(userName eq \"a\")", "userName EQ \"a\""},
+      new Object[] {"not (not (userName eq \"a\"))", "userName EQ \"a\""},
+      new Object[] {"not (userName eq \"a\")", "userName NE \"a\""},
+      new Object[] {"not (title pr)", "title EQ null"},
+      new Object[] {"not (title gt \"a\")", "NOT(title GT \"a\")"},
+      new Object[] {"not (userName eq \"a\" and title pr)", "userName NE \"a\" OR title EQ null"},
+      new Object[] {"not (userName eq \"a\" or not (title pr))", "title PR AND userName NE \"a\""},
+      new Object[] {"userName eq \"a\" and (title pr and (nickName pr and title pr))", "(userName EQ \"a\" AND title PR) AND nickName PR"},
+      new Object[] {"title co \"x\" and active eq true and userName eq \"a\"", "(userName EQ \"a\" AND active EQ true) AND title CO \"x\""},
+      new Object[] {"emails.value co \"x\" and title sw \"y\"", "title SW \"y\" AND emails.value CO \"x\""},
+      new Object[] {"emails[type eq \"work\"] and title eq \"x\"", "title EQ \"x\" AND emails[type EQ \"work\"]"},
+      new Object[] {"userName eq \"a\" or userName eq \"b\" or userName eq \"a\"", "(userName EQ \"a\" OR userName EQ \"b\")"},
+      new Object[] {"userName eq \"a\" or title pr or USERNAME eq \"c\"", "(userName EQ \"a\" OR userName EQ \"c\") OR title PR"},
+      new Object[] {"(userName eq \"a\" or title pr) and (title pr or userName eq \"a\")", "(userName EQ \"a\" OR title PR) AND (title PR OR userName EQ \"a\")"},
+    };
+  }
+
+  @Test
+  @Parameters(method = "getFilters")
+  public void testOptimize(String filter, String expected) throws Exception {
+    FilterExpression optimized = filterOptimizer.optimize(new Filter(filter).getExpression(), scimUserSchema);
+
+    assertThat(optimized.toFilter()).isEqualTo(expected);
+  }
+
+  @Test
+  public void testEqualitiesAreFolded() throws Exception {
+    FilterExpression optimized = filterOptimizer.optimize(new Filter("userName eq \"a\" or userName eq \"b\" or userName eq \"c\"").getExpression(), scimUserSchema);
+
+    assertThat(optimized).isInstanceOf(AttributeInExpression.class);
+    assertThat(((AttributeInExpression) optimized).getCompareValues()).containsExactly("a", "b", "c");
+  }
+
+  @Test
+  public void testOptimizeFilter() throws Exception {
+    Filter optimized = filterOptimizer.optimize(new Filter("not (not (userName eq \"a\"))"), ScimUser.class);
+
+    assertThat(optimized.getExpression().toFilter()).isEqualTo("userName EQ \"a\"");
+    assertThat(filterOptimizer.optimize((Filter) null, ScimUser.class)).isNull();
+  }
+
+  @SuppressWarnings("unused")
+  private Object[] getEquivalentFilters() {
+    return new Object[] {
+      new Object[] {"not (userName eq \"bjensen\" and not (title pr))"},
+      new Object[] {"not (emails.type eq \"work\")"},
+      new Object[] {"not (emails pr)"},
+      new Object[] {"not (emails[type eq \"home\" or value co \"example\"])"},
+      new Object[] {"userName eq \"jsmith\" or userName eq \"BJENSEN\" or title pr"},
+      new Object[] {"emails.type eq \"other\" or emails.type eq \"home\""},
+      new Object[] {"emails[type eq \"other\" or type eq \"HOME\"]"},
+      new Object[] {"not (nickName gt \"a\") and not (not (userName sw \"b\"))"},
+      new Object[] {"(title eq \"Tour Guide\" or active eq false) and not (userName eq \"x\" or userName eq \"y\")"},
+    };
+  }
+
+  @Test
+  @Parameters(method = "getEquivalentFilters")
+  public void testOptimizedFilterIsEquivalent(String filter) throws Exception {
+    Email homeEmail = new Email();
+    homeEmail.setType("home");
+    homeEmail.setValue("babs@jensen.org");
+
+    ScimUser bjensen = new ScimUser();
+    bjensen.setUserName("bjensen");
+    bjensen.setEmails(Arrays.asList(homeEmail));
+
+    ScimUser jsmith = new ScimUser();
+    jsmith.setUserName("jsmith");
+    jsmith.setTitle("Tour Guide");
+    jsmith.setNickName("Johnny");
+
+    FilterExpression expression = new Filter(filter).getExpression();
+    FilterExpression optimized = filterOptimizer.optimize(new Filter(filter).getExpression(), scimUserSchema);
+
+    for (ScimUser user : Arrays.asList(bjensen, jsmith, new ScimUser())) {
+      boolean expected = filterCompiler.compile(expression, scimUserSchema).test(user);
+      assertThat(filterCompiler.compile(optimized, scimUserSchema).test(user)).as(filter + " on " + user.getUserName()).isEqualTo(expected);
+    }
+  }
+}
@@ -0,0 +1,43 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package edu.psu.swe.scim.server.filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+
+import org.junit.Test;
+
+public class FilterValuesTest {
+
+  @Test
+  public void testEscapeLike() {
+    assertThat(FilterValues.escapeLike("100%_a\\b")).isEqualTo("100\\%\\_a\\\\b");
+    assertThat(FilterValues.escapeLike("plain")).isEqualTo("plain");
+  }
+
+  @Test
+  public void testParseDateTime() {
+    assertThat(FilterValues.parseDateTime("2011-12-31T23:00:00-02:00")).isEqualTo(Instant.parse("2012-01-01T01:00:00Z"));
+    assertThat(FilterValues.parseDateTime("2012-01-01T00:00:00")).isEqualTo(Instant.parse("2012-01-01T00:00:00Z"));
+    assertThat(FilterValues.parseDateTime("2012-01-01")).isEqualTo(Instant.parse("2012-01-01T00:00:00Z"));
+    assertThat(FilterValues.parseDateTime("yesterday")).isNull();
+  }
+}
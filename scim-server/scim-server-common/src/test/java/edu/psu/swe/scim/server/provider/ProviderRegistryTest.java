@@ -20,8 +20,11 @@
 package edu.psu.swe.scim.server.provider;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.stream.Stream;
 
 import javax.enterprise.inject.Instance;
 
@@ -33,7 +36,15 @@ import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import edu.psu.swe.scim.common.ScimUtils;
+import edu.psu.swe.scim.server.exception.ScimServerException;
 import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.server.schema.UniquenessIndex;
+import edu.psu.swe.scim.server.utility.ExampleObjectExtension;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
+import edu.psu.swe.scim.spec.protocol.ErrorMessageType;
+import edu.psu.swe.scim.spec.resources.BaseResource;
+import edu.psu.swe.scim.spec.resources.ScimGroup;
 import edu.psu.swe.scim.spec.resources.ScimUser;
 import edu.psu.swe.scim.spec.schema.Schema;
 
@@ -74,4 +85,46 @@ public class ProviderRegistryTest {
     assertThat(schema.getId()).isEqualTo(ScimUser.SCHEMA_URI);
   }
 
+  @Test
+  public void testStoredResourcesAreAddedToTheUniquenessIndex() throws Exception {
+    ScimUser stored = new ScimUser();
+    stored.setId("1");
+    stored.setUserName("bjensen");
+    Mockito.when(provider.getStoredResources()).thenReturn(Stream.of(stored));
+    UniquenessIndex uniquenessIndex = new UniquenessIndex(registry);
+    providerRegistry.uniquenessIndex = uniquenessIndex;
+
+    providerRegistry.registerProvider(ScimUser.class, providerInstance);
+
+    ScimUser user = new ScimUser();
+    user.setUserName("BJENSEN");
+    try {
+      uniquenessIndex.reserve(user, null);
+      fail("Expected the stored userName to be in use");
+    } catch (ScimServerException e) {
+      assertThat(e.getErrorResponse().getScimType()).isEqualTo(ErrorMessageType.UNIQUENESS);
+    }
+  }
+
+  @Test
+  public void testGeneratedSchemasMatchReflection() throws Exception {
+    for (Class<?> resourceClass : Arrays.asList(ScimUser.class, ScimGroup.class)) {
+      Schema generated = ProviderRegistry.createGeneratedSchema(resourceClass);
+
+      assertThat(generated).isNotNull();
+      assertThat(generated).isEqualTo(ProviderRegistry.generateSchema(resourceClass, ScimUtils.getFieldsUpTo(resourceClass, BaseResource.class)));
+    }
+
+    Schema generated = ProviderRegistry.createGeneratedSchema(EnterpriseExtension.class);
+
+    assertThat(generated).isNotNull();
+    assertThat(generated).isEqualTo(ProviderRegistry.generateSchema(EnterpriseExtension.class, ScimUtils.getFieldsUpTo(EnterpriseExtension.class, Object.class)));
+  }
+
+  @Test
+  public void testClassesWithoutGeneratedSchemasAreScanned() throws Exception {
+    assertThat(ProviderRegistry.createGeneratedSchema(ExampleObjectExtension.class)).isNull();
+    assertThat(ProviderRegistry.generateExtensionSchema(ExampleObjectExtension.class).getId()).isEqualTo(ExampleObjectExtension.URN);
+  }
+
 }
@@ -23,6 +23,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -49,6 +50,7 @@ import org.mockito.junit.MockitoRule;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import edu.psu.swe.scim.server.exception.UnableToUpdateResourceException;
 import edu.psu.swe.scim.server.rest.ObjectMapperContextResolver;
 import edu.psu.swe.scim.server.schema.Registry;
 import edu.psu.swe.scim.server.utility.ExampleObjectExtension;
@@ -130,12 +132,38 @@ public class UpdateRequestTest {
               .isNotNull();
   }
 
-  @Test(expected=UnsupportedOperationException.class)
+  @Test
+  public void testGetResourceWrapsPatchFailure() throws Exception {
+    UpdateRequest<ScimUser> updateRequest = new UpdateRequest<>(registry);
+    PatchOperation operation = new PatchOperation();
+    operation.setOperation(Type.REPLACE);
+    operation.setPath(new PatchOperationPath("shoeSize"));
+    operation.setValue("11");
+    updateRequest.initWithPatch("1234", createUser1(), Collections.singletonList(operation));
+
+    try {
+      updateRequest.getResource();
+      Assertions.fail("Expected an IllegalStateException");
+    } catch (IllegalStateException e) {
+      Assertions.assertThat(e.getCause()).isInstanceOf(UnableToUpdateResourceException.class);
+    }
+  }
+
+  @Test
   public void testPatchToUpdate() throws Exception {
     UpdateRequest<ScimUser> updateRequest = new UpdateRequest<>(registry);
-    updateRequest.initWithPatch("1234", createUser1(), createUser1PatchOps());
+    ScimUser user1 = createUser1();
+    updateRequest.initWithPatch("1234", user1, createUser1PatchOps());
         
-    updateRequest.getResource();
+    ScimUser result = updateRequest.getResource();
+    
+    Assertions.assertThat(result.getPhoneNumbers())
+              .extracting("type")
+              .containsExactly("work");
+    Assertions.assertThat(user1.getPhoneNumbers())
+              .hasSize(2);
+    Assertions.assertThat(updateRequest.getOriginal())
+              .isSameAs(user1);
   }
 
   @Test
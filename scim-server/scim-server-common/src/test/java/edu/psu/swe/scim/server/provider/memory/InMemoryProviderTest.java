@@ -0,0 +1,263 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.provider.memory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.core.Response.Status;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import edu.psu.swe.scim.common.ScimUtils;
+import edu.psu.swe.scim.server.exception.UnableToCreateResourceException;
+import edu.psu.swe.scim.server.exception.UnableToDeleteResourceException;
+import edu.psu.swe.scim.server.exception.UnableToUpdateResourceException;
+import edu.psu.swe.scim.server.filter.FilterOptimizer;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.server.provider.UpdateRequest;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.protocol.filter.FilterResponse;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.protocol.search.PageRequest;
+import edu.psu.swe.scim.spec.protocol.search.SortOrder;
+import edu.psu.swe.scim.spec.protocol.search.SortRequest;
+import edu.psu.swe.scim.spec.resources.BaseResource;
+import edu.psu.swe.scim.spec.resources.Email;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+import edu.psu.swe.scim.spec.schema.Schema;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+@RunWith(JUnitParamsRunner.class)
+public class InMemoryProviderTest {
+
+  private Registry registry;
+
+  private InMemoryProvider<ScimUser> provider;
+
+  @Before
+  public void setup() throws Exception {
+    registry = Mockito.mock(Registry.class);
+    Schema scimUserSchema = ProviderRegistry.generateSchema(ScimUser.class, ScimUtils.getFieldsUpTo(ScimUser.class, BaseResource.class));
+    Schema scimEnterpriseUserSchema = ProviderRegistry.generateSchema(EnterpriseExtension.class, ScimUtils.getFieldsUpTo(EnterpriseExtension.class, Object.class));
+    Mockito.when(registry.getSchema(ScimUser.SCHEMA_URI)).thenReturn(scimUserSchema);
+    Mockito.when(registry.getSchema(EnterpriseExtension.URN)).thenReturn(scimEnterpriseUserSchema);
+
+    provider = InMemoryProvider.builder(ScimUser.class, registry)
+                               .extension(EnterpriseExtension.class)
+                               .index("externalId")
+                               .index("emails.value")
+                               .build();
+
+    provider.create(user("1", "bjensen", "e-1", "bjensen@example.com", "Manager"));
+    provider.create(user("2", "jsmith", "e-2", "jsmith@example.com", null));
+    provider.create(user("3", "adoe", null, "adoe@example.org", "Engineer"));
+    provider.create(user("4", "BSmith", "e-4", null, "Engineer"));
+  }
+
+  @SuppressWarnings("unused")
+  private Object[] getFilters() {
+    return new Object[] {
+      new Object[] {"userName eq \"BJENSEN\"", true, new String[] {"1"}},
+      new Object[] {"id eq \"2\"", true, new String[] {"2"}},
+      new Object[] {"externalId eq \"e-4\"", true, new String[] {"4"}},
+      new Object[] {"externalId pr", true, new String[] {"1", "2", "4"}},
+      new Object[] {"emails.value eq \"adoe@example.org\"", true, new String[] {"3"}},
+      new Object[] {"emails[value eq \"jsmith@example.com\"]", true, new String[] {"2"}},
+      new Object[] {"userName eq \"jsmith\" or userName eq \"adoe\"", true, new String[] {"2", "3"}},
+      new Object[] {"title eq \"Engineer\" and externalId pr", true, new String[] {"4"}},
+      new Object[] {"userName eq \"jsmith\" and title pr", true, new String[] {}},
+      new Object[] {"userName eq \"nobody\"", true, new String[] {}},
+      new Object[] {"title eq \"Engineer\"", false, new String[] {"3", "4"}},
+      new Object[] {"userName sw \"b\"", false, new String[] {"1", "4"}},
+      new Object[] {"userName eq \"jsmith\" or title pr", false, new String[] {"1", "2", "3", "4"}},
+      new Object[] {"not (userName eq \"jsmith\")", false, new String[] {"1", "3", "4"}},
+    };
+  }
+
+  @Test
+  @Parameters(method = "getFilters")
+  public void testFind(String filter, boolean indexed, String[] expectedIds) throws Exception {
+    FilterResponse<ScimUser> response = provider.find(new Filter(filter), null, sortBy("id", SortOrder.ASCENDING));
+
+    assertThat(ids(response)).containsExactly(expectedIds);
+    assertThat(response.getTotalResults()).isEqualTo(expectedIds.length);
+    assertThat(provider.candidates(new Filter(filter).getExpression()) != null).isEqualTo(indexed);
+  }
+
+  @Test
+  public void testFindFoldedEqualities() throws Exception {
+    Filter filter = new FilterOptimizer(registry).optimize(new Filter("userName eq \"jsmith\" or userName eq \"adoe\" or userName eq \"bsmith\""), ScimUser.class);
+
+    assertThat(provider.candidates(filter.getExpression())).containsOnly("2", "3", "4");
+    assertThat(ids(provider.find(filter, null, sortBy("userName", SortOrder.ASCENDING)))).containsExactly("3", "4", "2");
+  }
+
+  @Test
+  public void testFindSortedAndPaged() throws Exception {
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setStartIndex(2);
+    pageRequest.setCount(2);
+
+    FilterResponse<ScimUser> response = provider.find(null, pageRequest, sortBy("title", SortOrder.DESCENDING));
+
+    // nulls sort last, ties are broken by id
+    assertThat(ids(response)).containsExactly("3", "4");
+    assertThat(response.getTotalResults()).isEqualTo(4);
+    assertThat(ids(provider.find(null, pageRequest, sortBy("title", SortOrder.ASCENDING)))).containsExactly("4", "1");
+  }
+
+  @Test
+  public void testCreateAssignsIdAndMeta() throws Exception {
+    ScimUser created = provider.create(user(null, "new", null, null, null));
+
+    assertThat(created.getId()).isNotNull();
+    assertThat(created.getMeta().getCreated()).isNotNull();
+    assertThat(created.getMeta().getLastModified()).isEqualTo(created.getMeta().getCreated());
+    assertThat(provider.get(created.getId())).isSameAs(created);
+    assertThat(provider.size()).isEqualTo(5);
+  }
+
+  @Test
+  public void testCreateDuplicateId() throws Exception {
+    try {
+      provider.create(user("1", "other", null, null, null));
+      fail("Expected UnableToCreateResourceException");
+    } catch (UnableToCreateResourceException e) {
+      assertThat(e.getStatus()).isEqualTo(Status.CONFLICT);
+    }
+    assertThat(provider.get("1").getUserName()).isEqualTo("bjensen");
+  }
+
+  @Test
+  public void testUpdateMaintainsIndexes() throws Exception {
+    ScimUser original = provider.get("2");
+    ScimUser replacement = user("2", "jsmith2", "e-2", "john@example.com", null);
+    UpdateRequest<ScimUser> updateRequest = new UpdateRequest<>(registry);
+    updateRequest.initWithResource("2", original, replacement);
+
+    ScimUser updated = provider.update(updateRequest);
+
+    assertThat(updated.getMeta().getCreated()).isEqualTo(original.getMeta().getCreated());
+    assertThat(provider.candidates(new Filter("userName eq \"jsmith\"").getExpression())).isEmpty();
+    assertThat(provider.candidates(new Filter("userName eq \"jsmith2\"").getExpression())).containsOnly("2");
+    assertThat(provider.candidates(new Filter("emails.value eq \"jsmith@example.com\"").getExpression())).isEmpty();
+    assertThat(provider.candidates(new Filter("externalId eq \"e-2\"").getExpression())).containsOnly("2");
+  }
+
+  @Test
+  public void testUpdateMissing() throws Exception {
+    UpdateRequest<ScimUser> updateRequest = new UpdateRequest<>(registry);
+    updateRequest.initWithResource("5", user("5", "x", null, null, null), user("5", "y", null, null, null));
+    try {
+      provider.update(updateRequest);
+      fail("Expected UnableToUpdateResourceException");
+    } catch (UnableToUpdateResourceException e) {
+      assertThat(e.getStatus()).isEqualTo(Status.NOT_FOUND);
+    }
+  }
+
+  @Test
+  public void testDelete() throws Exception {
+    provider.delete("1");
+
+    assertThat(provider.get("1")).isNull();
+    assertThat(provider.candidates(new Filter("userName eq \"bjensen\"").getExpression())).isEmpty();
+    assertThat(provider.candidates(new Filter("externalId pr").getExpression())).containsOnly("2", "4");
+    try {
+      provider.delete("1");
+      fail("Expected UnableToDeleteResourceException");
+    } catch (UnableToDeleteResourceException e) {
+      assertThat(e.getStatus()).isEqualTo(Status.NOT_FOUND);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testIndexOnNonStringAttribute() throws Exception {
+    InMemoryProvider.builder(ScimUser.class, registry).index("active").build();
+  }
+
+  @Test
+  public void testConcurrentCreates() throws Exception {
+    provider.clear();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Callable<ScimUser>> tasks = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+        String userName = "user" + i;
+        tasks.add(() -> provider.create(user(null, userName, null, userName + "@example.com", null)));
+      }
+      for (Future<ScimUser> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(provider.size()).isEqualTo(1000);
+    assertThat(provider.find(new Filter("userName eq \"user500\""), null, null).getTotalResults()).isEqualTo(1);
+    assertThat(provider.candidates(new Filter("emails.value pr").getExpression())).hasSize(1000);
+  }
+
+  private static SortRequest sortBy(String attribute, SortOrder sortOrder) {
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference(attribute));
+    sortRequest.setSortOrder(sortOrder);
+    return sortRequest;
+  }
+
+  private static List<String> ids(FilterResponse<ScimUser> response) {
+    return response.getResources().stream().map(ScimUser::getId).collect(Collectors.toList());
+  }
+
+  private static ScimUser user(String id, String userName, String externalId, String email, String title) {
+    ScimUser user = new ScimUser();
+    user.setId(id);
+    user.setUserName(userName);
+    user.setExternalId(externalId);
+    user.setTitle(title);
+    if (email != null) {
+      Email emailAddress = new Email();
+      emailAddress.setValue(email);
+      emailAddress.setType("work");
+      user.setEmails(new ArrayList<>(Collections.singletonList(emailAddress)));
+    } else {
+      user.setEmails(new ArrayList<>(Arrays.asList()));
+    }
+    return user;
+  }
+}
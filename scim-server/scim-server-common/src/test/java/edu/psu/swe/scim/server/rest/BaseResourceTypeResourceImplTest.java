@@ -20,37 +20,70 @@
 package edu.psu.swe.scim.server.rest;
 
 import static org.junit.Assert.*;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
+import javax.enterprise.inject.Instance;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.psu.swe.scim.common.ScimUtils;
 import edu.psu.swe.scim.server.exception.ScimServerException;
+import edu.psu.swe.scim.server.filter.FilterOptimizer;
 import edu.psu.swe.scim.server.provider.Provider;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.server.provider.StreamingFilterResponse;
+import edu.psu.swe.scim.server.provider.UpdateRequest;
+import edu.psu.swe.scim.server.provider.extensions.ScimRequestContext;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.server.schema.UniquenessIndex;
+import edu.psu.swe.scim.server.utility.AttributeUtil;
+import edu.psu.swe.scim.server.utility.EndpointUtil;
+import edu.psu.swe.scim.server.utility.EtagGenerator;
 import edu.psu.swe.scim.server.utility.ExampleObjectExtension;
 import edu.psu.swe.scim.server.utility.ExampleObjectExtension.ComplexObject;
 import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
 import edu.psu.swe.scim.spec.extension.EnterpriseExtension.Manager;
 import edu.psu.swe.scim.spec.phonenumber.PhoneNumberParseException;
+import edu.psu.swe.scim.spec.protocol.ErrorMessageType;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
 import edu.psu.swe.scim.spec.protocol.attribute.AttributeReferenceListWrapper;
 import edu.psu.swe.scim.spec.protocol.data.ErrorResponse;
+import edu.psu.swe.scim.spec.protocol.data.PatchOperation;
+import edu.psu.swe.scim.spec.protocol.data.PatchOperationPath;
 import edu.psu.swe.scim.spec.protocol.data.PatchRequest;
 import edu.psu.swe.scim.spec.protocol.data.SearchRequest;
+import edu.psu.swe.scim.spec.protocol.filter.FilterResponse;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
 import edu.psu.swe.scim.spec.resources.Address;
+import edu.psu.swe.scim.spec.resources.BaseResource;
 import edu.psu.swe.scim.spec.resources.Name;
 import edu.psu.swe.scim.spec.resources.PhoneNumber;
 import edu.psu.swe.scim.spec.resources.ScimUser;
 import edu.psu.swe.scim.spec.resources.PhoneNumber.GlobalPhoneNumberBuilder;
 import edu.psu.swe.scim.spec.resources.PhoneNumber.LocalPhoneNumberBuilder;
+import edu.psu.swe.scim.spec.schema.Schema;
 
 public class BaseResourceTypeResourceImplTest {
   
@@ -216,6 +249,369 @@ public class BaseResourceTypeResourceImplTest {
     assertTrue(((ErrorResponse)response.getEntity()).getDetail().equals("Cannot include both attributes and excluded attributes in a single request"));
   }
   
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testUpdate_PreconditionFailedWithoutLoadingResource() throws Exception {
+    // given
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = Mockito.mock(BaseResourceTypeResourceImpl.class);
+    Provider<ScimUser> versionedProvider = Mockito.mock(Provider.class);
+    HttpServletRequest servletRequest = Mockito.mock(HttpServletRequest.class);
+    Request request = Mockito.mock(Request.class);
+    baseResourceImpl.servletRequest = servletRequest;
+    baseResourceImpl.request = request;
+
+    EntityTag version = new EntityTag("2");
+    when(servletRequest.getHeader(HttpHeaders.IF_MATCH)).thenReturn("\"1\"");
+    when(versionedProvider.getVersion("1")).thenReturn(version);
+    when(request.evaluatePreconditions(version)).thenReturn(Response.status(Status.PRECONDITION_FAILED));
+    when(baseResourceImpl.getProvider()).thenReturn(versionedProvider);
+    when(baseResourceImpl.getProviderInternal()).thenCallRealMethod();
+
+    ScimUser scimUser = getScimUser();
+    when(baseResourceImpl.update(scimUser, "1", null, null)).thenCallRealMethod();
+
+    // when
+    Response response = baseResourceImpl.update(scimUser, "1", null, null);
+
+    // then
+    assertEquals(Status.PRECONDITION_FAILED.getStatusCode(), response.getStatus());
+    verify(versionedProvider, never()).get("1");
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testFind_FilterOptimizedOnlyForProvidersThatSupportIt() throws Exception {
+    // given
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = Mockito.mock(BaseResourceTypeResourceImpl.class);
+    Provider<ScimUser> filteringProvider = Mockito.mock(Provider.class);
+    baseResourceImpl.filterOptimizer = new FilterOptimizer(Mockito.mock(Registry.class));
+    Filter filter = new Filter("not (userName eq \"a\")");
+    when(baseResourceImpl.optimizeFilter(filteringProvider, filter)).thenCallRealMethod();
+
+    // when
+    Filter unchanged = baseResourceImpl.optimizeFilter(filteringProvider, filter);
+    when(filteringProvider.isOptimizedFilterSupported()).thenReturn(true);
+    Filter optimized = baseResourceImpl.optimizeFilter(filteringProvider, filter);
+
+    // then
+    assertSame(filter, unchanged);
+    assertEquals("userName NE \"a\"", optimized.getExpression().toFilter());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testPatch_UniqueValueReplacedIsFreed() throws Exception {
+    // given
+    Registry registry = createRegistry();
+    UniquenessIndex uniquenessIndex = new UniquenessIndex(registry);
+    ScimUser stored = getScimUser();
+    uniquenessIndex.add(stored);
+
+    Provider<ScimUser> patchedProvider = Mockito.mock(Provider.class);
+    when(patchedProvider.get("1")).thenReturn(stored);
+    when(patchedProvider.update(any(UpdateRequest.class))).thenAnswer(invocation -> ((UpdateRequest<ScimUser>) invocation.getArguments()[0]).getResource());
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = createResourceImpl(patchedProvider, registry);
+    baseResourceImpl.uniquenessIndex = uniquenessIndex;
+
+    PatchOperation operation = new PatchOperation();
+    operation.setOperation(PatchOperation.Type.REPLACE);
+    operation.setPath(new PatchOperationPath("userName"));
+    operation.setValue("jed2");
+    PatchRequest patchRequest = new PatchRequest();
+    patchRequest.setPatchOperationList(Collections.singletonList(operation));
+    when(baseResourceImpl.patch(patchRequest, "1", null, null)).thenCallRealMethod();
+
+    // when
+    Response response = baseResourceImpl.patch(patchRequest, "1", null, null);
+
+    // then
+    assertEquals(Status.OK.getStatusCode(), response.getStatus());
+    assertEquals("jed1", stored.getUserName());
+
+    ScimUser reusing = new ScimUser();
+    reusing.setUserName("jed1");
+    uniquenessIndex.reserve(reusing, null).commit("2");
+
+    ScimUser conflicting = new ScimUser();
+    conflicting.setUserName("jed2");
+    try {
+      uniquenessIndex.reserve(conflicting, null);
+      fail("The patched userName is not reserved");
+    } catch (ScimServerException e) {
+      assertEquals(Status.CONFLICT, e.getErrorResponse().getStatus());
+    }
+  }
+
+  @Test
+  public void testPatch_ReadOnlyAttributeIsMutabilityError() throws Exception {
+    // given
+    Provider<ScimUser> provider = Mockito.mock(Provider.class);
+    when(provider.get("1")).thenReturn(getScimUser());
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = createResourceImpl(provider, createRegistry());
+
+    PatchOperation operation = new PatchOperation();
+    operation.setOperation(PatchOperation.Type.REPLACE);
+    operation.setPath(new PatchOperationPath("id"));
+    operation.setValue("2");
+    PatchRequest patchRequest = new PatchRequest();
+    patchRequest.setPatchOperationList(Collections.singletonList(operation));
+    when(baseResourceImpl.patch(patchRequest, "1", null, null)).thenCallRealMethod();
+
+    // when
+    Response response = baseResourceImpl.patch(patchRequest, "1", null, null);
+
+    // then
+    assertEquals(Status.BAD_REQUEST.getStatusCode(), response.getStatus());
+    assertEquals(ErrorMessageType.MUTABILITY, ((ErrorResponse) response.getEntity()).getScimType());
+    verify(provider, never()).update(any(UpdateRequest.class));
+  }
+
+  @Test
+  public void testGetById_ProviderResourceIsNotChanged() throws Exception {
+    // given
+    ScimUser stored = getScimUser();
+    Provider<ScimUser> provider = Mockito.mock(Provider.class);
+    when(provider.get("1")).thenReturn(stored);
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = createResourceImpl(provider, createRegistry());
+    when(baseResourceImpl.getById("1", null, null)).thenCallRealMethod();
+
+    // when
+    Response response = baseResourceImpl.getById("1", null, null);
+
+    // then
+    assertEquals(Status.OK.getStatusCode(), response.getStatus());
+    assertNull(stored.getMeta());
+    assertTrue(writeEntity(response).contains("\"version\":\"" + response.getEntityTag().getValue() + "\""));
+  }
+
+  @Test
+  public void testGetById_EtagOfProjectionMatchesOnUpdate() throws Exception {
+    // given
+    ScimUser stored = getScimUser();
+    ScimUser partial = new ScimUser();
+    partial.setId("1");
+    partial.setUserName("jed1");
+
+    Provider<ScimUser> provider = Mockito.mock(Provider.class);
+    when(provider.get("1")).thenReturn(stored);
+    when(provider.get(eq("1"), any(ScimRequestContext.class))).thenReturn(partial);
+    when(provider.update(any(UpdateRequest.class))).thenAnswer(invocation -> ((UpdateRequest<ScimUser>) invocation.getArguments()[0]).getResource());
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = createResourceImpl(provider, createRegistry());
+
+    AttributeReferenceListWrapper userName = new AttributeReferenceListWrapper("userName");
+    when(baseResourceImpl.getById("1", userName, null)).thenCallRealMethod();
+    Response getResponse = baseResourceImpl.getById("1", userName, null);
+    EntityTag ifMatch = getResponse.getEntityTag();
+
+    when(baseResourceImpl.request.evaluatePreconditions(any(EntityTag.class))).thenAnswer(invocation -> ifMatch.equals(invocation.getArguments()[0]) ? null : Response.status(Status.PRECONDITION_FAILED));
+    ScimUser replacement = getScimUser();
+    replacement.setDisplayName("Johnny Doe");
+    when(baseResourceImpl.update(replacement, "1", null, null)).thenCallRealMethod();
+
+    // when
+    Response updateResponse = baseResourceImpl.update(replacement, "1", null, null);
+
+    // then
+    assertEquals(Status.OK.getStatusCode(), getResponse.getStatus());
+    assertEquals(Status.OK.getStatusCode(), updateResponse.getStatus());
+    assertNotEquals(ifMatch, updateResponse.getEntityTag());
+  }
+
+  @Test
+  public void testGetById_PartialLoadWhenProviderKnowsVersion() throws Exception {
+    // given
+    ScimUser partial = new ScimUser();
+    partial.setId("1");
+    partial.setUserName("jed1");
+
+    Provider<ScimUser> provider = Mockito.mock(Provider.class);
+    when(provider.getVersion("1")).thenReturn(new EntityTag("v-1"));
+    when(provider.get(eq("1"), any(ScimRequestContext.class))).thenReturn(partial);
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = createResourceImpl(provider, createRegistry());
+
+    AttributeReferenceListWrapper userName = new AttributeReferenceListWrapper("userName");
+    when(baseResourceImpl.getById("1", userName, null)).thenCallRealMethod();
+
+    // when
+    Response response = baseResourceImpl.getById("1", userName, null);
+
+    // then
+    assertEquals(Status.OK.getStatusCode(), response.getStatus());
+    assertEquals(new EntityTag("v-1"), response.getEntityTag());
+    verify(provider, never()).get("1");
+  }
+
+  @Test
+  public void testGetById_FailingIfMatchIsPreconditionFailed() throws Exception {
+    // given
+    EntityTag version = new EntityTag("2");
+    Provider<ScimUser> provider = Mockito.mock(Provider.class);
+    when(provider.getVersion("1")).thenReturn(version);
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = createResourceImpl(provider, createRegistry());
+    when(baseResourceImpl.servletRequest.getHeader(HttpHeaders.IF_MATCH)).thenReturn("\"1\"");
+    when(baseResourceImpl.request.evaluatePreconditions(version)).thenReturn(Response.status(Status.PRECONDITION_FAILED));
+    when(baseResourceImpl.getById("1", null, null)).thenCallRealMethod();
+
+    // when
+    Response response = baseResourceImpl.getById("1", null, null);
+
+    // then
+    assertEquals(Status.PRECONDITION_FAILED.getStatusCode(), response.getStatus());
+    verify(provider, never()).get("1");
+  }
+
+  @Test
+  public void testGetById_NotModifiedHasEtag() throws Exception {
+    // given
+    Provider<ScimUser> provider = Mockito.mock(Provider.class);
+    when(provider.get("1")).thenReturn(getScimUser());
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = createResourceImpl(provider, createRegistry());
+    when(baseResourceImpl.request.evaluatePreconditions(any(EntityTag.class))).thenReturn(Response.notModified());
+    when(baseResourceImpl.getById("1", null, null)).thenCallRealMethod();
+
+    // when
+    Response response = baseResourceImpl.getById("1", null, null);
+
+    // then
+    assertEquals(Status.NOT_MODIFIED.getStatusCode(), response.getStatus());
+    assertNotNull(response.getEntityTag());
+  }
+
+  @Test
+  public void testFind_FullResourcesLoadedWhenVersionIsDisplayed() throws Exception {
+    // given
+    Provider<ScimUser> provider = Mockito.mock(Provider.class);
+    when(provider.find(any(), any(), any(), any(ScimRequestContext.class))).thenReturn(new FilterResponse<>(Collections.singletonList(getScimUser()), null, 1));
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = createResourceImpl(provider, createRegistry());
+
+    SearchRequest projectedRequest = new SearchRequest();
+    projectedRequest.setAttributes(new AttributeReferenceListWrapper("userName").getAttributeReferences());
+    SearchRequest versionedRequest = new SearchRequest();
+    versionedRequest.setAttributes(new AttributeReferenceListWrapper("userName, meta").getAttributeReferences());
+    when(baseResourceImpl.find(any(SearchRequest.class))).thenCallRealMethod();
+
+    // when
+    Response projectedResponse = baseResourceImpl.find(projectedRequest);
+    Response versionedResponse = baseResourceImpl.find(versionedRequest);
+
+    // then
+    assertEquals(Status.OK.getStatusCode(), projectedResponse.getStatus());
+    assertEquals(Status.OK.getStatusCode(), versionedResponse.getStatus());
+
+    ArgumentCaptor<ScimRequestContext> requestContexts = ArgumentCaptor.forClass(ScimRequestContext.class);
+    verify(provider, times(2)).find(any(), any(), any(), requestContexts.capture());
+    assertEquals(projectedRequest.getAttributes(), requestContexts.getAllValues().get(0).getAttributeReferences());
+    assertTrue(requestContexts.getAllValues().get(1).getAttributeReferences().isEmpty());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testFind_StreamedResourcesHaveVersion() throws Exception {
+    // given
+    ScimUser user = getScimUser();
+    Provider<ScimUser> provider = Mockito.mock(Provider.class);
+    when(provider.findStream(any(), any(), any(), any(ScimRequestContext.class))).thenAnswer(invocation -> new StreamingFilterResponse<>(Stream.of(user), 1));
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = createResourceImpl(provider, createRegistry());
+    when(baseResourceImpl.find(any(SearchRequest.class))).thenCallRealMethod();
+
+    SearchRequest versionedRequest = new SearchRequest();
+    versionedRequest.setAttributes(new AttributeReferenceListWrapper("userName, meta").getAttributeReferences());
+
+    // when
+    Response response = baseResourceImpl.find(versionedRequest);
+    JsonNode listResponse = new ObjectMapper().readTree(writeEntity(response));
+
+    // then
+    assertEquals(Status.OK.getStatusCode(), response.getStatus());
+    String version = new EtagGenerator().generateEtag(provider, user).getValue();
+    assertEquals(version, listResponse.get("Resources").get(0).get("meta").get("version").asText());
+    assertNull(user.getMeta() != null ? user.getMeta().getVersion() : null);
+
+    ArgumentCaptor<ScimRequestContext> requestContext = ArgumentCaptor.forClass(ScimRequestContext.class);
+    verify(provider).findStream(any(), any(), any(), requestContext.capture());
+    assertTrue(requestContext.getValue().getAttributeReferences().isEmpty());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testFind_LaterPageOfUnpagedProviderIsPaged() throws Exception {
+    // given
+    List<ScimUser> users = new ArrayList<>();
+    for (int i = 1; i <= 5; i++) {
+      ScimUser user = getScimUser();
+      user.setId(Integer.toString(i));
+      users.add(user);
+    }
+    Provider<ScimUser> provider = Mockito.mock(Provider.class);
+    when(provider.find(any(), any(), any(), any(ScimRequestContext.class))).thenReturn(new FilterResponse<>(users, null, 5));
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = createResourceImpl(provider, createRegistry());
+    when(baseResourceImpl.find(any(SearchRequest.class))).thenCallRealMethod();
+
+    SearchRequest request = new SearchRequest();
+    request.setStartIndex(3);
+    request.setCount(100);
+
+    // when
+    Response response = baseResourceImpl.find(request);
+
+    // then
+    assertEquals(Status.OK.getStatusCode(), response.getStatus());
+    JsonNode listResponse = new ObjectMapper().readTree(writeEntity(response));
+    assertEquals(5, listResponse.get("totalResults").asInt());
+    assertEquals(3, listResponse.get("startIndex").asInt());
+    assertEquals(3, listResponse.get("itemsPerPage").asInt());
+    List<String> ids = new ArrayList<>();
+    for (JsonNode user : listResponse.get("Resources")) {
+      ids.add(user.get("id").asText());
+    }
+    assertEquals(Arrays.asList("3", "4", "5"), ids);
+  }
+
+  /**
+   * @return the JSON the container writes for the response entity
+   */
+  private static String writeEntity(Response response) throws Exception {
+    Object entity = response.getEntity();
+    if (entity instanceof StreamingOutput) {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      ((StreamingOutput) entity).write(output);
+      return output.toString("UTF-8");
+    }
+    return new ObjectMapperContextResolver().getContext(ObjectMapper.class).writeValueAsString(entity);
+  }
+
+  /**
+   * @return a mocked endpoint calling through to the real request processing,
+   *         with the mocked provider and the collaborators it needs
+   */
+  @SuppressWarnings("unchecked")
+  private BaseResourceTypeResourceImpl<ScimUser> createResourceImpl(Provider<ScimUser> provider, Registry registry) throws Exception {
+    BaseResourceTypeResourceImpl<ScimUser> baseResourceImpl = Mockito.mock(BaseResourceTypeResourceImpl.class);
+    baseResourceImpl.uriInfo = Mockito.mock(UriInfo.class, Mockito.RETURNS_DEEP_STUBS);
+    baseResourceImpl.request = Mockito.mock(Request.class);
+    baseResourceImpl.servletRequest = Mockito.mock(HttpServletRequest.class);
+    baseResourceImpl.endpointUtil = Mockito.mock(EndpointUtil.class);
+    baseResourceImpl.etagGenerator = new EtagGenerator();
+
+    baseResourceImpl.attributeUtil = Mockito.mock(AttributeUtil.class);
+    when(baseResourceImpl.attributeUtil.setAttributesForDisplay(any(ScimUser.class), anySetOf(AttributeReference.class))).then(returnsFirstArg());
+
+    Instance<UpdateRequest<ScimUser>> updateRequestInstance = Mockito.mock(Instance.class);
+    when(updateRequestInstance.get()).thenAnswer(invocation -> new UpdateRequest<ScimUser>(registry));
+    baseResourceImpl.updateRequestInstance = updateRequestInstance;
+
+    when(baseResourceImpl.getProvider()).thenReturn(provider);
+    when(baseResourceImpl.getProviderInternal()).thenCallRealMethod();
+    return baseResourceImpl;
+  }
+
+  private static Registry createRegistry() throws Exception {
+    Registry registry = Mockito.mock(Registry.class);
+    Schema scimUserSchema = ProviderRegistry.generateSchema(ScimUser.class, ScimUtils.getFieldsUpTo(ScimUser.class, BaseResource.class));
+    when(registry.getSchema(ScimUser.SCHEMA_URI)).thenReturn(scimUserSchema);
+    return registry;
+  }
+
   private ScimUser getScimUser() throws PhoneNumberParseException {
     ScimUser user = new ScimUser();
 
@@ -0,0 +1,143 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import edu.psu.swe.scim.common.ScimUtils;
+import edu.psu.swe.scim.server.provider.Provider;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.server.schema.UniquenessIndex;
+import edu.psu.swe.scim.spec.protocol.ErrorMessageType;
+import edu.psu.swe.scim.spec.protocol.data.BulkOperation;
+import edu.psu.swe.scim.spec.protocol.data.BulkOperation.Method;
+import edu.psu.swe.scim.spec.protocol.data.BulkRequest;
+import edu.psu.swe.scim.spec.protocol.data.ErrorResponse;
+import edu.psu.swe.scim.spec.resources.BaseResource;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+import edu.psu.swe.scim.spec.schema.Schema;
+
+public class BulkResourceImplTest {
+
+  private BulkResourceImpl bulkResourceImpl;
+
+  private Provider<ScimResource> provider;
+
+  private UniquenessIndex uniquenessIndex;
+
+  private UriInfo uriInfo;
+
+  private int nextId;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setup() throws Exception {
+    Schema userSchema = ProviderRegistry.generateSchema(ScimUser.class, ScimUtils.getFieldsUpTo(ScimUser.class, BaseResource.class));
+    Registry registry = Mockito.mock(Registry.class);
+    Mockito.when(registry.getSchema(ScimUser.SCHEMA_URI)).thenReturn(userSchema);
+    Mockito.when(registry.findScimResourceClassFromEndpoint("/Users")).thenReturn((Class) ScimUser.class);
+
+    provider = Mockito.mock(Provider.class);
+    Mockito.when(provider.create(Mockito.any(ScimResource.class))).thenAnswer(invocation -> {
+      ScimResource resource = (ScimResource) invocation.getArguments()[0];
+      resource.setId(Integer.toString(++nextId));
+      return resource;
+    });
+    ProviderRegistry providerRegistry = Mockito.mock(ProviderRegistry.class);
+    Mockito.when(providerRegistry.getProvider((Class) ScimUser.class)).thenReturn(provider);
+
+    UriBuilder uriBuilder = Mockito.mock(UriBuilder.class);
+    Mockito.when(uriBuilder.path(Mockito.anyString())).thenReturn(uriBuilder);
+    Mockito.when(uriBuilder.build()).thenReturn(URI.create("https://example.com/Users/1"));
+    uriInfo = Mockito.mock(UriInfo.class);
+    Mockito.when(uriInfo.getBaseUriBuilder()).thenReturn(uriBuilder);
+
+    uniquenessIndex = new UniquenessIndex(registry);
+
+    bulkResourceImpl = new BulkResourceImpl();
+    bulkResourceImpl.registry = registry;
+    bulkResourceImpl.providerRegistry = providerRegistry;
+    bulkResourceImpl.uniquenessIndex = uniquenessIndex;
+  }
+
+  @Test
+  public void testBulkCreateEnforcesUniqueness() throws Exception {
+    BulkOperation first = operation(Method.POST, "/Users", user("bjensen"));
+    BulkOperation second = operation(Method.POST, "/Users", user("BJensen"));
+
+    bulkResourceImpl.doBulk(request(first, second), uriInfo);
+
+    assertThat(first.getStatus().getCode()).isEqualTo(Status.CREATED);
+    assertThat(second.getStatus().getCode()).isEqualTo(Status.CONFLICT);
+    assertThat(((ErrorResponse) second.getResponse()).getScimType()).isEqualTo(ErrorMessageType.UNIQUENESS);
+    Mockito.verify(provider, Mockito.times(1)).create(Mockito.any(ScimResource.class));
+  }
+
+  @Test
+  public void testBulkDeleteFreesUniqueValues() throws Exception {
+    bulkResourceImpl.doBulk(request(operation(Method.POST, "/Users", user("bjensen"))), uriInfo);
+
+    BulkOperation delete = operation(Method.DELETE, "/Users/1", null);
+    bulkResourceImpl.doBulk(request(delete), uriInfo);
+
+    assertThat(delete.getStatus().getCode()).isEqualTo(Status.NO_CONTENT);
+    assertThat(uniquenessIndex.size()).isEqualTo(0);
+    Mockito.verify(provider).delete("1");
+  }
+
+  private static BulkOperation operation(Method method, String path, ScimResource data) {
+    BulkOperation operation = new BulkOperation();
+    operation.setMethod(method);
+    operation.setPath(path);
+    operation.setData(data);
+    return operation;
+  }
+
+  private static BulkRequest request(BulkOperation... operations) {
+    List<BulkOperation> operationList = new ArrayList<>();
+    for (BulkOperation operation : operations) {
+      operationList.add(operation);
+    }
+    BulkRequest request = new BulkRequest();
+    request.setOperations(operationList);
+    return request;
+  }
+
+  private static ScimUser user(String userName) {
+    ScimUser user = new ScimUser();
+    user.setUserName(userName);
+    return user;
+  }
+}
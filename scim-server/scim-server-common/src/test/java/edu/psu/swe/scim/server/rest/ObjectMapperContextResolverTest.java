@@ -0,0 +1,103 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+
+import javax.enterprise.inject.Instance;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+
+import edu.psu.swe.scim.server.provider.Provider;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
+import edu.psu.swe.scim.spec.extension.ScimExtensionRegistry;
+import edu.psu.swe.scim.spec.resources.Name;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+
+public class ObjectMapperContextResolverTest {
+
+  private Registry registry;
+
+  @Before
+  public void initialize() {
+    registry = new Registry();
+    registry.addScimResourceSchemaUrn(ScimUser.SCHEMA_URI, ScimUser.class);
+    ScimExtensionRegistry.getInstance().registerExtension(ScimUser.class, EnterpriseExtension.class);
+  }
+
+  @Test
+  public void testRegisteredResourcesArePrepared() {
+    ObjectMapper unprepared = new ObjectMapperContextResolver().getContext(ObjectMapper.class);
+    ObjectMapper prepared = new ObjectMapperContextResolver(registry).getContext(ObjectMapper.class);
+
+    assertThat(((DefaultSerializerProvider) unprepared.getSerializerProvider()).cachedSerializersCount()).isZero();
+    assertThat(((DefaultSerializerProvider) prepared.getSerializerProvider()).cachedSerializersCount()).isPositive();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testResourcesRegisteredLaterArePrepared() throws Exception {
+    Registry laterRegistry = new Registry();
+    ProviderRegistry providerRegistry = new ProviderRegistry(laterRegistry, ScimExtensionRegistry.getInstance());
+    ObjectMapper objectMapper = new ObjectMapperContextResolver(laterRegistry).getContext(ObjectMapper.class);
+
+    assertThat(((DefaultSerializerProvider) objectMapper.getSerializerProvider()).cachedSerializersCount()).isZero();
+
+    Provider<ScimUser> provider = Mockito.mock(Provider.class);
+    Mockito.when(provider.getExtensionList()).thenReturn(Collections.singletonList(EnterpriseExtension.class));
+    Instance<Provider<ScimUser>> providerInstance = Mockito.mock(Instance.class);
+    Mockito.when(providerInstance.get()).thenReturn(provider);
+    providerRegistry.registerProvider(ScimUser.class, providerInstance);
+
+    assertThat(((DefaultSerializerProvider) objectMapper.getSerializerProvider()).cachedSerializersCount()).isPositive();
+  }
+
+  @Test
+  public void testPreparedMapperMatchesUnpreparedOutput() throws Exception {
+    ScimUser user = new ScimUser();
+    user.setId("1234");
+    user.setUserName("bjensen");
+    Name name = new Name();
+    name.setGivenName("Barbara");
+    name.setFamilyName("Jensen");
+    user.setName(name);
+    EnterpriseExtension enterprise = new EnterpriseExtension();
+    enterprise.setEmployeeNumber("701984");
+    user.addExtension(enterprise);
+
+    ObjectMapper unprepared = new ObjectMapperContextResolver().getContext(ObjectMapper.class);
+    ObjectMapper prepared = new ObjectMapperContextResolver(registry).getContext(ObjectMapper.class);
+    String json = prepared.writeValueAsString(user);
+
+    assertThat(prepared.readTree(json)).isEqualTo(unprepared.readTree(unprepared.writeValueAsString(user)));
+    assertThat(prepared.readValue(json, ScimResource.class)).isEqualTo(unprepared.readValue(json, ScimUser.class));
+  }
+}
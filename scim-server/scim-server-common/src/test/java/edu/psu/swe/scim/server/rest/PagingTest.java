@@ -0,0 +1,106 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import edu.psu.swe.scim.spec.protocol.search.PageRequest;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+@RunWith(JUnitParamsRunner.class)
+public class PagingTest {
+
+  @SuppressWarnings("unused")
+  private Object[] getPageRequests() {
+    return new Object[] {
+      new Object[] {null, null, 100, 1, 100},
+      new Object[] {0, 10, 100, 1, 10},
+      new Object[] {-5, -1, 100, 1, 0},
+      new Object[] {21, 1000, 100, 21, 100},
+      new Object[] {3, 0, 100, 3, 0},
+      new Object[] {3, null, 0, 3, null},
+      new Object[] {3, 1000, 0, 3, 1000},
+    };
+  }
+
+  @Test
+  @Parameters(method = "getPageRequests")
+  public void testNormalize(Integer startIndex, Integer count, int maxResults, int expectedStartIndex, Integer expectedCount) {
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setStartIndex(startIndex);
+    pageRequest.setCount(count);
+
+    PageRequest normalized = Paging.normalize(pageRequest, maxResults);
+
+    assertThat(normalized.getStartIndex()).isEqualTo(expectedStartIndex);
+    assertThat(normalized.getCount()).isEqualTo(expectedCount);
+  }
+
+  @Test
+  public void testNormalizeMissingRequest() {
+    PageRequest normalized = Paging.normalize(null, 50);
+
+    assertThat(normalized.getStartIndex()).isEqualTo(1);
+    assertThat(normalized.getCount()).isEqualTo(50);
+  }
+
+  @Test
+  public void testPageOfUnpagedResults() {
+    List<String> resources = Arrays.asList("a", "b", "c", "d", "e");
+    PageRequest pageRequest = Paging.normalize(page(2, 2), 100);
+
+    assertThat(Paging.isUnpaged(resources, resources.size(), pageRequest)).isTrue();
+    assertThat(Paging.page(resources, pageRequest)).containsExactly("b", "c");
+    assertThat(Paging.page(resources, Paging.normalize(page(5, 2), 100))).containsExactly("e");
+    assertThat(Paging.page(resources, Paging.normalize(page(9, 2), 100))).isEmpty();
+    assertThat(Paging.page(resources, Paging.normalize(page(1, 0), 100))).isEmpty();
+  }
+
+  @Test
+  public void testPagedResults() {
+    assertThat(Paging.isUnpaged(Arrays.asList("a", "b"), 5, Paging.normalize(page(3, 2), 100))).isFalse();
+    assertThat(Paging.isUnpaged(Arrays.asList("a", "b"), 2, Paging.normalize(page(1, null), 0))).isFalse();
+    assertThat(Paging.isUnpaged(Arrays.asList("c", "d", "e"), 5, Paging.normalize(page(3, 100), 100))).isFalse();
+  }
+
+  @Test
+  public void testAllResultsForALaterPageAreUnpaged() {
+    List<String> resources = Arrays.asList("a", "b", "c", "d", "e");
+    PageRequest pageRequest = Paging.normalize(page(3, 100), 100);
+
+    assertThat(Paging.isUnpaged(resources, resources.size(), pageRequest)).isTrue();
+    assertThat(Paging.page(resources, pageRequest)).containsExactly("c", "d", "e");
+  }
+
+  private static PageRequest page(Integer startIndex, Integer count) {
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setStartIndex(startIndex);
+    pageRequest.setCount(count);
+    return pageRequest;
+  }
+}
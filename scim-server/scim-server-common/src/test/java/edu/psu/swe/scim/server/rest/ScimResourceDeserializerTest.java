@@ -0,0 +1,98 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
+import edu.psu.swe.scim.spec.extension.ScimExtensionRegistry;
+import edu.psu.swe.scim.spec.protocol.data.BulkOperation;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+
+public class ScimResourceDeserializerTest {
+
+  private ObjectMapper objectMapper;
+
+  @Before
+  public void initialize() throws Exception {
+    Registry registry = new Registry();
+    registry.addScimResourceSchemaUrn(ScimUser.SCHEMA_URI, ScimUser.class);
+    ScimExtensionRegistry.getInstance().registerExtension(ScimUser.class, EnterpriseExtension.class);
+
+    objectMapper = new ObjectMapperContextResolver(registry).getContext(ObjectMapper.class);
+  }
+
+  @Test
+  public void testSchemasFirst() throws Exception {
+    String json = "{\"schemas\":[\"" + ScimUser.SCHEMA_URI + "\",\"" + EnterpriseExtension.URN + "\"],"
+        + "\"userName\":\"bjensen\",\"emails\":[{\"value\":\"bjensen@example.com\",\"primary\":true}],"
+        + "\"" + EnterpriseExtension.URN + "\":{\"employeeNumber\":\"701984\"}}";
+
+    ScimResource resource = objectMapper.readValue(json, ScimResource.class);
+
+    assertThat(resource).isInstanceOf(ScimUser.class);
+    ScimUser user = (ScimUser) resource;
+    assertThat(user.getUserName()).isEqualTo("bjensen");
+    assertThat(user.getEmails()).hasSize(1);
+    assertThat(((EnterpriseExtension) user.getExtension(EnterpriseExtension.URN)).getEmployeeNumber()).isEqualTo("701984");
+  }
+
+  @Test
+  public void testSchemasAfterOtherAttributes() throws Exception {
+    String json = "{\"userName\":\"bjensen\",\"name\":{\"givenName\":\"Barbara\"},"
+        + "\"schemas\":[\"" + ScimUser.SCHEMA_URI + "\"],\"displayName\":\"Babs\"}";
+
+    ScimUser user = (ScimUser) objectMapper.readValue(json, ScimResource.class);
+
+    assertThat(user.getUserName()).isEqualTo("bjensen");
+    assertThat(user.getName().getGivenName()).isEqualTo("Barbara");
+    assertThat(user.getDisplayName()).isEqualTo("Babs");
+  }
+
+  @Test
+  public void testNestedResourceLeavesParserAfterResource() throws Exception {
+    String json = "{\"method\":\"POST\",\"data\":{\"schemas\":[\"" + ScimUser.SCHEMA_URI + "\"],\"userName\":\"bjensen\"},"
+        + "\"bulkId\":\"qwerty\"}";
+
+    BulkOperation operation = objectMapper.readValue(json, BulkOperation.class);
+
+    assertThat(((ScimUser) operation.getData()).getUserName()).isEqualTo("bjensen");
+    assertThat(operation.getBulkId()).isEqualTo("qwerty");
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void testUnknownSchema() throws Exception {
+    objectMapper.readValue("{\"schemas\":[\"urn:example:unknown\"],\"userName\":\"bjensen\"}", ScimResource.class);
+  }
+
+  @Test(expected = JsonParseException.class)
+  public void testMissingSchemas() throws Exception {
+    objectMapper.readValue("{\"userName\":\"bjensen\"}", ScimResource.class);
+  }
+}
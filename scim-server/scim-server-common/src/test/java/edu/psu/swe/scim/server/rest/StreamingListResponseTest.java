@@ -0,0 +1,104 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.psu.swe.scim.server.provider.StreamingFilterResponse;
+import edu.psu.swe.scim.spec.protocol.data.ListResponse;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+
+public class StreamingListResponseTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapperContextResolver().getContext(ObjectMapper.class);
+
+  @Test
+  public void testWrite() throws Exception {
+    AtomicBoolean closed = new AtomicBoolean();
+    Stream<ScimUser> users = Stream.of(user("1", "bjensen"), user("2", "jsmith")).onClose(() -> closed.set(true));
+    StreamingListResponse<ScimUser> response = new StreamingListResponse<>(objectMapper.writer(), new StreamingFilterResponse<>(users, 12), 11, user -> {
+      user.setExternalId(null);
+      return user;
+    });
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    response.write(output);
+    JsonNode json = objectMapper.readTree(output.toByteArray());
+
+    assertThat(json.get("schemas").get(0).asText()).isEqualTo(ListResponse.SCHEMA_URI);
+    assertThat(json.get("totalResults").asInt()).isEqualTo(12);
+    assertThat(json.get("startIndex").asInt()).isEqualTo(11);
+    assertThat(json.get("itemsPerPage").asInt()).isEqualTo(2);
+    assertThat(json.get("Resources")).hasSize(2);
+    assertThat(json.get("Resources").get(1).get("userName").asText()).isEqualTo("jsmith");
+    assertThat(json.get("Resources").get(1).has("externalId")).isFalse();
+    assertThat(closed.get()).isTrue();
+  }
+
+  @Test
+  public void testEmptyPage() throws Exception {
+    StreamingListResponse<ScimUser> response = new StreamingListResponse<>(objectMapper.writer(), new StreamingFilterResponse<>(Stream.empty(), 3), 1, user -> user);
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    response.write(output);
+    JsonNode json = objectMapper.readTree(output.toByteArray());
+
+    assertThat(json.get("totalResults").asInt()).isEqualTo(3);
+    assertThat(json.get("itemsPerPage").asInt()).isEqualTo(0);
+    assertThat(json.get("Resources")).isEmpty();
+  }
+
+  @Test
+  public void testStreamIsClosedWhenProjectionFails() throws Exception {
+    AtomicBoolean closed = new AtomicBoolean();
+    Stream<ScimUser> users = Stream.of(user("1", "bjensen")).onClose(() -> closed.set(true));
+    StreamingListResponse<ScimUser> response = new StreamingListResponse<>(objectMapper.writer(), new StreamingFilterResponse<>(users, 1), 1, user -> {
+      throw new IOException("projection failed");
+    });
+
+    try {
+      response.write(new ByteArrayOutputStream());
+      fail("Expected IOException");
+    } catch (IOException e) {
+      assertThat(e.getMessage()).isEqualTo("projection failed");
+    }
+    assertThat(closed.get()).isTrue();
+  }
+
+  private static ScimUser user(String id, String userName) {
+    ScimUser user = new ScimUser();
+    user.setId(id);
+    user.setUserName(userName);
+    user.setExternalId("external-" + id);
+    return user;
+  }
+}
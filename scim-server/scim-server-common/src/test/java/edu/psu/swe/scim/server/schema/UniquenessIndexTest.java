@@ -0,0 +1,179 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.schema;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.ws.rs.core.Response.Status;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import edu.psu.swe.scim.common.ScimUtils;
+import edu.psu.swe.scim.server.exception.ScimServerException;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.spec.protocol.ErrorMessageType;
+import edu.psu.swe.scim.spec.resources.BaseResource;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+import edu.psu.swe.scim.spec.schema.Schema;
+
+public class UniquenessIndexTest {
+
+  private UniquenessIndex uniquenessIndex;
+
+  @Before
+  public void setup() throws Exception {
+    Registry registry = Mockito.mock(Registry.class);
+    Schema scimUserSchema = ProviderRegistry.generateSchema(ScimUser.class, ScimUtils.getFieldsUpTo(ScimUser.class, BaseResource.class));
+    Mockito.when(registry.getSchema(ScimUser.SCHEMA_URI)).thenReturn(scimUserSchema);
+
+    uniquenessIndex = new UniquenessIndex(registry);
+  }
+
+  @Test
+  public void testReserveCommitAndConflict() throws Exception {
+    uniquenessIndex.reserve(user("bjensen"), null).commit("1");
+
+    assertConflict(user("BJensen"), null);
+    assertConflict(user("bjensen"), "2");
+    assertThat(uniquenessIndex.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testPendingReservationConflicts() throws Exception {
+    UniquenessIndex.Reservation reservation = uniquenessIndex.reserve(user("bjensen"), null);
+
+    assertConflict(user("bjensen"), null);
+
+    reservation.release();
+    uniquenessIndex.reserve(user("bjensen"), null).commit("2");
+    assertConflict(user("bjensen"), null);
+  }
+
+  @Test
+  public void testReleaseAfterCommitKeepsValues() throws Exception {
+    UniquenessIndex.Reservation reservation = uniquenessIndex.reserve(user("bjensen"), null);
+    reservation.commit("1");
+    reservation.release();
+
+    assertConflict(user("bjensen"), null);
+  }
+
+  @Test
+  public void testUpdateKeepsOwnValueAndFreesOldOne() throws Exception {
+    uniquenessIndex.reserve(user("bjensen"), null).commit("1");
+
+    // unchanged
+    uniquenessIndex.reserve(user("bjensen"), "1").commit("1");
+    // renamed
+    uniquenessIndex.reserve(user("barbara"), "1").commit("1");
+
+    uniquenessIndex.reserve(user("bjensen"), null).commit("2");
+    assertConflict(user("barbara"), null);
+    assertThat(uniquenessIndex.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void testRemove() throws Exception {
+    uniquenessIndex.add(user("bjensen", "1"));
+
+    uniquenessIndex.remove(ScimUser.class, "1");
+
+    assertThat(uniquenessIndex.size()).isEqualTo(0);
+    uniquenessIndex.reserve(user("bjensen"), null).commit("2");
+  }
+
+  @Test
+  public void testResourceWithoutUniqueValues() throws Exception {
+    UniquenessIndex.Reservation reservation = uniquenessIndex.reserve(user(null), null);
+    reservation.commit("1");
+
+    assertThat(uniquenessIndex.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testConcurrentReservationsOfTheSameValue() throws Exception {
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Callable<Boolean>> tasks = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        String userName = "user" + (i % 20);
+        String id = Integer.toString(i);
+        tasks.add(() -> {
+          start.await();
+          try {
+            uniquenessIndex.reserve(user(userName), null).commit(id);
+            return true;
+          } catch (ScimServerException e) {
+            return false;
+          }
+        });
+      }
+      List<Future<Boolean>> futures = new ArrayList<>();
+      for (Callable<Boolean> task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      start.countDown();
+
+      int created = 0;
+      for (Future<Boolean> future : futures) {
+        created += future.get() ? 1 : 0;
+      }
+      assertThat(created).isEqualTo(20);
+      assertThat(uniquenessIndex.size()).isEqualTo(20);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private void assertConflict(ScimUser user, String id) {
+    try {
+      uniquenessIndex.reserve(user, id);
+      fail("Expected ScimServerException");
+    } catch (ScimServerException e) {
+      assertThat(e.getErrorResponse().getStatus()).isEqualTo(Status.CONFLICT);
+      assertThat(e.getErrorResponse().getScimType()).isEqualTo(ErrorMessageType.UNIQUENESS);
+    }
+  }
+
+  private static ScimUser user(String userName) {
+    return user(userName, null);
+  }
+
+  private static ScimUser user(String userName, String id) {
+    ScimUser user = new ScimUser();
+    user.setId(id);
+    user.setUserName(userName);
+    return user;
+  }
+}
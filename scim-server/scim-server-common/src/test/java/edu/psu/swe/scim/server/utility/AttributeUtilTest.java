@@ -46,6 +46,7 @@ import com.fasterxml.jackson.databind.AnnotationIntrospector;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.fasterxml.jackson.databind.introspect.AnnotationIntrospectorPair;
 import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
 import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
@@ -55,6 +56,7 @@ import edu.psu.swe.scim.spec.phonenumber.PhoneNumberParseException;
 
 import edu.psu.swe.scim.common.ScimUtils;
 import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.server.provider.extensions.ScimRequestContext;
 import edu.psu.swe.scim.server.schema.Registry;
 import edu.psu.swe.scim.server.utility.ExampleObjectExtension.ComplexObject;
 import edu.psu.swe.scim.spec.exception.InvalidExtensionException;
@@ -275,6 +277,124 @@ public class AttributeUtilTest {
     Assertions.assertThat(extension.getDepartment()).isNotNull();
   }
 
+  @Test
+  public void testProjectionIsCompiledOncePerRequest() throws Exception {
+    Set<AttributeReference> attributes = new HashSet<>();
+    attributes.add(new AttributeReference("userName"));
+    attributes.add(new AttributeReference("addresses.streetAddress"));
+
+    Set<AttributeReference> sameAttributes = new HashSet<>();
+    sameAttributes.add(new AttributeReference("addresses.streetAddress"));
+    sameAttributes.add(new AttributeReference("userName"));
+
+    ScimUser first = attributeUtil.setAttributesForDisplay(getScimUser(), attributes);
+    ScimUser second = attributeUtil.setAttributesForDisplay(getScimUser(), sameAttributes);
+
+    Assertions.assertThat(attributeUtil.getProjectionCacheSize()).isEqualTo(1);
+    Assertions.assertThat(second).isEqualTo(first);
+
+    attributeUtil.setExcludedAttributesForDisplay(getScimUser(), attributes);
+    attributeUtil.setAttributesForDisplay(getScimUser());
+    attributeUtil.setAttributesForDisplay(getScimUser());
+
+    Assertions.assertThat(attributeUtil.getProjectionCacheSize()).isEqualTo(3);
+  }
+
+  @Test
+  public void testProjectionIsSharedByPooledInstances() throws Exception {
+    AttributeUtil pooled = new AttributeUtil();
+    pooled.registry = registry;
+    pooled.projectionCache = attributeUtil.projectionCache;
+    pooled.init();
+
+    Set<AttributeReference> attributes = Collections.singleton(new AttributeReference("userName"));
+
+    ResourceProjection projection = attributeUtil.getProjection(attributes, Collections.emptySet());
+
+    Assertions.assertThat(pooled.getProjection(attributes, Collections.emptySet())).isSameAs(projection);
+    Assertions.assertThat(pooled.getProjectionCacheSize()).isEqualTo(1);
+  }
+
+  @Test
+  public void testKeepAlwaysAttributes() throws Exception {
+    ScimUser resource = attributeUtil.keepAlwaysAttributesForDisplay(getScimUser());
+
+    Assertions.assertThat(resource.getId()).isNotNull();
+    Assertions.assertThat(resource.getUserName()).isNull();
+    Assertions.assertThat(resource.getName()).isNull();
+
+    ExampleObjectExtension exampleObjectExtension = resource.getExtension(ExampleObjectExtension.class);
+
+    Assertions.assertThat(exampleObjectExtension.getValueAlways()).isNotNull();
+    Assertions.assertThat(exampleObjectExtension.getValueDefault()).isNull();
+  }
+
+  @Test
+  public void testProjectionWhileWriting() throws Exception {
+    ObjectMapper projectingMapper = objectMapper.copy();
+    SimpleModule module = new SimpleModule();
+    module.setSerializerModifier(new ProjectingSerializerModifier());
+    projectingMapper.registerModule(module);
+
+    Assertions.assertThat(ProjectingSerializerModifier.isRegistered(projectingMapper)).isTrue();
+    Assertions.assertThat(ProjectingSerializerModifier.isRegistered(objectMapper)).isFalse();
+
+    Set<AttributeReference> attributes = new HashSet<>();
+    attributes.add(new AttributeReference("userName"));
+    attributes.add(new AttributeReference("addresses.streetAddress"));
+    attributes.add(new AttributeReference(EnterpriseExtension.URN + ":costCenter"));
+
+    Set<AttributeReference> excludedAttributes = new HashSet<>();
+    excludedAttributes.add(new AttributeReference("name"));
+    excludedAttributes.add(new AttributeReference("addresses.country"));
+
+    ScimUser resource = getScimUser();
+    ScimUser original = getScimUser();
+
+    String written = writeProjected(projectingMapper, resource, Collections.emptySet(), Collections.emptySet());
+    Assertions.assertThat(written).isEqualTo(objectMapper.writeValueAsString(attributeUtil.setAttributesForDisplay(resource)));
+    Assertions.assertThat(written).doesNotContain("secret");
+
+    written = writeProjected(projectingMapper, resource, attributes, Collections.emptySet());
+    Assertions.assertThat(written).isEqualTo(objectMapper.writeValueAsString(attributeUtil.setAttributesForDisplay(resource, attributes)));
+
+    written = writeProjected(projectingMapper, resource, Collections.emptySet(), excludedAttributes);
+    Assertions.assertThat(written).isEqualTo(objectMapper.writeValueAsString(attributeUtil.setExcludedAttributesForDisplay(resource, excludedAttributes)));
+
+    Assertions.assertThat(resource).isEqualTo(original);
+
+    // without a projection everything is written
+    Assertions.assertThat(projectingMapper.writeValueAsString(resource)).isEqualTo(objectMapper.writeValueAsString(resource));
+  }
+
+  @Test
+  public void testRequestContextIsReturned() throws Exception {
+    Schema schema = registry.getSchema(ScimUser.SCHEMA_URI);
+
+    Set<AttributeReference> attributes = new HashSet<>();
+    attributes.add(new AttributeReference("userName"));
+    ScimRequestContext included = new ScimRequestContext(attributes, Collections.emptySet(), attributeUtil.getProjection(attributes, Collections.emptySet()));
+
+    Assertions.assertThat(included.isReturned(schema.getAttribute("userName"))).isTrue();
+    Assertions.assertThat(included.isReturned(schema.getAttribute("id"))).isTrue();
+    Assertions.assertThat(included.isReturned(schema.getAttribute("emails"))).isFalse();
+    Assertions.assertThat(included.isReturned(schema.getAttribute("password"))).isFalse();
+
+    ScimRequestContext excluded = new ScimRequestContext(Collections.emptySet(), attributes, attributeUtil.getProjection(Collections.emptySet(), attributes));
+
+    Assertions.assertThat(excluded.isReturned(schema.getAttribute("userName"))).isFalse();
+    Assertions.assertThat(excluded.isReturned(schema.getAttribute("emails"))).isTrue();
+
+    ScimRequestContext unresolved = new ScimRequestContext(attributes, Collections.emptySet());
+
+    Assertions.assertThat(unresolved.isReturned(schema.getAttribute("emails"))).isTrue();
+  }
+
+  private String writeProjected(ObjectMapper projectingMapper, ScimUser resource, Set<AttributeReference> attributes, Set<AttributeReference> excludedAttributes) throws Exception {
+    ResourceProjection projection = attributeUtil.getProjection(attributes, excludedAttributes);
+    return ProjectingSerializerModifier.withProjection(projectingMapper.writer(), projection).writeValueAsString(resource);
+  }
+
   private void debugJson(Object resource) throws JsonGenerationException, JsonMappingException, IOException {
     StringWriter sw = new StringWriter();
     objectMapper.writeValue(sw, resource);
@@ -0,0 +1,217 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.utility;
+
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import javax.ws.rs.core.EntityTag;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+
+import edu.psu.swe.scim.server.provider.EtagStrategy;
+import edu.psu.swe.scim.server.provider.annotations.ScimEtagStrategy;
+import edu.psu.swe.scim.spec.resources.Name;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+import edu.psu.swe.scim.spec.schema.Meta;
+
+public class EtagGeneratorTest {
+
+  EtagGenerator etagGenerator = new EtagGenerator();
+
+  @Test
+  public void testEtagIsDigestOfResourceWithoutMeta() throws Exception {
+    ScimUser user = getScimUser();
+    Meta meta = new Meta();
+    meta.setResourceType("User");
+    user.setMeta(meta);
+
+    EntityTag etag = etagGenerator.generateEtag(user);
+
+    Assertions.assertThat(etag.getValue()).isEqualTo(expectedEtag(user));
+    Assertions.assertThat(user.getMeta()).isSameAs(meta);
+    Assertions.assertThat(meta.getVersion()).isNull();
+  }
+
+  @Test
+  public void testVersionIsSetOnCopy() throws Exception {
+    ScimUser user = getScimUser();
+    Meta meta = new Meta();
+    meta.setResourceType("User");
+    user.setMeta(meta);
+
+    EntityTag etag = etagGenerator.generateEtag(user);
+    ScimUser versioned = etagGenerator.withVersion(user, etag);
+
+    Assertions.assertThat(versioned).isNotSameAs(user);
+    Assertions.assertThat(versioned.getUserName()).isEqualTo("jed1");
+    Assertions.assertThat(versioned.getMeta().getVersion()).isEqualTo(etag.getValue());
+    Assertions.assertThat(versioned.getMeta().getResourceType()).isEqualTo("User");
+    Assertions.assertThat(user.getMeta()).isSameAs(meta);
+    Assertions.assertThat(meta.getVersion()).isNull();
+
+    Assertions.assertThat(etagGenerator.withVersion(versioned, etag)).isSameAs(versioned);
+    Assertions.assertThat(etagGenerator.withVersion(user, null)).isSameAs(user);
+  }
+
+  @Test
+  public void testMetaIsAdded() throws Exception {
+    ScimUser user = getScimUser();
+
+    EntityTag etag = etagGenerator.generateEtag(user);
+    ScimUser versioned = etagGenerator.withVersion(user, etag);
+
+    Assertions.assertThat(user.getMeta()).isNull();
+    Assertions.assertThat(versioned.getMeta()).isNotNull();
+    Assertions.assertThat(versioned.getMeta().getVersion()).isEqualTo(etag.getValue());
+  }
+
+  @Test
+  public void testEtagFollowsContentWithSameLastModified() throws Exception {
+    ScimUser user = getScimUser();
+    Meta meta = new Meta();
+    meta.setLastModified(LocalDateTime.of(2017, 3, 1, 12, 0));
+    user.setMeta(meta);
+
+    EntityTag first = etagGenerator.generateEtag(user);
+
+    // a provider that doesn't update lastModified, or two writes in the same tick
+    user.setDisplayName("Changed");
+    EntityTag second = etagGenerator.generateEtag(user);
+
+    Assertions.assertThat(second).isNotEqualTo(first);
+    Assertions.assertThat(second.getValue()).isEqualTo(expectedEtag(user));
+  }
+
+  @Test
+  public void testEtagWithoutLastModifiedFollowsContent() throws Exception {
+    ScimUser user = getScimUser();
+
+    EntityTag first = etagGenerator.generateEtag(user);
+    user.setDisplayName("Changed");
+    EntityTag second = etagGenerator.generateEtag(user);
+
+    Assertions.assertThat(second).isNotEqualTo(first);
+    Assertions.assertThat(second.getValue()).isEqualTo(expectedEtag(user));
+  }
+
+  @Test
+  public void testStrategySelection() throws Exception {
+    Assertions.assertThat(etagGenerator.getStrategy(new Object())).isInstanceOf(ContentHashEtagStrategy.class);
+    Assertions.assertThat(etagGenerator.getStrategy(new VersionedProvider())).isInstanceOf(MetaVersionEtagStrategy.class);
+    Assertions.assertThat(etagGenerator.getStrategy(new VersionedProvider())).isSameAs(etagGenerator.getStrategy(new VersionedProvider()));
+
+    SelfVersioningProvider selfVersioningProvider = new SelfVersioningProvider();
+    Assertions.assertThat(etagGenerator.getStrategy(selfVersioningProvider)).isSameAs(selfVersioningProvider);
+
+    ScimUser user = getScimUser();
+    EntityTag etag = etagGenerator.generateEtag(selfVersioningProvider, user);
+
+    Assertions.assertThat(etag.getValue()).isEqualTo("v-1");
+    Assertions.assertThat(user.getMeta()).isNull();
+  }
+
+  @Test
+  public void testMetaVersionStrategy() throws Exception {
+    ScimUser user = getScimUser();
+    MetaVersionEtagStrategy strategy = new MetaVersionEtagStrategy();
+
+    Assertions.assertThat(strategy.generateEtag(user).getValue()).isEqualTo(expectedEtag(user));
+
+    Meta meta = new Meta();
+    meta.setVersion("42");
+    user.setMeta(meta);
+
+    EntityTag etag = strategy.generateEtag(user);
+
+    Assertions.assertThat(etag.getValue()).isEqualTo("42");
+    Assertions.assertThat(etag.isWeak()).isFalse();
+  }
+
+  @Test
+  public void testLastModifiedStrategy() throws Exception {
+    ScimUser user = getScimUser();
+    LastModifiedEtagStrategy strategy = new LastModifiedEtagStrategy();
+
+    Assertions.assertThat(strategy.generateEtag(user).isWeak()).isFalse();
+
+    Meta meta = new Meta();
+    meta.setLastModified(LocalDateTime.of(2017, 3, 1, 12, 0));
+    user.setMeta(meta);
+
+    EntityTag etag = strategy.generateEtag(user);
+
+    Assertions.assertThat(etag.getValue()).isEqualTo("2017-03-01T12:00");
+    Assertions.assertThat(etag.isWeak()).isTrue();
+  }
+
+  /**
+   * The tag as it was computed before writing into the digest.
+   */
+  private static String expectedEtag(ScimUser user) throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+    objectMapper.registerModule(new JaxbAnnotationModule());
+    objectMapper.setAnnotationIntrospector(new JaxbAnnotationIntrospector(objectMapper.getTypeFactory()));
+    objectMapper.setSerializationInclusion(Include.NON_NULL);
+
+    Meta meta = user.getMeta();
+    user.setMeta(null);
+    String json = objectMapper.writeValueAsString(user);
+    user.setMeta(meta);
+
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    return Base64.getEncoder().encodeToString(digest.digest(json.getBytes("UTF-8")));
+  }
+
+  private static ScimUser getScimUser() {
+    ScimUser user = new ScimUser();
+    user.setId("1");
+    user.setUserName("jed1");
+    user.setDisplayName("John Doe");
+    user.setActive(true);
+
+    Name name = new Name();
+    name.setGivenName("John");
+    name.setFamilyName("Doe");
+    user.setName(name);
+    return user;
+  }
+
+  @ScimEtagStrategy(MetaVersionEtagStrategy.class)
+  private static class VersionedProvider {
+  }
+
+  private static class SelfVersioningProvider implements EtagStrategy {
+
+    @Override
+    public EntityTag generateEtag(ScimResource resource) {
+      return new EntityTag("v-" + resource.getId());
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.utility;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import edu.psu.swe.scim.common.ScimUtils;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.server.utility.ExampleObjectExtension.ComplexObject;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension.Manager;
+import edu.psu.swe.scim.spec.resources.BaseResource;
+import edu.psu.swe.scim.spec.resources.Email;
+import edu.psu.swe.scim.spec.resources.Name;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+import edu.psu.swe.scim.spec.schema.Schema;
+
+public class ResourceCopierTest {
+
+  @Rule
+  public MockitoRule mockito = MockitoJUnit.rule();
+
+  @Mock
+  Registry registry;
+
+  ResourceCopier resourceCopier;
+
+  AttributeUtil attributeUtil;
+
+  @Before
+  public void setup() throws Exception {
+    Schema scimUserSchema = ProviderRegistry.generateSchema(ScimUser.class, ScimUtils.getFieldsUpTo(ScimUser.class, BaseResource.class));
+    Schema scimEnterpriseUserSchema = ProviderRegistry.generateSchema(EnterpriseExtension.class, ScimUtils.getFieldsUpTo(EnterpriseExtension.class, Object.class));
+    Schema scimExampleSchema = ProviderRegistry.generateSchema(ExampleObjectExtension.class, ScimUtils.getFieldsUpTo(ExampleObjectExtension.class, Object.class));
+
+    Mockito.when(registry.getBaseSchemaOfResourceType(ScimUser.RESOURCE_NAME)).thenReturn(scimUserSchema);
+    Mockito.when(registry.getSchema(ScimUser.SCHEMA_URI)).thenReturn(scimUserSchema);
+    Mockito.when(registry.getSchema(EnterpriseExtension.URN)).thenReturn(scimEnterpriseUserSchema);
+    Mockito.when(registry.getSchema(ExampleObjectExtension.URN)).thenReturn(scimExampleSchema);
+
+    resourceCopier = new ResourceCopier(registry);
+
+    attributeUtil = new AttributeUtil();
+    attributeUtil.registry = registry;
+    attributeUtil.init();
+  }
+
+  @Test
+  public void testCopyEqualsSerializedClone() throws Exception {
+    ScimUser user = getScimUser();
+
+    ScimUser copy = resourceCopier.copy(user);
+
+    Assertions.assertThat(copy).isNotSameAs(user);
+    Assertions.assertThat(copy).isEqualTo(user);
+    Assertions.assertThat(copy).isEqualTo(serializedClone(user));
+  }
+
+  @Test
+  public void testComplexAttributesAreCopied() throws Exception {
+    ScimUser user = getScimUser();
+
+    ScimUser copy = resourceCopier.copy(user);
+
+    Assertions.assertThat(copy.getName()).isNotSameAs(user.getName());
+    Assertions.assertThat(copy.getEmails()).isNotSameAs(user.getEmails());
+    Assertions.assertThat(copy.getEmails().get(0)).isNotSameAs(user.getEmails().get(0));
+    Assertions.assertThat(copy.getExtensions()).isNotSameAs(user.getExtensions());
+    Assertions.assertThat(copy.getExtension(EnterpriseExtension.class)).isNotSameAs(user.getExtension(EnterpriseExtension.class));
+    Assertions.assertThat(copy.getExtension(EnterpriseExtension.class).getManager()).isNotSameAs(user.getExtension(EnterpriseExtension.class).getManager());
+    Assertions.assertThat(copy.getExtension(ExampleObjectExtension.class).getValueComplex()).isNotSameAs(user.getExtension(ExampleObjectExtension.class).getValueComplex());
+
+    // values that are never changed in place are shared
+    Assertions.assertThat(copy.getUserName()).isSameAs(user.getUserName());
+    Assertions.assertThat(copy.getExtension(ExampleObjectExtension.class).getList()).isSameAs(user.getExtension(ExampleObjectExtension.class).getList());
+  }
+
+  @Test
+  public void testDisplayDoesNotChangeOriginal() throws Exception {
+    ScimUser user = getScimUser();
+    ScimUser expected = serializedClone(user);
+
+    ScimUser displayed = attributeUtil.setAttributesForDisplay(user);
+
+    Assertions.assertThat(displayed.getPassword()).isNull();
+    Assertions.assertThat(displayed.getExtension(ExampleObjectExtension.class).getValueComplex()).isNull();
+    Assertions.assertThat(user).isEqualTo(expected);
+    Assertions.assertThat(user.getPassword()).isEqualTo("secret");
+  }
+
+  @Test
+  public void testCopyNull() throws Exception {
+    Assertions.assertThat(resourceCopier.copy((ScimUser) null)).isNull();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T serializedClone(T original) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(original);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return (T) in.readObject();
+    }
+  }
+
+  private static ScimUser getScimUser() {
+    ScimUser user = new ScimUser();
+    user.setId("1");
+    user.setExternalId("e1");
+    user.setUserName("jed1");
+    user.setActive(true);
+    user.setPassword("secret");
+    user.setDisplayName("John Doe");
+
+    Name name = new Name();
+    name.setGivenName("John");
+    name.setFamilyName("Doe");
+    user.setName(name);
+
+    List<Email> emails = new ArrayList<>();
+    Email email = new Email();
+    email.setValue("jdoe@example.com");
+    email.setType("work");
+    email.setPrimary(true);
+    emails.add(email);
+    email = new Email();
+    email.setValue("john@example.com");
+    email.setType("home");
+    emails.add(email);
+    user.setEmails(emails);
+
+    EnterpriseExtension enterpriseExtension = new EnterpriseExtension();
+    enterpriseExtension.setCostCenter("CC-123");
+    enterpriseExtension.setEmployeeNumber("1234567890");
+    Manager manager = new Manager();
+    manager.setDisplayName("Bob Smith");
+    manager.setValue("0987654321");
+    enterpriseExtension.setManager(manager);
+    user.addExtension(enterpriseExtension);
+
+    ExampleObjectExtension exampleObjectExtension = new ExampleObjectExtension();
+    exampleObjectExtension.setValueAlways("always");
+    exampleObjectExtension.setValueRequest("request");
+    ComplexObject valueComplex = new ComplexObject();
+    valueComplex.setValue("1");
+    valueComplex.setDisplayName("Complex");
+    exampleObjectExtension.setValueComplex(valueComplex);
+    exampleObjectExtension.setList(Arrays.asList("a", "b"));
+    user.addExtension(exampleObjectExtension);
+
+    return user;
+  }
+}
@@ -0,0 +1,347 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.utility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.Response.Status;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import edu.psu.swe.scim.common.ScimUtils;
+import edu.psu.swe.scim.server.exception.UnableToUpdateResourceException;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
+import edu.psu.swe.scim.spec.extension.ScimExtensionRegistry;
+import edu.psu.swe.scim.spec.protocol.ErrorMessageType;
+import edu.psu.swe.scim.spec.protocol.data.PatchOperation;
+import edu.psu.swe.scim.spec.protocol.data.PatchOperation.Type;
+import edu.psu.swe.scim.spec.protocol.data.PatchOperationPath;
+import edu.psu.swe.scim.spec.resources.BaseResource;
+import edu.psu.swe.scim.spec.resources.Email;
+import edu.psu.swe.scim.spec.resources.Name;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+import edu.psu.swe.scim.spec.schema.Meta;
+import edu.psu.swe.scim.spec.schema.Schema;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Mutability;
+
+public class ResourcePatcherTest {
+
+  @Rule
+  public MockitoRule mockito = MockitoJUnit.rule();
+
+  @Mock
+  Registry registry;
+
+  ResourcePatcher resourcePatcher;
+
+  @Before
+  public void setup() throws Exception {
+    Schema scimUserSchema = ProviderRegistry.generateSchema(ScimUser.class, ScimUtils.getFieldsUpTo(ScimUser.class, BaseResource.class));
+    Schema scimEnterpriseUserSchema = ProviderRegistry.generateSchema(EnterpriseExtension.class, ScimUtils.getFieldsUpTo(EnterpriseExtension.class, Object.class));
+
+    Mockito.when(registry.getSchema(ScimUser.SCHEMA_URI)).thenReturn(scimUserSchema);
+    Mockito.when(registry.getSchema(EnterpriseExtension.URN)).thenReturn(scimEnterpriseUserSchema);
+    ScimExtensionRegistry.getInstance().registerExtension(ScimUser.class, EnterpriseExtension.class);
+
+    resourcePatcher = new ResourcePatcher(registry);
+  }
+
+  @Test
+  public void testReplaceSingleAttribute() throws Exception {
+    ScimUser user = getScimUser();
+
+    ScimUser patched = resourcePatcher.apply(user, Collections.singletonList(operation(Type.REPLACE, "nickName", "Jon")));
+
+    Assertions.assertThat(patched.getNickName()).isEqualTo("Jon");
+    Assertions.assertThat(user.getNickName()).isEqualTo("Johnny");
+    // untouched attributes are shared with the original
+    Assertions.assertThat(patched.getName()).isSameAs(user.getName());
+    Assertions.assertThat(patched.getEmails()).isSameAs(user.getEmails());
+    Assertions.assertThat(patched.getMeta()).isNotSameAs(user.getMeta());
+  }
+
+  @Test
+  public void testAddSubAttributeCopiesOnlyItsParent() throws Exception {
+    ScimUser user = getScimUser();
+
+    ScimUser patched = resourcePatcher.apply(user, Collections.singletonList(operation(Type.ADD, "name.middleName", "Xander")));
+
+    Assertions.assertThat(patched.getName().getMiddleName()).isEqualTo("Xander");
+    Assertions.assertThat(patched.getName().getGivenName()).isEqualTo("John");
+    Assertions.assertThat(user.getName().getMiddleName()).isNull();
+    Assertions.assertThat(patched.getEmails()).isSameAs(user.getEmails());
+  }
+
+  @Test
+  public void testRemoveFilteredValues() throws Exception {
+    ScimUser user = getScimUser();
+
+    ScimUser patched = resourcePatcher.apply(user, Collections.singletonList(operation(Type.REMOVE, "emails[type eq \"work\"]", null)));
+
+    Assertions.assertThat(patched.getEmails()).extracting("type").containsExactly("home");
+    Assertions.assertThat(patched.getEmails().get(0)).isSameAs(user.getEmails().get(1));
+    Assertions.assertThat(user.getEmails()).hasSize(2);
+  }
+
+  @Test
+  public void testReplaceSubAttributeOfFilteredValues() throws Exception {
+    ScimUser user = getScimUser();
+
+    ScimUser patched = resourcePatcher.apply(user, Collections.singletonList(operation(Type.REPLACE, "emails[type eq \"home\"].value", "john@example.com")));
+
+    Assertions.assertThat(patched.getEmails()).extracting("value").containsExactly("jxa123@psu.edu", "john@example.com");
+    Assertions.assertThat(patched.getEmails().get(0)).isSameAs(user.getEmails().get(0));
+    Assertions.assertThat(user.getEmails().get(1).getValue()).isEqualTo("john@gmail.com");
+  }
+
+  @Test
+  public void testReplaceWithoutMatchIsBadRequest() throws Exception {
+    ScimUser user = getScimUser();
+
+    try {
+      resourcePatcher.apply(user, Collections.singletonList(operation(Type.REPLACE, "emails[type eq \"other\"].value", "x@example.com")));
+      Assertions.fail("Expected an UnableToUpdateResourceException");
+    } catch (UnableToUpdateResourceException e) {
+      Assertions.assertThat(e.getStatus()).isEqualTo(Status.BAD_REQUEST);
+      Assertions.assertThat(e.getScimType()).isEqualTo(ErrorMessageType.NO_TARGET);
+    }
+  }
+
+  @Test
+  public void testAddValuesFromRequestBody() throws Exception {
+    ScimUser user = getScimUser();
+    Map<String, Object> otherEmail = new LinkedHashMap<>();
+    otherEmail.put("type", "other");
+    otherEmail.put("value", "outside@version.net");
+    Map<String, Object> workEmail = new LinkedHashMap<>();
+    workEmail.put("type", "work");
+    workEmail.put("value", "jxa123@psu.edu");
+    workEmail.put("primary", true);
+
+    ScimUser patched = resourcePatcher.apply(user, Collections.singletonList(operation(Type.ADD, "emails", Arrays.asList(otherEmail, workEmail))));
+
+    // the work email is already there and is not added a second time
+    Assertions.assertThat(patched.getEmails()).extracting("value").containsExactly("jxa123@psu.edu", "john@gmail.com", "outside@version.net");
+    Assertions.assertThat(patched.getEmails().get(2)).isInstanceOf(Email.class);
+    Assertions.assertThat(user.getEmails()).hasSize(2);
+  }
+
+  @Test
+  public void testAddWithoutPath() throws Exception {
+    ScimUser user = getScimUser();
+    Map<String, Object> enterprise = new LinkedHashMap<>();
+    enterprise.put("department", "Dept C.");
+    Map<String, Object> value = new LinkedHashMap<>();
+    value.put("title", "Dean");
+    value.put(EnterpriseExtension.URN, enterprise);
+
+    ScimUser patched = resourcePatcher.apply(user, Collections.singletonList(operation(Type.ADD, null, value)));
+
+    Assertions.assertThat(patched.getTitle()).isEqualTo("Dean");
+    Assertions.assertThat(patched.getExtension(EnterpriseExtension.class).getDepartment()).isEqualTo("Dept C.");
+    Assertions.assertThat(patched.getExtension(EnterpriseExtension.class).getEmployeeNumber()).isEqualTo("7865");
+    Assertions.assertThat(user.getExtension(EnterpriseExtension.class).getDepartment()).isEqualTo("Dept B.");
+  }
+
+  @Test
+  public void testExtensionAttributePath() throws Exception {
+    ScimUser user = getScimUser();
+    user.removeExtension(EnterpriseExtension.URN);
+
+    ScimUser patched = resourcePatcher.apply(user, Collections.singletonList(operation(Type.REPLACE, EnterpriseExtension.URN + ":employeeNumber", "1234")));
+
+    Assertions.assertThat(patched.getExtension(EnterpriseExtension.class).getEmployeeNumber()).isEqualTo("1234");
+    Assertions.assertThat(user.getExtension(EnterpriseExtension.URN)).isNull();
+  }
+
+  @Test
+  public void testRemoveExtension() throws Exception {
+    ScimUser user = getScimUser();
+
+    ScimUser patched = resourcePatcher.apply(user, Collections.singletonList(operation(Type.REMOVE, EnterpriseExtension.URN, null)));
+
+    Assertions.assertThat(patched.getExtension(EnterpriseExtension.URN)).isNull();
+    Assertions.assertThat(user.getExtension(EnterpriseExtension.URN)).isNotNull();
+  }
+
+  @Test
+  public void testUnknownAttributeIsBadRequest() throws Exception {
+    ScimUser user = getScimUser();
+
+    try {
+      resourcePatcher.apply(user, Collections.singletonList(operation(Type.REPLACE, "shoeSize", "11")));
+      Assertions.fail("Expected an UnableToUpdateResourceException");
+    } catch (UnableToUpdateResourceException e) {
+      Assertions.assertThat(e.getStatus()).isEqualTo(Status.BAD_REQUEST);
+      Assertions.assertThat(e.getScimType()).isEqualTo(ErrorMessageType.INVALID_PATH);
+    }
+  }
+
+  @Test
+  public void testUnconvertibleValueIsInvalidValue() throws Exception {
+    ScimUser user = getScimUser();
+
+    try {
+      resourcePatcher.apply(user, Collections.singletonList(operation(Type.REPLACE, "active", Collections.singletonMap("on", "yes"))));
+      Assertions.fail("Expected an UnableToUpdateResourceException");
+    } catch (UnableToUpdateResourceException e) {
+      Assertions.assertThat(e.getStatus()).isEqualTo(Status.BAD_REQUEST);
+      Assertions.assertThat(e.getScimType()).isEqualTo(ErrorMessageType.INVALID_VALUE);
+    }
+  }
+
+  @Test
+  public void testReadOnlyAttributeIsMutabilityError() throws Exception {
+    ScimUser user = getScimUser();
+    List<PatchOperation> operations = Arrays.asList(operation(Type.REPLACE, "id", "2"),
+                                                    operation(Type.REMOVE, "meta", null),
+                                                    operation(Type.REPLACE, "meta.version", "W/\"1\""),
+                                                    operation(Type.ADD, "groups", Collections.singletonMap("value", "g1")),
+                                                    operation(Type.REPLACE, EnterpriseExtension.URN + ":manager.displayName", "Bob"),
+                                                    operation(Type.REPLACE, null, Collections.singletonMap("id", "2")));
+
+    for (PatchOperation operation : operations) {
+      try {
+        resourcePatcher.apply(user, Collections.singletonList(operation));
+        Assertions.fail("Expected an UnableToUpdateResourceException for " + operation);
+      } catch (UnableToUpdateResourceException e) {
+        Assertions.assertThat(e.getStatus()).isEqualTo(Status.BAD_REQUEST);
+        Assertions.assertThat(e.getScimType()).as(operation + ": " + e.getMessage()).isEqualTo(ErrorMessageType.MUTABILITY);
+      }
+    }
+    Assertions.assertThat(user.getId()).isEqualTo("1");
+  }
+
+  @Test
+  public void testImmutableAttributeCanOnlyBeSetOnce() throws Exception {
+    registry.getSchema(ScimUser.SCHEMA_URI).getAttribute("externalId").setMutability(Mutability.IMMUTABLE);
+    ScimUser user = getScimUser();
+
+    ScimUser patched = resourcePatcher.apply(user, Collections.singletonList(operation(Type.ADD, "externalId", "e1")));
+    Assertions.assertThat(patched.getExternalId()).isEqualTo("e1");
+
+    for (Type type : Type.values()) {
+      try {
+        resourcePatcher.apply(patched, Collections.singletonList(operation(type, "externalId", "e2")));
+        Assertions.fail("Expected an UnableToUpdateResourceException for " + type);
+      } catch (UnableToUpdateResourceException e) {
+        Assertions.assertThat(e.getStatus()).isEqualTo(Status.BAD_REQUEST);
+        Assertions.assertThat(e.getScimType()).isEqualTo(ErrorMessageType.MUTABILITY);
+      }
+    }
+  }
+
+  @Test
+  public void testPrimaryValueMakesOthersNonPrimary() throws Exception {
+    ScimUser user = getScimUser();
+
+    ScimUser patched = resourcePatcher.apply(user, Collections.singletonList(operation(Type.REPLACE, "emails[type eq \"home\"].primary", true)));
+
+    Assertions.assertThat(patched.getEmails()).extracting("primary").containsExactly(false, true);
+    Assertions.assertThat(user.getEmails()).extracting("primary").containsExactly(true, false);
+
+    Map<String, Object> otherEmail = new LinkedHashMap<>();
+    otherEmail.put("type", "other");
+    otherEmail.put("value", "jxa@example.com");
+    otherEmail.put("primary", true);
+    patched = resourcePatcher.apply(user, Collections.singletonList(operation(Type.ADD, "emails", Collections.singletonList(otherEmail))));
+
+    Assertions.assertThat(patched.getEmails()).extracting("primary").containsExactly(false, false, true);
+  }
+
+  @Test
+  public void testMoreThanOnePrimaryValueIsInvalidValue() throws Exception {
+    ScimUser user = getScimUser();
+    List<Map<String, Object>> emails = new ArrayList<>();
+    for (String type : Arrays.asList("work", "home")) {
+      Map<String, Object> email = new LinkedHashMap<>();
+      email.put("type", type);
+      email.put("value", type + "@example.com");
+      email.put("primary", true);
+      emails.add(email);
+    }
+
+    try {
+      resourcePatcher.apply(user, Collections.singletonList(operation(Type.REPLACE, "emails", emails)));
+      Assertions.fail("Expected an UnableToUpdateResourceException");
+    } catch (UnableToUpdateResourceException e) {
+      Assertions.assertThat(e.getStatus()).isEqualTo(Status.BAD_REQUEST);
+      Assertions.assertThat(e.getScimType()).isEqualTo(ErrorMessageType.INVALID_VALUE);
+    }
+  }
+
+  private static PatchOperation operation(Type type, String path, Object value) throws Exception {
+    PatchOperation operation = new PatchOperation();
+    operation.setOperation(type);
+    if (path != null) {
+      operation.setPath(new PatchOperationPath(path));
+    }
+    operation.setValue(value);
+    return operation;
+  }
+
+  private static ScimUser getScimUser() {
+    ScimUser user = new ScimUser();
+    user.setId("1");
+    user.setUserName("jxa123");
+    user.setNickName("Johnny");
+    user.setMeta(new Meta());
+
+    Name name = new Name();
+    name.setGivenName("John");
+    name.setFamilyName("Anyman");
+    user.setName(name);
+
+    Email workEmail = new Email();
+    workEmail.setType("work");
+    workEmail.setValue("jxa123@psu.edu");
+    workEmail.setPrimary(true);
+
+    Email homeEmail = new Email();
+    homeEmail.setType("home");
+    homeEmail.setValue("john@gmail.com");
+    homeEmail.setPrimary(false);
+
+    List<Email> emails = new ArrayList<>(Arrays.asList(workEmail, homeEmail));
+    user.setEmails(emails);
+
+    EnterpriseExtension enterpriseExtension = new EnterpriseExtension();
+    enterpriseExtension.setEmployeeNumber("7865");
+    enterpriseExtension.setDepartment("Dept B.");
+    user.addExtension(enterpriseExtension);
+
+    return user;
+  }
+}
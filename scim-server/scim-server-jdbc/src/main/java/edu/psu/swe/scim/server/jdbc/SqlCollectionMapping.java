@@ -0,0 +1,63 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.jdbc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * Maps a multi-valued attribute to a child table with one row per value. The
+ * child table references the resource's id column through
+ * <code>foreignKeyColumn</code>. Sub-attributes are keyed by their lower case
+ * name, simple multi-valued attributes use the key <code>value</code>.
+ */
+@Getter
+public class SqlCollectionMapping {
+
+  private final String table;
+
+  private final String foreignKeyColumn;
+
+  private final Map<String, SqlColumn> columns;
+
+  SqlCollectionMapping(String table, String foreignKeyColumn) {
+    this.table = table;
+    this.foreignKeyColumn = foreignKeyColumn;
+    this.columns = new HashMap<>();
+  }
+
+  private SqlCollectionMapping(SqlCollectionMapping other) {
+    this.table = other.table;
+    this.foreignKeyColumn = other.foreignKeyColumn;
+    this.columns = Collections.unmodifiableMap(new HashMap<>(other.columns));
+  }
+
+  public SqlColumn getColumn(String subAttributeName) {
+    return subAttributeName != null ? columns.get(subAttributeName.toLowerCase()) : null;
+  }
+
+  SqlCollectionMapping immutableCopy() {
+    return new SqlCollectionMapping(this);
+  }
+}
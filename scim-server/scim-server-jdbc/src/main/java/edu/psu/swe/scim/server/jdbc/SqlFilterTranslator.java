@@ -0,0 +1,380 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.jdbc;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
+import edu.psu.swe.scim.server.filter.FilterValues;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeComparisonExpression;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeInExpression;
+import edu.psu.swe.scim.spec.protocol.filter.AttributePresentExpression;
+import edu.psu.swe.scim.spec.protocol.filter.CompareOperator;
+import edu.psu.swe.scim.spec.protocol.filter.FilterExpression;
+import edu.psu.swe.scim.spec.protocol.filter.FilterParseException;
+import edu.psu.swe.scim.spec.protocol.filter.GroupExpression;
+import edu.psu.swe.scim.spec.protocol.filter.LogicalExpression;
+import edu.psu.swe.scim.spec.protocol.filter.ValuePathExpression;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.protocol.search.PageRequest;
+import edu.psu.swe.scim.spec.protocol.search.SortOrder;
+import edu.psu.swe.scim.spec.protocol.search.SortRequest;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;
+
+/**
+ * Translates a SCIM filter, sort and page request into parameterized SQL
+ * clauses using a {@link SqlResourceMapping}. Compare values are always
+ * bound as parameters, never concatenated into the SQL.
+ * 
+ * The generated SQL follows the same semantics as the in-memory
+ * FilterCompiler: strings that aren't caseExact are compared in lower case,
+ * <code>ne</code> and <code>not</code> also match absent values, an empty
+ * string counts as absent, and multi-valued attributes stored in child tables
+ * match through EXISTS subqueries. Date times are bound as UTC timestamps.
+ */
+public class SqlFilterTranslator {
+
+  private final SqlResourceMapping mapping;
+
+  public SqlFilterTranslator(SqlResourceMapping mapping) {
+    this.mapping = mapping;
+  }
+
+  public SqlQuery translate(Filter filter, SortRequest sortRequest, PageRequest pageRequest) throws FilterParseException, AttributeDoesNotExistException {
+    return translate(filter != null ? filter.getExpression() : null, sortRequest, pageRequest);
+  }
+
+  public SqlQuery translate(FilterExpression expression, SortRequest sortRequest, PageRequest pageRequest) throws FilterParseException, AttributeDoesNotExistException {
+    Translation translation = new Translation();
+
+    String where = null;
+    if (expression != null) {
+      StringBuilder sb = new StringBuilder();
+      translation.appendExpression(sb, expression, mapping.getAlias(), null);
+      where = sb.toString();
+    }
+    String orderBy = orderBy(sortRequest);
+    String limitOffset = translation.limitOffset(pageRequest);
+
+    return new SqlQuery(where, orderBy, limitOffset, Collections.unmodifiableList(translation.parameters));
+  }
+
+  private String orderBy(SortRequest sortRequest) throws AttributeDoesNotExistException {
+    if (sortRequest == null || sortRequest.getSortBy() == null) {
+      return null;
+    }
+    AttributeReference sortBy = sortRequest.getSortBy();
+    SqlColumn column = mapping.getColumn(sortBy);
+    if (column == null) {
+      if (mapping.getCollection(sortBy) != null) {
+        throw new IllegalArgumentException("Sorting by the multi-valued attribute " + sortBy.getFullyQualifiedAttributeName() + " is not supported");
+      }
+      throw new AttributeDoesNotExistException(sortBy.getFullyQualifiedAttributeName());
+    }
+
+    String direction = sortRequest.getSortOrder() == SortOrder.DESCENDING ? " DESC" : " ASC";
+    // the id makes the order, and so paging, stable when sort values repeat
+    return columnExpression(mapping.getAlias(), column) + direction + ", " + mapping.getAlias() + "." + mapping.getIdColumn() + direction;
+  }
+
+  private static String columnExpression(String qualifier, SqlColumn column) {
+    String qualified = qualifier + "." + column.getName();
+    return isString(column) && !column.isCaseExact() ? "LOWER(" + qualified + ")" : qualified;
+  }
+
+  private static boolean isString(SqlColumn column) {
+    return column.getType() == Type.STRING || column.getType() == Type.REFERENCE;
+  }
+
+  /**
+   * The state of a single translation: the parameters collected so far and
+   * the counter used to name subquery aliases.
+   */
+  private class Translation {
+
+    private final List<Object> parameters = new ArrayList<>();
+
+    private int aliasCount;
+
+    /**
+     * @param collection set while translating the inside of a value path, in
+     *          which case <code>qualifier</code> is the child table's alias
+     */
+    void appendExpression(StringBuilder sb, FilterExpression expression, String qualifier, SqlCollectionMapping collection) throws FilterParseException, AttributeDoesNotExistException {
+      if (expression instanceof LogicalExpression) {
+        LogicalExpression logicalExpression = (LogicalExpression) expression;
+        sb.append('(');
+        appendExpression(sb, logicalExpression.getLeft(), qualifier, collection);
+        sb.append(' ').append(logicalExpression.getOperator().name()).append(' ');
+        appendExpression(sb, logicalExpression.getRight(), qualifier, collection);
+        sb.append(')');
+      } else if (expression instanceof AttributeInExpression) {
+        appendIn(sb, (AttributeInExpression) expression, qualifier, collection);
+      } else if (expression instanceof GroupExpression) {
+        GroupExpression groupExpression = (GroupExpression) expression;
+        // a comparison against a NULL column is unknown rather than false, so
+        // a plain NOT would drop the rows the negation should match
+        sb.append(groupExpression.isNot() ? "NOT COALESCE((" : "(");
+        appendExpression(sb, groupExpression.getFilterExpression(), qualifier, collection);
+        sb.append(groupExpression.isNot() ? "), FALSE)" : ")");
+      } else if (expression instanceof AttributePresentExpression) {
+        AttributeReference attributeReference = ((AttributePresentExpression) expression).getAttributePath();
+        appendComparison(sb, attributeReference, CompareOperator.NE, null, qualifier, collection);
+      } else if (expression instanceof AttributeComparisonExpression) {
+        AttributeComparisonExpression comparison = (AttributeComparisonExpression) expression;
+        appendComparison(sb, comparison.getAttributePath(), comparison.getOperation(), comparison.getCompareValue(), qualifier, collection);
+      } else if (expression instanceof ValuePathExpression && collection == null) {
+        ValuePathExpression valuePathExpression = (ValuePathExpression) expression;
+        AttributeReference attributePath = valuePathExpression.getAttributePath();
+        SqlCollectionMapping valueCollection = mapping.getCollection(attributePath);
+        if (valueCollection == null) {
+          throw new AttributeDoesNotExistException(attributePath.getFullyQualifiedAttributeName() + " is not mapped to a table");
+        }
+        String alias = openExists(sb, valueCollection, false);
+        if (valuePathExpression.getAttributeExpression() != null) {
+          sb.append(" AND ");
+          appendExpression(sb, valuePathExpression.getAttributeExpression(), alias, valueCollection);
+        }
+        sb.append(')');
+      } else {
+        throw new FilterParseException("Unsupported filter expression: " + (expression == null ? null : expression.getClass().getName()));
+      }
+    }
+
+    /**
+     * Appends a comparison, a null compare value with eq or ne is an absence
+     * or presence test.
+     */
+    private void appendComparison(StringBuilder sb, AttributeReference attributeReference, CompareOperator operation, Object compareValue, String qualifier, SqlCollectionMapping collection) throws FilterParseException, AttributeDoesNotExistException {
+      if (collection != null) {
+        String subAttributeName = attributeReference.getSubAttributeName() != null ? attributeReference.getSubAttributeName() : attributeReference.getAttributeName();
+        SqlColumn column = collection.getColumn(subAttributeName);
+        if (column == null) {
+          throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+        }
+        appendPredicate(sb, qualifier, column, operation, compareValue);
+        return;
+      }
+
+      SqlColumn column = mapping.getColumn(attributeReference);
+      if (column != null) {
+        appendPredicate(sb, qualifier, column, operation, compareValue);
+        return;
+      }
+
+      SqlCollectionMapping valueCollection = mapping.getCollection(attributeReference);
+      SqlColumn valueColumn = valueCollection != null ? valueCollection.getColumn(attributeReference.getSubAttributeName() != null ? attributeReference.getSubAttributeName() : "value") : null;
+      if (valueColumn == null) {
+        throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+      }
+
+      // Multi-valued attributes match if any value matches, ne (and absence)
+      // means no value is equal (or present)
+      boolean negate = compareValue == null ? operation == CompareOperator.EQ : operation == CompareOperator.NE;
+      CompareOperator valueOperation = compareValue == null ? CompareOperator.NE : negate ? CompareOperator.EQ : operation;
+      String alias = openExists(sb, valueCollection, negate);
+      sb.append(" AND ");
+      appendPredicate(sb, alias, valueColumn, valueOperation, compareValue);
+      sb.append(')');
+    }
+
+    private void appendIn(StringBuilder sb, AttributeInExpression expression, String qualifier, SqlCollectionMapping collection) throws FilterParseException, AttributeDoesNotExistException {
+      AttributeReference attributeReference = expression.getAttributePath();
+      if (collection != null) {
+        String subAttributeName = attributeReference.getSubAttributeName() != null ? attributeReference.getSubAttributeName() : attributeReference.getAttributeName();
+        SqlColumn column = collection.getColumn(subAttributeName);
+        if (column == null) {
+          throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+        }
+        appendInPredicate(sb, qualifier, column, expression.getCompareValues());
+        return;
+      }
+
+      SqlColumn column = mapping.getColumn(attributeReference);
+      if (column != null) {
+        appendInPredicate(sb, qualifier, column, expression.getCompareValues());
+        return;
+      }
+
+      SqlCollectionMapping valueCollection = mapping.getCollection(attributeReference);
+      SqlColumn valueColumn = valueCollection != null ? valueCollection.getColumn(attributeReference.getSubAttributeName() != null ? attributeReference.getSubAttributeName() : "value") : null;
+      if (valueColumn == null) {
+        throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+      }
+      String alias = openExists(sb, valueCollection, false);
+      sb.append(" AND ");
+      appendInPredicate(sb, alias, valueColumn, expression.getCompareValues());
+      sb.append(')');
+    }
+
+    private void appendInPredicate(StringBuilder sb, String qualifier, SqlColumn column, List<Object> compareValues) throws FilterParseException {
+      sb.append(columnExpression(qualifier, column)).append(" IN (");
+      for (int i = 0; i < compareValues.size(); i++) {
+        sb.append(i == 0 ? "?" : ", ?");
+        parameters.add(toParameter(column, CompareOperator.EQ, compareValues.get(i)));
+      }
+      sb.append(')');
+    }
+
+    private String openExists(StringBuilder sb, SqlCollectionMapping collection, boolean not) {
+      String alias = "c" + (++aliasCount);
+      sb.append(not ? "NOT EXISTS (SELECT 1 FROM " : "EXISTS (SELECT 1 FROM ")
+        .append(collection.getTable()).append(' ').append(alias)
+        .append(" WHERE ").append(alias).append('.').append(collection.getForeignKeyColumn())
+        .append(" = ").append(mapping.getAlias()).append('.').append(mapping.getIdColumn());
+      return alias;
+    }
+
+    private void appendPredicate(StringBuilder sb, String qualifier, SqlColumn column, CompareOperator operation, Object compareValue) throws FilterParseException {
+      String qualified = qualifier + "." + column.getName();
+
+      if (compareValue == null) {
+        if (operation == CompareOperator.EQ) {
+          sb.append(isString(column) ? "(" + qualified + " IS NULL OR " + qualified + " = '')" : qualified + " IS NULL");
+        } else if (operation == CompareOperator.NE) {
+          sb.append(isString(column) ? "(" + qualified + " IS NOT NULL AND " + qualified + " <> '')" : qualified + " IS NOT NULL");
+        } else {
+          throw new FilterParseException("Operator " + operation + " can not be used with a null compare value");
+        }
+        return;
+      }
+
+      Object parameter = toParameter(column, operation, compareValue);
+      String expression = columnExpression(qualifier, column);
+
+      switch (operation) {
+      case EQ:
+        sb.append(expression).append(" = ?");
+        break;
+      case NE:
+        sb.append('(').append(qualified).append(" IS NULL OR ").append(expression).append(" <> ?)");
+        break;
+      case CO:
+        parameter = "%" + FilterValues.escapeLike((String) parameter) + "%";
+        sb.append(expression).append(" LIKE ? ESCAPE '").append(FilterValues.LIKE_ESCAPE).append('\'');
+        break;
+      case SW:
+        parameter = FilterValues.escapeLike((String) parameter) + "%";
+        sb.append(expression).append(" LIKE ? ESCAPE '").append(FilterValues.LIKE_ESCAPE).append('\'');
+        break;
+      case EW:
+        parameter = "%" + FilterValues.escapeLike((String) parameter);
+        sb.append(expression).append(" LIKE ? ESCAPE '").append(FilterValues.LIKE_ESCAPE).append('\'');
+        break;
+      case GT:
+        sb.append(expression).append(" > ?");
+        break;
+      case GE:
+        sb.append(expression).append(" >= ?");
+        break;
+      case LT:
+        sb.append(expression).append(" < ?");
+        break;
+      case LE:
+        sb.append(expression).append(" <= ?");
+        break;
+      default:
+        throw new FilterParseException("Unsupported operator " + operation);
+      }
+      parameters.add(parameter);
+    }
+
+    private Object toParameter(SqlColumn column, CompareOperator operation, Object compareValue) throws FilterParseException {
+      boolean substring = operation == CompareOperator.CO || operation == CompareOperator.SW || operation == CompareOperator.EW;
+      boolean ordering = operation != CompareOperator.EQ && operation != CompareOperator.NE;
+
+      switch (column.getType()) {
+      case STRING:
+      case REFERENCE:
+        if (!(compareValue instanceof String)) {
+          throw new FilterParseException("Column " + column.getName() + " must be compared to a string");
+        }
+        return column.isCaseExact() ? compareValue : ((String) compareValue).toLowerCase(Locale.ROOT);
+      case INTEGER:
+      case DECIMAL:
+        if (!(compareValue instanceof Number) || substring) {
+          throw new FilterParseException("Column " + column.getName() + " must be compared to a number with eq, ne, gt, ge, lt or le");
+        }
+        double number = ((Number) compareValue).doubleValue();
+        if (column.getType() == Type.INTEGER && number == Math.rint(number) && !Double.isInfinite(number)) {
+          return (long) number;
+        }
+        return number;
+      case DATE_TIME:
+        if (!(compareValue instanceof String) || substring) {
+          throw new FilterParseException("Column " + column.getName() + " must be compared to a date time with eq, ne, gt, ge, lt or le");
+        }
+        return toTimestamp((String) compareValue);
+      case BOOLEAN:
+        if (!(compareValue instanceof Boolean) || ordering) {
+          throw new FilterParseException("Column " + column.getName() + " must be compared to true or false with eq or ne");
+        }
+        return compareValue;
+      case BINARY:
+        if (ordering) {
+          throw new FilterParseException("Column " + column.getName() + " can only be compared with eq or ne");
+        }
+        return compareValue.toString();
+      default:
+        throw new FilterParseException("Column " + column.getName() + " of type " + column.getType() + " can not be used in a comparison");
+      }
+    }
+
+    String limitOffset(PageRequest pageRequest) {
+      if (pageRequest == null) {
+        return null;
+      }
+      Integer count = pageRequest.getCount();
+      int offset = pageRequest.getStartIndex() != null ? Math.max(pageRequest.getStartIndex(), 1) - 1 : 0;
+
+      if (count == null && offset == 0) {
+        return null;
+      }
+
+      // MySQL and MariaDB don't accept an OFFSET without a LIMIT, the largest
+      // limit is kept small enough that the limit plus the offset still fits
+      // in an int, as some databases add the two together
+      StringBuilder sb = new StringBuilder("LIMIT ?");
+      parameters.add(count != null ? Math.max(count, 0) : Integer.MAX_VALUE - offset);
+      if (offset > 0) {
+        sb.append(" OFFSET ?");
+        parameters.add(offset);
+      }
+      return sb.toString();
+    }
+  }
+
+  private static Timestamp toTimestamp(String value) throws FilterParseException {
+    Instant instant = FilterValues.parseDateTime(value);
+    if (instant == null) {
+      throw new FilterParseException("Invalid date time compare value: " + value);
+    }
+    return Timestamp.valueOf(LocalDateTime.ofInstant(instant, ZoneOffset.UTC));
+  }
+}
@@ -0,0 +1,71 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * The WHERE, ORDER BY and LIMIT/OFFSET clauses generated for a search, with
+ * the values of their <code>?</code> placeholders in order. Clauses that
+ * don't apply are null.
+ */
+@Value
+public class SqlQuery {
+
+  String where;
+  String orderBy;
+  String limitOffset;
+  List<Object> parameters;
+
+  /**
+   * @return the clauses that apply, each preceded by a space so they can be
+   *         appended to a SELECT statement
+   */
+  public String toSql() {
+    StringBuilder sb = new StringBuilder();
+    if (where != null) {
+      sb.append(" WHERE ").append(where);
+    }
+    if (orderBy != null) {
+      sb.append(" ORDER BY ").append(orderBy);
+    }
+    if (limitOffset != null) {
+      sb.append(' ').append(limitOffset);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Binds the parameters to a statement prepared from SQL ending with
+   * {@link #toSql()}.
+   * 
+   * @param firstIndex the JDBC index of the first parameter of this query
+   */
+  public void bind(PreparedStatement statement, int firstIndex) throws SQLException {
+    for (int i = 0; i < parameters.size(); i++) {
+      statement.setObject(firstIndex + i, parameters.get(i));
+    }
+  }
+}
@@ -0,0 +1,260 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.jdbc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.schema.Schema;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;
+import lombok.Getter;
+
+/**
+ * Describes how the attributes of a resource type are stored in a relational
+ * database. Mappings are built from the Registry's schemas: every
+ * single-valued attribute of the base schema and of any added extension gets
+ * a column named after it in snake case (<code>userName</code> becomes
+ * <code>user_name</code>, <code>name.familyName</code> becomes
+ * <code>name_family_name</code>). Multi-valued attributes are only mapped when
+ * a child table is declared with {@link Builder#collection(String, String, String)}.
+ * Any column name can be overridden.
+ * 
+ * Column names are used verbatim in the generated SQL, they must come from
+ * trusted configuration.
+ */
+@Getter
+public class SqlResourceMapping {
+
+  private final String table;
+
+  private final String alias;
+
+  private final String idColumn;
+
+  private final String baseUrn;
+
+  private final Map<String, SqlColumn> columns;
+
+  private final Map<String, SqlCollectionMapping> collections;
+
+  private SqlResourceMapping(Builder builder) {
+    this.table = builder.table;
+    this.alias = builder.alias != null ? builder.alias : builder.table;
+    this.idColumn = builder.idColumn;
+    this.baseUrn = builder.schema.getId();
+    this.columns = Collections.unmodifiableMap(new HashMap<>(builder.columns));
+
+    Map<String, SqlCollectionMapping> collectionCopies = new HashMap<>();
+    builder.collections.forEach((key, collection) -> collectionCopies.put(key, collection.immutableCopy()));
+    this.collections = Collections.unmodifiableMap(collectionCopies);
+  }
+
+  public static Builder builder(String table, Schema schema) {
+    return new Builder(table, schema);
+  }
+
+  /**
+   * @return the column of a single-valued attribute or sub-attribute, or null
+   *         if it isn't mapped
+   */
+  public SqlColumn getColumn(AttributeReference attributeReference) {
+    return columns.get(key(urnOf(attributeReference), attributeReference.getFullAttributeName()));
+  }
+
+  /**
+   * @return the child table of a multi-valued attribute, or null if it isn't
+   *         mapped
+   */
+  public SqlCollectionMapping getCollection(AttributeReference attributeReference) {
+    return collections.get(key(urnOf(attributeReference), attributeReference.getAttributeName()));
+  }
+
+  private String urnOf(AttributeReference attributeReference) {
+    return attributeReference.getUrn() != null ? attributeReference.getUrn() : baseUrn;
+  }
+
+  static String key(String urn, String attributeName) {
+    return (urn + ":" + attributeName).toLowerCase();
+  }
+
+  static String toColumnName(String attributeName) {
+    StringBuilder sb = new StringBuilder(attributeName.length() + 4);
+    for (int i = 0; i < attributeName.length(); i++) {
+      char c = attributeName.charAt(i);
+      if (Character.isUpperCase(c)) {
+        if (i > 0) {
+          sb.append('_');
+        }
+        sb.append(Character.toLowerCase(c));
+      } else if (c == '.' || c == '-') {
+        sb.append('_');
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  public static class Builder {
+
+    private final String table;
+
+    private final Schema schema;
+
+    private final Map<String, Schema> schemas = new HashMap<>();
+
+    private final Map<String, SqlColumn> columns = new HashMap<>();
+
+    private final Map<String, SqlCollectionMapping> collections = new HashMap<>();
+
+    private String alias;
+
+    private String idColumn = "id";
+
+    private Builder(String table, Schema schema) {
+      this.table = table;
+      this.schema = schema;
+      addSchema(schema);
+    }
+
+    /**
+     * Sets the alias the table has in the statement the generated clauses
+     * are appended to, defaults to the table name.
+     */
+    public Builder alias(String alias) {
+      this.alias = alias;
+      return this;
+    }
+
+    public Builder idColumn(String idColumn) {
+      this.idColumn = idColumn;
+      return this;
+    }
+
+    /**
+     * Maps the single-valued attributes of an extension schema to columns of
+     * the resource table.
+     */
+    public Builder extension(Schema extensionSchema) {
+      addSchema(extensionSchema);
+      return this;
+    }
+
+    /**
+     * Maps a multi-valued attribute to a child table. Its sub-attributes get
+     * snake case column names, a multi-valued attribute without
+     * sub-attributes is stored in a column named <code>value</code>.
+     */
+    public Builder collection(String attributePath, String childTable, String foreignKeyColumn) {
+      AttributeReference attributeReference = new AttributeReference(attributePath);
+      Attribute attribute = findAttribute(attributeReference.getUrn(), attributeReference.getAttributeName(), null);
+      if (attribute == null || !attribute.isMultiValued()) {
+        throw new IllegalArgumentException(attributePath + " is not a multi-valued attribute");
+      }
+
+      SqlCollectionMapping collection = new SqlCollectionMapping(childTable, foreignKeyColumn);
+      List<Attribute> subAttributes = attribute.getSubAttributes();
+      if (subAttributes == null || subAttributes.isEmpty()) {
+        collection.getColumns().put("value", new SqlColumn("value", attribute.getType(), attribute.isCaseExact()));
+      } else {
+        for (Attribute subAttribute : subAttributes) {
+          if (!subAttribute.isMultiValued() && subAttribute.getType() != Type.COMPLEX) {
+            collection.getColumns().put(subAttribute.getName().toLowerCase(), new SqlColumn(toColumnName(subAttribute.getName()), subAttribute.getType(), subAttribute.isCaseExact()));
+          }
+        }
+      }
+      collections.put(key(urnOf(attributeReference), attribute.getName()), collection);
+      return this;
+    }
+
+    /**
+     * Overrides the column of an attribute, sub-attribute or a sub-attribute
+     * of a collection declared earlier.
+     */
+    public Builder column(String attributePath, String column) {
+      AttributeReference attributeReference = new AttributeReference(attributePath);
+      Attribute attribute = findAttribute(attributeReference.getUrn(), attributeReference.getAttributeName(), attributeReference.getSubAttributeName());
+      if (attribute == null) {
+        throw new IllegalArgumentException(attributePath + " is not defined in the schema, use column(attributePath, column, type, caseExact)");
+      }
+      return column(attributePath, column, attribute.getType(), attribute.isCaseExact());
+    }
+
+    /**
+     * Maps an attribute that the schema doesn't describe, for example
+     * <code>meta.lastModified</code>.
+     */
+    public Builder column(String attributePath, String column, Type type, boolean caseExact) {
+      AttributeReference attributeReference = new AttributeReference(attributePath);
+      SqlColumn sqlColumn = new SqlColumn(column, type, caseExact);
+
+      SqlCollectionMapping collection = collections.get(key(urnOf(attributeReference), attributeReference.getAttributeName()));
+      if (collection != null) {
+        String subAttributeName = attributeReference.getSubAttributeName() != null ? attributeReference.getSubAttributeName() : "value";
+        collection.getColumns().put(subAttributeName.toLowerCase(), sqlColumn);
+      } else {
+        columns.put(key(urnOf(attributeReference), attributeReference.getFullAttributeName()), sqlColumn);
+      }
+      return this;
+    }
+
+    public SqlResourceMapping build() {
+      return new SqlResourceMapping(this);
+    }
+
+    private void addSchema(Schema addedSchema) {
+      schemas.put(addedSchema.getId().toLowerCase(), addedSchema);
+      for (Attribute attribute : addedSchema.getAttributes()) {
+        if (attribute.isMultiValued()) {
+          continue;
+        }
+        String columnPrefix = toColumnName(attribute.getName());
+        if (attribute.getType() != Type.COMPLEX) {
+          columns.put(key(addedSchema.getId(), attribute.getName()), new SqlColumn(columnPrefix, attribute.getType(), attribute.isCaseExact()));
+        } else if (attribute.getSubAttributes() != null) {
+          for (Attribute subAttribute : attribute.getSubAttributes()) {
+            if (!subAttribute.isMultiValued() && subAttribute.getType() != Type.COMPLEX) {
+              String name = attribute.getName() + "." + subAttribute.getName();
+              columns.put(key(addedSchema.getId(), name), new SqlColumn(columnPrefix + "_" + toColumnName(subAttribute.getName()), subAttribute.getType(), subAttribute.isCaseExact()));
+            }
+          }
+        }
+      }
+    }
+
+    private Attribute findAttribute(String urn, String attributeName, String subAttributeName) {
+      Schema attributeSchema = schemas.get((urn != null ? urn : schema.getId()).toLowerCase());
+      Attribute attribute = attributeSchema != null ? attributeSchema.getAttribute(attributeName) : null;
+      if (attribute != null && subAttributeName != null) {
+        attribute = attribute.getAttribute(subAttributeName);
+      }
+      return attribute;
+    }
+
+    private String urnOf(AttributeReference attributeReference) {
+      return attributeReference.getUrn() != null ? attributeReference.getUrn() : schema.getId();
+    }
+  }
+}
@@ -0,0 +1,244 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.jdbc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import edu.psu.swe.scim.common.ScimUtils;
+import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
+import edu.psu.swe.scim.server.filter.FilterOptimizer;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeInExpression;
+import edu.psu.swe.scim.spec.protocol.filter.FilterExpression;
+import edu.psu.swe.scim.spec.protocol.filter.FilterParseException;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.protocol.search.PageRequest;
+import edu.psu.swe.scim.spec.protocol.search.SortOrder;
+import edu.psu.swe.scim.spec.protocol.search.SortRequest;
+import edu.psu.swe.scim.spec.resources.BaseResource;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+import edu.psu.swe.scim.spec.schema.Schema;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+@RunWith(JUnitParamsRunner.class)
+public class SqlFilterTranslatorTest {
+
+  private static final String ENTERPRISE = EnterpriseExtension.URN + ":";
+
+  private Connection connection;
+
+  private Schema userSchema;
+
+  private SqlFilterTranslator translator;
+
+  @Before
+  public void setup() throws Exception {
+    userSchema = ProviderRegistry.generateSchema(ScimUser.class, ScimUtils.getFieldsUpTo(ScimUser.class, BaseResource.class));
+    Schema enterpriseSchema = ProviderRegistry.generateSchema(EnterpriseExtension.class, ScimUtils.getFieldsUpTo(EnterpriseExtension.class, Object.class));
+
+    SqlResourceMapping mapping = SqlResourceMapping.builder("scim_user", userSchema)
+        .extension(enterpriseSchema)
+        .collection("emails", "scim_user_email", "user_id")
+        .column("emails.primary", "is_primary")
+        .column("meta.lastModified", "last_modified", Type.DATE_TIME, false)
+        .build();
+    translator = new SqlFilterTranslator(mapping);
+
+    connection = DriverManager.getConnection("jdbc:h2:mem:");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("CREATE TABLE scim_user (id VARCHAR(36) PRIMARY KEY, user_name VARCHAR(255), active BOOLEAN, title VARCHAR(255), "
+          + "name_given_name VARCHAR(255), name_family_name VARCHAR(255), last_modified TIMESTAMP, employee_number VARCHAR(255))");
+      statement.execute("CREATE TABLE scim_user_email (user_id VARCHAR(36), type VARCHAR(255), value VARCHAR(255), is_primary BOOLEAN)");
+
+      statement.execute("INSERT INTO scim_user VALUES ('1', 'bjensen', TRUE, 'Tour Guide', 'Barbara', 'Jensen', '2011-05-13 04:42:34', '701984')");
+      statement.execute("INSERT INTO scim_user VALUES ('2', 'jsmith', FALSE, NULL, 'John', 'Smith', '2012-01-01 00:00:00', NULL)");
+      statement.execute("INSERT INTO scim_user VALUES ('3', '100%_user', TRUE, '', 'Percent', 'User', '2013-06-01 12:00:00', NULL)");
+
+      statement.execute("INSERT INTO scim_user_email VALUES ('1', 'work', 'bjensen@example.com', TRUE)");
+      statement.execute("INSERT INTO scim_user_email VALUES ('1', 'home', 'babs@jensen.org', FALSE)");
+      statement.execute("INSERT INTO scim_user_email VALUES ('2', 'work', 'john_smith@example.org', FALSE)");
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    connection.close();
+  }
+
+  @SuppressWarnings("unused")
+  private Object[] getFilters() {
+    return new Object[] {
+      new Object[] {"userName eq \"BJENSEN\"", new String[] {"1"}},
+      new Object[] {"userName ne \"bjensen\"", new String[] {"2", "3"}},
+      new Object[] {"userName eq \"x' OR '1'='1\"", new String[] {}},
+      new Object[] {"title pr", new String[] {"1"}},
+      new Object[] {"title eq null", new String[] {"2", "3"}},
+      new Object[] {"title ne \"Tour Guide\"", new String[] {"2", "3"}},
+      new Object[] {"not (title eq \"Tour Guide\")", new String[] {"2", "3"}},
+      new Object[] {"not (title pr)", new String[] {"2", "3"}},
+      new Object[] {"not (title sw \"tour\" or active eq true)", new String[] {"2"}},
+      new Object[] {"not (not (title eq \"Tour Guide\"))", new String[] {"1"}},
+      new Object[] {"not (" + ENTERPRISE + "employeeNumber eq \"701984\") and userName sw \"j\"", new String[] {"2"}},
+      new Object[] {"name.familyName sw \"j\"", new String[] {"1"}},
+      new Object[] {"userName co \"%\"", new String[] {"3"}},
+      new Object[] {"userName sw \"100%_\"", new String[] {"3"}},
+      new Object[] {"userName ew \"_user\"", new String[] {"3"}},
+      new Object[] {"userName gt \"c\"", new String[] {"2"}},
+      new Object[] {"active eq false", new String[] {"2"}},
+      new Object[] {"meta.lastModified gt \"2011-12-31T23:00:00-02:00\"", new String[] {"3"}},
+      new Object[] {"meta.lastModified le \"2012-01-01T00:00:00Z\"", new String[] {"1", "2"}},
+      new Object[] {"emails[type eq \"work\" and value ew \"example.org\"]", new String[] {"2"}},
+      new Object[] {"emails.type eq \"home\"", new String[] {"1"}},
+      new Object[] {"emails.type ne \"home\"", new String[] {"2", "3"}},
+      new Object[] {"emails pr", new String[] {"1", "2"}},
+      new Object[] {"emails co \"example\"", new String[] {"1", "2"}},
+      new Object[] {ENTERPRISE + "employeeNumber eq \"701984\"", new String[] {"1"}},
+      new Object[] {"not(active eq true) or emails[primary eq true]", new String[] {"1", "2"}},
+      new Object[] {"(userName eq \"jsmith\" or userName eq \"bjensen\") and not (emails[type eq \"home\"])", new String[] {"2"}},
+    };
+  }
+
+  @Test
+  @Parameters(method = "getFilters")
+  public void testFilter(String filter, String[] expectedIds) throws Exception {
+    SqlQuery query = translator.translate(new Filter(filter), null, null);
+
+    List<String> ids = select(query);
+    ids.sort(null);
+
+    assertThat(ids).containsExactly(expectedIds);
+  }
+
+  @SuppressWarnings("unused")
+  private Object[] getNegatedFilters() {
+    return new Object[] {
+      new Object[] {"not (title eq \"Tour Guide\")"},
+      new Object[] {"not (title pr)"},
+      new Object[] {"not (not (title ne \"Tour Guide\"))"},
+      new Object[] {"not (title eq \"Tour Guide\" or active eq false)"},
+      new Object[] {"not (title eq \"Tour Guide\" and userName sw \"j\")"},
+      new Object[] {"not (title eq \"Tour Guide\" or title eq \"Boss\")"},
+      new Object[] {"not (title gt \"m\")"},
+      new Object[] {"not (" + ENTERPRISE + "employeeNumber eq \"701984\")"},
+      new Object[] {"not (emails.type eq \"home\")"},
+      new Object[] {"not (emails[type eq \"work\"])"},
+      new Object[] {"not (emails pr)"},
+    };
+  }
+
+  @Test
+  @Parameters(method = "getNegatedFilters")
+  public void testOptimizedFilterMatchesTheSameRows(String filter) throws Exception {
+    FilterExpression expression = new Filter(filter).getExpression();
+    FilterExpression optimized = new FilterOptimizer(null).optimize(expression, userSchema);
+
+    List<String> ids = select(translator.translate(expression, null, null));
+    ids.sort(null);
+    List<String> optimizedIds = select(translator.translate(optimized, null, null));
+    optimizedIds.sort(null);
+
+    assertThat(optimizedIds).isEqualTo(ids);
+  }
+
+  @Test
+  public void testSortAndPage() throws Exception {
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference("userName"));
+    sortRequest.setSortOrder(SortOrder.DESCENDING);
+
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setStartIndex(2);
+    pageRequest.setCount(1);
+    assertThat(select(translator.translate((Filter) null, sortRequest, pageRequest))).containsExactly("1");
+
+    pageRequest.setCount(null);
+    SqlQuery query = translator.translate((Filter) null, sortRequest, pageRequest);
+    assertThat(query.getLimitOffset()).isEqualTo("LIMIT ? OFFSET ?");
+    assertThat(select(query)).containsExactly("1", "3");
+
+    pageRequest.setStartIndex(1);
+    pageRequest.setCount(2);
+    assertThat(select(translator.translate(new Filter("active eq true"), sortRequest, pageRequest))).containsExactly("1", "3");
+  }
+
+  @Test
+  public void testParametersAreBound() throws Exception {
+    SqlQuery query = translator.translate(new Filter("userName co \"a_b\" and active eq true"), null, null);
+
+    assertThat(query.getWhere()).isEqualTo("(LOWER(scim_user.user_name) LIKE ? ESCAPE '\\' AND scim_user.active = ?)");
+    assertThat(query.getParameters()).containsExactly("%a\\_b%", true);
+  }
+
+  @Test
+  public void testInExpression() throws Exception {
+    AttributeInExpression userNames = new AttributeInExpression(new AttributeReference("userName"), Arrays.asList("JSMITH", "bjensen"));
+    AttributeInExpression emailTypes = new AttributeInExpression(new AttributeReference("emails.type"), Arrays.asList("home", "other"));
+
+    SqlQuery query = translator.translate(userNames, null, null);
+    assertThat(query.getWhere()).isEqualTo("LOWER(scim_user.user_name) IN (?, ?)");
+    List<String> ids = select(query);
+    ids.sort(null);
+    assertThat(ids).containsExactly("1", "2");
+
+    assertThat(select(translator.translate(emailTypes, null, null))).containsExactly("1");
+  }
+
+  @Test(expected = AttributeDoesNotExistException.class)
+  public void testUnmappedAttribute() throws Exception {
+    translator.translate(new Filter("phoneNumbers.value eq \"555\""), null, null);
+  }
+
+  @Test(expected = FilterParseException.class)
+  public void testInvalidOperator() throws Exception {
+    translator.translate(new Filter("active co \"t\""), null, null);
+  }
+
+  private List<String> select(SqlQuery query) throws Exception {
+    List<String> ids = new ArrayList<>();
+    try (PreparedStatement statement = connection.prepareStatement("SELECT scim_user.id FROM scim_user" + query.toSql())) {
+      query.bind(statement, 1);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          ids.add(resultSet.getString(1));
+        }
+      }
+    }
+    return ids;
+  }
+}
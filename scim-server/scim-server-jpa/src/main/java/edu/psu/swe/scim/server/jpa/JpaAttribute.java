@@ -0,0 +1,38 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.jpa;
+
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;
+import lombok.Value;
+
+/**
+ * The entity attribute path holding the values of a SCIM attribute. For the
+ * sub-attributes of a multi-valued attribute the path is relative to the
+ * joined collection element, an empty path means the element itself.
+ */
+@Value
+public class JpaAttribute {
+
+  String path;
+  Type type;
+  boolean caseExact;
+
+}
@@ -0,0 +1,189 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.jpa;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.schema.Schema;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;
+
+/**
+ * Maps SCIM attributes to entity attribute paths. By default every attribute
+ * maps to the java field carrying its @ScimAttribute, so an entity that
+ * mirrors the resource class (with single-valued complex attributes as
+ * embeddables and multi-valued attributes as @ElementCollection or
+ * @OneToMany) needs no configuration. Extension attributes default to their
+ * field name on the entity. Any path can be overridden.
+ */
+public class JpaAttributeMapping {
+
+  private final String baseUrn;
+
+  private final Map<String, JpaAttribute> attributes;
+
+  private final Set<String> collections;
+
+  private final String idPath;
+
+  private JpaAttributeMapping(Builder builder) {
+    this.baseUrn = builder.schema.getId();
+    this.attributes = Collections.unmodifiableMap(new HashMap<>(builder.attributes));
+    this.collections = Collections.unmodifiableSet(new HashSet<>(builder.collections));
+    this.idPath = builder.idPath;
+  }
+
+  public static Builder builder(Schema schema) {
+    return new Builder(schema);
+  }
+
+  /**
+   * @return the entity path of the identifier, used to make sorting stable
+   */
+  public String getIdPath() {
+    return idPath;
+  }
+
+  /**
+   * @return the mapping of an attribute or sub-attribute, null if it isn't
+   *         mapped. Sub-attributes of collections are relative to the element.
+   */
+  public JpaAttribute getAttribute(AttributeReference attributeReference) {
+    return attributes.get(key(urnOf(attributeReference), attributeReference.getFullAttributeName()));
+  }
+
+  /**
+   * @return true if the attribute (ignoring any sub-attribute) is mapped to a
+   *         collection that has to be joined
+   */
+  public boolean isCollection(AttributeReference attributeReference) {
+    return collections.contains(key(urnOf(attributeReference), attributeReference.getAttributeName()));
+  }
+
+  private String urnOf(AttributeReference attributeReference) {
+    return attributeReference.getUrn() != null ? attributeReference.getUrn() : baseUrn;
+  }
+
+  static String key(String urn, String attributeName) {
+    return (urn + ":" + attributeName).toLowerCase();
+  }
+
+  public static class Builder {
+
+    private final Schema schema;
+
+    private final Map<String, Schema> schemas = new HashMap<>();
+
+    private final Map<String, JpaAttribute> attributes = new HashMap<>();
+
+    private final Set<String> collections = new HashSet<>();
+
+    private String idPath = "id";
+
+    private Builder(Schema schema) {
+      this.schema = schema;
+      addSchema(schema);
+    }
+
+    public Builder idPath(String idPath) {
+      this.idPath = idPath;
+      return this;
+    }
+
+    public Builder extension(Schema extensionSchema) {
+      addSchema(extensionSchema);
+      return this;
+    }
+
+    /**
+     * Overrides the entity path of an attribute described by the schema.
+     */
+    public Builder attribute(String attributePath, String entityPath) {
+      AttributeReference attributeReference = new AttributeReference(attributePath);
+      Schema attributeSchema = schemas.get(urnOf(attributeReference).toLowerCase());
+      Attribute attribute = attributeSchema != null ? attributeSchema.getAttribute(attributeReference.getAttributeName()) : null;
+      if (attribute != null && attributeReference.getSubAttributeName() != null) {
+        attribute = attribute.getAttribute(attributeReference.getSubAttributeName());
+      }
+      if (attribute == null) {
+        throw new IllegalArgumentException(attributePath + " is not defined in the schema, use attribute(attributePath, entityPath, type, caseExact)");
+      }
+      return attribute(attributePath, entityPath, attribute.getType(), attribute.isCaseExact());
+    }
+
+    /**
+     * Maps an attribute the schema doesn't describe, for example
+     * <code>meta.lastModified</code>.
+     */
+    public Builder attribute(String attributePath, String entityPath, Type type, boolean caseExact) {
+      AttributeReference attributeReference = new AttributeReference(attributePath);
+      attributes.put(key(urnOf(attributeReference), attributeReference.getFullAttributeName()), new JpaAttribute(entityPath, type, caseExact));
+      return this;
+    }
+
+    public JpaAttributeMapping build() {
+      return new JpaAttributeMapping(this);
+    }
+
+    private void addSchema(Schema addedSchema) {
+      String urn = addedSchema.getId();
+      schemas.put(urn.toLowerCase(), addedSchema);
+
+      for (Attribute attribute : addedSchema.getAttributes()) {
+        if (attribute.getField() == null) {
+          continue;
+        }
+        String path = attribute.getField().getName();
+        List<Attribute> subAttributes = attribute.getSubAttributes();
+
+        if (attribute.isMultiValued()) {
+          collections.add(key(urn, attribute.getName()));
+          attributes.put(key(urn, attribute.getName()), new JpaAttribute(path, attribute.getType(), attribute.isCaseExact()));
+          if (subAttributes == null || subAttributes.isEmpty()) {
+            attributes.put(key(urn, attribute.getName() + ".value"), new JpaAttribute("", attribute.getType(), attribute.isCaseExact()));
+          }
+        } else {
+          attributes.put(key(urn, attribute.getName()), new JpaAttribute(path, attribute.getType(), attribute.isCaseExact()));
+        }
+
+        if (attribute.getType() == Type.COMPLEX && subAttributes != null) {
+          for (Attribute subAttribute : subAttributes) {
+            if (subAttribute.getField() == null) {
+              continue;
+            }
+            String subPath = attribute.isMultiValued() ? subAttribute.getField().getName() : path + "." + subAttribute.getField().getName();
+            attributes.put(key(urn, attribute.getName() + "." + subAttribute.getName()), new JpaAttribute(subPath, subAttribute.getType(), subAttribute.isCaseExact()));
+          }
+        }
+      }
+    }
+
+    private String urnOf(AttributeReference attributeReference) {
+      return attributeReference.getUrn() != null ? attributeReference.getUrn() : schema.getId();
+    }
+  }
+}
@@ -0,0 +1,469 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.jpa;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.AbstractQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.From;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Subquery;
+import javax.xml.bind.annotation.XmlEnumValue;
+
+import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
+import edu.psu.swe.scim.server.filter.FilterValues;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeComparisonExpression;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeInExpression;
+import edu.psu.swe.scim.spec.protocol.filter.AttributePresentExpression;
+import edu.psu.swe.scim.spec.protocol.filter.CompareOperator;
+import edu.psu.swe.scim.spec.protocol.filter.FilterExpression;
+import edu.psu.swe.scim.spec.protocol.filter.FilterParseException;
+import edu.psu.swe.scim.spec.protocol.filter.GroupExpression;
+import edu.psu.swe.scim.spec.protocol.filter.LogicalExpression;
+import edu.psu.swe.scim.spec.protocol.filter.LogicalOperator;
+import edu.psu.swe.scim.spec.protocol.filter.ValuePathExpression;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.protocol.search.PageRequest;
+import edu.psu.swe.scim.spec.protocol.search.SortOrder;
+import edu.psu.swe.scim.spec.protocol.search.SortRequest;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;
+
+/**
+ * Translates a SCIM filter and sort request into JPA criteria
+ * {@link Predicate}s and {@link Order}s using a {@link JpaAttributeMapping},
+ * so a provider can let the database do the filtering, sorting and paging:
+ * 
+ * <pre>
+ * CriteriaQuery&lt;UserEntity&gt; query = cb.createQuery(UserEntity.class);
+ * Root&lt;UserEntity&gt; root = query.from(UserEntity.class);
+ * query.where(translator.toPredicate(filter, root, query, cb));
+ * query.orderBy(translator.toOrders(sortRequest, root, cb));
+ * JpaFilterTranslator.applyPage(entityManager.createQuery(query), pageRequest).getResultList();
+ * </pre>
+ * 
+ * The predicates follow the same semantics as the in-memory FilterCompiler
+ * and the SqlFilterTranslator: strings that aren't caseExact are compared in
+ * lower case, <code>ne</code> and <code>not</code> also match absent values,
+ * an empty string counts as absent, and multi-valued attributes match through
+ * correlated EXISTS subqueries joining the collection.
+ */
+public class JpaFilterTranslator {
+
+  private final JpaAttributeMapping mapping;
+
+  public JpaFilterTranslator(JpaAttributeMapping mapping) {
+    this.mapping = mapping;
+  }
+
+  /**
+   * @return the predicate for the filter, a conjunction (always true) if the
+   *         filter is null
+   */
+  public Predicate toPredicate(Filter filter, Root<?> root, AbstractQuery<?> query, CriteriaBuilder cb) throws FilterParseException, AttributeDoesNotExistException {
+    return toPredicate(filter != null ? filter.getExpression() : null, root, query, cb);
+  }
+
+  public Predicate toPredicate(FilterExpression expression, Root<?> root, AbstractQuery<?> query, CriteriaBuilder cb) throws FilterParseException, AttributeDoesNotExistException {
+    if (expression == null) {
+      return cb.conjunction();
+    }
+    return new Translation(root, query, cb).predicate(expression, root, false);
+  }
+
+  /**
+   * @return the orders for the sort request, empty if nothing is sorted. The
+   *         id is added as a tiebreaker so paging is stable.
+   */
+  public List<Order> toOrders(SortRequest sortRequest, Root<?> root, CriteriaBuilder cb) throws AttributeDoesNotExistException {
+    List<Order> orders = new ArrayList<>();
+    if (sortRequest == null || sortRequest.getSortBy() == null) {
+      return orders;
+    }
+    AttributeReference sortBy = sortRequest.getSortBy();
+    if (mapping.isCollection(sortBy)) {
+      throw new IllegalArgumentException("Sorting by the multi-valued attribute " + sortBy.getFullyQualifiedAttributeName() + " is not supported");
+    }
+    JpaAttribute attribute = mapping.getAttribute(sortBy);
+    if (attribute == null) {
+      throw new AttributeDoesNotExistException(sortBy.getFullyQualifiedAttributeName());
+    }
+
+    boolean descending = sortRequest.getSortOrder() == SortOrder.DESCENDING;
+    Expression<?> sortExpression = expression(attribute, path(root, attribute.getPath()), cb);
+    Path<?> id = path(root, mapping.getIdPath());
+    orders.add(descending ? cb.desc(sortExpression) : cb.asc(sortExpression));
+    orders.add(descending ? cb.desc(id) : cb.asc(id));
+    return orders;
+  }
+
+  /**
+   * Applies the SCIM 1-based startIndex and count to the query.
+   */
+  public static <T> TypedQuery<T> applyPage(TypedQuery<T> query, PageRequest pageRequest) {
+    if (pageRequest == null) {
+      return query;
+    }
+    if (pageRequest.getStartIndex() != null) {
+      query.setFirstResult(Math.max(pageRequest.getStartIndex(), 1) - 1);
+    }
+    if (pageRequest.getCount() != null) {
+      query.setMaxResults(Math.max(pageRequest.getCount(), 0));
+    }
+    return query;
+  }
+
+  private static Path<?> path(From<?, ?> from, String entityPath) {
+    Path<?> path = from;
+    if (entityPath.isEmpty()) {
+      return path;
+    }
+    for (String name : entityPath.split("\\.")) {
+      path = path.get(name);
+    }
+    return path;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Expression<?> expression(JpaAttribute attribute, Path<?> path, CriteriaBuilder cb) {
+    return isString(attribute) && !attribute.isCaseExact() && String.class.equals(path.getJavaType()) ? cb.lower((Expression<String>) path) : path;
+  }
+
+  private static boolean isString(JpaAttribute attribute) {
+    return attribute.getType() == Type.STRING || attribute.getType() == Type.REFERENCE;
+  }
+
+  /**
+   * The state of a single translation, the query subqueries are created on.
+   */
+  private class Translation {
+
+    private final Root<?> root;
+
+    private final AbstractQuery<?> query;
+
+    private final CriteriaBuilder cb;
+
+    /**
+     * The number of negated groups being translated, comparisons inside them
+     * need an explicit NULL check as the negation of an unknown comparison
+     * is still unknown.
+     */
+    private int negations;
+
+    Translation(Root<?> root, AbstractQuery<?> query, CriteriaBuilder cb) {
+      this.root = root;
+      this.query = query;
+      this.cb = cb;
+    }
+
+    /**
+     * @param inCollection true while translating the inside of a value path,
+     *          in which case <code>from</code> is the collection join
+     */
+    Predicate predicate(FilterExpression expression, From<?, ?> from, boolean inCollection) throws FilterParseException, AttributeDoesNotExistException {
+      if (expression instanceof LogicalExpression) {
+        LogicalExpression logicalExpression = (LogicalExpression) expression;
+        Predicate left = predicate(logicalExpression.getLeft(), from, inCollection);
+        Predicate right = predicate(logicalExpression.getRight(), from, inCollection);
+        return logicalExpression.getOperator() == LogicalOperator.AND ? cb.and(left, right) : cb.or(left, right);
+      } else if (expression instanceof AttributeInExpression) {
+        return in((AttributeInExpression) expression, from, inCollection);
+      } else if (expression instanceof GroupExpression) {
+        GroupExpression groupExpression = (GroupExpression) expression;
+        if (!groupExpression.isNot()) {
+          return predicate(groupExpression.getFilterExpression(), from, inCollection);
+        }
+        negations++;
+        try {
+          return cb.not(predicate(groupExpression.getFilterExpression(), from, inCollection));
+        } finally {
+          negations--;
+        }
+      } else if (expression instanceof AttributePresentExpression) {
+        AttributeReference attributeReference = ((AttributePresentExpression) expression).getAttributePath();
+        return comparison(attributeReference, CompareOperator.NE, null, from, inCollection);
+      } else if (expression instanceof AttributeComparisonExpression) {
+        AttributeComparisonExpression comparison = (AttributeComparisonExpression) expression;
+        return comparison(comparison.getAttributePath(), comparison.getOperation(), comparison.getCompareValue(), from, inCollection);
+      } else if (expression instanceof ValuePathExpression && !inCollection) {
+        ValuePathExpression valuePathExpression = (ValuePathExpression) expression;
+        AttributeReference attributePath = valuePathExpression.getAttributePath();
+        JpaAttribute collection = mapping.isCollection(attributePath) ? mapping.getAttribute(new AttributeReference(attributePath.getUrn(), attributePath.getAttributeName())) : null;
+        if (collection == null) {
+          throw new AttributeDoesNotExistException(attributePath.getFullyQualifiedAttributeName() + " is not mapped to a collection");
+        }
+        Subquery<Integer> subquery = query.subquery(Integer.class);
+        From<?, ?> join = join(subquery, collection);
+        if (valuePathExpression.getAttributeExpression() != null) {
+          subquery.where(predicate(valuePathExpression.getAttributeExpression(), join, true));
+        }
+        return cb.exists(subquery);
+      } else {
+        throw new FilterParseException("Unsupported filter expression: " + (expression == null ? null : expression.getClass().getName()));
+      }
+    }
+
+    /**
+     * A comparison, a null compare value with eq or ne is an absence or
+     * presence test.
+     */
+    private Predicate comparison(AttributeReference attributeReference, CompareOperator operation, Object compareValue, From<?, ?> from, boolean inCollection) throws FilterParseException, AttributeDoesNotExistException {
+      if (inCollection || !mapping.isCollection(attributeReference)) {
+        JpaAttribute attribute = mapping.getAttribute(attributeReference);
+        if (attribute == null) {
+          throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+        }
+        return predicate(attribute, path(from, attribute.getPath()), operation, compareValue);
+      }
+
+      String subAttributeName = attributeReference.getSubAttributeName() != null ? attributeReference.getSubAttributeName() : "value";
+      JpaAttribute collection = mapping.getAttribute(new AttributeReference(attributeReference.getUrn(), attributeReference.getAttributeName()));
+      JpaAttribute valueAttribute = mapping.getAttribute(new AttributeReference(attributeReference.getUrn(), attributeReference.getAttributeName(), subAttributeName));
+      if (collection == null || valueAttribute == null) {
+        throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+      }
+
+      // Multi-valued attributes match if any value matches, ne (and absence)
+      // means no value is equal (or present)
+      boolean negate = compareValue == null ? operation == CompareOperator.EQ : operation == CompareOperator.NE;
+      CompareOperator valueOperation = compareValue == null ? CompareOperator.NE : negate ? CompareOperator.EQ : operation;
+      Subquery<Integer> subquery = query.subquery(Integer.class);
+      From<?, ?> join = join(subquery, collection);
+      subquery.where(predicate(valueAttribute, path(join, valueAttribute.getPath()), valueOperation, compareValue));
+      return negate ? cb.not(cb.exists(subquery)) : cb.exists(subquery);
+    }
+
+    private Predicate in(AttributeInExpression expression, From<?, ?> from, boolean inCollection) throws FilterParseException, AttributeDoesNotExistException {
+      AttributeReference attributeReference = expression.getAttributePath();
+      if (inCollection || !mapping.isCollection(attributeReference)) {
+        JpaAttribute attribute = mapping.getAttribute(attributeReference);
+        if (attribute == null) {
+          throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+        }
+        return inPredicate(attribute, path(from, attribute.getPath()), expression.getCompareValues());
+      }
+
+      String subAttributeName = attributeReference.getSubAttributeName() != null ? attributeReference.getSubAttributeName() : "value";
+      JpaAttribute collection = mapping.getAttribute(new AttributeReference(attributeReference.getUrn(), attributeReference.getAttributeName()));
+      JpaAttribute valueAttribute = mapping.getAttribute(new AttributeReference(attributeReference.getUrn(), attributeReference.getAttributeName(), subAttributeName));
+      if (collection == null || valueAttribute == null) {
+        throw new AttributeDoesNotExistException(attributeReference.getFullyQualifiedAttributeName());
+      }
+      Subquery<Integer> subquery = query.subquery(Integer.class);
+      From<?, ?> join = join(subquery, collection);
+      subquery.where(inPredicate(valueAttribute, path(join, valueAttribute.getPath()), expression.getCompareValues()));
+      return cb.exists(subquery);
+    }
+
+    private Predicate inPredicate(JpaAttribute attribute, Path<?> path, List<Object> compareValues) throws FilterParseException {
+      List<Object> parameters = new ArrayList<>(compareValues.size());
+      for (Object compareValue : compareValues) {
+        parameters.add(toParameter(attribute, path.getJavaType(), CompareOperator.EQ, compareValue));
+      }
+      return notNull(path, expression(attribute, path, cb).in(parameters));
+    }
+
+    private Predicate notNull(Path<?> path, Predicate predicate) {
+      return negations > 0 ? cb.and(cb.isNotNull(path), predicate) : predicate;
+    }
+
+    private From<?, ?> join(Subquery<Integer> subquery, JpaAttribute collection) {
+      From<?, ?> join = correlate(subquery, root).join(collection.getPath());
+      subquery.select(cb.literal(1));
+      return join;
+    }
+
+    private <X> Root<X> correlate(Subquery<Integer> subquery, Root<X> parent) {
+      return subquery.correlate(parent);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Predicate predicate(JpaAttribute attribute, Path<?> path, CompareOperator operation, Object compareValue) throws FilterParseException {
+      if (compareValue == null) {
+        boolean string = String.class.equals(path.getJavaType());
+        if (operation == CompareOperator.EQ) {
+          return string ? cb.or(cb.isNull(path), cb.equal(path, "")) : cb.isNull(path);
+        } else if (operation == CompareOperator.NE) {
+          return string ? cb.and(cb.isNotNull(path), cb.notEqual(path, "")) : cb.isNotNull(path);
+        }
+        throw new FilterParseException("Operator " + operation + " can not be used with a null compare value");
+      }
+
+      Object parameter = toParameter(attribute, path.getJavaType(), operation, compareValue);
+      Expression expression = expression(attribute, path, cb);
+
+      switch (operation) {
+      case EQ:
+        return notNull(path, cb.equal(expression, parameter));
+      case NE:
+        return cb.or(cb.isNull(path), cb.notEqual(expression, parameter));
+      case CO:
+        return notNull(path, cb.like(expression, "%" + FilterValues.escapeLike((String) parameter) + "%", FilterValues.LIKE_ESCAPE));
+      case SW:
+        return notNull(path, cb.like(expression, FilterValues.escapeLike((String) parameter) + "%", FilterValues.LIKE_ESCAPE));
+      case EW:
+        return notNull(path, cb.like(expression, "%" + FilterValues.escapeLike((String) parameter), FilterValues.LIKE_ESCAPE));
+      case GT:
+        return notNull(path, cb.greaterThan(expression, (Comparable) parameter));
+      case GE:
+        return notNull(path, cb.greaterThanOrEqualTo(expression, (Comparable) parameter));
+      case LT:
+        return notNull(path, cb.lessThan(expression, (Comparable) parameter));
+      case LE:
+        return notNull(path, cb.lessThanOrEqualTo(expression, (Comparable) parameter));
+      default:
+        throw new FilterParseException("Unsupported operator " + operation);
+      }
+    }
+
+    private Object toParameter(JpaAttribute attribute, Class<?> javaType, CompareOperator operation, Object compareValue) throws FilterParseException {
+      boolean substring = operation == CompareOperator.CO || operation == CompareOperator.SW || operation == CompareOperator.EW;
+      boolean ordering = operation != CompareOperator.EQ && operation != CompareOperator.NE;
+      String name = attribute.getPath();
+
+      if (javaType.isEnum()) {
+        if (!(compareValue instanceof String) || ordering) {
+          throw new FilterParseException("Attribute " + name + " must be compared to a string with eq or ne");
+        }
+        return toEnum(javaType, (String) compareValue, attribute.isCaseExact());
+      }
+
+      switch (attribute.getType()) {
+      case STRING:
+      case REFERENCE:
+        if (!(compareValue instanceof String)) {
+          throw new FilterParseException("Attribute " + name + " must be compared to a string");
+        }
+        return attribute.isCaseExact() ? compareValue : ((String) compareValue).toLowerCase(Locale.ROOT);
+      case INTEGER:
+      case DECIMAL:
+        if (!(compareValue instanceof Number) || substring) {
+          throw new FilterParseException("Attribute " + name + " must be compared to a number with eq, ne, gt, ge, lt or le");
+        }
+        return toNumber(javaType, (Number) compareValue);
+      case DATE_TIME:
+        if (!(compareValue instanceof String) || substring) {
+          throw new FilterParseException("Attribute " + name + " must be compared to a date time with eq, ne, gt, ge, lt or le");
+        }
+        return toDateTime(javaType, (String) compareValue);
+      case BOOLEAN:
+        if (!(compareValue instanceof Boolean) || ordering) {
+          throw new FilterParseException("Attribute " + name + " must be compared to true or false with eq or ne");
+        }
+        return compareValue;
+      case BINARY:
+        if (ordering) {
+          throw new FilterParseException("Attribute " + name + " can only be compared with eq or ne");
+        }
+        return compareValue.toString();
+      default:
+        throw new FilterParseException("Attribute " + name + " of type " + attribute.getType() + " can not be used in a comparison");
+      }
+    }
+  }
+
+  private static Object toEnum(Class<?> enumType, String value, boolean caseExact) throws FilterParseException {
+    for (Object constant : enumType.getEnumConstants()) {
+      String constantValue = ((Enum<?>) constant).name();
+      try {
+        XmlEnumValue xmlEnumValue = enumType.getField(constantValue).getAnnotation(XmlEnumValue.class);
+        if (xmlEnumValue != null) {
+          constantValue = xmlEnumValue.value();
+        }
+      } catch (NoSuchFieldException e) {
+        // enum constants are always fields
+      }
+      if (caseExact ? constantValue.equals(value) : constantValue.equalsIgnoreCase(value)) {
+        return constant;
+      }
+    }
+    throw new FilterParseException("Invalid " + enumType.getSimpleName() + " compare value: " + value);
+  }
+
+  private static Object toNumber(Class<?> javaType, Number number) {
+    if (javaType == Integer.class || javaType == int.class) {
+      return number.intValue();
+    } else if (javaType == Long.class || javaType == long.class) {
+      return number.longValue();
+    } else if (javaType == Short.class || javaType == short.class) {
+      return number.shortValue();
+    } else if (javaType == Float.class || javaType == float.class) {
+      return number.floatValue();
+    } else if (javaType == BigDecimal.class) {
+      return new BigDecimal(number.toString());
+    } else if (javaType == BigInteger.class) {
+      return BigInteger.valueOf(number.longValue());
+    }
+    return number.doubleValue();
+  }
+
+  /**
+   * Converts the compare value to the type of the entity attribute, values
+   * without an offset are taken to be UTC.
+   */
+  private static Object toDateTime(Class<?> javaType, String value) throws FilterParseException {
+    Instant instant = FilterValues.parseDateTime(value);
+    if (instant == null) {
+      throw new FilterParseException("Invalid date time compare value: " + value);
+    }
+
+    if (javaType == Instant.class) {
+      return instant;
+    } else if (javaType == LocalDateTime.class) {
+      return LocalDateTime.ofInstant(instant, ZoneOffset.UTC);
+    } else if (javaType == LocalDate.class) {
+      return LocalDateTime.ofInstant(instant, ZoneOffset.UTC).toLocalDate();
+    } else if (javaType == OffsetDateTime.class) {
+      return instant.atOffset(ZoneOffset.UTC);
+    } else if (javaType == ZonedDateTime.class) {
+      return instant.atZone(ZoneOffset.UTC);
+    } else if (javaType == Timestamp.class) {
+      return Timestamp.from(instant);
+    } else if (Calendar.class.isAssignableFrom(javaType)) {
+      Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+      calendar.setTimeInMillis(instant.toEpochMilli());
+      return calendar;
+    }
+    return Date.from(instant);
+  }
+}
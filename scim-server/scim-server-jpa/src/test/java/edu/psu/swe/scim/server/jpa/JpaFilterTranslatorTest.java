@@ -0,0 +1,265 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.jpa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import edu.psu.swe.scim.common.ScimUtils;
+import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
+import edu.psu.swe.scim.server.filter.FilterOptimizer;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.protocol.filter.AttributeInExpression;
+import edu.psu.swe.scim.spec.protocol.filter.FilterExpression;
+import edu.psu.swe.scim.spec.protocol.filter.FilterParseException;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.protocol.search.PageRequest;
+import edu.psu.swe.scim.spec.protocol.search.SortOrder;
+import edu.psu.swe.scim.spec.protocol.search.SortRequest;
+import edu.psu.swe.scim.spec.resources.BaseResource;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+import edu.psu.swe.scim.spec.schema.Schema;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+@RunWith(JUnitParamsRunner.class)
+public class JpaFilterTranslatorTest {
+
+  private static final String ENTERPRISE = EnterpriseExtension.URN + ":";
+
+  private static EntityManagerFactory entityManagerFactory;
+
+  private EntityManager entityManager;
+
+  private Schema userSchema;
+
+  private JpaFilterTranslator translator;
+
+  @BeforeClass
+  public static void createDatabase() {
+    entityManagerFactory = Persistence.createEntityManagerFactory("scim-jpa-test");
+
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    entityManager.getTransaction().begin();
+    entityManager.persist(user("1", "bjensen", true, "Tour Guide", "Barbara", "Jensen", "2011-05-13T04:42:34", "701984",
+        new EmailEmbeddable("work", "bjensen@example.com", true), new EmailEmbeddable("home", "babs@jensen.org", false)));
+    entityManager.persist(user("2", "jsmith", false, null, "John", "Smith", "2012-01-01T00:00:00", null,
+        new EmailEmbeddable("work", "john_smith@example.org", false)));
+    entityManager.persist(user("3", "100%_user", true, "", "Percent", "User", "2013-06-01T12:00:00", null));
+    entityManager.getTransaction().commit();
+    entityManager.close();
+  }
+
+  @AfterClass
+  public static void dropDatabase() {
+    entityManagerFactory.close();
+  }
+
+  @Before
+  public void setup() throws Exception {
+    userSchema = ProviderRegistry.generateSchema(ScimUser.class, ScimUtils.getFieldsUpTo(ScimUser.class, BaseResource.class));
+    Schema enterpriseSchema = ProviderRegistry.generateSchema(EnterpriseExtension.class, ScimUtils.getFieldsUpTo(EnterpriseExtension.class, Object.class));
+
+    JpaAttributeMapping mapping = JpaAttributeMapping.builder(userSchema)
+        .extension(enterpriseSchema)
+        .attribute("meta.lastModified", "lastModified", Type.DATE_TIME, false)
+        .build();
+    translator = new JpaFilterTranslator(mapping);
+
+    entityManager = entityManagerFactory.createEntityManager();
+  }
+
+  @After
+  public void tearDown() {
+    entityManager.close();
+  }
+
+  @SuppressWarnings("unused")
+  private Object[] getFilters() {
+    return new Object[] {
+      new Object[] {"userName eq \"BJENSEN\"", new String[] {"1"}},
+      new Object[] {"userName ne \"bjensen\"", new String[] {"2", "3"}},
+      new Object[] {"userName eq \"x' OR '1'='1\"", new String[] {}},
+      new Object[] {"title pr", new String[] {"1"}},
+      new Object[] {"title eq null", new String[] {"2", "3"}},
+      new Object[] {"title ne \"Tour Guide\"", new String[] {"2", "3"}},
+      new Object[] {"not (title eq \"Tour Guide\")", new String[] {"2", "3"}},
+      new Object[] {"not (title pr)", new String[] {"2", "3"}},
+      new Object[] {"not (title sw \"tour\" or active eq true)", new String[] {"2"}},
+      new Object[] {"not (not (title eq \"Tour Guide\"))", new String[] {"1"}},
+      new Object[] {"not (" + ENTERPRISE + "employeeNumber eq \"701984\") and userName sw \"j\"", new String[] {"2"}},
+      new Object[] {"name.familyName sw \"j\"", new String[] {"1"}},
+      new Object[] {"userName co \"%\"", new String[] {"3"}},
+      new Object[] {"userName sw \"100%_\"", new String[] {"3"}},
+      new Object[] {"userName ew \"_user\"", new String[] {"3"}},
+      new Object[] {"userName gt \"c\"", new String[] {"2"}},
+      new Object[] {"active eq false", new String[] {"2"}},
+      new Object[] {"meta.lastModified gt \"2011-12-31T23:00:00-02:00\"", new String[] {"3"}},
+      new Object[] {"meta.lastModified le \"2012-01-01T00:00:00Z\"", new String[] {"1", "2"}},
+      new Object[] {"emails[type eq \"work\" and value ew \"example.org\"]", new String[] {"2"}},
+      new Object[] {"emails.type eq \"home\"", new String[] {"1"}},
+      new Object[] {"emails.type ne \"home\"", new String[] {"2", "3"}},
+      new Object[] {"emails pr", new String[] {"1", "2"}},
+      new Object[] {"emails co \"example\"", new String[] {"1", "2"}},
+      new Object[] {ENTERPRISE + "employeeNumber eq \"701984\"", new String[] {"1"}},
+      new Object[] {"not(active eq true) or emails[primary eq true]", new String[] {"1", "2"}},
+      new Object[] {"(userName eq \"jsmith\" or userName eq \"bjensen\") and not (emails[type eq \"home\"])", new String[] {"2"}},
+    };
+  }
+
+  @Test
+  @Parameters(method = "getFilters")
+  public void testFilter(String filter, String[] expectedIds) throws Exception {
+    List<String> ids = select(new Filter(filter), null, null);
+    ids.sort(null);
+
+    assertThat(ids).containsExactly(expectedIds);
+  }
+
+  @SuppressWarnings("unused")
+  private Object[] getNegatedFilters() {
+    return new Object[] {
+      new Object[] {"not (title eq \"Tour Guide\")"},
+      new Object[] {"not (title pr)"},
+      new Object[] {"not (not (title ne \"Tour Guide\"))"},
+      new Object[] {"not (title eq \"Tour Guide\" or active eq false)"},
+      new Object[] {"not (title eq \"Tour Guide\" and userName sw \"j\")"},
+      new Object[] {"not (title eq \"Tour Guide\" or title eq \"Boss\")"},
+      new Object[] {"not (title gt \"m\")"},
+      new Object[] {"not (" + ENTERPRISE + "employeeNumber eq \"701984\")"},
+      new Object[] {"not (emails.type eq \"home\")"},
+      new Object[] {"not (emails[type eq \"work\"])"},
+      new Object[] {"not (emails pr)"},
+    };
+  }
+
+  @Test
+  @Parameters(method = "getNegatedFilters")
+  public void testOptimizedFilterMatchesTheSameRows(String filter) throws Exception {
+    FilterExpression expression = new Filter(filter).getExpression();
+    FilterExpression optimized = new FilterOptimizer(null).optimize(expression, userSchema);
+
+    List<String> ids = select(new Filter(expression), null, null);
+    ids.sort(null);
+    List<String> optimizedIds = select(new Filter(optimized), null, null);
+    optimizedIds.sort(null);
+
+    assertThat(optimizedIds).isEqualTo(ids);
+  }
+
+  @Test
+  public void testSortAndPage() throws Exception {
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference("userName"));
+    sortRequest.setSortOrder(SortOrder.DESCENDING);
+
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setStartIndex(2);
+    pageRequest.setCount(1);
+    assertThat(select(null, sortRequest, pageRequest)).containsExactly("1");
+
+    pageRequest.setCount(null);
+    assertThat(select(null, sortRequest, pageRequest)).containsExactly("1", "3");
+
+    pageRequest.setStartIndex(1);
+    pageRequest.setCount(2);
+    assertThat(select(new Filter("active eq true"), sortRequest, pageRequest)).containsExactly("1", "3");
+  }
+
+  @Test
+  public void testInExpression() throws Exception {
+    AttributeInExpression userNames = new AttributeInExpression(new AttributeReference("userName"), Arrays.asList("JSMITH", "bjensen"));
+    AttributeInExpression emailTypes = new AttributeInExpression(new AttributeReference("emails.type"), Arrays.asList("home", "other"));
+
+    List<String> ids = select(new Filter(userNames), null, null);
+    ids.sort(null);
+    assertThat(ids).containsExactly("1", "2");
+
+    assertThat(select(new Filter(emailTypes), null, null)).containsExactly("1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSortByCollection() throws Exception {
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference("emails"));
+    select(null, sortRequest, null);
+  }
+
+  @Test(expected = AttributeDoesNotExistException.class)
+  public void testUnmappedAttribute() throws Exception {
+    select(new Filter("unknown eq \"555\""), null, null);
+  }
+
+  @Test(expected = FilterParseException.class)
+  public void testInvalidOperator() throws Exception {
+    select(new Filter("active co \"t\""), null, null);
+  }
+
+  private List<String> select(Filter filter, SortRequest sortRequest, PageRequest pageRequest) throws Exception {
+    CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+    CriteriaQuery<UserEntity> query = cb.createQuery(UserEntity.class);
+    Root<UserEntity> root = query.from(UserEntity.class);
+    query.where(translator.toPredicate(filter, root, query, cb));
+    query.orderBy(translator.toOrders(sortRequest, root, cb));
+
+    List<String> ids = new ArrayList<>();
+    for (UserEntity user : JpaFilterTranslator.applyPage(entityManager.createQuery(query), pageRequest).getResultList()) {
+      ids.add(user.getId());
+    }
+    return ids;
+  }
+
+  private static UserEntity user(String id, String userName, boolean active, String title, String givenName, String familyName, String lastModified, String employeeNumber, EmailEmbeddable... emails) {
+    UserEntity user = new UserEntity();
+    user.setId(id);
+    user.setUserName(userName);
+    user.setActive(active);
+    user.setTitle(title);
+    user.setName(new NameEmbeddable(givenName, familyName));
+    user.setLastModified(LocalDateTime.parse(lastModified));
+    user.setEmployeeNumber(employeeNumber);
+    for (EmailEmbeddable email : emails) {
+      user.getEmails().add(email);
+    }
+    return user;
+  }
+}
@@ -0,0 +1,66 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.jpa;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.CollectionTable;
+import javax.persistence.ElementCollection;
+import javax.persistence.Embedded;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.Table;
+
+import lombok.Data;
+
+/**
+ * An entity mirroring ScimUser, with the meta and enterprise attributes as
+ * plain columns.
+ */
+@Entity
+@Table(name = "scim_user")
+@Data
+public class UserEntity {
+
+  @Id
+  private String id;
+
+  private String userName;
+
+  private Boolean active;
+
+  private String title;
+
+  @Embedded
+  private NameEmbeddable name;
+
+  private LocalDateTime lastModified;
+
+  private String employeeNumber;
+
+  @ElementCollection
+  @CollectionTable(name = "scim_user_email", joinColumns = @JoinColumn(name = "user_id"))
+  private List<EmailEmbeddable> emails = new ArrayList<>();
+
+}
@@ -0,0 +1,102 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.logstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The id to offset index of a {@link ResourceLog} as of a position, so a
+ * restart only has to replay the records after that position.
+ * 
+ * Snapshots are written to a temporary file that is moved over the previous
+ * snapshot, a snapshot that can't be read is ignored and the whole log is
+ * replayed instead.
+ */
+@Slf4j
+@Value
+class IndexSnapshot {
+
+  private static final int MAGIC = 0x5343494e;
+
+  long generation;
+
+  int position;
+
+  Map<String, Integer> offsets;
+
+  void write(Path path) throws IOException {
+    Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      out.writeInt(MAGIC);
+      out.writeLong(generation);
+      out.writeInt(position);
+      out.writeInt(offsets.size());
+      for (Map.Entry<String, Integer> entry : offsets.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeInt(entry.getValue());
+      }
+      out.writeInt(MAGIC);
+    }
+    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return the snapshot, null if there is none or it can't be read
+   */
+  static IndexSnapshot read(Path path) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (in.readInt() != MAGIC) {
+        log.warn("Ignoring invalid index snapshot {}", path);
+        return null;
+      }
+      long generation = in.readLong();
+      int position = in.readInt();
+      int size = in.readInt();
+      Map<String, Integer> offsets = new HashMap<>(Math.max(16, size * 4 / 3 + 1));
+      for (int i = 0; i < size; i++) {
+        offsets.put(in.readUTF(), in.readInt());
+      }
+      if (in.readInt() != MAGIC) {
+        log.warn("Ignoring truncated index snapshot {}", path);
+        return null;
+      }
+      return new IndexSnapshot(generation, position, offsets);
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      log.warn("Ignoring unreadable index snapshot " + path, e);
+      return null;
+    }
+  }
+}
@@ -0,0 +1,683 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.logstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.ws.rs.core.Response.Status;
+
+import edu.psu.swe.scim.server.exception.AttributeDoesNotExistException;
+import edu.psu.swe.scim.server.exception.UnableToCreateResourceException;
+import edu.psu.swe.scim.server.exception.UnableToDeleteResourceException;
+import edu.psu.swe.scim.server.exception.UnableToRetrieveExtensionsException;
+import edu.psu.swe.scim.server.exception.UnableToRetrieveResourceException;
+import edu.psu.swe.scim.server.exception.UnableToUpdateResourceException;
+import edu.psu.swe.scim.server.filter.FilterCompiler;
+import edu.psu.swe.scim.server.logstore.ResourceLog.LogRecord;
+import edu.psu.swe.scim.server.provider.Provider;
+import edu.psu.swe.scim.server.provider.StreamingFilterResponse;
+import edu.psu.swe.scim.server.provider.UpdateRequest;
+import edu.psu.swe.scim.server.provider.memory.ResourceOrdering;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.annotation.ScimResourceType;
+import edu.psu.swe.scim.spec.protocol.filter.FilterParseException;
+import edu.psu.swe.scim.spec.protocol.filter.FilterResponse;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.protocol.search.PageRequest;
+import edu.psu.swe.scim.spec.protocol.search.SortRequest;
+import edu.psu.swe.scim.spec.resources.ScimExtension;
+import edu.psu.swe.scim.spec.resources.ScimResource;
+import edu.psu.swe.scim.spec.schema.Meta;
+import edu.psu.swe.scim.spec.schema.Schema;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A durable {@link Provider} for deployments without a database, storing
+ * each version of a resource in a memory-mapped, append-only
+ * {@link ResourceLog} in a directory of its own.
+ * 
+ * Every write is one sequential append, an in-memory index maps each id to
+ * the offset of its latest version and <code>get</code> decodes the resource
+ * straight from the mapped file. Writes are serialized, reads never wait for
+ * them. <code>find</code> evaluates the compiled filter against every
+ * resource.
+ * 
+ * A background task periodically writes a snapshot of the index, so a
+ * restart only replays the records appended after it, and compacts the log
+ * into a new generation holding only the latest versions once enough of it
+ * is garbage. Writes wait for a compaction to finish.
+ * 
+ * The mapped file is flushed to disk by the operating system, or after
+ * every write when <code>syncWrites</code> is set. A log is limited to 2GB.
+ * 
+ * Like any other provider it's registered with
+ * {@link edu.psu.swe.scim.server.provider.ProviderRegistry#registerProvider},
+ * typically from a CDI producer that builds it on startup and closes it on
+ * shutdown.
+ *
+ * @param <T> the resource type
+ */
+@Slf4j
+public class LogStoreProvider<T extends ScimResource> implements Provider<T>, Closeable {
+
+  public static final int DEFAULT_INITIAL_CAPACITY = 1 << 20;
+
+  public static final long DEFAULT_MAINTENANCE_INTERVAL_SECONDS = 60;
+
+  public static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+
+  static final String SNAPSHOT_FILE = "resources.snapshot";
+
+  private static final Pattern LOG_FILE = Pattern.compile("resources-(\\d+)\\.log");
+
+  private final Class<T> resourceClass;
+
+  private final Schema schema;
+
+  private final Registry registry;
+
+  private final FilterCompiler filterCompiler;
+
+  private final ResourceCodec<T> codec;
+
+  private final List<Class<? extends ScimExtension>> extensions;
+
+  private final Path directory;
+
+  private final int initialCapacity;
+
+  private final boolean syncWrites;
+
+  private final double compactionThreshold;
+
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  private final ScheduledExecutorService maintenance;
+
+  private final int replayedRecords;
+
+  private volatile Segment segment;
+
+  // guarded by writeLock
+  private long liveBytes;
+
+  // guarded by writeLock
+  private long writesSinceSnapshot;
+
+  private LogStoreProvider(Builder<T> builder) throws IOException {
+    this.resourceClass = builder.resourceClass;
+    this.schema = builder.schema;
+    this.registry = builder.registry;
+    this.filterCompiler = new FilterCompiler(builder.registry);
+    this.codec = new ResourceCodec<>(builder.resourceClass);
+    this.extensions = Collections.unmodifiableList(new ArrayList<>(builder.extensions));
+    this.directory = builder.directory;
+    this.initialCapacity = builder.initialCapacity;
+    this.syncWrites = builder.syncWrites;
+    this.compactionThreshold = builder.compactionThreshold;
+
+    Files.createDirectories(directory);
+    ResourceLog resourceLog = openLatestLog();
+    ConcurrentHashMap<String, Integer> offsets = new ConcurrentHashMap<>();
+    int replayFrom = ResourceLog.HEADER_SIZE;
+
+    IndexSnapshot snapshot = IndexSnapshot.read(directory.resolve(SNAPSHOT_FILE));
+    if (snapshot != null && snapshot.getGeneration() == resourceLog.getGeneration()) {
+      offsets.putAll(snapshot.getOffsets());
+      replayFrom = snapshot.getPosition();
+    }
+    this.replayedRecords = resourceLog.replay(replayFrom, record -> {
+      if (record.getType() == ResourceLog.PUT) {
+        offsets.put(record.getId(), record.getOffset());
+      } else {
+        offsets.remove(record.getId());
+      }
+    });
+    for (Integer offset : offsets.values()) {
+      liveBytes += resourceLog.sizeOf(offset);
+    }
+    this.segment = new Segment(resourceLog, offsets);
+    log.info("Opened {} with {} resources, replayed {} records", resourceLog.getPath(), offsets.size(), replayedRecords);
+
+    if (builder.maintenanceIntervalSeconds > 0) {
+      maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "scim-log-store-" + directory.getFileName());
+        thread.setDaemon(true);
+        return thread;
+      });
+      maintenance.scheduleWithFixedDelay(this::maintain, builder.maintenanceIntervalSeconds, builder.maintenanceIntervalSeconds, TimeUnit.SECONDS);
+    } else {
+      maintenance = null;
+    }
+  }
+
+  /**
+   * Starts building a provider for a resource class annotated with
+   * {@link ScimResourceType} whose schema is in the registry, storing its
+   * files in the directory.
+   */
+  public static <T extends ScimResource> Builder<T> builder(Class<T> resourceClass, Registry registry, Path directory) {
+    return new Builder<>(resourceClass, registry, directory);
+  }
+
+  public Class<T> getResourceClass() {
+    return resourceClass;
+  }
+
+  /**
+   * @return the number of resources held
+   */
+  public int size() {
+    return segment.offsets.size();
+  }
+
+  /**
+   * @return the share of the log taken by versions that are no longer live
+   */
+  public double getGarbageRatio() {
+    writeLock.lock();
+    try {
+      int used = segment.log.getPosition() - ResourceLog.HEADER_SIZE;
+      return used > 0 ? 1.0 - (double) liveBytes / used : 0.0;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of records replayed when the provider was opened
+   */
+  int getReplayedRecords() {
+    return replayedRecords;
+  }
+
+  Path getLogPath() {
+    return segment.log.getPath();
+  }
+
+  int getLogPosition() {
+    return segment.log.getPosition();
+  }
+
+  @Override
+  public T create(T resource) throws UnableToCreateResourceException {
+    String id = resource.getId();
+    if (id == null) {
+      id = UUID.randomUUID().toString();
+      resource.setId(id);
+    }
+    LocalDateTime now = LocalDateTime.now();
+    Meta meta = resource.getMeta() != null ? resource.getMeta() : new Meta();
+    meta.setResourceType(resource.getResourceType());
+    meta.setCreated(now);
+    meta.setLastModified(now);
+    resource.setMeta(meta);
+
+    writeLock.lock();
+    try {
+      if (segment.offsets.containsKey(id)) {
+        throw new UnableToCreateResourceException(Status.CONFLICT, "A resource with the id " + id + " already exists");
+      }
+      put(id, resource);
+    } catch (IOException e) {
+      throw new UnableToCreateResourceException(Status.INTERNAL_SERVER_ERROR, "Unable to store resource " + id, e);
+    } finally {
+      writeLock.unlock();
+    }
+    return resource;
+  }
+
+  @Override
+  public T update(UpdateRequest<T> updateRequest) throws UnableToUpdateResourceException {
+    String id = updateRequest.getId();
+    T resource = updateRequest.getResource();
+    T original = updateRequest.getOriginal();
+    resource.setId(id);
+
+    Meta meta = resource.getMeta() != null ? resource.getMeta() : new Meta();
+    meta.setResourceType(resource.getResourceType());
+    meta.setCreated(original != null && original.getMeta() != null ? original.getMeta().getCreated() : null);
+    meta.setLastModified(LocalDateTime.now());
+    resource.setMeta(meta);
+
+    writeLock.lock();
+    try {
+      if (!segment.offsets.containsKey(id)) {
+        throw new UnableToUpdateResourceException(Status.NOT_FOUND, "Resource " + id + " not found");
+      }
+      put(id, resource);
+    } catch (IOException e) {
+      throw new UnableToUpdateResourceException(Status.INTERNAL_SERVER_ERROR, "Unable to store resource " + id, e);
+    } finally {
+      writeLock.unlock();
+    }
+    return resource;
+  }
+
+  @Override
+  public T get(String id) throws UnableToRetrieveResourceException {
+    if (id == null) {
+      return null;
+    }
+    Segment current = segment;
+    Integer offset = current.offsets.get(id);
+    if (offset == null) {
+      return null;
+    }
+    try {
+      return decode(current, offset);
+    } catch (IOException e) {
+      throw new UnableToRetrieveResourceException(Status.INTERNAL_SERVER_ERROR, "Unable to read resource " + id, e);
+    }
+  }
+
+  @Override
+  public void delete(String id) throws UnableToDeleteResourceException {
+    writeLock.lock();
+    try {
+      Segment current = segment;
+      Integer offset = current.offsets.get(id);
+      if (offset == null) {
+        throw new UnableToDeleteResourceException(Status.NOT_FOUND, "Resource " + id + " not found");
+      }
+      current.log.append(ResourceLog.DELETE, id, new byte[0]);
+      current.offsets.remove(id);
+      liveBytes -= current.log.sizeOf(offset);
+      afterWrite(current);
+    } catch (IOException e) {
+      throw new UnableToDeleteResourceException(Status.INTERNAL_SERVER_ERROR, "Unable to delete resource " + id, e);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  @Override
+  public boolean isOptimizedFilterSupported() {
+    // filters are evaluated by the FilterCompiler
+    return true;
+  }
+
+  @Override
+  public FilterResponse<T> find(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws UnableToRetrieveResourceException {
+    Predicate<T> predicate = compile(filter);
+    Segment current = segment;
+    List<T> matches = new ArrayList<>();
+    for (Map.Entry<String, Integer> entry : current.offsets.entrySet()) {
+      T resource;
+      try {
+        resource = decode(current, entry.getValue());
+      } catch (IOException e) {
+        throw new UnableToRetrieveResourceException(Status.INTERNAL_SERVER_ERROR, "Unable to read resource " + entry.getKey(), e);
+      }
+      if (predicate.test(resource)) {
+        matches.add(resource);
+      }
+    }
+
+    if (sortRequest != null && sortRequest.getSortBy() != null) {
+      matches.sort(ResourceOrdering.comparator(sortRequest, schema, registry));
+    }
+    return new FilterResponse<>(ResourceOrdering.page(matches, pageRequest), pageRequest, matches.size());
+  }
+
+  /**
+   * Streams the page of an unsorted request: the matches are found first,
+   * keeping only their offsets, and the resources of the page are decoded
+   * again while they are written. Sorted requests are left to
+   * <code>find</code>.
+   */
+  @Override
+  public StreamingFilterResponse<T> findStream(Filter filter, PageRequest pageRequest, SortRequest sortRequest) throws UnableToRetrieveResourceException {
+    if (sortRequest != null && sortRequest.getSortBy() != null) {
+      return null;
+    }
+    Predicate<T> predicate = compile(filter);
+
+    Segment current = segment;
+    List<Integer> matches = new ArrayList<>();
+    for (Map.Entry<String, Integer> entry : current.offsets.entrySet()) {
+      try {
+        if (predicate.test(decode(current, entry.getValue()))) {
+          matches.add(entry.getValue());
+        }
+      } catch (IOException e) {
+        throw new UnableToRetrieveResourceException(Status.INTERNAL_SERVER_ERROR, "Unable to read resource " + entry.getKey(), e);
+      }
+    }
+
+    Stream<T> page = ResourceOrdering.page(matches, pageRequest)
+                                     .stream()
+                                     .map(offset -> {
+                                       try {
+                                         return decode(current, offset);
+                                       } catch (IOException e) {
+                                         throw new UncheckedIOException(e);
+                                       }
+                                     });
+    return new StreamingFilterResponse<>(page, matches.size());
+  }
+
+  /**
+   * The resources replayed from the log, decoded while the stream is read.
+   */
+  @Override
+  public Stream<T> getStoredResources() {
+    Segment current = segment;
+    return current.offsets.values()
+                          .stream()
+                          .map(offset -> {
+                            try {
+                              return decode(current, offset);
+                            } catch (IOException e) {
+                              throw new UncheckedIOException(e);
+                            }
+                          });
+  }
+
+  @Override
+  public List<Class<? extends ScimExtension>> getExtensionList() throws UnableToRetrieveExtensionsException {
+    return extensions;
+  }
+
+  /**
+   * Writes a snapshot of the index.
+   */
+  public void snapshot() throws IOException {
+    IndexSnapshot snapshot;
+    writeLock.lock();
+    try {
+      Segment current = segment;
+      current.log.force();
+      snapshot = new IndexSnapshot(current.log.getGeneration(), current.log.getPosition(), new HashMap<>(current.offsets));
+      writesSinceSnapshot = 0;
+    } finally {
+      writeLock.unlock();
+    }
+    snapshot.write(directory.resolve(SNAPSHOT_FILE));
+  }
+
+  /**
+   * Copies the latest version of each resource to a log of the next
+   * generation and removes the current log.
+   */
+  public void compact() throws IOException {
+    writeLock.lock();
+    try {
+      Segment current = segment;
+      long generation = current.log.getGeneration() + 1;
+      Path path = logPath(generation);
+      Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+      int capacity = (int) Math.min(Integer.MAX_VALUE, Math.max(initialCapacity, ResourceLog.HEADER_SIZE + liveBytes));
+      Map<String, Integer> offsets = new HashMap<>();
+      int end;
+      try (ResourceLog compacted = ResourceLog.create(temporary, generation, capacity)) {
+        for (Map.Entry<String, Integer> entry : current.offsets.entrySet()) {
+          offsets.put(entry.getKey(), compacted.appendCopy(current.log, entry.getValue()));
+        }
+        compacted.force();
+        end = compacted.getPosition();
+      }
+      Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+
+      ResourceLog resourceLog = ResourceLog.open(path, capacity);
+      resourceLog.replay(end, record -> {
+      });
+      segment = new Segment(resourceLog, new ConcurrentHashMap<>(offsets));
+      writesSinceSnapshot = 0;
+      new IndexSnapshot(generation, resourceLog.getPosition(), offsets).write(directory.resolve(SNAPSHOT_FILE));
+
+      current.log.close();
+      Files.deleteIfExists(current.log.getPath());
+      log.info("Compacted {} into {}", current.log.getPath(), path);
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Stops the background maintenance, writes a snapshot and closes the log.
+   */
+  @Override
+  public void close() throws IOException {
+    if (maintenance != null) {
+      maintenance.shutdownNow();
+    }
+    writeLock.lock();
+    try {
+      snapshot();
+      segment.log.close();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  private void put(String id, T resource) throws IOException {
+    byte[] payload = codec.encode(resource);
+    Segment current = segment;
+    int offset = current.log.append(ResourceLog.PUT, id, payload);
+    Integer previous = current.offsets.put(id, offset);
+    if (previous != null) {
+      liveBytes -= current.log.sizeOf(previous);
+    }
+    liveBytes += current.log.sizeOf(offset);
+    afterWrite(current);
+  }
+
+  private void afterWrite(Segment current) {
+    writesSinceSnapshot++;
+    if (syncWrites) {
+      current.log.force();
+    }
+  }
+
+  private Predicate<T> compile(Filter filter) throws UnableToRetrieveResourceException {
+    try {
+      return filter != null && filter.getExpression() != null ? filterCompiler.compile(filter.getExpression(), schema) : resource -> true;
+    } catch (FilterParseException | AttributeDoesNotExistException e) {
+      throw new UnableToRetrieveResourceException(Status.BAD_REQUEST, e.getMessage(), e);
+    }
+  }
+
+  private T decode(Segment current, int offset) throws IOException {
+    LogRecord record = current.log.read(offset);
+    return codec.decode(record.getPayload());
+  }
+
+  private void maintain() {
+    try {
+      if (getGarbageRatio() > compactionThreshold) {
+        compact();
+      } else if (hasWritesSinceSnapshot()) {
+        snapshot();
+      }
+    } catch (IOException | RuntimeException e) {
+      log.error("Maintenance of the log store in " + directory + " failed", e);
+    }
+  }
+
+  private boolean hasWritesSinceSnapshot() {
+    writeLock.lock();
+    try {
+      return writesSinceSnapshot > 0;
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Opens the log of the highest generation in the directory, removing older
+   * ones left behind by an interrupted compaction, or creates the first one.
+   */
+  private ResourceLog openLatestLog() throws IOException {
+    long latest = 0;
+    List<Path> stale = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "resources-*")) {
+      for (Path file : files) {
+        Matcher matcher = LOG_FILE.matcher(file.getFileName().toString());
+        if (matcher.matches()) {
+          long generation = Long.parseLong(matcher.group(1));
+          if (generation > latest) {
+            if (latest > 0) {
+              stale.add(logPath(latest));
+            }
+            latest = generation;
+          } else {
+            stale.add(file);
+          }
+        } else {
+          stale.add(file);
+        }
+      }
+    }
+    for (Path file : stale) {
+      log.info("Removing stale log file {}", file);
+      Files.deleteIfExists(file);
+    }
+    return latest > 0 ? ResourceLog.open(logPath(latest), initialCapacity) : ResourceLog.create(logPath(1), 1, initialCapacity);
+  }
+
+  private Path logPath(long generation) {
+    return directory.resolve("resources-" + generation + ".log");
+  }
+
+  /**
+   * A log with the index of its live records, replaced as a whole by a
+   * compaction.
+   */
+  private static final class Segment {
+
+    final ResourceLog log;
+
+    final ConcurrentHashMap<String, Integer> offsets;
+
+    Segment(ResourceLog log, ConcurrentHashMap<String, Integer> offsets) {
+      this.log = log;
+      this.offsets = offsets;
+    }
+  }
+
+  public static class Builder<T extends ScimResource> {
+
+    private final Class<T> resourceClass;
+
+    private final Registry registry;
+
+    private final Schema schema;
+
+    private final Path directory;
+
+    private final List<Class<? extends ScimExtension>> extensions = new ArrayList<>();
+
+    private int initialCapacity = DEFAULT_INITIAL_CAPACITY;
+
+    private boolean syncWrites;
+
+    private long maintenanceIntervalSeconds = DEFAULT_MAINTENANCE_INTERVAL_SECONDS;
+
+    private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    private Builder(Class<T> resourceClass, Registry registry, Path directory) {
+      ScimResourceType scimResourceType = resourceClass.getAnnotation(ScimResourceType.class);
+      if (scimResourceType == null) {
+        throw new IllegalArgumentException(resourceClass.getName() + " is not annotated with @ScimResourceType");
+      }
+      Schema resourceSchema = registry.getSchema(scimResourceType.schema());
+      if (resourceSchema == null) {
+        throw new IllegalArgumentException("No schema registered for " + scimResourceType.schema());
+      }
+      this.resourceClass = resourceClass;
+      this.registry = registry;
+      this.schema = resourceSchema;
+      this.directory = directory;
+    }
+
+    public Builder<T> extension(Class<? extends ScimExtension> extension) {
+      extensions.add(extension);
+      return this;
+    }
+
+    /**
+     * Sets the initial size of the mapping, it doubles whenever it's full.
+     */
+    public Builder<T> initialCapacity(int initialCapacity) {
+      if (initialCapacity < ResourceLog.HEADER_SIZE) {
+        throw new IllegalArgumentException("initialCapacity must be at least " + ResourceLog.HEADER_SIZE);
+      }
+      this.initialCapacity = initialCapacity;
+      return this;
+    }
+
+    /**
+     * Flushes the log to disk after every write.
+     */
+    public Builder<T> syncWrites(boolean syncWrites) {
+      this.syncWrites = syncWrites;
+      return this;
+    }
+
+    /**
+     * Sets how often snapshots are written and the log is checked for
+     * compaction, 0 disables the background maintenance.
+     */
+    public Builder<T> maintenanceInterval(long interval, TimeUnit unit) {
+      this.maintenanceIntervalSeconds = unit.toSeconds(interval);
+      return this;
+    }
+
+    /**
+     * Sets the share of garbage in the log that triggers a compaction.
+     */
+    public Builder<T> compactionThreshold(double compactionThreshold) {
+      this.compactionThreshold = compactionThreshold;
+      return this;
+    }
+
+    /**
+     * Opens the log in the directory, creating it if there is none.
+     */
+    public LogStoreProvider<T> build() throws IOException {
+      return new LogStoreProvider<>(this);
+    }
+  }
+}
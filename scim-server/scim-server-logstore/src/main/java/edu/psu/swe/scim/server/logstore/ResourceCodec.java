@@ -0,0 +1,75 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.logstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.introspect.AnnotationIntrospectorPair;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+
+import edu.psu.swe.scim.spec.resources.ScimResource;
+
+/**
+ * Encodes resources as Smile, the binary form of their JSON representation,
+ * so the log holds what the JSON endpoints would return in fewer bytes.
+ */
+final class ResourceCodec<T extends ScimResource> {
+
+  private final ObjectReader reader;
+
+  private final ObjectWriter writer;
+
+  ResourceCodec(Class<T> resourceClass) {
+    ObjectMapper objectMapper = new ObjectMapper(new SmileFactory());
+    objectMapper.registerModule(new JaxbAnnotationModule());
+
+    AnnotationIntrospector jaxbIntrospector = new JaxbAnnotationIntrospector(objectMapper.getTypeFactory());
+    AnnotationIntrospector jacksonIntrospector = new JacksonAnnotationIntrospector();
+    objectMapper.setAnnotationIntrospector(new AnnotationIntrospectorPair(jacksonIntrospector, jaxbIntrospector));
+    objectMapper.setSerializationInclusion(Include.NON_NULL);
+    objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    this.reader = objectMapper.readerFor(resourceClass);
+    this.writer = objectMapper.writerFor(resourceClass);
+  }
+
+  byte[] encode(T resource) throws IOException {
+    return writer.writeValueAsBytes(resource);
+  }
+
+  /**
+   * Decodes a resource directly from a view of the log.
+   */
+  T decode(ByteBuffer payload) throws IOException {
+    return reader.readValue(new ByteBufferBackedInputStream(payload.duplicate()));
+  }
+}
@@ -0,0 +1,332 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.logstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import lombok.Value;
+
+/**
+ * An append-only file of resource versions, mapped into memory.
+ * 
+ * The file starts with a header holding a magic number, the format version
+ * and the generation of the log, compaction writes the live records to a log
+ * of the next generation. Each record is
+ * 
+ * <pre>
+ * int    length of the body
+ * int    CRC32 of the body
+ * byte   PUT or DELETE
+ * short  length of the id
+ * byte[] id (UTF-8)
+ * byte[] encoded resource (empty for DELETE)
+ * </pre>
+ * 
+ * The mapping is doubled when an append doesn't fit, the unused tail of the
+ * file is zero so a record length of zero marks the end of the log. A torn
+ * record at the end fails its checksum and is overwritten by the next
+ * append. Pages may reach the disk out of order, so valid records written
+ * before a crash can follow the torn one; replay zeroes everything after the
+ * last valid record so they can't become reachable again once an append
+ * covers the tear.
+ * 
+ * Appends must be serialized by the caller, reads may run concurrently with
+ * them.
+ */
+final class ResourceLog implements Closeable {
+
+  static final int MAGIC = 0x5343494d;
+
+  static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 16;
+
+  static final int RECORD_HEADER_SIZE = 8;
+
+  static final byte PUT = 1;
+
+  static final byte DELETE = 2;
+
+  private final Path path;
+
+  private final FileChannel channel;
+
+  private final long generation;
+
+  private volatile MappedByteBuffer buffer;
+
+  private int position;
+
+  private ResourceLog(Path path, FileChannel channel, MappedByteBuffer buffer, long generation) {
+    this.path = path;
+    this.channel = channel;
+    this.buffer = buffer;
+    this.generation = generation;
+    this.position = HEADER_SIZE;
+  }
+
+  /**
+   * Creates an empty log, replacing any file at the path.
+   */
+  static ResourceLog create(Path path, long generation, int capacity) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, Math.max(capacity, HEADER_SIZE));
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(4, VERSION);
+      buffer.putLong(8, generation);
+      return new ResourceLog(path, channel, buffer, generation);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Opens an existing log, the position is at the start of the records until
+   * the log is replayed.
+   */
+  static ResourceLog open(Path path, int capacity) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      long size = channel.size();
+      if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+        throw new IOException("Invalid log file size " + size + " of " + path);
+      }
+      MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, Math.max(size, capacity));
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+        throw new IOException(path + " is not a resource log");
+      }
+      return new ResourceLog(path, channel, buffer, buffer.getLong(8));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  Path getPath() {
+    return path;
+  }
+
+  long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * @return the offset the next record will be appended at
+   */
+  int getPosition() {
+    return position;
+  }
+
+  /**
+   * Reads the records from an offset to the end of the log, moves the
+   * position after the last valid one and zeroes the rest of the file.
+   * 
+   * @return the number of records read
+   */
+  int replay(int from, Consumer<LogRecord> consumer) {
+    int offset = from;
+    int count = 0;
+    LogRecord record;
+    while ((record = readValid(offset)) != null) {
+      consumer.accept(record);
+      offset += record.getSize();
+      count++;
+    }
+    position = offset;
+    if (clear(offset)) {
+      buffer.force();
+    }
+    return count;
+  }
+
+  /**
+   * Appends a record.
+   * 
+   * @return the offset of the record
+   */
+  int append(byte type, String id, byte[] payload) throws IOException {
+    byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+    if (idBytes.length > Short.MAX_VALUE) {
+      throw new IOException("The id " + id + " is too long");
+    }
+    int bodyLength = 3 + idBytes.length + payload.length;
+    int offset = reserve(RECORD_HEADER_SIZE + bodyLength);
+
+    ByteBuffer view = buffer.duplicate();
+    view.position(offset + RECORD_HEADER_SIZE);
+    view.put(type);
+    view.putShort((short) idBytes.length);
+    view.put(idBytes);
+    view.put(payload);
+    finish(view, offset, bodyLength);
+    return offset;
+  }
+
+  /**
+   * Appends a copy of a record of another log.
+   * 
+   * @return the offset of the copy
+   */
+  int appendCopy(ResourceLog source, int sourceOffset) throws IOException {
+    ByteBuffer sourceView = source.buffer.duplicate();
+    int bodyLength = sourceView.getInt(sourceOffset);
+    int offset = reserve(RECORD_HEADER_SIZE + bodyLength);
+
+    sourceView.limit(sourceOffset + RECORD_HEADER_SIZE + bodyLength);
+    sourceView.position(sourceOffset);
+    ByteBuffer view = buffer.duplicate();
+    view.position(offset);
+    view.put(sourceView);
+    position = offset + RECORD_HEADER_SIZE + bodyLength;
+    return offset;
+  }
+
+  /**
+   * Reads the record at an offset returned by an append or a replay. The
+   * payload of the record is a view of the mapped file.
+   */
+  LogRecord read(int offset) throws IOException {
+    LogRecord record = readValid(offset);
+    if (record == null) {
+      throw new IOException("No valid record at offset " + offset + " of " + path);
+    }
+    return record;
+  }
+
+  /**
+   * @return the size of the record at an offset returned by an append or a
+   *         replay
+   */
+  int sizeOf(int offset) {
+    return RECORD_HEADER_SIZE + buffer.getInt(offset);
+  }
+
+  void force() {
+    buffer.force();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Zeroes the mapping from an offset to its end.
+   * 
+   * @return true if anything was cleared
+   */
+  private boolean clear(int from) {
+    ByteBuffer view = buffer.duplicate();
+    int capacity = view.capacity();
+    boolean cleared = false;
+    int i = from;
+    for (; i + Long.BYTES <= capacity; i += Long.BYTES) {
+      if (view.getLong(i) != 0) {
+        view.putLong(i, 0);
+        cleared = true;
+      }
+    }
+    for (; i < capacity; i++) {
+      if (view.get(i) != 0) {
+        view.put(i, (byte) 0);
+        cleared = true;
+      }
+    }
+    return cleared;
+  }
+
+  private LogRecord readValid(int offset) {
+    ByteBuffer view = buffer.duplicate();
+    if (offset < HEADER_SIZE || offset > view.capacity() - RECORD_HEADER_SIZE) {
+      return null;
+    }
+    int bodyLength = view.getInt(offset);
+    if (bodyLength < 3 || bodyLength > view.capacity() - offset - RECORD_HEADER_SIZE) {
+      return null;
+    }
+    int bodyStart = offset + RECORD_HEADER_SIZE;
+    view.limit(bodyStart + bodyLength);
+    view.position(bodyStart);
+    CRC32 crc = new CRC32();
+    crc.update(view.slice());
+    if ((int) crc.getValue() != view.getInt(offset + 4)) {
+      return null;
+    }
+
+    byte type = view.get();
+    int idLength = view.getShort();
+    if (idLength < 0 || idLength > view.remaining()) {
+      return null;
+    }
+    byte[] idBytes = new byte[idLength];
+    view.get(idBytes);
+    return new LogRecord(offset, type, new String(idBytes, StandardCharsets.UTF_8), view.slice().asReadOnlyBuffer(), RECORD_HEADER_SIZE + bodyLength);
+  }
+
+  /**
+   * Makes room for a record at the position, growing the mapping if needed.
+   * 
+   * @return the offset of the record
+   */
+  private int reserve(int size) throws IOException {
+    long end = (long) position + size;
+    if (end > buffer.capacity()) {
+      if (end > Integer.MAX_VALUE) {
+        throw new IOException("The log " + path + " is full");
+      }
+      long capacity = Math.min(Math.max((long) buffer.capacity() * 2, end), Integer.MAX_VALUE);
+      buffer = channel.map(MapMode.READ_WRITE, 0, capacity);
+    }
+    return position;
+  }
+
+  private void finish(ByteBuffer view, int offset, int bodyLength) {
+    ByteBuffer body = view.duplicate();
+    body.limit(offset + RECORD_HEADER_SIZE + bodyLength);
+    body.position(offset + RECORD_HEADER_SIZE);
+    CRC32 crc = new CRC32();
+    crc.update(body);
+    view.putInt(offset + 4, (int) crc.getValue());
+    view.putInt(offset, bodyLength);
+    position = offset + RECORD_HEADER_SIZE + bodyLength;
+  }
+
+  @Value
+  static class LogRecord {
+    int offset;
+    byte type;
+    String id;
+    ByteBuffer payload;
+    int size;
+  }
+}
@@ -0,0 +1,353 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.server.logstore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.core.Response.Status;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import edu.psu.swe.scim.common.ScimUtils;
+import edu.psu.swe.scim.server.exception.UnableToCreateResourceException;
+import edu.psu.swe.scim.server.exception.UnableToDeleteResourceException;
+import edu.psu.swe.scim.server.provider.ProviderRegistry;
+import edu.psu.swe.scim.server.provider.StreamingFilterResponse;
+import edu.psu.swe.scim.server.provider.UpdateRequest;
+import edu.psu.swe.scim.server.schema.Registry;
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import edu.psu.swe.scim.spec.protocol.filter.FilterResponse;
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+import edu.psu.swe.scim.spec.protocol.search.PageRequest;
+import edu.psu.swe.scim.spec.protocol.search.SortOrder;
+import edu.psu.swe.scim.spec.protocol.search.SortRequest;
+import edu.psu.swe.scim.spec.resources.BaseResource;
+import edu.psu.swe.scim.spec.resources.Email;
+import edu.psu.swe.scim.spec.resources.Name;
+import edu.psu.swe.scim.spec.resources.ScimUser;
+import edu.psu.swe.scim.spec.schema.Schema;
+
+public class LogStoreProviderTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Registry registry;
+
+  private Path directory;
+
+  private List<LogStoreProvider<ScimUser>> providers = new ArrayList<>();
+
+  @Before
+  public void setup() throws Exception {
+    registry = Mockito.mock(Registry.class);
+    Schema scimUserSchema = ProviderRegistry.generateSchema(ScimUser.class, ScimUtils.getFieldsUpTo(ScimUser.class, BaseResource.class));
+    Mockito.when(registry.getSchema(ScimUser.SCHEMA_URI)).thenReturn(scimUserSchema);
+    directory = temporaryFolder.getRoot().toPath().resolve("users");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (LogStoreProvider<ScimUser> provider : providers) {
+      try {
+        provider.close();
+      } catch (Exception e) {
+        // already closed
+      }
+    }
+  }
+
+  @Test
+  public void testCreateAndGet() throws Exception {
+    LogStoreProvider<ScimUser> provider = open();
+
+    ScimUser created = provider.create(user(null, "bjensen", "bjensen@example.com"));
+    ScimUser stored = provider.get(created.getId());
+
+    assertThat(stored).isNotSameAs(created);
+    assertThat(stored.getId()).isEqualTo(created.getId());
+    assertThat(stored.getUserName()).isEqualTo("bjensen");
+    assertThat(stored.getName().getGivenName()).isEqualTo("Barbara");
+    assertThat(stored.getEmails()).extracting("value").containsExactly("bjensen@example.com");
+    assertThat(stored.getMeta().getCreated()).isEqualTo(created.getMeta().getCreated());
+    assertThat(provider.get("missing")).isNull();
+  }
+
+  @Test
+  public void testUpdateAndDelete() throws Exception {
+    LogStoreProvider<ScimUser> provider = open();
+    ScimUser original = provider.create(user("1", "bjensen", null));
+
+    UpdateRequest<ScimUser> updateRequest = new UpdateRequest<>(registry);
+    updateRequest.initWithResource("1", original, user("1", "barbara", null));
+    provider.update(updateRequest);
+
+    assertThat(provider.get("1").getUserName()).isEqualTo("barbara");
+    assertThat(provider.get("1").getMeta().getCreated()).isEqualTo(original.getMeta().getCreated());
+
+    provider.delete("1");
+    assertThat(provider.get("1")).isNull();
+    assertThat(provider.size()).isEqualTo(0);
+    try {
+      provider.delete("1");
+      fail("Expected UnableToDeleteResourceException");
+    } catch (UnableToDeleteResourceException e) {
+      assertThat(e.getStatus()).isEqualTo(Status.NOT_FOUND);
+    }
+  }
+
+  @Test
+  public void testCreateDuplicateId() throws Exception {
+    LogStoreProvider<ScimUser> provider = open();
+    provider.create(user("1", "bjensen", null));
+
+    try {
+      provider.create(user("1", "jsmith", null));
+      fail("Expected UnableToCreateResourceException");
+    } catch (UnableToCreateResourceException e) {
+      assertThat(e.getStatus()).isEqualTo(Status.CONFLICT);
+    }
+  }
+
+  @Test
+  public void testFind() throws Exception {
+    LogStoreProvider<ScimUser> provider = open();
+    provider.create(user("1", "bjensen", "bjensen@example.com"));
+    provider.create(user("2", "jsmith", "jsmith@example.org"));
+    provider.create(user("3", "adoe", "adoe@example.com"));
+
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference("userName"));
+    sortRequest.setSortOrder(SortOrder.ASCENDING);
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setStartIndex(1);
+    pageRequest.setCount(1);
+
+    FilterResponse<ScimUser> response = provider.find(new Filter("emails.value ew \"example.com\""), pageRequest, sortRequest);
+
+    assertThat(ids(response)).containsExactly("3");
+    assertThat(response.getTotalResults()).isEqualTo(2);
+  }
+
+  @Test
+  public void testFindStream() throws Exception {
+    LogStoreProvider<ScimUser> provider = open();
+    for (int i = 0; i < 10; i++) {
+      provider.create(user(Integer.toString(i), "user" + i, i % 2 == 0 ? "user" + i + "@example.com" : null));
+    }
+    PageRequest pageRequest = new PageRequest();
+    pageRequest.setStartIndex(2);
+    pageRequest.setCount(2);
+
+    try (StreamingFilterResponse<ScimUser> response = provider.findStream(new Filter("emails pr"), pageRequest, null)) {
+      assertThat(response.getTotalResults()).isEqualTo(5);
+      List<String> ids = response.getResources().map(ScimUser::getId).collect(Collectors.toList());
+      assertThat(ids).hasSize(2);
+      assertThat(ids).allMatch(id -> Integer.parseInt(id) % 2 == 0);
+    }
+
+    SortRequest sortRequest = new SortRequest();
+    sortRequest.setSortBy(new AttributeReference("userName"));
+    assertThat(provider.findStream(null, pageRequest, sortRequest)).isNull();
+  }
+
+  @Test
+  public void testReopenReplaysLog() throws Exception {
+    LogStoreProvider<ScimUser> provider = open();
+    provider.create(user("1", "bjensen", null));
+    provider.create(user("2", "jsmith", null));
+    provider.delete("2");
+
+    // not closed, as after a crash
+    LogStoreProvider<ScimUser> reopened = open();
+
+    assertThat(reopened.getReplayedRecords()).isEqualTo(3);
+    assertThat(reopened.size()).isEqualTo(1);
+    assertThat(reopened.get("1").getUserName()).isEqualTo("bjensen");
+    assertThat(reopened.get("2")).isNull();
+  }
+
+  @Test
+  public void testReopenReplaysOnlyTailAfterSnapshot() throws Exception {
+    LogStoreProvider<ScimUser> provider = open();
+    for (int i = 0; i < 10; i++) {
+      provider.create(user(Integer.toString(i), "user" + i, null));
+    }
+    provider.snapshot();
+    provider.create(user("10", "user10", null));
+    provider.delete("0");
+
+    LogStoreProvider<ScimUser> reopened = open();
+
+    assertThat(reopened.getReplayedRecords()).isEqualTo(2);
+    assertThat(reopened.size()).isEqualTo(10);
+    assertThat(reopened.get("0")).isNull();
+    assertThat(reopened.get("10").getUserName()).isEqualTo("user10");
+  }
+
+  @Test
+  public void testCloseWritesSnapshot() throws Exception {
+    LogStoreProvider<ScimUser> provider = open();
+    provider.create(user("1", "bjensen", null));
+    provider.close();
+
+    LogStoreProvider<ScimUser> reopened = open();
+
+    assertThat(reopened.getReplayedRecords()).isEqualTo(0);
+    assertThat(reopened.get("1").getUserName()).isEqualTo("bjensen");
+  }
+
+  @Test
+  public void testTornRecordIsIgnored() throws Exception {
+    LogStoreProvider<ScimUser> provider = open();
+    provider.create(user("1", "bjensen", null));
+    int end = provider.getLogPosition();
+    try (RandomAccessFile file = new RandomAccessFile(provider.getLogPath().toFile(), "rw")) {
+      file.seek(end);
+      file.writeInt(40);
+      file.writeInt(12345);
+      file.write(new byte[] {ResourceLog.PUT, 0, 1, 'x'});
+    }
+
+    LogStoreProvider<ScimUser> reopened = open();
+    assertThat(reopened.getReplayedRecords()).isEqualTo(1);
+    assertThat(reopened.getLogPosition()).isEqualTo(end);
+
+    reopened.create(user("2", "jsmith", null));
+    assertThat(open().get("2").getUserName()).isEqualTo("jsmith");
+  }
+
+  @Test
+  public void testRecordsAfterTornRecordAreNotReplayed() throws Exception {
+    LogStoreProvider<ScimUser> provider = open();
+    provider.create(user("1", "bjensen", null));
+    int torn = provider.getLogPosition();
+    provider.delete("1");
+    provider.create(user("2", "jsmith", null));
+    // the delete is lost in the crash but the page of the create after it
+    // was written
+    try (RandomAccessFile file = new RandomAccessFile(provider.getLogPath().toFile(), "rw")) {
+      file.seek(torn + 4);
+      file.writeInt(12345);
+    }
+
+    LogStoreProvider<ScimUser> reopened = open();
+    assertThat(reopened.getReplayedRecords()).isEqualTo(1);
+    assertThat(reopened.get("2")).isNull();
+    // a delete of the same id has the size of the torn record, so the stale
+    // create would follow it if it were still in the file
+    reopened.delete("1");
+    assertThat(reopened.getLogPosition()).isEqualTo(torn + ResourceLog.RECORD_HEADER_SIZE + 4);
+
+    LogStoreProvider<ScimUser> restarted = open();
+    assertThat(restarted.getReplayedRecords()).isEqualTo(2);
+    assertThat(restarted.get("1")).isNull();
+    assertThat(restarted.get("2")).isNull();
+  }
+
+  @Test
+  public void testGrowsMapping() throws Exception {
+    LogStoreProvider<ScimUser> provider = open(256);
+    for (int i = 0; i < 100; i++) {
+      provider.create(user(Integer.toString(i), "user" + i, "user" + i + "@example.com"));
+    }
+
+    assertThat(Files.size(provider.getLogPath())).isGreaterThan(256);
+    assertThat(provider.get("0").getUserName()).isEqualTo("user0");
+    assertThat(open(256).get("99").getUserName()).isEqualTo("user99");
+  }
+
+  @Test
+  public void testCompact() throws Exception {
+    LogStoreProvider<ScimUser> provider = open();
+    ScimUser original = provider.create(user("1", "bjensen", null));
+    provider.create(user("2", "jsmith", null));
+    for (int i = 0; i < 10; i++) {
+      UpdateRequest<ScimUser> updateRequest = new UpdateRequest<>(registry);
+      updateRequest.initWithResource("1", original, user("1", "bjensen" + i, null));
+      provider.update(updateRequest);
+    }
+    provider.create(user("3", "adoe", null));
+    provider.delete("3");
+    Path logPath = provider.getLogPath();
+    assertThat(provider.getGarbageRatio()).isGreaterThan(0.5);
+
+    provider.compact();
+
+    assertThat(provider.getGarbageRatio()).isEqualTo(0.0);
+    assertThat(Files.exists(logPath)).isFalse();
+    assertThat(provider.getLogPath().getFileName().toString()).isEqualTo("resources-2.log");
+    assertThat(provider.get("1").getUserName()).isEqualTo("bjensen9");
+    provider.create(user("4", "new", null));
+
+    LogStoreProvider<ScimUser> reopened = open();
+    assertThat(reopened.getReplayedRecords()).isEqualTo(1);
+    assertThat(reopened.size()).isEqualTo(3);
+    assertThat(reopened.get("2").getUserName()).isEqualTo("jsmith");
+  }
+
+  private LogStoreProvider<ScimUser> open() throws Exception {
+    return open(LogStoreProvider.DEFAULT_INITIAL_CAPACITY);
+  }
+
+  private LogStoreProvider<ScimUser> open(int initialCapacity) throws Exception {
+    LogStoreProvider<ScimUser> provider = LogStoreProvider.builder(ScimUser.class, registry, directory)
+                                                          .initialCapacity(initialCapacity)
+                                                          .maintenanceInterval(0, TimeUnit.SECONDS)
+                                                          .build();
+    providers.add(provider);
+    return provider;
+  }
+
+  private static List<String> ids(FilterResponse<ScimUser> response) {
+    return response.getResources().stream().map(ScimUser::getId).collect(Collectors.toList());
+  }
+
+  private static ScimUser user(String id, String userName, String email) {
+    ScimUser user = new ScimUser();
+    user.setId(id);
+    user.setUserName(userName);
+    Name name = new Name();
+    name.setGivenName("Barbara");
+    user.setName(name);
+    if (email != null) {
+      Email emailAddress = new Email();
+      emailAddress.setValue(email);
+      user.setEmails(new ArrayList<>(Collections.singletonList(emailAddress)));
+    }
+    return user;
+  }
+}
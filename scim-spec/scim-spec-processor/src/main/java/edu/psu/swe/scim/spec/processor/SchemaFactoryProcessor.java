@@ -0,0 +1,94 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.spec.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.FilerException;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.JavaFileObject;
+
+import edu.psu.swe.scim.spec.processor.SchemaFactoryWriter.UnsupportedSchemaException;
+
+/**
+ * Generates a <code>SchemaFactory</code> for every class annotated with
+ * <code>ScimResourceType</code> or <code>ScimExtensionType</code>, so that
+ * <code>ProviderRegistry</code> can build their schemas without scanning the
+ * classes when providers are registered.
+ * 
+ * Classes the reflective schema builder would reject get no factory and a
+ * note is printed instead; those classes keep failing at registration time
+ * with the same error as before.
+ */
+@SupportedAnnotationTypes({ SchemaFactoryWriter.SCIM_RESOURCE_TYPE, SchemaFactoryWriter.SCIM_EXTENSION_TYPE })
+public class SchemaFactoryProcessor extends AbstractProcessor {
+
+  private final Set<String> processed = new HashSet<>();
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (TypeElement annotation : annotations) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        if (element.getKind() == ElementKind.CLASS && processed.add(element.toString())) {
+          generate((TypeElement) element);
+        }
+      }
+    }
+    return false;
+  }
+
+  private void generate(TypeElement typeElement) {
+    SchemaFactoryWriter writer = new SchemaFactoryWriter(processingEnv.getElementUtils(), processingEnv.getTypeUtils(), typeElement);
+    String source;
+    try {
+      source = writer.write();
+    } catch (UnsupportedSchemaException e) {
+      processingEnv.getMessager().printMessage(Kind.NOTE, "No schema factory generated, the schema will be built by reflection: " + e.getMessage(), typeElement);
+      return;
+    }
+
+    try {
+      JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(writer.getFactoryName(), typeElement);
+      try (Writer out = sourceFile.openWriter()) {
+        out.write(source);
+      }
+    } catch (FilerException e) {
+      processingEnv.getMessager().printMessage(Kind.WARNING, "Schema factory " + writer.getFactoryName() + " was not generated: " + e.getMessage(), typeElement);
+    } catch (IOException e) {
+      processingEnv.getMessager().printMessage(Kind.ERROR, "Unable to write schema factory " + writer.getFactoryName() + ": " + e.getMessage(), typeElement);
+    }
+  }
+}
@@ -0,0 +1,499 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.spec.processor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Writes the source of the schema factory for one annotated class.
+ * 
+ * The generated code builds the same attributes that
+ * <code>ProviderRegistry.createAttributes</code> builds by reflection, quirks
+ * included, so the two must be changed together. Everything the reflective
+ * builder would reject or fail on is reported as an
+ * {@link UnsupportedSchemaException} and left to the reflective builder.
+ */
+class SchemaFactoryWriter {
+
+  static final String SCIM_RESOURCE_TYPE = "edu.psu.swe.scim.spec.annotation.ScimResourceType";
+  static final String SCIM_EXTENSION_TYPE = "edu.psu.swe.scim.spec.annotation.ScimExtensionType";
+
+  private static final String SCIM_ATTRIBUTE = "edu.psu.swe.scim.spec.annotation.ScimAttribute";
+  private static final String SCIM_TYPE = "edu.psu.swe.scim.spec.annotation.ScimType";
+  private static final String SCIM_RESOURCE_ID_REFERENCE = "edu.psu.swe.scim.spec.annotation.ScimResourceIdReference";
+  private static final String XML_ENUM_VALUE = "javax.xml.bind.annotation.XmlEnumValue";
+  private static final String BASE_RESOURCE = "edu.psu.swe.scim.spec.resources.BaseResource";
+  private static final String OBJECT = "java.lang.Object";
+
+  // Must match SchemaFactory.CLASS_NAME_SUFFIX, the processor can't depend on
+  // the module it generates code for
+  private static final String CLASS_NAME_SUFFIX = "_SchemaFactory";
+
+  private static final String COMPLEX = "COMPLEX";
+
+  // The reflective builder switches on these names, which differ for scalar
+  // fields (Class.toString()) and multi-valued ones (Class.getTypeName())
+  private static final Map<String, String> ATTRIBUTE_TYPES = new HashMap<>();
+
+  static {
+    ATTRIBUTE_TYPES.put("class java.lang.String", "STRING");
+    ATTRIBUTE_TYPES.put("class [C", "STRING");
+    ATTRIBUTE_TYPES.put("class [Ljava.lang.Character;", "STRING");
+    ATTRIBUTE_TYPES.put("int", "INTEGER");
+    ATTRIBUTE_TYPES.put("class java.lang.Integer", "INTEGER");
+    ATTRIBUTE_TYPES.put("float", "DECIMAL");
+    ATTRIBUTE_TYPES.put("class java.lang.Float", "DECIMAL");
+    ATTRIBUTE_TYPES.put("double", "DECIMAL");
+    ATTRIBUTE_TYPES.put("class java.lang.Double", "DECIMAL");
+    ATTRIBUTE_TYPES.put("boolean", "BOOLEAN");
+    ATTRIBUTE_TYPES.put("class java.lang.Boolean", "BOOLEAN");
+    ATTRIBUTE_TYPES.put("class [B", "BINARY");
+    ATTRIBUTE_TYPES.put("class java.util.Date", "DATE_TIME");
+    ATTRIBUTE_TYPES.put("class java.time.LocalDateTime", "DATE_TIME");
+    ATTRIBUTE_TYPES.put("class java.time.LocalTime", "DATE_TIME");
+    ATTRIBUTE_TYPES.put("class java.time.LocalDate", "DATE_TIME");
+    ATTRIBUTE_TYPES.put("class edu.psu.swe.scim.spec.schema.ResourceReference$ReferenceType", "REFERENCE");
+  }
+
+  static class UnsupportedSchemaException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    UnsupportedSchemaException(String message) {
+      super(message);
+    }
+  }
+
+  private final Elements elements;
+  private final Types types;
+  private final TypeElement typeElement;
+  private final PackageElement packageElement;
+  private final String factorySimpleName;
+  private final TypeMirror collectionType;
+
+  private final Map<String, String> listMethods = new HashMap<>();
+  private final Set<String> inProgress = new HashSet<>();
+  private final StringBuilder methods = new StringBuilder();
+  private int methodCount;
+  private boolean usesTypeLookup;
+
+  SchemaFactoryWriter(Elements elements, Types types, TypeElement typeElement) {
+    this.elements = elements;
+    this.types = types;
+    this.typeElement = typeElement;
+    this.packageElement = elements.getPackageOf(typeElement);
+    this.collectionType = types.erasure(elements.getTypeElement("java.util.Collection").asType());
+
+    String binaryName = elements.getBinaryName(typeElement).toString();
+    String packageName = packageElement.getQualifiedName().toString();
+    this.factorySimpleName = (packageElement.isUnnamed() ? binaryName : binaryName.substring(packageName.length() + 1)) + CLASS_NAME_SUFFIX;
+  }
+
+  String getFactoryName() {
+    return packageElement.isUnnamed() ? factorySimpleName : packageElement.getQualifiedName() + "." + factorySimpleName;
+  }
+
+  String write() throws UnsupportedSchemaException {
+    AnnotationMirror resourceType = findAnnotation(typeElement, SCIM_RESOURCE_TYPE);
+    AnnotationMirror extensionType = findAnnotation(typeElement, SCIM_EXTENSION_TYPE);
+    Map<String, Object> resourceValues = resourceType != null ? values(resourceType) : null;
+    Map<String, Object> extensionValues = extensionType != null ? values(extensionType) : null;
+
+    String urn = extensionValues != null ? (String) extensionValues.get("id") : (String) resourceValues.get("schema");
+    List<VariableElement> fields = fieldsUpTo(typeElement, resourceValues != null ? BASE_RESOURCE : OBJECT);
+    String attributes = listMethod("schema", fields);
+
+    String id = resourceValues != null ? (String) resourceValues.get("schema") : (String) extensionValues.get("id");
+    String description = (String) (resourceValues != null ? resourceValues : extensionValues).get("description");
+    String name = (String) (resourceValues != null ? resourceValues : extensionValues).get("name");
+
+    StringBuilder source = new StringBuilder();
+    source.append("// Generated by ").append(SchemaFactoryProcessor.class.getName()).append(" from ").append(typeElement.getQualifiedName()).append(", do not edit.\n");
+    if (!packageElement.isUnnamed()) {
+      source.append("package ").append(packageElement.getQualifiedName()).append(";\n\n");
+    }
+    source.append("import java.lang.reflect.Field;\n");
+    source.append("import java.util.ArrayList;\n");
+    source.append("import java.util.Arrays;\n");
+    source.append("import java.util.HashSet;\n");
+    source.append("import java.util.List;\n\n");
+    source.append("import edu.psu.swe.scim.spec.schema.Schema;\n");
+    source.append("import edu.psu.swe.scim.spec.schema.Schema.Attribute;\n");
+    source.append("import edu.psu.swe.scim.spec.schema.Schema.Attribute.AddAction;\n");
+    source.append("import edu.psu.swe.scim.spec.schema.Schema.Attribute.Mutability;\n");
+    source.append("import edu.psu.swe.scim.spec.schema.Schema.Attribute.Returned;\n");
+    source.append("import edu.psu.swe.scim.spec.schema.Schema.Attribute.Type;\n");
+    source.append("import edu.psu.swe.scim.spec.schema.Schema.Attribute.Uniqueness;\n");
+    source.append("import edu.psu.swe.scim.spec.schema.SchemaFactory;\n\n");
+    source.append("public final class ").append(factorySimpleName).append(" implements SchemaFactory {\n\n");
+    source.append("  private static final String URN = ").append(literal(urn)).append(";\n\n");
+    source.append("  @Override\n");
+    source.append("  public Schema createSchema() throws ReflectiveOperationException {\n");
+    source.append("    Schema schema = new Schema();\n");
+    source.append("    schema.setAttributes(").append(attributes).append(");\n");
+    source.append("    schema.setId(").append(literal(id)).append(");\n");
+    source.append("    schema.setDescription(").append(literal(description)).append(");\n");
+    source.append("    schema.setName(").append(literal(name)).append(");\n");
+    source.append("    return schema;\n");
+    source.append("  }\n");
+    source.append(methods);
+    source.append("\n");
+    source.append("  private static Field field(Class<?> owner, String name) throws NoSuchFieldException {\n");
+    source.append("    Field field = owner.getDeclaredField(name);\n");
+    source.append("    field.setAccessible(true);\n");
+    source.append("    return field;\n");
+    source.append("  }\n");
+    if (usesTypeLookup) {
+      source.append("\n");
+      source.append("  private static Class<?> type(String name) throws ClassNotFoundException {\n");
+      source.append("    return Class.forName(name, false, ").append(factorySimpleName).append(".class.getClassLoader());\n");
+      source.append("  }\n");
+    }
+    source.append("}\n");
+
+    return source.toString();
+  }
+
+  /**
+   * Generates a method building the attributes of <code>fields</code> once per
+   * key and returns the expression calling it. Every call of the method builds
+   * new attributes, as every call of the reflective builder does.
+   */
+  private String listMethod(String key, List<VariableElement> fields) throws UnsupportedSchemaException {
+    String methodName = listMethods.get(key);
+    if (methodName != null) {
+      return methodName + "()";
+    }
+    if (!inProgress.add(key)) {
+      throw new UnsupportedSchemaException("the attributes of " + key + " contain themselves");
+    }
+    methodName = "attributes" + methodCount++;
+
+    StringBuilder body = new StringBuilder();
+    body.append("\n");
+    body.append("  private static List<Attribute> ").append(methodName).append("() throws ReflectiveOperationException {\n");
+    body.append("    List<Attribute> attributes = new ArrayList<>();\n");
+    body.append("    Attribute attribute;\n");
+    for (VariableElement field : fields) {
+      writeAttribute(body, field);
+    }
+    body.append("    return attributes;\n");
+    body.append("  }\n");
+
+    methods.append(body);
+    inProgress.remove(key);
+    listMethods.put(key, methodName);
+    return methodName + "()";
+  }
+
+  private String subAttributes(boolean declaredOnly, TypeMirror type) throws UnsupportedSchemaException {
+    if (type.getKind() != TypeKind.DECLARED) {
+      return "new ArrayList<Attribute>()";
+    }
+    TypeElement element = (TypeElement) types.asElement(type);
+    String binaryName = elements.getBinaryName(element).toString();
+    if (declaredOnly) {
+      return listMethod("declared " + binaryName, declaredFields(element));
+    }
+    return listMethod(binaryName, fieldsUpTo(element, OBJECT));
+  }
+
+  private void writeAttribute(StringBuilder body, VariableElement field) throws UnsupportedSchemaException {
+    AnnotationMirror scimAttribute = findAnnotation(field, SCIM_ATTRIBUTE);
+    if (scimAttribute == null) {
+      return;
+    }
+    Map<String, Object> values = values(scimAttribute);
+    TypeElement owner = (TypeElement) field.getEnclosingElement();
+    String fieldName = field.getSimpleName().toString();
+    String name = (String) values.get("name");
+    String attributeName = name.isEmpty() ? fieldName : name;
+    boolean required = (Boolean) values.get("required");
+    TypeMirror type = field.asType();
+
+    if (type.getKind().isPrimitive() && !required) {
+      throw unsupported(field, "primitive attributes must be required");
+    }
+
+    Set<String> canonicalValues = canonicalValues(field, values);
+
+    String typeName;
+    boolean multiValued;
+    TypeMirror componentType;
+    if (type.getKind() == TypeKind.DECLARED && types.isAssignable(types.erasure(type), collectionType)) {
+      List<? extends TypeMirror> typeArguments = ((DeclaredType) type).getTypeArguments();
+      if (typeArguments.isEmpty() || typeArguments.get(0).getKind() != TypeKind.DECLARED || !((DeclaredType) typeArguments.get(0)).getTypeArguments().isEmpty()) {
+        throw unsupported(field, "the elements of a collection must be a non generic class");
+      }
+      componentType = typeArguments.get(0);
+      typeName = typeName(field, componentType);
+      multiValued = true;
+    } else if (type.getKind() == TypeKind.ARRAY) {
+      componentType = ((ArrayType) type).getComponentType();
+      typeName = typeName(field, componentType);
+      multiValued = true;
+    } else if (type.getKind() == TypeKind.DECLARED) {
+      componentType = type;
+      typeName = (types.asElement(type).getKind().isInterface() ? "interface " : "class ") + typeName(field, type);
+      multiValued = false;
+    } else if (type.getKind().isPrimitive()) {
+      componentType = type;
+      typeName = typeName(field, type);
+      multiValued = false;
+    } else {
+      throw unsupported(field, "unsupported field type " + type);
+    }
+
+    String attributeType = ATTRIBUTE_TYPES.getOrDefault(typeName, COMPLEX);
+
+    boolean scimResourceIdReference = findAnnotation(field, SCIM_RESOURCE_ID_REFERENCE) != null;
+    if (scimResourceIdReference && !"STRING".equals(attributeType)) {
+      throw unsupported(field, "ScimResourceIdReference fields must be strings");
+    }
+
+    List<String> referenceTypes = strings(values.get("referenceTypes"));
+    if (referenceTypes.isEmpty() || (referenceTypes.size() == 1 && referenceTypes.get(0).isEmpty())) {
+      referenceTypes = null;
+    }
+
+    boolean scimType = type.getKind() == TypeKind.DECLARED && findAnnotation(types.asElement(type), SCIM_TYPE) != null;
+
+    body.append("\n");
+    body.append("    attribute = new Attribute();\n");
+    body.append("    attribute.setField(field(").append(classLiteral(owner)).append(", ").append(literal(fieldName)).append("));\n");
+    body.append("    attribute.setName(").append(literal(attributeName)).append(");\n");
+    body.append("    attribute.setUrn(URN);\n");
+    body.append("    attribute.setCanonicalValues(").append(canonicalValues == null ? "null" : "new HashSet<String>(Arrays.asList(" + literals(canonicalValues) + "))").append(");\n");
+    body.append("    attribute.setCaseExact(").append(values.get("caseExact")).append(");\n");
+    body.append("    attribute.setDescription(").append(literal((String) values.get("description"))).append(");\n");
+    body.append("    attribute.setMultiValued(").append(multiValued).append(");\n");
+    body.append("    attribute.setType(Type.").append(attributeType).append(");\n");
+    if (scimResourceIdReference) {
+      body.append("    attribute.setScimResourceIdReference(true);\n");
+    }
+    body.append("    attribute.setMutability(Mutability.").append(values.get("mutability")).append(");\n");
+    body.append("    attribute.setReferenceTypes(").append(referenceTypes == null ? "null" : "Arrays.asList(" + literals(referenceTypes) + ")").append(");\n");
+    body.append("    attribute.setRequired(").append(required).append(");\n");
+    body.append("    attribute.setReturned(Returned.").append(values.get("returned")).append(");\n");
+    body.append("    attribute.setUniqueness(Uniqueness.").append(values.get("uniqueness")).append(");\n");
+    if (COMPLEX.equals(attributeType) || scimType) {
+      // A single valued complex attribute gets the declared fields of its type
+      // and then all of its fields, exactly like the reflective builder
+      if (!multiValued) {
+        body.append("    attribute.setSubAttributes(").append(subAttributes(true, type)).append(", AddAction.APPEND);\n");
+      }
+      body.append("    attribute.setSubAttributes(").append(subAttributes(false, componentType)).append(", AddAction.APPEND);\n");
+    }
+    body.append("    attributes.add(attribute);\n");
+  }
+
+  /**
+   * The canonical values the reflective builder derives from either the
+   * public fields of <code>canonicalValueEnum</code> or
+   * <code>canonicalValueList</code>.
+   */
+  private Set<String> canonicalValues(VariableElement field, Map<String, Object> values) throws UnsupportedSchemaException {
+    List<String> canonicalValueList = strings(values.get("canonicalValueList"));
+    List<VariableElement> enumFields = new ArrayList<>();
+    addPublicFields((TypeElement) types.asElement((TypeMirror) values.get("canonicalValueEnum")), enumFields);
+
+    List<String> canonicalTypes;
+    if (!enumFields.isEmpty()) {
+      if (canonicalValueList.isEmpty() || (canonicalValueList.size() != 1 && !canonicalValueList.get(0).isEmpty())) {
+        throw unsupported(field, "canonicalValueEnum and canonicalValueList can't both be set");
+      }
+      canonicalTypes = new ArrayList<>();
+      for (VariableElement enumField : enumFields) {
+        AnnotationMirror xmlEnumValue = findAnnotation(enumField, XML_ENUM_VALUE);
+        canonicalTypes.add(xmlEnumValue != null ? (String) values(xmlEnumValue).get("value") : enumField.getSimpleName().toString());
+      }
+    } else {
+      canonicalTypes = canonicalValueList;
+    }
+
+    if (canonicalTypes.isEmpty() || (canonicalTypes.size() == 1 && canonicalTypes.get(0).isEmpty())) {
+      return null;
+    }
+    return new TreeSet<>(canonicalTypes);
+  }
+
+  // Mirrors Class.getFields()
+  private void addPublicFields(TypeElement element, List<VariableElement> fields) {
+    for (VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+      if (field.getModifiers().contains(Modifier.PUBLIC)) {
+        fields.add(field);
+      }
+    }
+    for (TypeMirror superInterface : element.getInterfaces()) {
+      addPublicFields((TypeElement) types.asElement(superInterface), fields);
+    }
+    if (element.getSuperclass().getKind() == TypeKind.DECLARED) {
+      addPublicFields((TypeElement) types.asElement(element.getSuperclass()), fields);
+    }
+  }
+
+  // Mirrors Class.getTypeName() and, for primitives, Class.toString()
+  private String typeName(VariableElement field, TypeMirror type) throws UnsupportedSchemaException {
+    if (type.getKind().isPrimitive()) {
+      return type.getKind().name().toLowerCase();
+    } else if (type.getKind() == TypeKind.DECLARED) {
+      return elements.getBinaryName((TypeElement) types.asElement(type)).toString();
+    } else if (type.getKind() == TypeKind.ARRAY) {
+      return typeName(field, ((ArrayType) type).getComponentType()) + "[]";
+    }
+    throw unsupported(field, "unsupported field type " + type);
+  }
+
+  private static List<VariableElement> declaredFields(TypeElement element) {
+    return new ArrayList<>(ElementFilter.fieldsIn(element.getEnclosedElements()));
+  }
+
+  // Mirrors ScimUtils.getFieldsUpTo()
+  private List<VariableElement> fieldsUpTo(TypeElement element, String exclusiveParent) throws UnsupportedSchemaException {
+    List<VariableElement> fields = declaredFields(element);
+    TypeMirror superclass = element.getSuperclass();
+    if (superclass.getKind() == TypeKind.ERROR) {
+      throw new UnsupportedSchemaException("the superclass of " + element + " could not be resolved");
+    }
+    if (superclass.getKind() == TypeKind.DECLARED) {
+      TypeElement parent = (TypeElement) types.asElement(superclass);
+      if (!parent.getQualifiedName().contentEquals(exclusiveParent)) {
+        fields.addAll(fieldsUpTo(parent, exclusiveParent));
+      }
+    }
+    return fields;
+  }
+
+  private String classLiteral(TypeElement owner) {
+    for (Element element = owner; element.getKind() != ElementKind.PACKAGE; element = element.getEnclosingElement()) {
+      Set<Modifier> modifiers = element.getModifiers();
+      if (modifiers.contains(Modifier.PRIVATE) || (!modifiers.contains(Modifier.PUBLIC) && !elements.getPackageOf(element).equals(packageElement))) {
+        usesTypeLookup = true;
+        return "type(" + literal(elements.getBinaryName(owner).toString()) + ")";
+      }
+    }
+    return owner.getQualifiedName() + ".class";
+  }
+
+  private UnsupportedSchemaException unsupported(VariableElement field, String reason) {
+    return new UnsupportedSchemaException(field.getEnclosingElement() + "." + field.getSimpleName() + ": " + reason);
+  }
+
+  private static AnnotationMirror findAnnotation(Element element, String annotationName) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+        return annotation;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The values of an annotation, defaults included, keyed by name. Enum
+   * constants are returned as their names and class values as type mirrors.
+   */
+  private Map<String, Object> values(AnnotationMirror annotation) {
+    Map<String, Object> values = new HashMap<>();
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements.getElementValuesWithDefaults(annotation).entrySet()) {
+      Object value = entry.getValue().getValue();
+      if (value instanceof VariableElement) {
+        value = ((VariableElement) value).getSimpleName().toString();
+      }
+      values.put(entry.getKey().getSimpleName().toString(), value);
+    }
+    return values;
+  }
+
+  private static List<String> strings(Object value) {
+    List<String> strings = new ArrayList<>();
+    for (Object element : (List<?>) value) {
+      strings.add((String) ((AnnotationValue) element).getValue());
+    }
+    return strings;
+  }
+
+  private static String literals(Iterable<String> values) {
+    StringBuilder literals = new StringBuilder();
+    for (String value : values) {
+      if (literals.length() > 0) {
+        literals.append(", ");
+      }
+      literals.append(literal(value));
+    }
+    return literals.toString();
+  }
+
+  private static String literal(String value) {
+    if (value == null) {
+      return "null";
+    }
+    StringBuilder literal = new StringBuilder("\"");
+    for (char c : value.toCharArray()) {
+      switch (c) {
+      case '"':
+        literal.append("\\\"");
+        break;
+      case '\\':
+        literal.append("\\\\");
+        break;
+      case '\n':
+        literal.append("\\n");
+        break;
+      case '\r':
+        literal.append("\\r");
+        break;
+      case '\t':
+        literal.append("\\t");
+        break;
+      default:
+        if (c < 0x20 || c > 0x7e) {
+          literal.append(String.format("\\u%04x", (int) c));
+        } else {
+          literal.append(c);
+        }
+      }
+    }
+    return literal.append('"').toString();
+  }
+}
@@ -29,7 +29,10 @@ import org.antlr.v4.runtime.tree.ParseTreeWalker;
 
 import edu.psu.swe.scim.server.filter.FilterLexer;
 import edu.psu.swe.scim.server.filter.FilterParser;
+import edu.psu.swe.scim.spec.protocol.filter.FilterExpressionCache;
 import edu.psu.swe.scim.spec.protocol.filter.FilterParseException;
+import edu.psu.swe.scim.spec.protocol.filter.FilterParserType;
+import edu.psu.swe.scim.spec.protocol.filter.RecursiveDescentFilterParser;
 import edu.psu.swe.scim.spec.protocol.filter.ValuePathExpression;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
@@ -38,6 +41,8 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class PatchOperationPath {
 
+  private static final FilterExpressionCache<ValuePathExpression> EXPRESSION_CACHE = new FilterExpressionCache<>();
+
   private ValuePathExpression valuePathExpression;
 
   public PatchOperationPath() {
@@ -48,7 +53,22 @@ public class PatchOperationPath {
     parsePatchPath(patchPath);
   }
 
+  /**
+   * @return the cache shared by all patch paths parsed from a string
+   */
+  public static FilterExpressionCache<ValuePathExpression> getExpressionCache() {
+    return EXPRESSION_CACHE;
+  }
+
   protected void parsePatchPath(String patchPath) throws FilterParseException {
+    this.valuePathExpression = EXPRESSION_CACHE.get(patchPath, PatchOperationPath::parse);
+  }
+
+  private static ValuePathExpression parse(String patchPath) throws FilterParseException {
+    if (FilterParserType.getDefault() == FilterParserType.RECURSIVE_DESCENT) {
+      return RecursiveDescentFilterParser.parsePatchPath(patchPath);
+    }
+
     FilterLexer l = new FilterLexer(new ANTLRInputStream(patchPath));
     FilterParser p = new FilterParser(new CommonTokenStream(l));
     p.setBuildParseTree(true);
@@ -65,7 +85,7 @@ public class PatchOperationPath {
       PatchPathListener patchPathListener = new PatchPathListener();
       ParseTreeWalker.DEFAULT.walk(patchPathListener, tree);
 
-      this.valuePathExpression = patchPathListener.getValuePathExpression();
+      return patchPathListener.getValuePathExpression();
     } catch (IllegalStateException e) {
       throw new FilterParseException(e);
     }
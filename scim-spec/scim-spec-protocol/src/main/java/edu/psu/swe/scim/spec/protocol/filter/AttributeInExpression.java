@@ -0,0 +1,80 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.spec.protocol.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+import lombok.EqualsAndHashCode;
+
+/**
+ * Tests an attribute for equality with any of a set of values, the folded
+ * form of <code>x eq "a" or x eq "b" or ...</code> produced by the filter
+ * optimizer.
+ * 
+ * It extends {@link GroupExpression} holding the equivalent disjunction, so
+ * code that doesn't know about it still evaluates it correctly as a group,
+ * while evaluators that do can test set membership instead of running one
+ * comparison per value.
+ */
+@EqualsAndHashCode(callSuper = true)
+public class AttributeInExpression extends GroupExpression {
+
+  private final List<Object> compareValues;
+
+  public AttributeInExpression(AttributeReference attributePath, List<Object> compareValues) {
+    super(false, disjunction(attributePath, compareValues));
+    this.compareValues = Collections.unmodifiableList(new ArrayList<>(compareValues));
+  }
+
+  /**
+   * @return the attribute path of the disjunction's comparisons, which is
+   *         kept up to date by {@link #setAttributePath(String, String)}
+   */
+  public AttributeReference getAttributePath() {
+    FilterExpression expression = getFilterExpression();
+    while (expression instanceof LogicalExpression) {
+      expression = ((LogicalExpression) expression).getLeft();
+    }
+    return ((AttributeComparisonExpression) expression).getAttributePath();
+  }
+
+  public List<Object> getCompareValues() {
+    return compareValues;
+  }
+
+  private static FilterExpression disjunction(AttributeReference attributePath, List<Object> compareValues) {
+    if (compareValues.isEmpty()) {
+      throw new IllegalArgumentException("At least one compare value is required");
+    }
+    FilterExpression disjunction = null;
+    for (Object compareValue : compareValues) {
+      // every comparison gets its own reference because setAttributePath
+      // mutates them
+      AttributeReference reference = new AttributeReference(attributePath.getUrn(), attributePath.getAttributeName(), attributePath.getSubAttributeName());
+      FilterExpression comparison = new AttributeComparisonExpression(reference, CompareOperator.EQ, compareValue);
+      disjunction = disjunction == null ? comparison : new LogicalExpression(disjunction, LogicalOperator.OR, comparison);
+    }
+    return disjunction;
+  }
+}
@@ -151,7 +151,7 @@ public class ExpressionBuildingListener extends FilterBaseListener {
     return expressionStack.peek();
   }
 
-  private static Object parseJsonType(String jsonValue) {
+  static Object parseJsonType(String jsonValue) {
     if (jsonValue.startsWith("\"")) {
       String doubleEscaped = jsonValue.substring(1, jsonValue.length() - 1)
           // StringEscapeUtils follows the outdated JSON spec requiring "/" to be escaped, this could subtly break things
@@ -0,0 +1,174 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.spec.protocol.filter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+
+/**
+ * A size bounded, least recently used cache of parsed filter expressions keyed
+ * by the raw filter text.
+ * 
+ * The cached trees are never handed out. Callers always receive a deep copy,
+ * because {@link FilterExpression#setAttributePath(String, String)} mutates the
+ * {@link AttributeReference}s of the tree it is called on.
+ *
+ * @param <T> the type of expression the cached parser produces
+ */
+public class FilterExpressionCache<T extends FilterExpression> {
+
+  public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+  /**
+   * Filters longer than this are parsed but not cached so that a client can't
+   * fill the cache with a few very large strings.
+   */
+  public static final int MAXIMUM_KEY_LENGTH = 2048;
+
+  @FunctionalInterface
+  public interface Parser<T extends FilterExpression> {
+    T parse(String text) throws FilterParseException;
+  }
+
+  private final int maximumSize;
+
+  private final Map<String, T> expressions;
+
+  private final AtomicLong hitCount = new AtomicLong();
+
+  private final AtomicLong missCount = new AtomicLong();
+
+  public FilterExpressionCache() {
+    this(DEFAULT_MAXIMUM_SIZE);
+  }
+
+  public FilterExpressionCache(int maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("maximumSize must not be negative");
+    }
+    this.maximumSize = maximumSize;
+    this.expressions = new LinkedHashMap<String, T>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+        return size() > FilterExpressionCache.this.maximumSize;
+      }
+    };
+  }
+
+  /**
+   * Returns a private copy of the expression parsed from <code>text</code>,
+   * invoking <code>parser</code> only if the text has not been seen recently.
+   * Parse failures are not cached.
+   */
+  public T get(String text, Parser<T> parser) throws FilterParseException {
+    if (text == null || maximumSize == 0 || text.length() > MAXIMUM_KEY_LENGTH) {
+      missCount.incrementAndGet();
+      return parser.parse(text);
+    }
+
+    T cached;
+    synchronized (expressions) {
+      cached = expressions.get(text);
+    }
+    if (cached != null) {
+      hitCount.incrementAndGet();
+      return copy(cached);
+    }
+
+    missCount.incrementAndGet();
+    T parsed = parser.parse(text);
+    synchronized (expressions) {
+      expressions.put(text, copy(parsed));
+    }
+    return parsed;
+  }
+
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  public int size() {
+    synchronized (expressions) {
+      return expressions.size();
+    }
+  }
+
+  public void clear() {
+    synchronized (expressions) {
+      expressions.clear();
+    }
+    hitCount.set(0);
+    missCount.set(0);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends FilterExpression> T copy(T expression) {
+    return (T) copyExpression(expression);
+  }
+
+  /**
+   * Creates a deep copy of an expression tree. Compare values are immutable
+   * (strings, numbers and booleans) and are shared.
+   */
+  public static FilterExpression copyExpression(FilterExpression expression) {
+    if (expression == null) {
+      return null;
+    } else if (expression instanceof AttributeComparisonExpression) {
+      AttributeComparisonExpression comparison = (AttributeComparisonExpression) expression;
+      return new AttributeComparisonExpression(copyReference(comparison.getAttributePath()), comparison.getOperation(), comparison.getCompareValue());
+    } else if (expression instanceof AttributePresentExpression) {
+      return new AttributePresentExpression(copyReference(((AttributePresentExpression) expression).getAttributePath()));
+    } else if (expression instanceof LogicalExpression) {
+      LogicalExpression logical = (LogicalExpression) expression;
+      return new LogicalExpression(copyExpression(logical.getLeft()), logical.getOperator(), copyExpression(logical.getRight()));
+    } else if (expression instanceof AttributeInExpression) {
+      AttributeInExpression in = (AttributeInExpression) expression;
+      return new AttributeInExpression(copyReference(in.getAttributePath()), in.getCompareValues());
+    } else if (expression instanceof GroupExpression) {
+      GroupExpression group = (GroupExpression) expression;
+      return new GroupExpression(group.isNot(), copyExpression(group.getFilterExpression()));
+    } else if (expression instanceof ValuePathExpression) {
+      ValuePathExpression valuePath = (ValuePathExpression) expression;
+      return new ValuePathExpression(copyReference(valuePath.getAttributePath()), copyExpression(valuePath.getAttributeExpression()));
+    }
+    throw new IllegalArgumentException("Unable to copy filter expression of type " + expression.getClass().getName());
+  }
+
+  private static AttributeReference copyReference(AttributeReference attributeReference) {
+    if (attributeReference == null) {
+      return null;
+    }
+    return new AttributeReference(attributeReference.getUrn(), attributeReference.getAttributeName(), attributeReference.getSubAttributeName());
+  }
+}
@@ -0,0 +1,58 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.spec.protocol.filter;
+
+/**
+ * Selects the parser used for filters and PATCH paths. The recursive descent
+ * parser is the default, the ANTLR generated parser can be selected by
+ * setting the <code>edu.psu.swe.scim.filter.parser</code> system property to
+ * <code>antlr</code> or by calling {@link #setDefault(FilterParserType)}.
+ */
+public enum FilterParserType {
+
+  ANTLR,
+  RECURSIVE_DESCENT;
+
+  public static final String SYSTEM_PROPERTY = "edu.psu.swe.scim.filter.parser";
+
+  private static volatile FilterParserType defaultType = fromString(System.getProperty(SYSTEM_PROPERTY));
+
+  public static FilterParserType getDefault() {
+    return defaultType;
+  }
+
+  public static void setDefault(FilterParserType type) {
+    defaultType = type != null ? type : RECURSIVE_DESCENT;
+  }
+
+  static FilterParserType fromString(String value) {
+    if (value == null || value.trim().isEmpty()) {
+      return RECURSIVE_DESCENT;
+    }
+    String normalized = value.trim().toUpperCase().replace('-', '_');
+    for (FilterParserType type : values()) {
+      if (type.name().equals(normalized)) {
+        return type;
+      }
+    }
+    throw new IllegalArgumentException("Unknown filter parser type: " + value);
+  }
+}
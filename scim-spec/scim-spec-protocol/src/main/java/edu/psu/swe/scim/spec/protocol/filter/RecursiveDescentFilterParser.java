@@ -0,0 +1,498 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.spec.protocol.filter;
+
+import edu.psu.swe.scim.spec.protocol.attribute.AttributeReference;
+
+/**
+ * A single pass parser for SCIM filters and PATCH paths that accepts the same
+ * language as Filter.g4 and builds the same {@link FilterExpression} trees as
+ * {@link ExpressionBuildingListener}, without creating an ANTLR lexer, token
+ * stream or parse tree.
+ * 
+ * Like the grammar, <code>and</code> and <code>or</code> share a precedence
+ * and are left associative. Unlike the ANTLR parser, which stops at the first
+ * token it can't use, input other than trailing spaces after a complete
+ * expression is rejected.
+ */
+public final class RecursiveDescentFilterParser {
+
+  private final String text;
+
+  private final int length;
+
+  private int position;
+
+  private RecursiveDescentFilterParser(String text) {
+    this.text = text;
+    this.length = text.length();
+  }
+
+  public static FilterExpression parseFilter(String filter) throws FilterParseException {
+    if (filter == null) {
+      throw new FilterParseException("Failed to parse filter: null");
+    }
+    RecursiveDescentFilterParser parser = new RecursiveDescentFilterParser(filter);
+    FilterExpression expression = parser.expression(false);
+    parser.end();
+    return expression;
+  }
+
+  public static ValuePathExpression parsePatchPath(String patchPath) throws FilterParseException {
+    if (patchPath == null) {
+      throw new FilterParseException("Failed to parse patch path: null");
+    }
+    RecursiveDescentFilterParser parser = new RecursiveDescentFilterParser(patchPath);
+    ValuePathExpression expression = parser.patchPath();
+    parser.end();
+    return expression;
+  }
+
+  private ValuePathExpression patchPath() throws FilterParseException {
+    int start = position;
+    boolean hasSubAttribute = attributePath(false);
+    String attributePathText = text.substring(start, position);
+
+    if (peek() != '[') {
+      return new ValuePathExpression(new AttributeReference(attributePathText));
+    }
+    if (hasSubAttribute) {
+      throw error("a value filter can't follow a sub-attribute");
+    }
+    position++;
+    FilterExpression attributeExpression = expression(true);
+    expect(']');
+
+    String subAttributeName = null;
+    if (peek() == '.') {
+      position++;
+      int subAttributeStart = position;
+      attributeName();
+      subAttributeName = text.substring(subAttributeStart, position);
+    }
+
+    AttributeReference attributePath = new AttributeReference(attributePathText);
+    String urn = attributePath.getUrn();
+    String parentAttributeName = attributePath.getAttributeName();
+
+    attributeExpression.setAttributePath(urn, parentAttributeName);
+
+    if (subAttributeName != null) {
+      attributePath.setSubAttributeName(subAttributeName);
+    }
+    return new ValuePathExpression(attributePath, attributeExpression);
+  }
+
+  /**
+   * @param inValuePath true inside the brackets of a value path, where only
+   *          simple attribute names are allowed and value paths can't nest
+   */
+  private FilterExpression expression(boolean inValuePath) throws FilterParseException {
+    FilterExpression left = primary(inValuePath);
+
+    while (true) {
+      int mark = position;
+      if (!spaces()) {
+        return left;
+      }
+      LogicalOperator operator = logicalOperator();
+      if (operator == null) {
+        position = mark;
+        return left;
+      }
+      requireSpaces();
+      FilterExpression right = primary(inValuePath);
+      left = new LogicalExpression(left, operator, right);
+    }
+  }
+
+  private FilterExpression primary(boolean inValuePath) throws FilterParseException {
+    char c = peek();
+
+    if (c == '(' || c == ' ') {
+      spaces();
+      return group(false, inValuePath);
+    }
+    if (isNot()) {
+      position += 3;
+      spaces();
+      return group(true, inValuePath);
+    }
+
+    int start = position;
+    boolean hasSubAttribute = attributePath(inValuePath);
+    String attributePathText = text.substring(start, position);
+
+    if (!inValuePath && peek() == '[') {
+      if (hasSubAttribute) {
+        throw error("a value filter can't follow a sub-attribute");
+      }
+      position++;
+      FilterExpression attributeExpression = expression(true);
+      expect(']');
+
+      AttributeReference attributeReference = new AttributeReference(attributePathText);
+      ValuePathExpression valuePathExpression = new ValuePathExpression(attributeReference, attributeExpression);
+      attributeExpression.setAttributePath(attributeReference.getUrn(), attributeReference.getAttributeName());
+      return valuePathExpression;
+    }
+
+    requireSpaces();
+    int operatorStart = position;
+    while (position < length && isNameChar(text.charAt(position))) {
+      position++;
+    }
+    if (position - operatorStart != 2) {
+      position = operatorStart;
+      throw error("expected a comparison operator or pr");
+    }
+    char first = Character.toLowerCase(text.charAt(operatorStart));
+    char second = Character.toLowerCase(text.charAt(operatorStart + 1));
+
+    if (first == 'p' && second == 'r') {
+      return new AttributePresentExpression(new AttributeReference(attributePathText));
+    }
+    CompareOperator operator = compareOperator(first, second);
+    if (operator == null) {
+      position = operatorStart;
+      throw error("expected a comparison operator or pr");
+    }
+    requireSpaces();
+    Object compareValue = compareValue();
+    return new AttributeComparisonExpression(new AttributeReference(attributePathText), operator, compareValue);
+  }
+
+  private GroupExpression group(boolean not, boolean inValuePath) throws FilterParseException {
+    expect('(');
+    FilterExpression expression = expression(inValuePath);
+    expect(')');
+    return new GroupExpression(not, expression);
+  }
+
+  /**
+   * Consumes an attribute path (<code>name</code>, <code>name.sub</code>,
+   * <code>urn:name</code> or <code>urn:name.sub</code>), only allowing the
+   * first form when <code>simpleNameOnly</code> is set.
+   * 
+   * @return true if the path has a sub-attribute
+   */
+  private boolean attributePath(boolean simpleNameOnly) throws FilterParseException {
+    int start = position;
+
+    if (text.startsWith("urn:", position)) {
+      if (simpleNameOnly) {
+        throw error("expected an attribute name");
+      }
+      return urnAttributePath();
+    }
+
+    attributeName();
+    if (peek() == '.' && position + 1 < length && isAlpha(text.charAt(position + 1))) {
+      if (simpleNameOnly) {
+        throw error("sub-attributes are not allowed in a value filter");
+      }
+      position++;
+      attributeName();
+      return true;
+    }
+    if (isKeyword(start, position)) {
+      position = start;
+      throw error("expected an attribute name");
+    }
+    return false;
+  }
+
+  /**
+   * The grammar's URN token is greedy, so the whole run of URN characters has
+   * to end in an attribute name with an optional sub-attribute.
+   */
+  private boolean urnAttributePath() throws FilterParseException {
+    int start = position;
+    int end = start + 4;
+    while (end < length && isUrnChar(text.charAt(end))) {
+      end++;
+    }
+
+    // NID
+    int nidStart = start + 4;
+    int i = nidStart;
+    while (i < end && (isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '-')) {
+      i++;
+    }
+    if (i - nidStart < 2 || !isLetterOrDigit(text.charAt(nidStart)) || i >= end || text.charAt(i) != ':') {
+      throw error("invalid URN namespace identifier");
+    }
+
+    // NSS followed by ':' and the attribute name
+    int nssStart = i + 1;
+    int lastColon = text.lastIndexOf(':', end - 1);
+    if (lastColon <= nssStart) {
+      throw error("expected an attribute name after the URN");
+    }
+    for (int j = nssStart; j < lastColon; j++) {
+      if (text.charAt(j) == '%' && (j + 2 >= lastColon || !isHex(text.charAt(j + 1)) || !isHex(text.charAt(j + 2)))) {
+        position = j;
+        throw error("invalid percent encoding in URN");
+      }
+    }
+
+    position = lastColon + 1;
+    attributeName();
+    boolean hasSubAttribute = false;
+    if (peek() == '.') {
+      position++;
+      attributeName();
+      hasSubAttribute = true;
+    }
+    if (position != end) {
+      throw error("invalid attribute path");
+    }
+    return hasSubAttribute;
+  }
+
+  private void attributeName() throws FilterParseException {
+    if (position >= length || !isAlpha(text.charAt(position))) {
+      throw error("expected an attribute name");
+    }
+    position++;
+    while (position < length && isNameChar(text.charAt(position))) {
+      position++;
+    }
+  }
+
+  private Object compareValue() throws FilterParseException {
+    char c = peek();
+
+    if (c == '"') {
+      return string();
+    } else if (c == '-' || isDigit(c)) {
+      return number();
+    } else if (matchesLiteral("true")) {
+      return true;
+    } else if (matchesLiteral("false")) {
+      return false;
+    } else if (matchesLiteral("null")) {
+      return null;
+    }
+    throw error("expected a string, number, true, false or null");
+  }
+
+  private boolean matchesLiteral(String literal) {
+    int end = position + literal.length();
+    if (text.startsWith(literal, position) && (end >= length || !isNameChar(text.charAt(end)))) {
+      position = end;
+      return true;
+    }
+    return false;
+  }
+
+  private Object string() throws FilterParseException {
+    int start = position;
+    boolean escaped = false;
+    position++;
+
+    while (position < length) {
+      char c = text.charAt(position);
+      if (c == '"') {
+        position++;
+        if (!escaped) {
+          return text.substring(start + 1, position - 1);
+        }
+        return ExpressionBuildingListener.parseJsonType(text.substring(start, position));
+      } else if (c == '\\') {
+        if (position + 1 >= length || "\"\\/bfnrt".indexOf(text.charAt(position + 1)) < 0) {
+          throw error("invalid escape sequence");
+        }
+        escaped = true;
+        position += 2;
+      } else if (c >= ' ' && c <= '~') {
+        position++;
+      } else {
+        throw error("invalid character in string");
+      }
+    }
+    position = start;
+    throw error("unterminated string");
+  }
+
+  private Object number() throws FilterParseException {
+    int start = position;
+    if (peek() == '-') {
+      position++;
+    }
+    if (peek() == '0') {
+      position++;
+    } else if (isDigit(peek())) {
+      digits();
+    } else {
+      throw error("invalid number");
+    }
+    if (peek() == '.') {
+      position++;
+      if (!isDigit(peek())) {
+        throw error("invalid number");
+      }
+      digits();
+    }
+    if (peek() == 'e' || peek() == 'E') {
+      position++;
+      if (peek() == '+' || peek() == '-') {
+        position++;
+      }
+      if (!isDigit(peek())) {
+        throw error("invalid number");
+      }
+      digits();
+    }
+    return Double.parseDouble(text.substring(start, position));
+  }
+
+  private void digits() {
+    while (position < length && isDigit(text.charAt(position))) {
+      position++;
+    }
+  }
+
+  private LogicalOperator logicalOperator() {
+    if (regionIsWord("and")) {
+      position += 3;
+      return LogicalOperator.AND;
+    } else if (regionIsWord("or")) {
+      position += 2;
+      return LogicalOperator.OR;
+    }
+    return null;
+  }
+
+  private static CompareOperator compareOperator(char first, char second) {
+    switch (first) {
+    case 'e':
+      return second == 'q' ? CompareOperator.EQ : second == 'w' ? CompareOperator.EW : null;
+    case 'n':
+      return second == 'e' ? CompareOperator.NE : null;
+    case 'c':
+      return second == 'o' ? CompareOperator.CO : null;
+    case 's':
+      return second == 'w' ? CompareOperator.SW : null;
+    case 'g':
+      return second == 't' ? CompareOperator.GT : second == 'e' ? CompareOperator.GE : null;
+    case 'l':
+      return second == 't' ? CompareOperator.LT : second == 'e' ? CompareOperator.LE : null;
+    default:
+      return null;
+    }
+  }
+
+  /**
+   * "not" is only the operator when the lexer couldn't read a longer
+   * attribute name or path starting with it.
+   */
+  private boolean isNot() {
+    if (!regionIsWord("not")) {
+      return false;
+    }
+    int next = position + 3;
+    return !(next + 1 < length && text.charAt(next) == '.' && isAlpha(text.charAt(next + 1)));
+  }
+
+  /**
+   * Attribute names the grammar's lexer would turn into operator or literal
+   * tokens.
+   */
+  private boolean isKeyword(int start, int end) {
+    int keywordLength = end - start;
+    if (keywordLength == 2) {
+      char first = Character.toLowerCase(text.charAt(start));
+      char second = Character.toLowerCase(text.charAt(start + 1));
+      return (first == 'o' && second == 'r') || (first == 'p' && second == 'r') || compareOperator(first, second) != null;
+    } else if (keywordLength == 3) {
+      return text.regionMatches(true, start, "and", 0, 3) || text.regionMatches(true, start, "not", 0, 3);
+    }
+    return text.startsWith("true", start) && keywordLength == 4
+        || text.startsWith("null", start) && keywordLength == 4
+        || text.startsWith("false", start) && keywordLength == 5;
+  }
+
+  private boolean regionIsWord(String word) {
+    int end = position + word.length();
+    return text.regionMatches(true, position, word, 0, word.length()) && (end >= length || !isNameChar(text.charAt(end)));
+  }
+
+  private boolean spaces() {
+    int start = position;
+    while (position < length && text.charAt(position) == ' ') {
+      position++;
+    }
+    return position > start;
+  }
+
+  private void requireSpaces() throws FilterParseException {
+    if (!spaces()) {
+      throw error("expected a space");
+    }
+  }
+
+  private void expect(char c) throws FilterParseException {
+    if (peek() != c) {
+      throw error("expected '" + c + "'");
+    }
+    position++;
+  }
+
+  private void end() throws FilterParseException {
+    spaces();
+    if (position != length) {
+      throw error("unexpected input");
+    }
+  }
+
+  private char peek() {
+    return position < length ? text.charAt(position) : 0;
+  }
+
+  private FilterParseException error(String message) {
+    return new FilterParseException("Failed to parse filter: " + text + " (" + message + " at position " + position + ")");
+  }
+
+  private static boolean isAlpha(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isLetterOrDigit(char c) {
+    return isAlpha(c) || isDigit(c);
+  }
+
+  private static boolean isHex(char c) {
+    return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+  }
+
+  private static boolean isNameChar(char c) {
+    return isLetterOrDigit(c) || c == '-' || c == '_';
+  }
+
+  private static boolean isUrnChar(char c) {
+    return isLetterOrDigit(c) || "()+,-.:=@;$_!*'%".indexOf(c) >= 0;
+  }
+}
@@ -31,7 +31,10 @@ import edu.psu.swe.scim.server.filter.FilterLexer;
 import edu.psu.swe.scim.server.filter.FilterParser;
 import edu.psu.swe.scim.spec.protocol.filter.ExpressionBuildingListener;
 import edu.psu.swe.scim.spec.protocol.filter.FilterExpression;
+import edu.psu.swe.scim.spec.protocol.filter.FilterExpressionCache;
 import edu.psu.swe.scim.spec.protocol.filter.FilterParseException;
+import edu.psu.swe.scim.spec.protocol.filter.FilterParserType;
+import edu.psu.swe.scim.spec.protocol.filter.RecursiveDescentFilterParser;
 import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Setter;
@@ -44,6 +47,8 @@ import lombok.extern.slf4j.Slf4j;
 @Data
 @Slf4j
 public class Filter {
+
+  private static final FilterExpressionCache<FilterExpression> EXPRESSION_CACHE = new FilterExpressionCache<>();
   
   @Setter(AccessLevel.NONE)
   private FilterExpression expression;
@@ -72,7 +77,22 @@ public class Filter {
     this.expression = parseFilter(filter);
   }
 
+  /**
+   * @return the cache shared by all filters parsed from a string
+   */
+  public static FilterExpressionCache<FilterExpression> getExpressionCache() {
+    return EXPRESSION_CACHE;
+  }
+
   protected FilterExpression parseFilter(String filter) throws FilterParseException {
+    return EXPRESSION_CACHE.get(filter, Filter::parse);
+  }
+
+  private static FilterExpression parse(String filter) throws FilterParseException {
+    if (FilterParserType.getDefault() == FilterParserType.RECURSIVE_DESCENT) {
+      return RecursiveDescentFilterParser.parseFilter(filter);
+    }
+
     FilterLexer l = new FilterLexer(new ANTLRInputStream(filter));
     FilterParser p = new FilterParser(new CommonTokenStream(l));
     p.setBuildParseTree(true);
@@ -0,0 +1,105 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.spec.protocol.filter;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import edu.psu.swe.scim.spec.protocol.search.Filter;
+
+@RunWith(JUnitParamsRunner.class)
+public class FilterExpressionCacheTest extends AbstractLexerParserTest {
+
+  @SuppressWarnings("unused")
+  private String[] getAllFilters() {
+    return ALL;
+  }
+
+  @Test
+  @Parameters(method = "getAllFilters")
+  public void testCopyIsEqualButNotSame(String filterText) throws Exception {
+    FilterExpression expression = new Filter(filterText).getExpression();
+    FilterExpression copy = FilterExpressionCache.copyExpression(expression);
+
+    Assert.assertEquals(expression, copy);
+    Assert.assertNotSame(expression, copy);
+    Assert.assertEquals(expression.toFilter(), copy.toFilter());
+  }
+
+  @Test
+  public void testHitsAndMisses() throws Exception {
+    FilterExpressionCache<FilterExpression> cache = new FilterExpressionCache<>(10);
+    String filterText = "userName eq \"bjensen\"";
+
+    FilterExpression first = cache.get(filterText, text -> new Filter(text).getExpression());
+    FilterExpression second = cache.get(filterText, text -> {
+      throw new AssertionError("cached filter should not be parsed again");
+    });
+
+    Assert.assertEquals(first, second);
+    Assert.assertNotSame(first, second);
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(1, cache.getMissCount());
+  }
+
+  @Test
+  public void testReturnedTreesAreNotShared() throws Exception {
+    FilterExpressionCache<FilterExpression> cache = new FilterExpressionCache<>(10);
+    String filterText = "type eq \"work\"";
+
+    FilterExpression first = cache.get(filterText, text -> new Filter(text).getExpression());
+    first.setAttributePath(null, "emails");
+    FilterExpression second = cache.get(filterText, text -> new Filter(text).getExpression());
+
+    Assert.assertEquals("emails.type EQ \"work\"", first.toFilter());
+    Assert.assertEquals("type EQ \"work\"", second.toFilter());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+    FilterExpressionCache<FilterExpression> cache = new FilterExpressionCache<>(2);
+
+    cache.get("a eq 1", text -> new Filter(text).getExpression());
+    cache.get("b eq 2", text -> new Filter(text).getExpression());
+    cache.get("a eq 1", text -> new Filter(text).getExpression());
+    cache.get("c eq 3", text -> new Filter(text).getExpression());
+    cache.get("a eq 1", text -> new Filter(text).getExpression());
+    cache.get("b eq 2", text -> new Filter(text).getExpression());
+
+    Assert.assertEquals(2, cache.size());
+    Assert.assertEquals(2, cache.getHitCount());
+    Assert.assertEquals(4, cache.getMissCount());
+  }
+
+  @Test(expected = FilterParseException.class)
+  public void testParseFailuresAreNotCached() throws Exception {
+    FilterExpressionCache<FilterExpression> cache = new FilterExpressionCache<>(10);
+    try {
+      cache.get("userName eq", text -> new Filter(text).getExpression());
+    } finally {
+      Assert.assertEquals(0, cache.size());
+    }
+  }
+}
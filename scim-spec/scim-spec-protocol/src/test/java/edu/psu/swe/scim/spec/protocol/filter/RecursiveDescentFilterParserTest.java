@@ -0,0 +1,194 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.spec.protocol.filter;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import edu.psu.swe.scim.server.filter.FilterLexer;
+import edu.psu.swe.scim.server.filter.FilterParser;
+import edu.psu.swe.scim.spec.protocol.data.PatchPathListener;
+
+/**
+ * Checks that the recursive descent parser builds the same trees as the
+ * ANTLR generated parser.
+ */
+@RunWith(JUnitParamsRunner.class)
+public class RecursiveDescentFilterParserTest extends AbstractLexerParserTest {
+
+  private static final String[] PRECEDENCE = {
+    "title pr and userType eq \"Employee\" or userType eq \"Intern\"",
+    "title pr or userType eq \"Employee\" and userType eq \"Intern\"",
+    "a pr and b pr and c pr or d pr and e pr",
+    "name.givenName pr or userName eq \"x\" and name.familyName pr",
+    "emails[type eq \"work\" or type eq \"home\" and primary eq true]",
+    "not (a pr) or (b pr and not(c pr))",
+    " (title pr)",
+    "title pr  and  userName pr"
+  };
+
+  private static final String[] VALUES = {
+    "a eq 0",
+    "a eq -1.5e3",
+    "a gt 10.25",
+    "a le 1E-2",
+    "a eq true and b eq false and c eq null",
+    "a eq \"\"",
+    "a eq \"with \\\"quotes\\\" and \\\\ slashes\"",
+    "a eq \"tab\\tnew\\nline \\/ slash\"",
+    "a co \"O'Malley\"",
+    "a eq \"not and or pr\""
+  };
+
+  private static final String[] NAMES = {
+    "notes pr",
+    "nothing eq \"x\"",
+    "order pr",
+    "android pr",
+    "pr.sub pr",
+    "e pr",
+    "trueish eq true",
+    "x-y_1 pr",
+    "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:manager.value eq \"x\"",
+    "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:employeeNumber pr and urn:ietf:params:scim:schemas:core:2.0:User:userName pr"
+  };
+
+  private static final String[] INVALID = {
+    "",
+    "userName",
+    "userName eq",
+    "userName eq \"x",
+    "userName xx \"x\"",
+    "userName eq\"x\"",
+    "userName eq \"x\" and",
+    "(userName eq \"x\"",
+    "emails[type eq \"work\"",
+    "emails[type.sub eq \"work\"]",
+    "emails.type[value pr]",
+    "and pr",
+    "not userName pr",
+    "userName eq True",
+    "userName eq 01"
+  };
+
+  private static final String[] PATCH_PATHS = {
+    "members",
+    "name.familyName",
+    "addresses[type eq \"work\"]",
+    "members[value eq \"2819c223-7f76-453a-919d-413861904646\"]",
+    "members[value eq \"2819c223-7f76-453a-919d-413861904646\"].displayName",
+    "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:manager",
+    "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:manager.value",
+    "urn:ietf:params:scim:schemas:core:2.0:User:emails[type eq \"work\" and not(primary eq false)].value"
+  };
+
+  @SuppressWarnings("unused")
+  private String[] getFilters() {
+    return ArrayUtils.addAll(ArrayUtils.addAll(ArrayUtils.addAll(ALL, MIXED_CASE), ArrayUtils.addAll(PRECEDENCE, VALUES)), NAMES);
+  }
+
+  @SuppressWarnings("unused")
+  private String[] getInvalidFilters() {
+    return INVALID;
+  }
+
+  @SuppressWarnings("unused")
+  private String[] getPatchPaths() {
+    return PATCH_PATHS;
+  }
+
+  @Test
+  @Parameters(method = "getFilters")
+  public void testSameTreeAsAntlr(String filter) throws Exception {
+    FilterExpression expected = parseWithAntlr(filter);
+    FilterExpression actual = RecursiveDescentFilterParser.parseFilter(filter);
+
+    Assert.assertEquals(expected, actual);
+    Assert.assertEquals(expected.toFilter(), actual.toFilter());
+  }
+
+  @Test
+  @Parameters(method = "getInvalidFilters")
+  public void testRejectsWhatAntlrRejects(String filter) throws Exception {
+    try {
+      parseWithAntlr(filter);
+      Assert.fail("ANTLR accepted " + filter);
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    try {
+      RecursiveDescentFilterParser.parseFilter(filter);
+      Assert.fail("Accepted " + filter);
+    } catch (FilterParseException e) {
+      // expected
+    }
+  }
+
+  @Test
+  @Parameters(method = "getPatchPaths")
+  public void testSamePatchPathAsAntlr(String patchPath) throws Exception {
+    ValuePathExpression expected = parsePatchPathWithAntlr(patchPath);
+    ValuePathExpression actual = RecursiveDescentFilterParser.parsePatchPath(patchPath);
+
+    Assert.assertEquals(expected, actual);
+    Assert.assertEquals(expected.toFilter(), actual.toFilter());
+  }
+
+  @Test(expected = FilterParseException.class)
+  public void testTrailingInputIsRejected() throws Exception {
+    RecursiveDescentFilterParser.parseFilter("userName eq \"x\" )");
+  }
+
+  private static FilterParser createParser(String text) {
+    FilterLexer l = new FilterLexer(new ANTLRInputStream(text));
+    FilterParser p = new FilterParser(new CommonTokenStream(l));
+    p.addErrorListener(new BaseErrorListener() {
+      @Override
+      public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+        throw new IllegalStateException("failed to parse at line " + line + ":" + charPositionInLine + " due to " + msg, e);
+      }
+    });
+    return p;
+  }
+
+  private static FilterExpression parseWithAntlr(String filter) {
+    ExpressionBuildingListener listener = new ExpressionBuildingListener();
+    ParseTreeWalker.DEFAULT.walk(listener, createParser(filter).filter());
+    return listener.getFilterExpression();
+  }
+
+  private static ValuePathExpression parsePatchPathWithAntlr(String patchPath) {
+    PatchPathListener listener = new PatchPathListener();
+    ParseTreeWalker.DEFAULT.walk(listener, createParser(patchPath).patchPath());
+    return listener.getValuePathExpression();
+  }
+}
@@ -19,8 +19,19 @@
 
 package edu.psu.swe.scim.spec.extension;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.introspect.AnnotationIntrospectorPair;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
 
 import edu.psu.swe.scim.spec.annotation.ScimExtensionType;
 import edu.psu.swe.scim.spec.exception.InvalidExtensionException;
@@ -34,9 +45,22 @@ public final class ScimExtensionRegistry {
   private static final ScimExtensionRegistry INSTANCE = new ScimExtensionRegistry();
   
   private Map<Class<? extends ScimResource>, Map<String, Class<? extends ScimExtension>>> registry;
+
+  private final ObjectMapper extensionMapper;
+
+  private final Map<Class<? extends ScimExtension>, ObjectReader> readers = new ConcurrentHashMap<>();
   
   private ScimExtensionRegistry() {
     registry = new HashMap<Class<? extends ScimResource>, Map<String, Class<? extends ScimExtension>>>();
+
+    extensionMapper = new ObjectMapper();
+    JaxbAnnotationModule jaxbAnnotationModule = new JaxbAnnotationModule();
+    extensionMapper.registerModule(jaxbAnnotationModule);
+
+    AnnotationIntrospector jaxbIntrospector = new JaxbAnnotationIntrospector(extensionMapper.getTypeFactory());
+    AnnotationIntrospector jacksonIntrospector = new JacksonAnnotationIntrospector();
+    AnnotationIntrospector pair = new AnnotationIntrospectorPair(jacksonIntrospector, jaxbIntrospector);
+    extensionMapper.setAnnotationIntrospector(pair);
   }
   
   public Class<? extends ScimExtension> getExtensionClass(Class<? extends ScimResource> resourceClass, String urn) {
@@ -50,6 +74,32 @@ public final class ScimExtensionRegistry {
     return extensionClass;
   }
   
+  public Collection<Class<? extends ScimExtension>> getExtensionClasses(Class<? extends ScimResource> resourceClass) {
+    Map<String, Class<? extends ScimExtension>> resourceMap = registry.get(resourceClass);
+    if (resourceMap == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableCollection(resourceMap.values());
+  }
+
+  /**
+   * Returns the reader used to bind the JSON of an extension to
+   * <code>extensionClass</code>. Readers are immutable, so one is created per
+   * extension class and shared by every resource that carries it.
+   */
+  public ObjectReader getExtensionReader(Class<? extends ScimExtension> extensionClass) {
+    return readers.computeIfAbsent(extensionClass, extensionMapper::readerFor);
+  }
+
+  /**
+   * Converts a value that isn't JSON, like a map of the extension's
+   * attributes, to <code>extensionClass</code> with the same mapper the
+   * readers use.
+   */
+  public <T extends ScimExtension> T convertExtension(Object value, Class<T> extensionClass) {
+    return extensionMapper.convertValue(value, extensionClass);
+  }
+
   public static ScimExtensionRegistry getInstance() {
     return INSTANCE;
   }
@@ -76,6 +126,9 @@ public final class ScimExtensionRegistry {
     if(!resourceMap.containsKey(urn)) {
       resourceMap.put(urn, extensionClass);
     }
+
+    // builds the extension's deserializer now rather than on the first request
+    getExtensionReader(extensionClass);
   }
 
 }
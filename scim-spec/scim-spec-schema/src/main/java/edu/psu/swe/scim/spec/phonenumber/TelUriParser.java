@@ -0,0 +1,284 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.spec.phonenumber;
+
+import edu.psu.swe.scim.spec.resources.PhoneNumber;
+import edu.psu.swe.scim.spec.resources.PhoneNumber.GlobalPhoneNumberBuilder;
+import edu.psu.swe.scim.spec.resources.PhoneNumber.LocalPhoneNumberBuilder;
+import edu.psu.swe.scim.spec.resources.PhoneNumber.PhoneNumberBuilder;
+
+/**
+ * Parses an RFC 3966 <code>tel:</code> URI in a single pass over the string.
+ * 
+ * Accepts the same language as the PhoneNumberLexer and PhoneNumberParser
+ * grammars and builds the same {@link PhoneNumber} as
+ * {@link PhoneNumberParseTreeListener}, without creating a lexer, token
+ * stream and parse tree for every value. The one difference is a parameter
+ * without a value, which is rejected here instead of failing with a
+ * NullPointerException while walking the tree.
+ */
+public final class TelUriParser {
+
+  private static final String PREFIX_TEL = "tel:";
+  private static final String PREFIX_EXT = "ext=";
+  private static final String PREFIX_ISUB = "isub=";
+  private static final String PREFIX_PHONE_CONTEXT = "phone-context=";
+
+  private final String value;
+  private int position;
+
+  private TelUriParser(String value) {
+    this.value = value;
+  }
+
+  public static PhoneNumber parse(String value) throws PhoneNumberParseException {
+    return new TelUriParser(value).phoneNumber();
+  }
+
+  private PhoneNumber phoneNumber() throws PhoneNumberParseException {
+    expect(PREFIX_TEL);
+
+    PhoneNumberBuilder builder;
+    if (peek() == '+') {
+      position++;
+      builder = new GlobalPhoneNumberBuilder().globalNumber("+" + globalNumberDigits());
+      extensionOrSubAddress(builder);
+    } else {
+      LocalPhoneNumberBuilder localBuilder = new LocalPhoneNumberBuilder();
+      localBuilder.subscriberNumber(localNumberDigits());
+      expect(";");
+      if (extensionOrSubAddress(localBuilder)) {
+        expect(";");
+      }
+      expect(PREFIX_PHONE_CONTEXT);
+      phoneContext(localBuilder);
+      builder = localBuilder;
+    }
+    parameters(builder);
+
+    return builder.build(false);
+  }
+
+  /**
+   * Reads an optional <code>;ext=</code> or <code>;isub=</code> that directly
+   * follows the number, returning true if one was found. For a local number
+   * the leading semicolon has already been consumed.
+   */
+  private boolean extensionOrSubAddress(PhoneNumberBuilder builder) throws PhoneNumberParseException {
+    int start = position;
+    if (builder.isGlobalNumber()) {
+      if (peek() != ';') {
+        return false;
+      }
+      start++;
+    }
+
+    if (value.startsWith(PREFIX_EXT, start)) {
+      position = start + PREFIX_EXT.length();
+      builder.extension(required(scan(CharacterClass.EXTENSION), "an extension"));
+      return true;
+    }
+    if (value.startsWith(PREFIX_ISUB, start)) {
+      position = start + PREFIX_ISUB.length();
+      builder.subAddress(required(scan(CharacterClass.SUB_ADDRESS), "a sub-address"));
+      return true;
+    }
+    return false;
+  }
+
+  private void phoneContext(LocalPhoneNumberBuilder builder) throws PhoneNumberParseException {
+    if (peek() == '+') {
+      position++;
+      builder.isDomainPhoneContext(false);
+      builder.phoneContext("+" + globalNumberDigits());
+    } else {
+      builder.isDomainPhoneContext(true);
+      builder.phoneContext(domainName());
+    }
+  }
+
+  private void parameters(PhoneNumberBuilder builder) throws PhoneNumberParseException {
+    while (position < value.length()) {
+      expect(";");
+      if (value.startsWith(PREFIX_EXT, position) || value.startsWith(PREFIX_ISUB, position) || value.startsWith(PREFIX_PHONE_CONTEXT, position)) {
+        throw error("a parameter name");
+      }
+      String name = required(scan(CharacterClass.PARAMETER_NAME), "a parameter name");
+      if (peek() != '=') {
+        throw error("a value for parameter " + name);
+      }
+      position++;
+      builder.param(name, required(scan(CharacterClass.PARAMETER_VALUE), "a value for parameter " + name));
+    }
+  }
+
+  private String globalNumberDigits() throws PhoneNumberParseException {
+    String digits = scan(CharacterClass.GLOBAL_NUMBER_DIGITS);
+    if (!containsAny(digits, "0123456789")) {
+      throw error("a digit");
+    }
+    return digits;
+  }
+
+  private String localNumberDigits() throws PhoneNumberParseException {
+    String digits = scan(CharacterClass.LOCAL_NUMBER_DIGITS);
+    if (!containsAny(digits, "0123456789ABCDEF*#")) {
+      throw error("a digit");
+    }
+    return digits;
+  }
+
+  /**
+   * Reads the longest domain name starting at the current position: labels
+   * separated by dots that neither start nor end with a hyphen, the last of
+   * which starts with a letter, optionally followed by a dot.
+   */
+  private String domainName() throws PhoneNumberParseException {
+    int start = position;
+    int end = -1;
+    boolean labelStart = true;
+    boolean alphaLabel = false;
+    boolean hyphen = false;
+
+    for (int i = start; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (isAlphaNumeric(c)) {
+        if (labelStart) {
+          alphaLabel = !isDigit(c);
+          labelStart = false;
+        }
+        hyphen = false;
+        if (alphaLabel) {
+          end = i + 1;
+        }
+      } else if (c == '-' && !labelStart) {
+        hyphen = true;
+      } else if (c == '.' && !labelStart && !hyphen) {
+        if (alphaLabel) {
+          end = i + 1;
+        }
+        labelStart = true;
+      } else {
+        break;
+      }
+    }
+
+    if (end < 0) {
+      throw error("a domain name or global number");
+    }
+    position = end;
+    return value.substring(start, end);
+  }
+
+  /**
+   * Returns the longest run of characters in <code>characterClass</code>
+   * starting at the current position, treating a percent-encoded octet as a
+   * single character where the class allows it.
+   */
+  private String scan(CharacterClass characterClass) {
+    int start = position;
+    while (position < value.length()) {
+      char c = value.charAt(position);
+      if (characterClass.matches(c)) {
+        position++;
+      } else if (c == '%' && characterClass.percentEncoded && isPercentEncoded(position)) {
+        position += 3;
+      } else {
+        break;
+      }
+    }
+    return value.substring(start, position);
+  }
+
+  private boolean isPercentEncoded(int index) {
+    return index + 2 < value.length() && isUpperHex(value.charAt(index + 1)) && isUpperHex(value.charAt(index + 2));
+  }
+
+  private String required(String token, String expected) throws PhoneNumberParseException {
+    if (token.isEmpty()) {
+      throw error(expected);
+    }
+    return token;
+  }
+
+  private void expect(String token) throws PhoneNumberParseException {
+    if (!value.startsWith(token, position)) {
+      throw error("'" + token + "'");
+    }
+    position += token.length();
+  }
+
+  private char peek() {
+    return position < value.length() ? value.charAt(position) : 0;
+  }
+
+  private PhoneNumberParseException error(String expected) {
+    String found = position < value.length() ? "'" + value.charAt(position) + "'" : "end of input";
+    return new PhoneNumberParseException("failed to parse " + value + " at position " + position + ": expected " + expected + " but found " + found);
+  }
+
+  private static boolean containsAny(String token, String characters) {
+    for (int i = 0; i < token.length(); i++) {
+      if (characters.indexOf(token.charAt(i)) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isUpperHex(char c) {
+    return isDigit(c) || (c >= 'A' && c <= 'F');
+  }
+
+  private static boolean isAlphaNumeric(char c) {
+    return isDigit(c) || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+  }
+
+  /**
+   * The characters each token of the grammar is made of.
+   */
+  private enum CharacterClass {
+    GLOBAL_NUMBER_DIGITS("0123456789().-", false, false),
+    EXTENSION("0123456789().-", false, false),
+    LOCAL_NUMBER_DIGITS("0123456789ABCDEF*#().-", false, false),
+    PARAMETER_NAME("-", true, false),
+    PARAMETER_VALUE("[]+$&/:_!~'*().-", true, true),
+    SUB_ADDRESS("?@=,+$&/:_!~'*().-", true, true);
+
+    private final String symbols;
+    private final boolean alphaNumeric;
+    private final boolean percentEncoded;
+
+    CharacterClass(String symbols, boolean alphaNumeric, boolean percentEncoded) {
+      this.symbols = symbols;
+      this.alphaNumeric = alphaNumeric;
+      this.percentEncoded = percentEncoded;
+    }
+
+    boolean matches(char c) {
+      return (alphaNumeric && isAlphaNumeric(c)) || symbols.indexOf(c) >= 0;
+    }
+  }
+}
@@ -32,22 +32,13 @@ import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlType;
 
-import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.BaseErrorListener;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.RecognitionException;
-import org.antlr.v4.runtime.Recognizer;
-import org.antlr.v4.runtime.tree.ParseTree;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import edu.psu.swe.scim.spec.annotation.ScimAttribute;
-import edu.psu.swe.scim.spec.phonenumber.PhoneNumberLexer;
 import edu.psu.swe.scim.spec.phonenumber.PhoneNumberParseException;
-import edu.psu.swe.scim.spec.phonenumber.PhoneNumberParseTreeListener;
-import edu.psu.swe.scim.spec.phonenumber.PhoneNumberParser;
+import edu.psu.swe.scim.spec.phonenumber.TelUriParser;
 import lombok.AccessLevel;
 import lombok.Data;
 import lombok.Getter;
@@ -65,7 +56,7 @@ public class PhoneNumber extends KeyedResource implements Serializable, TypedAtt
 
   private static final long serialVersionUID = 607319505715224096L;
 
-  private static final String VISUAL_SEPARATORS = "[\\(\\)\\-\\.]";
+  private static final String VISUAL_SEPARATORS = "().-";
 
   @Getter
   @Setter
@@ -120,6 +111,12 @@ public class PhoneNumber extends KeyedResource implements Serializable, TypedAtt
   @Setter(AccessLevel.NONE)
   Map<String, String> params;
 
+  // Separator-free forms of number, extension and phoneContext used by equals()
+  // and hashCode(), each kept with the string it was computed from
+  private transient CanonicalForm canonicalNumber;
+  private transient CanonicalForm canonicalExtension;
+  private transient CanonicalForm canonicalPhoneContext;
+
   public void addParam(String name, String value) {
     if (this.params == null) {
       this.params = new HashMap<String, String>();
@@ -143,27 +140,8 @@ public class PhoneNumber extends KeyedResource implements Serializable, TypedAtt
     }
 
     if (strict) {
-      PhoneNumberLexer phoneNumberLexer = new PhoneNumberLexer(new ANTLRInputStream(value));
-      PhoneNumberParser p = new PhoneNumberParser(new CommonTokenStream(phoneNumberLexer));
-      p.setBuildParseTree(true);
-  
-      p.addErrorListener(new BaseErrorListener() {
-        @Override
-        public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
-          throw new IllegalStateException("failed to parse at line " + line + " due to " + msg, e);
-        }
-      });
-  
-      PhoneNumberParseTreeListener tpl = new PhoneNumberParseTreeListener();
-      try {
-        ParseTree tree = p.phoneNumber();
-        ParseTreeWalker.DEFAULT.walk(tpl, tree);
-      } catch (IllegalStateException e) {
-        throw new PhoneNumberParseException(e);
-      }
-  
-      PhoneNumber parsedPhoneNumber = tpl.getPhoneNumber();
-  
+      PhoneNumber parsedPhoneNumber = TelUriParser.parse(value);
+
       this.value = parsedPhoneNumber.getValue();
       this.number = parsedPhoneNumber.getNumber();
       this.extension = parsedPhoneNumber.getExtension();
@@ -194,16 +172,16 @@ public class PhoneNumber extends KeyedResource implements Serializable, TypedAtt
     if (isGlobalNumber != other.isGlobalNumber)
       return false;
 
-    String numberWithoutVisualSeparators = number != null ? number.replaceAll(VISUAL_SEPARATORS, "") : null;
-    String otherNumberWithoutVisualSeparators = other.number != null ? other.number.replaceAll(VISUAL_SEPARATORS, "") : null;
+    String numberWithoutVisualSeparators = getCanonicalNumber();
+    String otherNumberWithoutVisualSeparators = other.getCanonicalNumber();
     if (numberWithoutVisualSeparators == null) {
       if (otherNumberWithoutVisualSeparators != null)
         return false;
     } else if (!numberWithoutVisualSeparators.equals(otherNumberWithoutVisualSeparators))
       return false;
 
-    String extensionWithoutVisualSeparators = extension != null ? extension.replaceAll(VISUAL_SEPARATORS, "") : null;
-    String otherExtensionWithoutVisualSeparators = other.extension != null ? other.extension.replaceAll(VISUAL_SEPARATORS, "") : null;
+    String extensionWithoutVisualSeparators = getCanonicalExtension();
+    String otherExtensionWithoutVisualSeparators = other.getCanonicalExtension();
     if (extensionWithoutVisualSeparators == null) {
       if (otherExtensionWithoutVisualSeparators != null)
         return false;
@@ -216,15 +194,8 @@ public class PhoneNumber extends KeyedResource implements Serializable, TypedAtt
     } else if (!subAddress.equalsIgnoreCase(other.subAddress))
       return false;
 
-    String phoneContextTemp = phoneContext;
-    if (!StringUtils.isBlank(phoneContext) && !isDomainPhoneContext) {
-      phoneContextTemp = phoneContext.replaceAll(VISUAL_SEPARATORS, "");
-    }
-
-    String otherPhoneContextTemp = other.phoneContext;
-    if (!StringUtils.isBlank(other.phoneContext) && !other.isDomainPhoneContext) {
-      otherPhoneContextTemp = other.phoneContext.replaceAll(VISUAL_SEPARATORS, "");
-    }
+    String phoneContextTemp = getCanonicalPhoneContext();
+    String otherPhoneContextTemp = other.getCanonicalPhoneContext();
 
     if (phoneContextTemp == null) {
       if (otherPhoneContextTemp != null)
@@ -260,16 +231,75 @@ public class PhoneNumber extends KeyedResource implements Serializable, TypedAtt
     final int prime = 31;
     int result = 1;
     result = prime * result + (isGlobalNumber ? 1231 : 1237);
-    result = prime * result + ((number == null) ? 0 : number.replaceAll(VISUAL_SEPARATORS, "").hashCode());
-    result = prime * result + ((extension == null) ? 0 : extension.replaceAll(VISUAL_SEPARATORS, "").hashCode());
+    result = prime * result + ((number == null) ? 0 : getCanonicalNumber().hashCode());
+    result = prime * result + ((extension == null) ? 0 : getCanonicalExtension().hashCode());
     result = prime * result + ((subAddress == null) ? 0 : subAddress.toLowerCase().hashCode());
-    result = prime * result + ((phoneContext == null) ? 0 : (isDomainPhoneContext ? phoneContext.toLowerCase().hashCode() : phoneContext.replaceAll(VISUAL_SEPARATORS, "").hashCode()));
+    result = prime * result + ((phoneContext == null) ? 0 : (isDomainPhoneContext ? phoneContext.toLowerCase().hashCode() : getCanonicalPhoneContext().hashCode()));
     result = prime * result + ((params == null) ? 0 : paramsToLowerCase().hashCode());
     result = prime * result + ((primary == null) ? 0 : primary.hashCode());
     result = prime * result + ((type == null) ? 0 : type.toLowerCase().hashCode());
     return result;
   }
 
+  String getCanonicalNumber() {
+    canonicalNumber = CanonicalForm.of(canonicalNumber, number);
+    return canonicalNumber.canonical;
+  }
+
+  String getCanonicalExtension() {
+    canonicalExtension = CanonicalForm.of(canonicalExtension, extension);
+    return canonicalExtension.canonical;
+  }
+
+  String getCanonicalPhoneContext() {
+    if (isDomainPhoneContext) {
+      return phoneContext;
+    }
+    canonicalPhoneContext = CanonicalForm.of(canonicalPhoneContext, phoneContext);
+    return canonicalPhoneContext.canonical;
+  }
+
+  /**
+   * A string with its visual separators removed, remembered together with the
+   * source string so that a field which has since been reassigned is noticed
+   * and its canonical form recomputed.
+   */
+  static final class CanonicalForm {
+    final String source;
+    final String canonical;
+
+    private CanonicalForm(String source, String canonical) {
+      this.source = source;
+      this.canonical = canonical;
+    }
+
+    static CanonicalForm of(CanonicalForm cached, String source) {
+      if (cached != null && cached.source == source) {
+        return cached;
+      }
+      return new CanonicalForm(source, removeVisualSeparators(source));
+    }
+
+    static String removeVisualSeparators(String source) {
+      if (source == null) {
+        return null;
+      }
+
+      StringBuilder stripped = null;
+      for (int i = 0; i < source.length(); i++) {
+        char c = source.charAt(i);
+        if (VISUAL_SEPARATORS.indexOf(c) >= 0) {
+          if (stripped == null) {
+            stripped = new StringBuilder(source.length()).append(source, 0, i);
+          }
+        } else if (stripped != null) {
+          stripped.append(c);
+        }
+      }
+      return stripped != null ? stripped.toString() : source;
+    }
+  }
+
   HashMap<String, String> paramsToLowerCase() {
     HashMap<String, String> paramsLowercase = new HashMap<String, String>();
     for (Entry<String, String> entry : params.entrySet()) {
@@ -19,6 +19,7 @@
 
 package edu.psu.swe.scim.spec.resources;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
@@ -35,18 +36,16 @@ import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
-import com.fasterxml.jackson.databind.AnnotationIntrospector;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.introspect.AnnotationIntrospectorPair;
-import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
-import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
-import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 import edu.psu.swe.scim.spec.annotation.ScimAttribute;
 import edu.psu.swe.scim.spec.annotation.ScimExtensionType;
 import edu.psu.swe.scim.spec.exception.InvalidExtensionException;
 import edu.psu.swe.scim.spec.extension.ScimExtensionRegistry;
 import edu.psu.swe.scim.spec.schema.Meta;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Mutability;
 import edu.psu.swe.scim.spec.schema.Schema.Attribute.Returned;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -68,12 +67,12 @@ public abstract class ScimResource extends BaseResource implements Serializable
 
   @XmlElement
   @NotNull
-  @ScimAttribute(returned = Returned.ALWAYS)
+  @ScimAttribute(returned = Returned.ALWAYS, mutability = Mutability.READ_ONLY)
   Meta meta;
 
   @XmlElement
   @Size(min = 1)
-  @ScimAttribute(required = true, returned = Returned.ALWAYS)
+  @ScimAttribute(required = true, returned = Returned.ALWAYS, mutability = Mutability.READ_ONLY)
   String id;
 
   @XmlElement
@@ -147,35 +146,66 @@ public abstract class ScimResource extends BaseResource implements Serializable
     return extensions;
   }
 
-  @JsonAnySetter
+  /**
+   * Adds the extension registered for <code>key</code>, converted from
+   * <code>value</code>, like a map of its attributes. Values for a key without
+   * a registered extension are ignored.
+   */
   public void setExtensions(String key, Object value) {
+    if (value instanceof TokenBuffer) {
+      try {
+        setExtensions(key, (TokenBuffer) value);
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Unable to bind the extension " + key, e);
+      }
+      return;
+    }
+    Class<? extends ScimExtension> extensionClass = getExtensionClass(key);
+
+    if (extensionClass != null && value != null) {
+      ScimExtension extension = ScimExtensionRegistry.getInstance().convertExtension(value, extensionClass);
+      if (extension != null) {
+        LOG.debug("    ***** Added extension to the resource *****");
+        extensions.put(key, extension);
+      }
+    }
+  }
+
+  /**
+   * Binds an attribute that is not part of the resource's own schema. The
+   * value arrives as the buffered tokens of the attribute, which are bound
+   * straight to the extension class registered for <code>key</code>; other
+   * attributes are ignored.
+   */
+  @JsonAnySetter
+  public void setExtensions(String key, TokenBuffer value) throws IOException {
+    Class<? extends ScimExtension> extensionClass = getExtensionClass(key);
+
+    if (extensionClass != null && value != null) {
+      ObjectReader reader = ScimExtensionRegistry.getInstance().getExtensionReader(extensionClass);
+      ScimExtension extension;
+      try (JsonParser parser = value.asParser(reader)) {
+        extension = reader.readValue(parser);
+      }
+      if (extension != null) {
+        LOG.debug("    ***** Added extension to the resource *****");
+        extensions.put(key, extension);
+      }
+    }
+  }
+
+  private Class<? extends ScimExtension> getExtensionClass(String key) {
     LOG.debug("Found a ScimExtension");
     LOG.debug("Extension's URN: " + key);
-    LOG.debug("Extension's string representation: " + value);
 
     Class<? extends ScimResource> resourceClass = getClass();
     LOG.debug("Resource class: " + resourceClass.getSimpleName());
 
     Class<? extends ScimExtension> extensionClass = ScimExtensionRegistry.getInstance().getExtensionClass(resourceClass, key);
-
     if (extensionClass != null) {
       LOG.debug("Extension class: " + extensionClass.getSimpleName());
-
-      ObjectMapper objectMapper = new ObjectMapper();
-      JaxbAnnotationModule jaxbAnnotationModule = new JaxbAnnotationModule();
-      objectMapper.registerModule(jaxbAnnotationModule);
-
-      AnnotationIntrospector jaxbIntrospector = new JaxbAnnotationIntrospector(objectMapper.getTypeFactory());
-      AnnotationIntrospector jacksonIntrospector = new JacksonAnnotationIntrospector();
-      AnnotationIntrospector pair = new AnnotationIntrospectorPair(jacksonIntrospector, jaxbIntrospector);
-      objectMapper.setAnnotationIntrospector(pair);
-
-      ScimExtension extension = objectMapper.convertValue(value, extensionClass);
-      if (extension != null) {
-        LOG.debug("    ***** Added extension to the resource *****");
-        extensions.put(key, extension);
-      }
     }
+    return extensionClass;
   }
   
   public ScimExtension removeExtension(String urn) {
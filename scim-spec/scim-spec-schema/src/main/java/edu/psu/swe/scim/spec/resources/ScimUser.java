@@ -32,6 +32,7 @@ import javax.xml.registry.infomodel.TelephoneNumber;
 import edu.psu.swe.scim.spec.annotation.ScimAttribute;
 import edu.psu.swe.scim.spec.annotation.ScimResourceType;
 import edu.psu.swe.scim.spec.schema.ResourceReference;
+import edu.psu.swe.scim.spec.schema.Schema.Attribute.Mutability;
 import edu.psu.swe.scim.spec.schema.Schema.Attribute.Returned;
 import edu.psu.swe.scim.spec.schema.Schema.Attribute.Uniqueness;
 import lombok.Data;
@@ -71,7 +72,7 @@ public class ScimUser extends ScimResource implements Serializable {
   List<Entitlement> entitlements;
 
   @XmlElement
-  @ScimAttribute(description="A list of groups that the user belongs to, either thorough direct membership, nested groups, or dynamically calculated")
+  @ScimAttribute(description="A list of groups that the user belongs to, either thorough direct membership, nested groups, or dynamically calculated", mutability = Mutability.READ_ONLY)
   List<ResourceReference> groups;
 
   @XmlElement
@@ -0,0 +1,43 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.spec.schema;
+
+/**
+ * Builds the {@link Schema} of a single resource or extension class without
+ * scanning the class at runtime. Implementations are generated at compile time
+ * by the <code>scim-spec-processor</code> annotation processor, one per class
+ * annotated with <code>ScimResourceType</code> or <code>ScimExtensionType</code>,
+ * and are named after the annotated class with {@link #CLASS_NAME_SUFFIX}
+ * appended to its binary name.
+ * 
+ * Every call returns a new schema, callers are free to modify it.
+ */
+public interface SchemaFactory {
+
+  String CLASS_NAME_SUFFIX = "_SchemaFactory";
+
+  /**
+   * @return a new schema equal to the one built by reflection for the class
+   * @throws ReflectiveOperationException if a field recorded at compile time
+   *         no longer exists on the class
+   */
+  Schema createSchema() throws ReflectiveOperationException;
+}
@@ -0,0 +1,197 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.spec.phonenumber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import edu.psu.swe.scim.spec.resources.PhoneNumber;
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+/**
+ * Checks {@link TelUriParser} against the ANTLR grammar it replaces: both
+ * must accept and reject the same values, and build the same fields.
+ */
+@RunWith(JUnitParamsRunner.class)
+public class TelUriParserTest {
+
+  @SuppressWarnings("unused")
+  private String[] getPhones() {
+    return new String[] {
+      "tel:7042;phone-context=example.com",
+      "tel:863-1234;phone-context=+1-914-555",
+      "tel:235-1707;ext=4567;phone-context=+1-814-555",
+      "tel:235-1707;isub=example.sub.com;phone-context=+1-814-555",
+      "tel:235-1707;ext=4567;phone-context=+1-814-555;par2=ghnkl23",
+      "tel:235-1707;isub=example.sub.com;phone-context=+1-814-555;par2=ghnkl23",
+      "tel:A*#;phone-context=a",
+      "tel:(12).3-4;phone-context=+1-",
+      "tel:12;phone-context=example.com.",
+      "tel:12;phone-context=example.com.x",
+      "tel:12;phone-context=1.com",
+      "tel:12;phone-context=a-b.c-d",
+      "tel:12;phone-context=a;x=%4Ab;y=[1]+$&/:_!~'*().-",
+      "tel:+44-20-1234-5678",
+      "tel:+44.20.1234.5678;ext=4567",
+      "tel:+44.20.1234.5678;isub=example.sub.com",
+      "tel:+44.20.1234.5678;ext=4567;par2=ghnkl23",
+      "tel:+44.20.1234.5678;isub=example.sub.com;par2=ghnkl23",
+      "tel:+1(201)555.0123",
+      "tel:+43-(08)-9345-6765",
+      "tel:+1;ext=--",
+      "tel:+1-;ext=(1)",
+      "tel:+1;a=b;a=c;B=d",
+      "tel:+1;extra=1;isubs=2;phone-contexts=3",
+      "tel:+1234;isub=ab%4A?@=",
+      "tel:+1234;isub=a=b",
+      
+      "",
+      "tel:",
+      "tel:+",
+      "tel:+-.",
+      "TEL:+1",
+      "201-555-0123",
+      "tel:201 555 0123",
+      "tel:201-555-0123",
+      "tel:814-235-1707;ext=4567",
+      "tel:235-1707;ext=4567;ext=1234;phone-context:+1=814-555",
+      "tel:235-1707;phone-context:+1=814-555;ext=4567",
+      "tel:235-1707;ext=4567;isub=example.phone.com;phone-context:+1=814-555",
+      "tel:1707;isub=sub.example.com",
+      "tel:865-8773;ext=#44;phone-context:+1-814-555",
+      "tel:(814) 235-1707;ext=4567",
+      "tel:--;phone-context=a",
+      "tel:12a;phone-context=a",
+      "tel:;phone-context=a",
+      "tel:12;phone-context=",
+      "tel:12;phone-context=+",
+      "tel:12;phone-context=1.2",
+      "tel:12;phone-context=ex-.com",
+      "tel:12;phone-context=-a",
+      "tel:12;phone-context=a..b",
+      "tel:12;phone-context=a.b-",
+      "tel:12;phone-context=a ",
+      "tel:12;ext=;phone-context=a",
+      "tel:12;phone-context=a;ext=1",
+      "tel:+1-814-235-1707;ext=4567;ext=1234",
+      "tel:+1-814-235-1707;ext=4567;isub=example.phone.com",
+      "tel:+44-20-1234-5678;phone-context=+44",
+      "tel:+44-20-1234-5678;ext=#44",
+      "tel:+358-4x-123-4",
+      "tel:+1234x",
+      "tel:+1234 ",
+      "tel:+1234;",
+      "tel:+1234;=bar",
+      "tel:+1234;foo=",
+      "tel:+1234;foo=bar;",
+      "tel:+1234;foo=b r",
+      "tel:+1234;foo=%4a",
+      "tel:+1234;ext=",
+      "tel:+1234;ext=1x",
+      "tel:+1234;isub=",
+      "tel:+1234;isub=ab%zz",
+      "tel:+1234;isub=[a]",
+    };
+  }
+
+  @SuppressWarnings("unused")
+  private String[] getPhonesWithoutParameterValues() {
+    return new String[] {
+      "tel:+1234;foo",
+      "tel:+1;extra=1;ext",
+      "tel:12;ext=1;phone-context=a;p",
+    };
+  }
+
+  @Test
+  @Parameters(method = "getPhones")
+  public void test_parse_matchesGrammar(String phoneUri) {
+    PhoneNumber expected;
+    try {
+      expected = parseWithGrammar(phoneUri);
+    } catch (IllegalStateException e) {
+      expected = null;
+    }
+
+    PhoneNumber actual;
+    try {
+      actual = TelUriParser.parse(phoneUri);
+    } catch (PhoneNumberParseException e) {
+      actual = null;
+    }
+
+    if (expected == null || actual == null) {
+      assertEquals("accepted " + phoneUri, expected != null, actual != null);
+      return;
+    }
+
+    assertEquals(expected.getValue(), actual.getValue());
+    assertEquals(expected.getNumber(), actual.getNumber());
+    assertEquals(expected.getExtension(), actual.getExtension());
+    assertEquals(expected.getSubAddress(), actual.getSubAddress());
+    assertEquals(expected.getPhoneContext(), actual.getPhoneContext());
+    assertEquals(expected.getParams(), actual.getParams());
+    assertEquals(expected.isGlobalNumber(), actual.isGlobalNumber());
+    assertEquals(expected.isDomainPhoneContext(), actual.isDomainPhoneContext());
+  }
+
+  @Test(expected = PhoneNumberParseException.class)
+  @Parameters(method = "getPhonesWithoutParameterValues")
+  public void test_parse_parameterWithoutValue(String phoneUri) throws PhoneNumberParseException {
+    try {
+      parseWithGrammar(phoneUri);
+      fail("The grammar accepted " + phoneUri);
+    } catch (NullPointerException e) {
+      // the tree listener cannot build a parameter without a value
+    }
+
+    TelUriParser.parse(phoneUri);
+  }
+
+  private static PhoneNumber parseWithGrammar(String phoneUri) {
+    PhoneNumberParser parser = new PhoneNumberParser(new CommonTokenStream(new PhoneNumberLexer(new ANTLRInputStream(phoneUri))));
+    parser.removeErrorListeners();
+    parser.addErrorListener(new BaseErrorListener() {
+      @Override
+      public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) {
+        throw new IllegalStateException(msg, e);
+      }
+    });
+
+    PhoneNumberParseTreeListener listener = new PhoneNumberParseTreeListener();
+    ParseTreeWalker.DEFAULT.walk(listener, parser.phoneNumber());
+    try {
+      return listener.getPhoneNumber();
+    } catch (PhoneNumberParseException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
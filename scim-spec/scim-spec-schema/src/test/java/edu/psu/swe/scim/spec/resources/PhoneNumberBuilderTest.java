@@ -1271,6 +1271,23 @@ public class PhoneNumberBuilderTest {
     assertNotEquals(globalPh.hashCode(), nullTypeGlobalPh.hashCode());
   }
   
+  @Test
+  public void test_equalsAndHashCode_afterSetValue() throws PhoneNumberParseException {
+    PhoneNumber ph = new PhoneNumber();
+    ph.setValue("tel:+1-888-888-5555;ext=12(34)");
+    
+    PhoneNumber phOther = new PhoneNumber();
+    phOther.setValue("tel:+1.888.888.5555;ext=1234");
+    
+    assertEquals(ph, phOther);
+    assertEquals(ph.hashCode(), phOther.hashCode());
+    
+    phOther.setValue("tel:+1.888.888.5556;ext=1234");
+    
+    assertNotEquals(ph, phOther);
+    assertNotEquals(ph.hashCode(), phOther.hashCode());
+  }
+  
   
 
 }
@@ -0,0 +1,101 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+ 
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package edu.psu.swe.scim.spec.resources;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.AnnotationIntrospectorPair;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+
+import edu.psu.swe.scim.spec.extension.EnterpriseExtension;
+import edu.psu.swe.scim.spec.extension.ScimExtensionRegistry;
+
+public class ScimResourceExtensionJsonTest {
+
+  @Test
+  public void testExtensionBoundFromJson() throws Exception {
+    ScimExtensionRegistry.getInstance().registerExtension(ScimUser.class, EnterpriseExtension.class);
+
+    String json = "{\"schemas\":[\"" + ScimUser.SCHEMA_URI + "\",\"" + EnterpriseExtension.URN + "\"],"
+        + "\"userName\":\"bjensen\","
+        + "\"" + EnterpriseExtension.URN + "\":{\"employeeNumber\":\"701984\",\"manager\":{\"value\":\"26118915\"}},"
+        + "\"urn:example:unregistered\":{\"ignored\":true}}";
+
+    ScimUser user = getObjectMapper().readValue(json, ScimUser.class);
+
+    EnterpriseExtension enterprise = user.getExtension(EnterpriseExtension.class);
+    Assert.assertEquals("701984", enterprise.getEmployeeNumber());
+    Assert.assertEquals("26118915", enterprise.getManager().getValue());
+    Assert.assertEquals(1, user.getExtensions().size());
+  }
+
+  @Test
+  public void testExtensionSetFromMap() {
+    ScimExtensionRegistry.getInstance().registerExtension(ScimUser.class, EnterpriseExtension.class);
+
+    Map<String, Object> manager = new HashMap<>();
+    manager.put("value", "26118915");
+    Map<String, Object> attributes = new HashMap<>();
+    attributes.put("employeeNumber", "701984");
+    attributes.put("manager", manager);
+
+    ScimUser user = new ScimUser();
+    Object value = attributes;
+    user.setExtensions(EnterpriseExtension.URN, value);
+    user.setExtensions("urn:example:unregistered", value);
+
+    EnterpriseExtension enterprise = user.getExtension(EnterpriseExtension.class);
+    Assert.assertEquals("701984", enterprise.getEmployeeNumber());
+    Assert.assertEquals("26118915", enterprise.getManager().getValue());
+    Assert.assertEquals(1, user.getExtensions().size());
+  }
+
+  @Test
+  public void testExtensionReaderIsShared() {
+    ScimExtensionRegistry registry = ScimExtensionRegistry.getInstance();
+
+    Assert.assertSame(registry.getExtensionReader(EnterpriseExtension.class), registry.getExtensionReader(EnterpriseExtension.class));
+  }
+
+  private ObjectMapper getObjectMapper() {
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    JaxbAnnotationModule jaxbAnnotationModule = new JaxbAnnotationModule();
+    objectMapper.registerModule(jaxbAnnotationModule);
+    objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    AnnotationIntrospector jaxbIntrospector = new JaxbAnnotationIntrospector(objectMapper.getTypeFactory());
+    AnnotationIntrospector jacksonIntrospector = new JacksonAnnotationIntrospector();
+    AnnotationIntrospector pair = new AnnotationIntrospectorPair(jaxbIntrospector, jacksonIntrospector);
+    objectMapper.setAnnotationIntrospector(pair);
+
+    return objectMapper;
+  }
+}